@@ -0,0 +1,28 @@
+package com.example.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class SkipLoggingListener implements SkipListener<Object, Object> {
+
+	private final Logger logger = LoggerFactory.getLogger(SkipLoggingListener.class);
+
+	@Override
+	public void onSkipInRead(Throwable t) {
+		logger.warn("Skipped an item on read", t);
+	}
+
+	@Override
+	public void onSkipInProcess(Object item, Throwable t) {
+		logger.warn("Skipped {} on process: {}", item, t.getMessage());
+	}
+
+	@Override
+	public void onSkipInWrite(Object item, Throwable t) {
+		logger.warn("Skipped {} on write: {}", item, t.getMessage());
+	}
+
+}
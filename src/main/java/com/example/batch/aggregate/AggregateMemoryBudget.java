@@ -0,0 +1,152 @@
+package com.example.batch.aggregate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.util.Assert;
+
+/**
+ * Heap budget shared by the {@link SpillingAggregateMap}s of one aggregation, e.g. the
+ * partial results of a {@link ParallelFileAggregator}.
+ * <p>
+ * A map reserves memory from the budget before it grows and spills to disk when the
+ * reservation fails. The memory in use, the budget and the number of spills are published
+ * as the gauges {@code batch.aggregate.memory.used} and
+ * {@code batch.aggregate.memory.max} and the counter {@code batch.aggregate.spills},
+ * tagged with the name of the budget, in the {@link Metrics#globalRegistry} (like Spring
+ * Batch's own metrics) or the registry set with {@link #setMeterRegistry}. The meters are
+ * removed on {@link #close()}.
+ * </p>
+ */
+public class AggregateMemoryBudget implements AutoCloseable {
+
+	private final String name;
+
+	private final long maxBytes;
+
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+	private List<Meter> meters;
+
+	private Counter spills;
+
+	/**
+	 * Creates a budget.
+	 * @param name the name of the aggregation, used as the {@code name} tag of the meters
+	 * @param maxBytes the maximum number of bytes the maps may use together
+	 */
+	public AggregateMemoryBudget(String name, long maxBytes) {
+		Assert.hasText(name, "name must not be empty");
+		Assert.isTrue(maxBytes > 0, "maxBytes must be positive");
+		this.name = name;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Sets the registry of the meters. Defaults to {@link Metrics#globalRegistry}.
+	 * @param meterRegistry the registry
+	 */
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		Assert.state(this.meters == null, "Meters are already registered");
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * Reserves memory if it fits in the budget.
+	 * @param bytes the number of bytes
+	 * @return {@code true} if reserved, {@code false} if the budget would be exceeded
+	 */
+	public boolean tryReserve(long bytes) {
+		registerMeters();
+		long used;
+		do {
+			used = this.usedBytes.get();
+			if (used + bytes > this.maxBytes) {
+				return false;
+			}
+		}
+		while (!this.usedBytes.compareAndSet(used, used + bytes));
+		return true;
+	}
+
+	/**
+	 * Reserves memory even if it exceeds the budget, for the minimum a map needs.
+	 * @param bytes the number of bytes
+	 */
+	public void reserve(long bytes) {
+		registerMeters();
+		this.usedBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Releases reserved memory.
+	 * @param bytes the number of bytes
+	 */
+	public void release(long bytes) {
+		this.usedBytes.addAndGet(-bytes);
+	}
+
+	/**
+	 * Records that a map spilled to disk.
+	 */
+	public void recordSpill() {
+		registerMeters();
+		this.spills.increment();
+	}
+
+	/**
+	 * Returns the number of bytes reserved.
+	 * @return the memory in use
+	 */
+	public long getUsedBytes() {
+		return this.usedBytes.get();
+	}
+
+	/**
+	 * Returns the maximum number of bytes.
+	 * @return the budget
+	 */
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (this.meters != null) {
+			this.meters.forEach(this.meterRegistry::remove);
+			this.meters = null;
+		}
+	}
+
+	private synchronized void registerMeters() {
+		if (this.meters != null) {
+			return;
+		}
+		List<Meter> meters = new ArrayList<>();
+		meters.add(Gauge.builder("batch.aggregate.memory.used", this.usedBytes, AtomicLong::get)
+			.description("Heap reserved by the aggregate maps")
+			.baseUnit("bytes")
+			.tag("name", this.name)
+			.register(this.meterRegistry));
+		meters.add(Gauge.builder("batch.aggregate.memory.max", this, AggregateMemoryBudget::getMaxBytes)
+			.description("Heap budget of the aggregate maps")
+			.baseUnit("bytes")
+			.tag("name", this.name)
+			.register(this.meterRegistry));
+		this.spills = Counter.builder("batch.aggregate.spills")
+			.description("Number of times an aggregate map was spilled to disk")
+			.tag("name", this.name)
+			.register(this.meterRegistry);
+		meters.add(this.spills);
+		this.meters = meters;
+	}
+
+}
@@ -0,0 +1,233 @@
+package com.example.batch.aggregate;
+
+import java.util.Arrays;
+import org.springframework.util.Assert;
+
+/**
+ * Map from a {@code long} key to a fixed number of {@code long} accumulators, such as the
+ * counts and sums of a group.
+ * <p>
+ * Keys and accumulators are stored in primitive arrays with open addressing and linear
+ * probing, so adding to a group allocates nothing and does not box its key or values.
+ * Composite keys are packed into the {@code long} by the caller (e.g. a day number and a
+ * {@link StringDictionary} id). The map is not thread-safe; partial maps built by
+ * separate threads are combined with {@link #merge}.
+ * </p>
+ */
+public final class LongKeyAggregateMap {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private final int width;
+
+	private long[] keys;
+
+	private boolean[] used;
+
+	private long[] values;
+
+	private int mask;
+
+	private int size;
+
+	/**
+	 * Creates an empty map.
+	 * @param width the number of accumulators of each key
+	 */
+	public LongKeyAggregateMap(int width) {
+		this(width, MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * Creates an empty map sized for the expected number of keys.
+	 * @param width the number of accumulators of each key
+	 * @param expectedSize the expected number of keys
+	 */
+	public LongKeyAggregateMap(int width, int expectedSize) {
+		Assert.isTrue(width > 0, "width must be positive");
+		Assert.isTrue(expectedSize >= 0, "expectedSize must not be negative");
+		this.width = width;
+		allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1));
+	}
+
+	/**
+	 * Returns the slot of a key, adding the key with zero accumulators if absent. The
+	 * slot is only valid until the next call of this method.
+	 * @param key the key
+	 * @return the slot of the key
+	 */
+	public int slot(long key) {
+		int index = index(key);
+		while (this.used[index]) {
+			if (this.keys[index] == key) {
+				return index;
+			}
+			index = (index + 1) & this.mask;
+		}
+		if (isAtCapacity()) {
+			allocate(this.keys.length * 2);
+			return slot(key);
+		}
+		this.used[index] = true;
+		this.keys[index] = key;
+		this.size++;
+		return index;
+	}
+
+	/**
+	 * Adds a value to an accumulator of a slot.
+	 * @param slot the slot returned by {@link #slot(long)}
+	 * @param accumulator the index of the accumulator
+	 * @param value the value to add
+	 */
+	public void add(int slot, int accumulator, long value) {
+		this.values[slot * this.width + accumulator] += value;
+	}
+
+	/**
+	 * Adds a value to an accumulator of a key, adding the key if absent.
+	 * @param key the key
+	 * @param accumulator the index of the accumulator
+	 * @param value the value to add
+	 */
+	public void add(long key, int accumulator, long value) {
+		add(slot(key), accumulator, value);
+	}
+
+	/**
+	 * Returns the value of an accumulator of a key.
+	 * @param key the key
+	 * @param accumulator the index of the accumulator
+	 * @return the value, or 0 if the key is absent
+	 */
+	public long get(long key, int accumulator) {
+		int index = index(key);
+		while (this.used[index]) {
+			if (this.keys[index] == key) {
+				return this.values[index * this.width + accumulator];
+			}
+			index = (index + 1) & this.mask;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns whether the map contains a key.
+	 * @param key the key
+	 * @return {@code true} if the key was added
+	 */
+	public boolean containsKey(long key) {
+		int index = index(key);
+		while (this.used[index]) {
+			if (this.keys[index] == key) {
+				return true;
+			}
+			index = (index + 1) & this.mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the accumulators of another map with the same width to this map.
+	 * @param other the other map
+	 */
+	public void merge(LongKeyAggregateMap other) {
+		Assert.isTrue(other.width == this.width, "Cannot merge maps of different widths");
+		for (int index = 0; index < other.keys.length; index++) {
+			if (other.used[index]) {
+				int slot = slot(other.keys[index]);
+				for (int accumulator = 0; accumulator < this.width; accumulator++) {
+					add(slot, accumulator, other.values[index * this.width + accumulator]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the keys in ascending order.
+	 * @return a new array of the keys
+	 */
+	public long[] sortedKeys() {
+		long[] sorted = new long[this.size];
+		int n = 0;
+		for (int index = 0; index < this.keys.length; index++) {
+			if (this.used[index]) {
+				sorted[n++] = this.keys[index];
+			}
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Removes every key, keeping the allocated arrays.
+	 */
+	public void clear() {
+		Arrays.fill(this.used, false);
+		Arrays.fill(this.values, 0);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns whether adding a new key makes the map grow, which temporarily needs the
+	 * current {@link #memoryUsage()} plus twice as much.
+	 * @return {@code true} if the next new key doubles the capacity
+	 */
+	public boolean isAtCapacity() {
+		return (this.size + 1) * 2 > this.keys.length;
+	}
+
+	/**
+	 * Returns the approximate number of bytes of the arrays of the map.
+	 * @return the memory usage in bytes
+	 */
+	public long memoryUsage() {
+		return this.keys.length * 9L + this.values.length * 8L;
+	}
+
+	/**
+	 * Returns the number of keys.
+	 * @return the number of keys
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of accumulators of each key.
+	 * @return the width
+	 */
+	public int width() {
+		return this.width;
+	}
+
+	private int index(long key) {
+		// Fibonacci hashing spreads consecutive keys over the table
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(this.keys.length)));
+	}
+
+	private void allocate(int capacity) {
+		long[] oldKeys = this.keys;
+		boolean[] oldUsed = this.used;
+		long[] oldValues = this.values;
+		this.keys = new long[capacity];
+		this.used = new boolean[capacity];
+		this.values = new long[capacity * this.width];
+		this.mask = capacity - 1;
+		if (oldKeys == null) {
+			return;
+		}
+		for (int oldIndex = 0; oldIndex < oldKeys.length; oldIndex++) {
+			if (oldUsed[oldIndex]) {
+				int index = index(oldKeys[oldIndex]);
+				while (this.used[index]) {
+					index = (index + 1) & this.mask;
+				}
+				this.used[index] = true;
+				this.keys[index] = oldKeys[oldIndex];
+				System.arraycopy(oldValues, oldIndex * this.width, this.values, index * this.width, this.width);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,313 @@
+package com.example.batch.aggregate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.util.Assert;
+
+/**
+ * Aggregates the lines of a file in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * The file is split in halves recursively down to ranges of at most {@code splitSize}
+ * bytes. Each range is read with positional reads of a shared {@link FileChannel}, its
+ * lines are mapped to items and accumulated into a partial result of its own, and the
+ * partial results of two halves are combined, left one first, when both are done. A line
+ * belongs to the range its first byte is in, so every line is read exactly once. The
+ * combiner must be associative; it does not need to be commutative.
+ * </p>
+ * <p>
+ * Lines may be terminated by LF or CR LF; empty lines and comment lines are skipped. As
+ * with {@link com.example.batch.file.ByteOffsetFlatFileItemReader}, the encoding must
+ * represent LF as the single byte {@code 0x0A} that never occurs inside a multibyte
+ * character, e.g. UTF-8 or Windows-31J. The line mapper is called from several threads
+ * and must be thread-safe.
+ * </p>
+ *
+ * @param <T> type of the items of the lines
+ * @param <P> type of the partial and final results
+ */
+public class ParallelFileAggregator<T, P> {
+
+	private static final byte LF = '\n';
+
+	private static final byte CR = '\r';
+
+	private final LineMapper<T> lineMapper;
+
+	private final Supplier<P> partials;
+
+	private final BiConsumer<P, ? super T> accumulator;
+
+	private final BinaryOperator<P> combiner;
+
+	private Charset encoding = Charset.forName("Windows-31J");
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private long splitSize;
+
+	private String[] comments = new String[] { "#" };
+
+	/**
+	 * Creates an aggregator.
+	 * @param lineMapper the thread-safe mapper that turns each line into an item
+	 * @param partials the supplier of empty partial results
+	 * @param accumulator the function that adds an item to a partial result
+	 * @param combiner the associative function that combines the partial results of two
+	 * consecutive ranges, which may return one of them
+	 */
+	public ParallelFileAggregator(LineMapper<T> lineMapper, Supplier<P> partials, BiConsumer<P, ? super T> accumulator,
+			BinaryOperator<P> combiner) {
+		Assert.notNull(lineMapper, "lineMapper must not be null");
+		Assert.notNull(partials, "partials must not be null");
+		Assert.notNull(accumulator, "accumulator must not be null");
+		Assert.notNull(combiner, "combiner must not be null");
+		this.lineMapper = lineMapper;
+		this.partials = partials;
+		this.accumulator = accumulator;
+		this.combiner = combiner;
+	}
+
+	/**
+	 * Sets the encoding of the file. Defaults to Windows-31J.
+	 * @param encoding the name of an ASCII compatible encoding
+	 */
+	public void setEncoding(String encoding) {
+		Charset charset = Charset.forName(encoding);
+		Assert.isTrue(Arrays.equals("\r\n".getBytes(charset), new byte[] { CR, LF }),
+				"Encoding must represent CR and LF as single bytes: " + encoding);
+		this.encoding = charset;
+	}
+
+	/**
+	 * Sets the number of threads. Defaults to the number of available processors.
+	 * @param parallelism the number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the size in bytes below which a range is not split any further. Defaults to
+	 * {@code 0}, for a quarter of the file size divided by the parallelism, but at least
+	 * 1 MiB.
+	 * @param splitSize the size of the ranges, or {@code 0} for the default
+	 */
+	public void setSplitSize(long splitSize) {
+		Assert.isTrue(splitSize >= 0, "splitSize must not be negative");
+		this.splitSize = splitSize;
+	}
+
+	/**
+	 * Sets the prefixes of comment lines, which are skipped. Defaults to {@code "#"} like
+	 * {@link org.springframework.batch.item.file.FlatFileItemReader}.
+	 * @param comments the comment prefixes
+	 */
+	public void setComments(String... comments) {
+		this.comments = comments.clone();
+	}
+
+	/**
+	 * Aggregates the lines of a file.
+	 * @param file the file
+	 * @return the combination of the partial results of all ranges
+	 * @throws IOException if the file cannot be read
+	 * @throws FlatFileParseException if a line cannot be mapped
+	 */
+	public P aggregate(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long minSize = this.splitSize > 0 ? this.splitSize : Math.max(1024 * 1024, size / (this.parallelism * 4L));
+			ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+			try {
+				return pool.invoke(new RangeTask(channel, file, 0, size, minSize));
+			}
+			catch (UncheckedIOException ex) {
+				throw ex.getCause();
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private P aggregateRange(FileChannel channel, Path file, long start, long end) throws IOException {
+		P partial = this.partials.get();
+		LineCursor cursor = new LineCursor(channel, start > 0 ? start - 1 : 0);
+		if (start > 0) {
+			// The line running over the start belongs to the previous range
+			cursor.nextLine();
+		}
+		while (cursor.position < end && cursor.nextLine()) {
+			if (cursor.length == 0) {
+				continue;
+			}
+			String line = new String(cursor.line, 0, cursor.length, this.encoding);
+			if (isComment(line)) {
+				continue;
+			}
+			T item;
+			try {
+				item = this.lineMapper.mapLine(line, 0);
+			}
+			catch (Exception ex) {
+				throw new FlatFileParseException("Parsing error at byte offset: " + cursor.lineStart + " in file=["
+						+ file + "], input=[" + line + "]", ex, line, 0);
+			}
+			this.accumulator.accept(partial, item);
+		}
+		return partial;
+	}
+
+	private boolean isComment(String line) {
+		for (String prefix : this.comments) {
+			if (line.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Aggregates a range, splitting it in halves while it is larger than the minimum
+	 * size.
+	 */
+	private final class RangeTask extends RecursiveTask<P> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+
+		private final Path file;
+
+		private final long start;
+
+		private final long end;
+
+		private final long minSize;
+
+		private RangeTask(FileChannel channel, Path file, long start, long end, long minSize) {
+			this.channel = channel;
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.minSize = minSize;
+		}
+
+		@Override
+		protected P compute() {
+			if (this.end - this.start <= this.minSize) {
+				try {
+					return aggregateRange(this.channel, this.file, this.start, this.end);
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			long middle = this.start + (this.end - this.start) / 2;
+			RangeTask left = new RangeTask(this.channel, this.file, this.start, middle, this.minSize);
+			RangeTask right = new RangeTask(this.channel, this.file, middle, this.end, this.minSize);
+			left.fork();
+			P rightResult = right.compute();
+			return ParallelFileAggregator.this.combiner.apply(left.join(), rightResult);
+		}
+
+	}
+
+	/**
+	 * Reads lines from a position of a file with positional reads, so that several
+	 * cursors can share a channel.
+	 */
+	private static final class LineCursor {
+
+		private final FileChannel channel;
+
+		private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).limit(0);
+
+		private byte[] line = new byte[256];
+
+		private int length;
+
+		/**
+		 * Offset of the first byte of the last line read.
+		 */
+		private long lineStart;
+
+		/**
+		 * Offset of the next byte to read.
+		 */
+		private long position;
+
+		private LineCursor(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		/**
+		 * Reads the next line without its terminator.
+		 * @return {@code false} at the end of the file
+		 */
+		private boolean nextLine() throws IOException {
+			this.length = 0;
+			this.lineStart = this.position;
+			boolean any = false;
+			while (true) {
+				if (!this.buffer.hasRemaining()) {
+					this.buffer.clear();
+					int read = this.channel.read(this.buffer, this.position);
+					this.buffer.flip();
+					if (read <= 0) {
+						stripCr();
+						return any;
+					}
+				}
+				any = true;
+				byte[] bytes = this.buffer.array();
+				int from = this.buffer.position();
+				int to = this.buffer.limit();
+				int lf = from;
+				while (lf < to && bytes[lf] != LF) {
+					lf++;
+				}
+				append(bytes, from, lf - from);
+				if (lf < to) {
+					this.buffer.position(lf + 1);
+					this.position += lf + 1 - from;
+					stripCr();
+					return true;
+				}
+				this.buffer.position(to);
+				this.position += to - from;
+			}
+		}
+
+		private void stripCr() {
+			if (this.length > 0 && this.line[this.length - 1] == CR) {
+				this.length--;
+			}
+		}
+
+		private void append(byte[] bytes, int offset, int count) {
+			if (this.length + count > this.line.length) {
+				this.line = Arrays.copyOf(this.line, Math.max(this.line.length * 2, this.length + count));
+			}
+			System.arraycopy(bytes, offset, this.line, this.length, count);
+			this.length += count;
+		}
+
+	}
+
+}
@@ -0,0 +1,380 @@
+package com.example.batch.aggregate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.springframework.util.Assert;
+
+/**
+ * {@link LongKeyAggregateMap} that stays within an {@link AggregateMemoryBudget} by
+ * spilling to disk.
+ * <p>
+ * Before the in-memory map grows, the memory of the grown map is reserved from the
+ * budget. If the reservation fails, the map is written as a run file of keys in ascending
+ * order, each followed by its accumulators, and cleared. Keys are stored as the
+ * difference to the previous key and accumulators as zigzag-encoded variable length
+ * integers, so small counts and sums take one or a few bytes. {@link #forEach} merges the
+ * run files and the in-memory map in key order, summing the accumulators of equal keys,
+ * so the caller sees each key once. When {@value #MAX_RUNS} runs have been written, they
+ * are merged into one, so that the merge never opens more files than that.
+ * </p>
+ * <p>
+ * Not thread-safe; the maps of parallel partial results share one budget. The run files
+ * are deleted and the memory released on {@link #close()}.
+ * </p>
+ */
+public class SpillingAggregateMap implements AutoCloseable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Read buffers of the runs are small, as all of them are open during a merge
+	private static final int RUN_BUFFER_SIZE = 8 * 1024;
+
+	private static final int MAX_RUNS = 64;
+
+	private final LongKeyAggregateMap map;
+
+	private final AggregateMemoryBudget budget;
+
+	private final Path tempDirectory;
+
+	private final List<Path> runs = new ArrayList<>();
+
+	private long reserved;
+
+	private int spillCount;
+
+	/**
+	 * Creates an empty map.
+	 * @param width the number of accumulators of each key
+	 * @param budget the memory budget, shared with the other maps of the aggregation
+	 * @param tempDirectory the directory of the run files
+	 */
+	public SpillingAggregateMap(int width, AggregateMemoryBudget budget, Path tempDirectory) {
+		Assert.notNull(budget, "budget must not be null");
+		Assert.notNull(tempDirectory, "tempDirectory must not be null");
+		this.map = new LongKeyAggregateMap(width);
+		this.budget = budget;
+		this.tempDirectory = tempDirectory;
+		// The minimum size of the map is reserved even if it exceeds the budget
+		this.reserved = this.map.memoryUsage();
+		budget.reserve(this.reserved);
+	}
+
+	/**
+	 * Returns the slot of a key, adding the key if absent and spilling the map first if
+	 * it cannot grow within the budget. The slot is only valid until the next call of
+	 * this method.
+	 * @param key the key
+	 * @return the slot of the key
+	 * @throws UncheckedIOException if the map cannot be spilled
+	 */
+	public int slot(long key) {
+		if (this.map.isAtCapacity() && !this.map.containsKey(key)) {
+			// Growing allocates arrays twice as large while the current ones are alive
+			long grown = this.map.memoryUsage() * 2;
+			if (this.budget.tryReserve(grown)) {
+				int slot = this.map.slot(key);
+				this.budget.release(this.reserved);
+				this.reserved = grown;
+				return slot;
+			}
+			try {
+				spill();
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException("Unable to spill aggregate to " + this.tempDirectory, ex);
+			}
+		}
+		return this.map.slot(key);
+	}
+
+	/**
+	 * Adds a value to an accumulator of a slot.
+	 * @param slot the slot returned by {@link #slot(long)}
+	 * @param accumulator the index of the accumulator
+	 * @param value the value to add
+	 */
+	public void add(int slot, int accumulator, long value) {
+		this.map.add(slot, accumulator, value);
+	}
+
+	/**
+	 * Returns the number of times the map was spilled to disk.
+	 * @return the number of spills
+	 */
+	public int getSpillCount() {
+		return this.spillCount;
+	}
+
+	/**
+	 * Passes every key with the sum of its accumulators to the consumer, in ascending key
+	 * order. The array of accumulators is reused between calls.
+	 * @param consumer the consumer
+	 * @throws UncheckedIOException if a run file cannot be read
+	 */
+	public void forEach(AggregateConsumer consumer) {
+		try {
+			merge(this.runs, new MemoryRun(this.map), consumer);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	@Override
+	public void close() {
+		this.budget.release(this.reserved);
+		this.reserved = 0;
+		for (Path run : this.runs) {
+			try {
+				Files.deleteIfExists(run);
+			}
+			catch (IOException ignored) {
+			}
+		}
+		this.runs.clear();
+	}
+
+	private void merge(List<Path> files, MemoryRun memoryRun, AggregateConsumer consumer) throws IOException {
+		int width = this.map.width();
+		PriorityQueue<Run> queue = new PriorityQueue<>((a, b) -> Long.compare(a.key, b.key));
+		List<Run> opened = new ArrayList<>();
+		try {
+			for (Path file : files) {
+				FileRun fileRun = new FileRun(file, width);
+				opened.add(fileRun);
+				advance(fileRun, queue);
+			}
+			if (memoryRun != null) {
+				advance(memoryRun, queue);
+			}
+			long[] values = new long[width];
+			while (!queue.isEmpty()) {
+				Run run = queue.poll();
+				long key = run.key;
+				System.arraycopy(run.values, 0, values, 0, width);
+				advance(run, queue);
+				while (!queue.isEmpty() && queue.peek().key == key) {
+					Run same = queue.poll();
+					for (int i = 0; i < width; i++) {
+						values[i] += same.values[i];
+					}
+					advance(same, queue);
+				}
+				consumer.accept(key, values);
+			}
+		}
+		finally {
+			for (Run run : opened) {
+				run.close();
+			}
+		}
+	}
+
+	private static void advance(Run run, PriorityQueue<Run> queue) throws IOException {
+		if (run.next()) {
+			queue.add(run);
+		}
+	}
+
+	private void spill() throws IOException {
+		long[] keys = this.map.sortedKeys();
+		this.runs.add(writeRun((out) -> {
+			long[] values = new long[this.map.width()];
+			for (long key : keys) {
+				for (int accumulator = 0; accumulator < values.length; accumulator++) {
+					values[accumulator] = this.map.get(key, accumulator);
+				}
+				out.accept(key, values);
+			}
+		}));
+		this.map.clear();
+		this.spillCount++;
+		this.budget.recordSpill();
+		if (this.runs.size() >= MAX_RUNS) {
+			List<Path> merged = new ArrayList<>(this.runs);
+			Path run = writeRun((out) -> merge(merged, null, out));
+			this.runs.clear();
+			this.runs.add(run);
+			for (Path file : merged) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	private Path writeRun(RunSource source) throws IOException {
+		Path run = Files.createTempFile(this.tempDirectory, "aggregate-", ".run");
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE)) {
+			long[] previous = { 0 };
+			source.writeTo((key, values) -> {
+				try {
+					writeVarLong(out, key - previous[0]);
+					previous[0] = key;
+					for (long value : values) {
+						writeVarLong(out, value);
+					}
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		}
+		catch (IOException | UncheckedIOException ex) {
+			try {
+				Files.deleteIfExists(run);
+			}
+			catch (IOException suppressed) {
+				ex.addSuppressed(suppressed);
+			}
+			throw ex;
+		}
+		return run;
+	}
+
+	private static void writeVarLong(OutputStream out, long value) throws IOException {
+		long zigzag = (value << 1) ^ (value >> 63);
+		while ((zigzag & ~0x7FL) != 0) {
+			out.write((int) ((zigzag & 0x7F) | 0x80));
+			zigzag >>>= 7;
+		}
+		out.write((int) zigzag);
+	}
+
+	/**
+	 * Receives the keys and accumulators of a {@link SpillingAggregateMap}.
+	 */
+	@FunctionalInterface
+	public interface AggregateConsumer {
+
+		/**
+		 * Receives a key.
+		 * @param key the key
+		 * @param values the accumulators of the key, only valid during the call
+		 */
+		void accept(long key, long[] values);
+
+	}
+
+	/**
+	 * Writes the sorted keys and accumulators of a run.
+	 */
+	@FunctionalInterface
+	private interface RunSource {
+
+		void writeTo(AggregateConsumer out) throws IOException;
+
+	}
+
+	/**
+	 * Sorted source of keys and accumulators for the merge.
+	 */
+	private abstract static class Run {
+
+		long key;
+
+		final long[] values;
+
+		Run(int width) {
+			this.values = new long[width];
+		}
+
+		abstract boolean next() throws IOException;
+
+		void close() {
+		}
+
+	}
+
+	private static final class MemoryRun extends Run {
+
+		private final LongKeyAggregateMap map;
+
+		private final long[] keys;
+
+		private int index;
+
+		private MemoryRun(LongKeyAggregateMap map) {
+			super(map.width());
+			this.map = map;
+			this.keys = map.sortedKeys();
+		}
+
+		@Override
+		boolean next() {
+			if (this.index == this.keys.length) {
+				return false;
+			}
+			this.key = this.keys[this.index++];
+			for (int i = 0; i < this.values.length; i++) {
+				this.values[i] = this.map.get(this.key, i);
+			}
+			return true;
+		}
+
+	}
+
+	private static final class FileRun extends Run {
+
+		private final Path file;
+
+		private final InputStream in;
+
+		private FileRun(Path file, int width) throws IOException {
+			super(width);
+			this.file = file;
+			this.in = new BufferedInputStream(Files.newInputStream(file), RUN_BUFFER_SIZE);
+		}
+
+		@Override
+		boolean next() throws IOException {
+			int first = this.in.read();
+			if (first < 0) {
+				return false;
+			}
+			this.key += readVarLong(first);
+			for (int i = 0; i < this.values.length; i++) {
+				this.values[i] = readVarLong(this.in.read());
+			}
+			return true;
+		}
+
+		private long readVarLong(int first) throws IOException {
+			long zigzag = 0;
+			int shift = 0;
+			int b = first;
+			while (true) {
+				if (b < 0) {
+					throw new EOFException("Truncated run file: " + this.file);
+				}
+				zigzag |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+				shift += 7;
+				b = this.in.read();
+			}
+			return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+
+		@Override
+		void close() {
+			try {
+				this.in.close();
+			}
+			catch (IOException ignored) {
+			}
+		}
+
+	}
+
+}
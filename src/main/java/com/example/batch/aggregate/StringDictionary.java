@@ -0,0 +1,52 @@
+package com.example.batch.aggregate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns consecutive {@code int} ids to strings, so that a string can be part of a
+ * primitive key such as the key of a {@link LongKeyAggregateMap}. {@code null} is a valid
+ * value. Not thread-safe.
+ */
+public final class StringDictionary {
+
+	private final Map<String, Integer> ids = new HashMap<>();
+
+	private final List<String> values = new ArrayList<>();
+
+	/**
+	 * Returns the id of a string, assigning the next id if the string is new.
+	 * @param value the string, possibly {@code null}
+	 * @return the id, from 0
+	 */
+	public int id(String value) {
+		Integer id = this.ids.get(value);
+		if (id == null) {
+			id = this.values.size();
+			this.ids.put(value, id);
+			this.values.add(value);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the string of an id.
+	 * @param id the id
+	 * @return the string
+	 * @throws IndexOutOfBoundsException if the id was not assigned
+	 */
+	public String value(int id) {
+		return this.values.get(id);
+	}
+
+	/**
+	 * Returns the number of strings.
+	 * @return the number of strings
+	 */
+	public int size() {
+		return this.values.size();
+	}
+
+}
@@ -0,0 +1,324 @@
+package com.example.batch.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.NonTransientResourceException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Flat file reader that restarts by seeking to a byte offset instead of re-reading the
+ * file.
+ * <p>
+ * {@link org.springframework.batch.item.file.FlatFileItemReader} restores its position by
+ * reading and discarding every line up to the saved item count. This reader splits the
+ * file into lines at the byte level, keeps track of the byte offset of the end of the
+ * last line it returned and stores that offset in the {@link ExecutionContext} on
+ * {@link #update(ExecutionContext)}. On restart it positions the file channel directly at
+ * that offset. Resources that are not files are skipped forward by the same number of
+ * bytes without decoding or mapping any line.
+ * </p>
+ * <p>
+ * Lines may be terminated by LF, CR LF or CR. The encoding must represent CR and LF as
+ * the single bytes {@code 0x0D} and {@code 0x0A} that never occur inside a multibyte
+ * character, which is the case for ASCII compatible encodings such as UTF-8 and
+ * Windows-31J (Shift_JIS).
+ * </p>
+ *
+ * @param <T> the type of item to read
+ */
+public class ByteOffsetFlatFileItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> {
+
+	private static final String BYTE_OFFSET = "byte.offset";
+
+	private static final String LINE_COUNT = "line.count";
+
+	private static final byte LF = '\n';
+
+	private static final byte CR = '\r';
+
+	private final Resource resource;
+
+	private final LineMapper<T> lineMapper;
+
+	private Charset encoding = Charset.forName("Windows-31J");
+
+	private int linesToSkip = 0;
+
+	private String[] comments = new String[] { "#" };
+
+	private boolean strict = true;
+
+	private int bufferSize = 64 * 1024;
+
+	private FileChannel channel;
+
+	private InputStream inputStream;
+
+	private byte[] buffer;
+
+	private int bufferPosition;
+
+	private int bufferLimit;
+
+	private byte[] lineBuffer = new byte[256];
+
+	/**
+	 * Byte offset just after the terminator of the last line read.
+	 */
+	private long offset;
+
+	private int lineCount;
+
+	private long restartOffset = -1;
+
+	private int restartLineCount;
+
+	private boolean noInput;
+
+	/**
+	 * Creates a reader for the given resource.
+	 * @param resource the file to read
+	 * @param lineMapper the mapper that turns each line into an item
+	 */
+	public ByteOffsetFlatFileItemReader(Resource resource, LineMapper<T> lineMapper) {
+		Assert.notNull(resource, "resource must not be null");
+		Assert.notNull(lineMapper, "lineMapper must not be null");
+		this.resource = resource;
+		this.lineMapper = lineMapper;
+	}
+
+	/**
+	 * Sets the encoding of the file. Defaults to Windows-31J.
+	 * @param encoding the name of an ASCII compatible encoding
+	 */
+	public void setEncoding(String encoding) {
+		Charset charset = Charset.forName(encoding);
+		Assert.isTrue(Arrays.equals("\r\n".getBytes(charset), new byte[] { CR, LF }),
+				"Encoding must represent CR and LF as single bytes: " + encoding);
+		this.encoding = charset;
+	}
+
+	/**
+	 * Sets the number of lines to skip at the start of the file (e.g. a header).
+	 * @param linesToSkip the number of lines to skip
+	 */
+	public void setLinesToSkip(int linesToSkip) {
+		this.linesToSkip = linesToSkip;
+	}
+
+	/**
+	 * Sets the prefixes of comment lines, which are skipped. Defaults to {@code "#"} like
+	 * {@link org.springframework.batch.item.file.FlatFileItemReader}.
+	 * @param comments the comment prefixes
+	 */
+	public void setComments(String... comments) {
+		this.comments = comments.clone();
+	}
+
+	/**
+	 * Whether to fail on open when the resource does not exist. Defaults to {@code true}.
+	 * @param strict {@code false} to treat a missing resource as empty input
+	 */
+	public void setStrict(boolean strict) {
+		this.strict = strict;
+	}
+
+	/**
+	 * Sets the size of the read buffer in bytes. Defaults to 64 KiB.
+	 * @param bufferSize the buffer size
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.isTrue(bufferSize > 0, "bufferSize must be positive");
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		if (isSaveState() && executionContext.containsKey(getExecutionContextKey(BYTE_OFFSET))) {
+			this.restartOffset = executionContext.getLong(getExecutionContextKey(BYTE_OFFSET));
+			this.restartLineCount = executionContext.getInt(getExecutionContextKey(LINE_COUNT));
+		}
+		else {
+			this.restartOffset = -1;
+		}
+		super.open(executionContext);
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		super.update(executionContext);
+		if (isSaveState()) {
+			executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), this.offset);
+			executionContext.putInt(getExecutionContextKey(LINE_COUNT), this.lineCount);
+		}
+	}
+
+	@Override
+	protected void doOpen() throws Exception {
+		this.offset = 0;
+		this.lineCount = 0;
+		this.bufferPosition = 0;
+		this.bufferLimit = 0;
+		this.noInput = !this.resource.exists();
+		if (this.noInput) {
+			if (this.strict) {
+				throw new IllegalStateException(
+						"Input resource must exist (reader is in 'strict' mode): " + this.resource.getDescription());
+			}
+			return;
+		}
+		if (this.resource.isFile()) {
+			this.channel = FileChannel.open(this.resource.getFile().toPath(), StandardOpenOption.READ);
+			this.inputStream = Channels.newInputStream(this.channel);
+		}
+		else {
+			this.inputStream = this.resource.getInputStream();
+		}
+		this.buffer = new byte[this.bufferSize];
+		for (int i = 0; i < this.linesToSkip; i++) {
+			if (readLine() == null) {
+				break;
+			}
+		}
+	}
+
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		if (this.restartOffset < 0 || this.noInput) {
+			super.jumpToItem(itemIndex);
+			return;
+		}
+		if (this.channel != null) {
+			this.channel.position(this.restartOffset);
+			this.bufferPosition = 0;
+			this.bufferLimit = 0;
+		}
+		else {
+			// The stream is already past the bytes buffered while skipping the header
+			long buffered = this.bufferLimit - this.bufferPosition;
+			long distance = this.restartOffset - this.offset;
+			if (distance <= buffered) {
+				this.bufferPosition += (int) distance;
+			}
+			else {
+				this.inputStream.skipNBytes(distance - buffered);
+				this.bufferPosition = 0;
+				this.bufferLimit = 0;
+			}
+		}
+		this.offset = this.restartOffset;
+		this.lineCount = this.restartLineCount;
+	}
+
+	@Override
+	protected T doRead() throws Exception {
+		if (this.noInput) {
+			return null;
+		}
+		String line = readLine();
+		while (line != null && isComment(line)) {
+			line = readLine();
+		}
+		if (line == null) {
+			return null;
+		}
+		try {
+			return this.lineMapper.mapLine(line, this.lineCount);
+		}
+		catch (Exception ex) {
+			throw new FlatFileParseException("Parsing error at line: " + this.lineCount + " in resource=["
+					+ this.resource.getDescription() + "], input=[" + line + "]", ex, line, this.lineCount);
+		}
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		try {
+			if (this.inputStream != null) {
+				this.inputStream.close();
+			}
+		}
+		finally {
+			this.inputStream = null;
+			this.channel = null;
+			this.buffer = null;
+		}
+	}
+
+	private boolean isComment(String line) {
+		for (String prefix : this.comments) {
+			if (line.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the next line and advances {@link #offset} past its terminator.
+	 * @return the decoded line without terminator, or {@code null} at the end of input
+	 */
+	private String readLine() {
+		int length = 0;
+		while (true) {
+			if (this.bufferPosition == this.bufferLimit && !fill()) {
+				if (length == 0) {
+					return null;
+				}
+				break;
+			}
+			byte b = this.buffer[this.bufferPosition];
+			this.bufferPosition++;
+			this.offset++;
+			if (b == LF) {
+				break;
+			}
+			if (b == CR) {
+				// Consume the LF of a CR LF pair now, even if it is in the next
+				// buffer fill, so that the saved offset never points between the two
+				if ((this.bufferPosition < this.bufferLimit || fill()) && this.buffer[this.bufferPosition] == LF) {
+					this.bufferPosition++;
+					this.offset++;
+				}
+				break;
+			}
+			if (length == this.lineBuffer.length) {
+				this.lineBuffer = Arrays.copyOf(this.lineBuffer, length * 2);
+			}
+			this.lineBuffer[length++] = b;
+		}
+		this.lineCount++;
+		return new String(this.lineBuffer, 0, length, this.encoding);
+	}
+
+	private boolean fill() {
+		try {
+			int read = this.channel != null ? this.channel.read(ByteBuffer.wrap(this.buffer))
+					: this.inputStream.read(this.buffer);
+			if (read <= 0) {
+				this.bufferPosition = 0;
+				this.bufferLimit = 0;
+				return false;
+			}
+			this.bufferPosition = 0;
+			this.bufferLimit = read;
+			return true;
+		}
+		catch (IOException ex) {
+			throw new NonTransientResourceException("Unable to read from resource: [" + this.resource + "]", ex);
+		}
+	}
+
+}
@@ -0,0 +1,386 @@
+package com.example.batch.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.WriteFailedException;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * Writes each item to a file whose name is derived from the item, for an open-ended
+ * number of files (e.g. one per branch and month, see {@link ItemKeyTemplate}).
+ * <p>
+ * Instead of one {@link org.springframework.batch.item.file.FlatFileItemWriter} per file,
+ * the writer keeps a pool of at most {@code maxOpenFiles} open file channels. When the
+ * pool is full, the least recently used channel is closed; the file is reopened at its
+ * end when it is written again.
+ * </p>
+ * <p>
+ * As with {@link RoutingFlatFileItemWriter}, the lines of a chunk are buffered per file
+ * and written when the transaction commits, or at once outside a transaction. The size of
+ * every file written so far is saved in the {@link ExecutionContext} on update. On
+ * restart each of these files is truncated to its saved size. A file that is not in the
+ * saved state is truncated when it is first opened. A transaction that is rolled back
+ * after its lines were written truncates the files to their sizes at the last commit, and
+ * deletes those it created. This assumes that the transactions commit one at a time, as
+ * the chunks of a step do.
+ * </p>
+ *
+ * @param <T> type of item to write
+ */
+public class DynamicFlatFileItemWriter<T> extends ItemStreamSupport implements ItemStreamWriter<T> {
+
+	private static final String FILE_SIZES = "file.sizes";
+
+	private final Path directory;
+
+	private final Function<? super T, String> fileNames;
+
+	private final LineAggregator<? super T> lineAggregator;
+
+	private Charset encoding = Charset.forName("Windows-31J");
+
+	private String lineSeparator = System.lineSeparator();
+
+	private int maxOpenFiles = 64;
+
+	private boolean saveState = true;
+
+	private final Object lock = new Object();
+
+	/**
+	 * Size of each file written by this execution (or a previous one, on restart) after
+	 * the last write.
+	 */
+	private final Map<String, Long> sizes = new HashMap<>();
+
+	/**
+	 * Size of each file after the last committed transaction.
+	 */
+	private final Map<String, Long> committedSizes = new HashMap<>();
+
+	/**
+	 * Open channels, least recently used first.
+	 */
+	private final LinkedHashMap<String, FileChannel> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Creates a writer.
+	 * @param directory the directory the file names are resolved against
+	 * @param fileNames the function that returns the name of the file of an item,
+	 * relative to the directory
+	 * @param lineAggregator the aggregator that formats an item as a line
+	 */
+	public DynamicFlatFileItemWriter(Path directory, Function<? super T, String> fileNames,
+			LineAggregator<? super T> lineAggregator) {
+		Assert.notNull(directory, "directory must not be null");
+		Assert.notNull(fileNames, "fileNames must not be null");
+		Assert.notNull(lineAggregator, "lineAggregator must not be null");
+		this.directory = directory.toAbsolutePath().normalize();
+		this.fileNames = fileNames;
+		this.lineAggregator = lineAggregator;
+	}
+
+	/**
+	 * Sets the encoding of the files. Defaults to Windows-31J.
+	 * @param encoding the encoding
+	 */
+	public void setEncoding(String encoding) {
+		this.encoding = Charset.forName(encoding);
+	}
+
+	/**
+	 * Sets the line separator. Defaults to the system line separator.
+	 * @param lineSeparator the line separator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Sets the maximum number of files kept open. Defaults to 64.
+	 * @param maxOpenFiles the maximum number of open files
+	 */
+	public void setMaxOpenFiles(int maxOpenFiles) {
+		Assert.isTrue(maxOpenFiles > 0, "maxOpenFiles must be positive");
+		this.maxOpenFiles = maxOpenFiles;
+	}
+
+	/**
+	 * Whether to save the file sizes in the {@link ExecutionContext}. Defaults to
+	 * {@code true}.
+	 * @param saveState {@code false} to always start with empty files
+	 */
+	public void setSaveState(boolean saveState) {
+		this.saveState = saveState;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		super.open(executionContext);
+		synchronized (this.lock) {
+			this.sizes.clear();
+			this.committedSizes.clear();
+			String key = getExecutionContextKey(FILE_SIZES);
+			if (!this.saveState || !executionContext.containsKey(key)) {
+				return;
+			}
+			((Map<String, ? extends Number>) executionContext.get(key)).forEach((fileName, size) -> {
+				Path file = resolve(fileName);
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE)) {
+					if (channel.size() < size.longValue()) {
+						throw new ItemStreamException("Current file size is smaller than size at last commit: " + file
+								+ " (" + size + " bytes)");
+					}
+					channel.truncate(size.longValue());
+				}
+				catch (IOException ex) {
+					throw new ItemStreamException("Unable to open file: " + file, ex);
+				}
+				this.sizes.put(fileName, size.longValue());
+				this.committedSizes.put(fileName, size.longValue());
+			});
+		}
+	}
+
+	@Override
+	public void write(Chunk<? extends T> chunk) throws Exception {
+		Map<String, StringBuilder> lines = new LinkedHashMap<>();
+		for (T item : chunk) {
+			lines.computeIfAbsent(this.fileNames.apply(item), fileName -> new StringBuilder())
+				.append(this.lineAggregator.aggregate(item))
+				.append(this.lineSeparator);
+		}
+		Map<String, ByteArrayOutputStream> pending = pending();
+		lines.forEach((fileName, fileLines) -> pending.computeIfAbsent(fileName, key -> new ByteArrayOutputStream())
+			.writeBytes(fileLines.toString().getBytes(this.encoding)));
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			List<String> written = new ArrayList<>(pending.keySet());
+			writePending(pending);
+			commit(written);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		super.update(executionContext);
+		if (this.saveState) {
+			HashMap<String, Long> savedSizes;
+			synchronized (this.lock) {
+				savedSizes = new HashMap<>(this.sizes);
+			}
+			currentPending().forEach((fileName, bytes) -> savedSizes.merge(fileName, (long) bytes.size(), Long::sum));
+			executionContext.put(getExecutionContextKey(FILE_SIZES), savedSizes);
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		super.close();
+		synchronized (this.lock) {
+			ItemStreamException failure = null;
+			for (Iterator<Map.Entry<String, FileChannel>> it = this.openFiles.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<String, FileChannel> entry = it.next();
+				it.remove();
+				try {
+					entry.getValue().close();
+				}
+				catch (IOException ex) {
+					if (failure == null) {
+						failure = new ItemStreamException("Unable to close file: " + resolve(entry.getKey()), ex);
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of files currently open.
+	 * @return the number of open files
+	 */
+	public int getOpenFileCount() {
+		synchronized (this.lock) {
+			return this.openFiles.size();
+		}
+	}
+
+	private Path resolve(String fileName) {
+		Path file = this.directory.resolve(fileName).normalize();
+		if (!file.startsWith(this.directory) || file.equals(this.directory)) {
+			throw new IllegalArgumentException("File name outside of " + this.directory + ": " + fileName);
+		}
+		return file;
+	}
+
+	/**
+	 * Returns the bytes not written yet of the current transaction, registering the
+	 * synchronization that writes them on commit for a new transaction. Once the
+	 * transaction completes, the files it wrote are committed, or restored to the last
+	 * commit if it was rolled back after they were written.
+	 */
+	private Map<String, ByteArrayOutputStream> pending() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return new LinkedHashMap<>();
+		}
+		@SuppressWarnings("unchecked")
+		Map<String, ByteArrayOutputStream> pending = (Map<String, ByteArrayOutputStream>) TransactionSynchronizationManager
+			.getResource(this);
+		if (pending == null) {
+			Map<String, ByteArrayOutputStream> newPending = new LinkedHashMap<>();
+			TransactionSynchronizationManager.bindResource(this, newPending);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+				private final List<String> written = new ArrayList<>();
+
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					this.written.addAll(newPending.keySet());
+					writePending(newPending);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(DynamicFlatFileItemWriter.this);
+					if (status == STATUS_COMMITTED) {
+						commit(this.written);
+					}
+					else {
+						rollback(this.written);
+					}
+				}
+
+			});
+			pending = newPending;
+		}
+		return pending;
+	}
+
+	private Map<String, ByteArrayOutputStream> currentPending() {
+		@SuppressWarnings("unchecked")
+		Map<String, ByteArrayOutputStream> pending = (Map<String, ByteArrayOutputStream>) TransactionSynchronizationManager
+			.getResource(this);
+		return pending != null ? pending : Map.of();
+	}
+
+	private void writePending(Map<String, ByteArrayOutputStream> pending) {
+		synchronized (this.lock) {
+			pending.forEach((fileName, bytes) -> {
+				try {
+					bytes.writeTo(Channels.newOutputStream(channel(fileName)));
+				}
+				catch (IOException ex) {
+					throw new WriteFailedException("Could not write data to file: " + resolve(fileName), ex);
+				}
+				this.sizes.merge(fileName, (long) bytes.size(), Long::sum);
+			});
+		}
+		pending.clear();
+	}
+
+	private void commit(List<String> fileNames) {
+		synchronized (this.lock) {
+			for (String fileName : fileNames) {
+				this.committedSizes.put(fileName, this.sizes.get(fileName));
+			}
+		}
+	}
+
+	/**
+	 * Truncates the given files to their sizes at the last commit, deleting those created
+	 * since.
+	 */
+	private void rollback(List<String> fileNames) {
+		synchronized (this.lock) {
+			for (String fileName : fileNames) {
+				Long size = this.committedSizes.get(fileName);
+				if (Objects.equals(size, this.sizes.get(fileName))) {
+					continue;
+				}
+				Path file = resolve(fileName);
+				try {
+					FileChannel channel = this.openFiles.get(fileName);
+					if (size == null) {
+						this.openFiles.remove(fileName);
+						if (channel != null) {
+							channel.close();
+						}
+						Files.deleteIfExists(file);
+						this.sizes.remove(fileName);
+						continue;
+					}
+					if (channel != null) {
+						channel.truncate(size);
+						channel.position(size);
+					}
+					else {
+						try (FileChannel closed = FileChannel.open(file, StandardOpenOption.WRITE)) {
+							closed.truncate(size);
+						}
+					}
+					this.sizes.put(fileName, size);
+				}
+				catch (IOException ex) {
+					throw new ItemStreamException("Unable to restore file: " + file, ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the open channel of a file, opening it and closing the least recently used
+	 * channel if needed.
+	 */
+	private FileChannel channel(String fileName) throws IOException {
+		FileChannel channel = this.openFiles.get(fileName);
+		if (channel != null) {
+			return channel;
+		}
+		if (this.openFiles.size() >= this.maxOpenFiles) {
+			Iterator<FileChannel> eldest = this.openFiles.values().iterator();
+			FileChannel evicted = eldest.next();
+			eldest.remove();
+			evicted.close();
+		}
+		Path file = resolve(fileName);
+		Long size = this.sizes.get(fileName);
+		if (size != null) {
+			channel = FileChannel.open(file, StandardOpenOption.WRITE);
+			channel.position(size);
+		}
+		else {
+			Files.createDirectories(file.getParent());
+			channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.sizes.put(fileName, 0L);
+		}
+		this.openFiles.put(fileName, channel);
+		return channel;
+	}
+
+}
@@ -0,0 +1,379 @@
+package com.example.batch.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+import org.springframework.util.Assert;
+
+/**
+ * Digest of the bytes written to a file, computed incrementally as they are written.
+ * <p>
+ * The supported algorithms are {@value #CRC32C}, {@value #FNV1A_64} (a fast
+ * non-cryptographic hash) and {@value #SHA_256}. The state of a CRC-32C or FNV-1a digest
+ * is a single number that is saved as a string with {@link #getState()} and restored with
+ * {@link #restore}. The state of a SHA-256 digest cannot be exported, so it is restored
+ * by hashing the file again up to the restart position.
+ * </p>
+ */
+public abstract class FileDigest {
+
+	/**
+	 * CRC-32C (Castagnoli), computed with {@link CRC32C}.
+	 */
+	public static final String CRC32C = "CRC32C";
+
+	/**
+	 * 64-bit FNV-1a.
+	 */
+	public static final String FNV1A_64 = "FNV-1a-64";
+
+	/**
+	 * SHA-256, computed with {@link MessageDigest}.
+	 */
+	public static final String SHA_256 = "SHA-256";
+
+	/**
+	 * Creates a digest of an empty file.
+	 * @param algorithm the name of the algorithm
+	 * @return the digest
+	 * @throws IllegalArgumentException if the algorithm is not supported
+	 */
+	public static FileDigest newDigest(String algorithm) {
+		return switch (algorithm) {
+			case CRC32C -> new Crc32cDigest(0);
+			case FNV1A_64 -> new Fnv1aDigest(Fnv1aDigest.OFFSET_BASIS);
+			case SHA_256 -> new Sha256Digest(newSha256());
+			default -> throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm);
+		};
+	}
+
+	/**
+	 * Restores the digest of the first bytes of a file.
+	 * @param algorithm the name of the algorithm
+	 * @param state the saved state, or {@code null} if the algorithm has none
+	 * @param file the file
+	 * @param size the number of bytes of the file covered by the digest
+	 * @return the digest
+	 * @throws IOException if the file needs to be read and cannot be
+	 */
+	public static FileDigest restore(String algorithm, String state, Path file, long size) throws IOException {
+		if (state != null && !SHA_256.equals(algorithm)) {
+			long value = Long.parseUnsignedLong(state, 16);
+			return switch (algorithm) {
+				case CRC32C -> new Crc32cDigest(value);
+				case FNV1A_64 -> new Fnv1aDigest(value);
+				default -> throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm);
+			};
+		}
+		FileDigest digest = newDigest(algorithm);
+		try (InputStream in = Files.newInputStream(file); OutputStream out = digest.asOutputStream()) {
+			long copied = in.transferTo(new LimitedOutputStream(out, size));
+			Assert.state(copied >= size, () -> "File is shorter than " + size + " bytes: " + file);
+		}
+		return digest;
+	}
+
+	/**
+	 * Returns the name of the algorithm.
+	 * @return the name of the algorithm
+	 */
+	public abstract String getAlgorithm();
+
+	/**
+	 * Adds bytes to the digest.
+	 * @param bytes the bytes
+	 * @param offset the offset of the first byte
+	 * @param length the number of bytes
+	 */
+	public abstract void update(byte[] bytes, int offset, int length);
+
+	/**
+	 * Returns the digest of the bytes added so far as lower case hexadecimal.
+	 * @return the digest
+	 */
+	public abstract String getValue();
+
+	/**
+	 * Returns the state to save, or {@code null} if the algorithm cannot save its state.
+	 * @return the state
+	 */
+	public abstract String getState();
+
+	/**
+	 * Returns an independent copy of this digest.
+	 * @return the copy
+	 */
+	public abstract FileDigest copy();
+
+	/**
+	 * Returns an output stream that adds the bytes written to it to the digest.
+	 * @return the output stream
+	 */
+	public OutputStream asOutputStream() {
+		return new OutputStream() {
+
+			@Override
+			public void write(int b) {
+				update(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] bytes, int offset, int length) {
+				update(bytes, offset, length);
+			}
+
+		};
+	}
+
+	private static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance(SHA_256);
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * CRC-32C of the bytes before the restart point combined with the CRC-32C of the
+	 * bytes after it, so that the intrinsic {@link CRC32C} is used for the new bytes.
+	 */
+	private static final class Crc32cDigest extends FileDigest {
+
+		/**
+		 * Reflected CRC-32C polynomial.
+		 */
+		private static final long POLYNOMIAL = 0x82F63B78L;
+
+		private final long base;
+
+		private final CRC32C crc = new CRC32C();
+
+		private long length;
+
+		private Crc32cDigest(long base) {
+			this.base = base;
+		}
+
+		@Override
+		public String getAlgorithm() {
+			return CRC32C;
+		}
+
+		@Override
+		public void update(byte[] bytes, int offset, int length) {
+			this.crc.update(bytes, offset, length);
+			this.length += length;
+		}
+
+		@Override
+		public String getValue() {
+			return String.format("%08x", value());
+		}
+
+		@Override
+		public String getState() {
+			return getValue();
+		}
+
+		@Override
+		public FileDigest copy() {
+			return new Crc32cDigest(value());
+		}
+
+		private long value() {
+			return combine(this.base, this.crc.getValue(), this.length);
+		}
+
+		/**
+		 * Returns the CRC of the concatenation of two byte sequences from their CRCs and
+		 * the length of the second one (the method of zlib's {@code crc32_combine}).
+		 */
+		private static long combine(long crc1, long crc2, long length2) {
+			if (length2 <= 0) {
+				return crc1;
+			}
+			long[] even = new long[32];
+			long[] odd = new long[32];
+			// Operator for one zero bit
+			odd[0] = POLYNOMIAL;
+			long row = 1;
+			for (int n = 1; n < 32; n++) {
+				odd[n] = row;
+				row <<= 1;
+			}
+			// Operators for two and four zero bits
+			square(even, odd);
+			square(odd, even);
+			// Applies length2 zero bytes to crc1, one bit of length2 at a time
+			do {
+				square(even, odd);
+				if ((length2 & 1) != 0) {
+					crc1 = times(even, crc1);
+				}
+				length2 >>= 1;
+				if (length2 == 0) {
+					break;
+				}
+				square(odd, even);
+				if ((length2 & 1) != 0) {
+					crc1 = times(odd, crc1);
+				}
+				length2 >>= 1;
+			}
+			while (length2 != 0);
+			return crc1 ^ crc2;
+		}
+
+		private static long times(long[] matrix, long vector) {
+			long sum = 0;
+			for (int i = 0; vector != 0; i++, vector >>>= 1) {
+				if ((vector & 1) != 0) {
+					sum ^= matrix[i];
+				}
+			}
+			return sum;
+		}
+
+		private static void square(long[] square, long[] matrix) {
+			for (int n = 0; n < 32; n++) {
+				square[n] = times(matrix, matrix[n]);
+			}
+		}
+
+	}
+
+	/**
+	 * 64-bit FNV-1a.
+	 */
+	private static final class Fnv1aDigest extends FileDigest {
+
+		private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+		private static final long PRIME = 0x100000001b3L;
+
+		private long hash;
+
+		private Fnv1aDigest(long hash) {
+			this.hash = hash;
+		}
+
+		@Override
+		public String getAlgorithm() {
+			return FNV1A_64;
+		}
+
+		@Override
+		public void update(byte[] bytes, int offset, int length) {
+			long h = this.hash;
+			for (int i = offset; i < offset + length; i++) {
+				h = (h ^ (bytes[i] & 0xff)) * PRIME;
+			}
+			this.hash = h;
+		}
+
+		@Override
+		public String getValue() {
+			return String.format("%016x", this.hash);
+		}
+
+		@Override
+		public String getState() {
+			return getValue();
+		}
+
+		@Override
+		public FileDigest copy() {
+			return new Fnv1aDigest(this.hash);
+		}
+
+	}
+
+	/**
+	 * SHA-256, whose state cannot be saved.
+	 */
+	private static final class Sha256Digest extends FileDigest {
+
+		private final MessageDigest messageDigest;
+
+		private Sha256Digest(MessageDigest messageDigest) {
+			this.messageDigest = messageDigest;
+		}
+
+		@Override
+		public String getAlgorithm() {
+			return SHA_256;
+		}
+
+		@Override
+		public void update(byte[] bytes, int offset, int length) {
+			this.messageDigest.update(bytes, offset, length);
+		}
+
+		@Override
+		public String getValue() {
+			try {
+				return HexFormat.of().formatHex(((MessageDigest) this.messageDigest.clone()).digest());
+			}
+			catch (CloneNotSupportedException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		@Override
+		public String getState() {
+			return null;
+		}
+
+		@Override
+		public FileDigest copy() {
+			try {
+				return new Sha256Digest((MessageDigest) this.messageDigest.clone());
+			}
+			catch (CloneNotSupportedException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+	}
+
+	/**
+	 * Passes the first bytes written to it to another stream and drops the rest.
+	 */
+	private static final class LimitedOutputStream extends OutputStream {
+
+		private final OutputStream out;
+
+		private long remaining;
+
+		private LimitedOutputStream(OutputStream out, long limit) {
+			this.out = out;
+			this.remaining = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (this.remaining > 0) {
+				this.out.write(b);
+				this.remaining--;
+			}
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			int passed = (int) Math.min(length, this.remaining);
+			if (passed > 0) {
+				this.out.write(bytes, offset, passed);
+				this.remaining -= passed;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,242 @@
+package com.example.batch.file;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Local cache of the output files of a job, keyed by the fingerprint of its input file,
+ * so that a run against an unchanged input can copy the last output instead of computing
+ * it again.
+ * <p>
+ * The entry of a key, e.g. the input path and the job parameters that shape the output,
+ * is a subdirectory of the cache directory holding a copy of each output file and a
+ * {@value #FINGERPRINT_FILE} with the {@link Fingerprint} of the input the files were
+ * computed from. An entry is written to a temporary directory and moved into place, so a
+ * failed store leaves the previous entry or none. Only the last result of each key is
+ * kept. The digest of an input is only computed when its size and last modified time
+ * match an entry ({@link #fingerprint(String, Path)}) and before an entry is stored.
+ * </p>
+ * <p>
+ * Each {@link #lookup} is counted by the counter {@code batch.cache.gets}, tagged with
+ * the name of the cache and {@code result=hit} or {@code result=miss}, in the
+ * {@link Metrics#globalRegistry} or the registry set with {@link #setMeterRegistry}.
+ * </p>
+ */
+public class FileResultCache {
+
+	private static final String FINGERPRINT_FILE = "fingerprint.properties";
+
+	private final String name;
+
+	private final Path directory;
+
+	private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+	/**
+	 * Creates a cache.
+	 * @param name the name of the cache, used as the {@code name} tag of the counter
+	 * @param directory the directory of the entries, created when first stored to
+	 */
+	public FileResultCache(String name, Path directory) {
+		Assert.hasText(name, "name must not be empty");
+		Assert.notNull(directory, "directory must not be null");
+		this.name = name;
+		this.directory = directory;
+	}
+
+	/**
+	 * Sets the registry of the counter. Defaults to {@link Metrics#globalRegistry}.
+	 * @param meterRegistry the registry
+	 */
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * Returns the fingerprint of a file: its size, last modified time and
+	 * {@link FileDigest#CRC32C} digest, which reads the file at memory bandwidth without
+	 * parsing it.
+	 * @param file the file
+	 * @return the fingerprint
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Fingerprint fingerprint(Path file) throws IOException {
+		long size = Files.size(file);
+		long lastModified = Files.getLastModifiedTime(file).toMillis();
+		String digest = FileDigest.restore(FileDigest.CRC32C, null, file, size).getValue();
+		return new Fingerprint(size, lastModified, digest);
+	}
+
+	/**
+	 * Returns the fingerprint of an input to look up the entry of a key with. The digest
+	 * is only computed if the size and last modified time of the input match those of the
+	 * entry, as the entry cannot match otherwise; it is {@code null} if not.
+	 * @param key the key
+	 * @param file the input file
+	 * @return the fingerprint
+	 * @throws IOException if the file or the entry cannot be read
+	 */
+	public Fingerprint fingerprint(String key, Path file) throws IOException {
+		long size = Files.size(file);
+		long lastModified = Files.getLastModifiedTime(file).toMillis();
+		Properties properties = readFingerprint(key);
+		if (properties == null || !Long.toString(size).equals(properties.getProperty("size"))
+				|| !Long.toString(lastModified).equals(properties.getProperty("lastModified"))) {
+			return new Fingerprint(size, lastModified, null);
+		}
+		return fingerprint(file);
+	}
+
+	/**
+	 * Returns whether the entry of a key holds the files computed from an input with the
+	 * given fingerprint, and counts a hit or a miss.
+	 * @param key the key
+	 * @param fingerprint the fingerprint of the input
+	 * @param files the output files
+	 * @return {@code true} if the files can be restored
+	 * @throws IOException if the entry cannot be read
+	 */
+	public boolean lookup(String key, Fingerprint fingerprint, List<Path> files) throws IOException {
+		boolean hit = contains(key, fingerprint, files);
+		Counter.builder("batch.cache.gets")
+			.description("Lookups of cached job results")
+			.tag("name", this.name)
+			.tag("result", hit ? "hit" : "miss")
+			.register(this.meterRegistry)
+			.increment();
+		return hit;
+	}
+
+	/**
+	 * Copies the cached files of a key to the output files. Each output file is written
+	 * to a temporary file and moved into place.
+	 * @param key the key
+	 * @param fingerprint the fingerprint of the input
+	 * @param files the output files
+	 * @throws IOException if a file cannot be copied
+	 * @throws IllegalStateException if the entry does not match the fingerprint
+	 */
+	public void restore(String key, Fingerprint fingerprint, List<Path> files) throws IOException {
+		Assert.state(contains(key, fingerprint, files), () -> "No cached result for " + key);
+		Path entry = entry(key);
+		for (Path file : files) {
+			Path temporaryFile = file.resolveSibling(file.getFileName() + ".restoring");
+			Files.copy(entry.resolve(file.getFileName().toString()), temporaryFile,
+					StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/**
+	 * Replaces the entry of a key with copies of the output files.
+	 * @param key the key
+	 * @param fingerprint the fingerprint of the input the files were computed from
+	 * @param files the output files, with distinct file names
+	 * @throws IOException if the entry cannot be written
+	 */
+	public void store(String key, Fingerprint fingerprint, List<Path> files) throws IOException {
+		Assert.notNull(fingerprint.digest(), "fingerprint digest must not be null");
+		Assert.isTrue(files.stream().map(Path::getFileName).distinct().count() == files.size(),
+				"Output files must have distinct names");
+		Files.createDirectories(this.directory);
+		Path entry = entry(key);
+		Path temporaryEntry = Files.createTempDirectory(this.directory, entry.getFileName() + ".storing-");
+		try {
+			for (Path file : files) {
+				Files.copy(file, temporaryEntry.resolve(file.getFileName().toString()));
+			}
+			Properties properties = new Properties();
+			properties.setProperty("key", key);
+			properties.setProperty("size", Long.toString(fingerprint.size()));
+			properties.setProperty("lastModified", Long.toString(fingerprint.lastModified()));
+			properties.setProperty("digest", fingerprint.digest());
+			try (Writer writer = Files.newBufferedWriter(temporaryEntry.resolve(FINGERPRINT_FILE),
+					StandardCharsets.UTF_8)) {
+				properties.store(writer, null);
+			}
+			FileSystemUtils.deleteRecursively(entry);
+			Files.move(temporaryEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			FileSystemUtils.deleteRecursively(temporaryEntry);
+		}
+	}
+
+	private boolean contains(String key, Fingerprint fingerprint, List<Path> files) throws IOException {
+		Properties properties = readFingerprint(key);
+		Path entry = entry(key);
+		return properties != null && fingerprint.digest() != null
+				&& Long.toString(fingerprint.size()).equals(properties.getProperty("size"))
+				&& Long.toString(fingerprint.lastModified()).equals(properties.getProperty("lastModified"))
+				&& fingerprint.digest().equals(properties.getProperty("digest"))
+				&& files.stream().allMatch((file) -> Files.isRegularFile(entry.resolve(file.getFileName().toString())));
+	}
+
+	/**
+	 * Returns the stored fingerprint of the entry of a key, or {@code null} if none.
+	 */
+	private Properties readFingerprint(String key) throws IOException {
+		Path fingerprintFile = entry(key).resolve(FINGERPRINT_FILE);
+		if (!Files.isRegularFile(fingerprintFile)) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(fingerprintFile, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		// The key is compared too, as the entry is named after its hash
+		return key.equals(properties.getProperty("key")) ? properties : null;
+	}
+
+	private Path entry(String key) {
+		return this.directory.resolve(DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Identifies the content of an input file.
+	 *
+	 * @param size the size in bytes
+	 * @param lastModified the last modified time in milliseconds since the epoch
+	 * @param digest the CRC-32C digest of the content, or {@code null} if not computed
+	 */
+	public record Fingerprint(long size, long lastModified, String digest) {
+
+		/**
+		 * Parses a fingerprint formatted by {@link #toString()}.
+		 * @param value the formatted fingerprint
+		 * @return the fingerprint
+		 */
+		public static Fingerprint parse(String value) {
+			String[] parts = value.split("/", -1);
+			Assert.isTrue(parts.length == 3, () -> "Invalid fingerprint: " + value);
+			return new Fingerprint(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+					parts[2].isEmpty() ? null : parts[2]);
+		}
+
+		/**
+		 * Returns the fingerprint as {@code size/lastModified/digest}, with an empty
+		 * digest if not computed.
+		 * @return the formatted fingerprint
+		 */
+		@Override
+		public String toString() {
+			return this.size + "/" + this.lastModified + "/" + (this.digest != null ? this.digest : "");
+		}
+
+	}
+
+}
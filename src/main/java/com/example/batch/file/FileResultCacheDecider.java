@@ -0,0 +1,155 @@
+package com.example.batch.file;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+/**
+ * Decides whether a job can copy its output files from a {@link FileResultCache} instead
+ * of computing them from its input file.
+ * <p>
+ * The decider fingerprints the input, saves the fingerprint in the job execution context
+ * and returns {@link #HIT} if the cache holds the files of that input, {@link #MISS} if
+ * not, or {@link #UNCACHED} if created without a cache. The job restores the files with
+ * {@link #restore} on a hit and otherwise runs the steps producing them, followed by
+ * {@link #store}, which caches the files after a miss under the fingerprint taken before
+ * they were computed, so that an input changed during the run misses next time. The
+ * digest of the input is only computed by the decider if its size and last modified time
+ * match the entry; otherwise it is computed by {@link #store}, which does not cache the
+ * files if the size or last modified time changed in the meantime. Both methods have the
+ * signature of {@link org.springframework.batch.core.step.tasklet.Tasklet#execute}:
+ * </p>
+ *
+ * <pre class="code">
+ * .start(decider).on(FileResultCacheDecider.HIT.getName()).to(restoreStep)
+ * .from(decider).on("*").to(reportStep).next(storeStep)
+ * </pre>
+ */
+public class FileResultCacheDecider implements JobExecutionDecider {
+
+	/**
+	 * The output files are cached.
+	 */
+	public static final FlowExecutionStatus HIT = new FlowExecutionStatus("HIT");
+
+	/**
+	 * The output files are not cached and are stored after they are computed.
+	 */
+	public static final FlowExecutionStatus MISS = new FlowExecutionStatus("MISS");
+
+	/**
+	 * The cache is not used.
+	 */
+	public static final FlowExecutionStatus UNCACHED = new FlowExecutionStatus("UNCACHED");
+
+	private static final String FINGERPRINT_KEY = "cache.fingerprint";
+
+	private final Logger logger = LoggerFactory.getLogger(FileResultCacheDecider.class);
+
+	private final FileResultCache cache;
+
+	private final String key;
+
+	private final Path input;
+
+	private final List<Path> files;
+
+	/**
+	 * Creates a decider.
+	 * @param cache the cache, or {@code null} to always compute the files
+	 * @param key the key of the entry, which must identify everything the files depend on
+	 * besides the content of the input
+	 * @param input the input file
+	 * @param files the output files
+	 */
+	public FileResultCacheDecider(FileResultCache cache, String key, Path input, List<Path> files) {
+		Assert.isTrue(cache == null || (key != null && input != null && !files.isEmpty()),
+				"key, input and files are required with a cache");
+		this.cache = cache;
+		this.key = key;
+		this.input = input;
+		this.files = files != null ? List.copyOf(files) : List.of();
+	}
+
+	@Override
+	public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
+		ExecutionContext executionContext = jobExecution.getExecutionContext();
+		executionContext.remove(FINGERPRINT_KEY);
+		if (this.cache == null) {
+			return UNCACHED;
+		}
+		try {
+			FileResultCache.Fingerprint fingerprint = this.cache.fingerprint(this.key, this.input);
+			executionContext.putString(FINGERPRINT_KEY, fingerprint.toString());
+			boolean hit = this.cache.lookup(this.key, fingerprint, this.files);
+			this.logger.info("Cache {} for {} ({})", hit ? "hit" : "miss", this.input, fingerprint);
+			return hit ? HIT : MISS;
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Unable to look up the cached result of " + this.input, ex);
+		}
+	}
+
+	/**
+	 * Copies the cached output files into place after a {@link #HIT}.
+	 * @param contribution the contribution of the step
+	 * @param chunkContext the context of the step
+	 * @return {@link RepeatStatus#FINISHED}
+	 * @throws IOException if a file cannot be copied
+	 */
+	public RepeatStatus restore(StepContribution contribution, ChunkContext chunkContext) throws IOException {
+		String fingerprint = fingerprint(chunkContext);
+		Assert.state(this.cache != null && fingerprint != null, "No cache lookup in this job execution");
+		this.cache.restore(this.key, FileResultCache.Fingerprint.parse(fingerprint), this.files);
+		contribution.incrementWriteCount(this.files.size());
+		return RepeatStatus.FINISHED;
+	}
+
+	/**
+	 * Caches the output files after a {@link #MISS}; does nothing if the cache is not
+	 * used.
+	 * @param contribution the contribution of the step
+	 * @param chunkContext the context of the step
+	 * @return {@link RepeatStatus#FINISHED}
+	 * @throws IOException if the files cannot be cached
+	 */
+	public RepeatStatus store(StepContribution contribution, ChunkContext chunkContext) throws IOException {
+		String saved = fingerprint(chunkContext);
+		if (this.cache == null || saved == null) {
+			return RepeatStatus.FINISHED;
+		}
+		FileResultCache.Fingerprint fingerprint = FileResultCache.Fingerprint.parse(saved);
+		if (fingerprint.digest() == null) {
+			FileResultCache.Fingerprint current = FileResultCache.fingerprint(this.input);
+			if (current.size() != fingerprint.size() || current.lastModified() != fingerprint.lastModified()) {
+				this.logger.info("Not caching the result of {}, which changed during the run", this.input);
+				return RepeatStatus.FINISHED;
+			}
+			fingerprint = current;
+		}
+		this.cache.store(this.key, fingerprint, this.files);
+		contribution.incrementWriteCount(this.files.size());
+		return RepeatStatus.FINISHED;
+	}
+
+	private static String fingerprint(ChunkContext chunkContext) {
+		ExecutionContext executionContext = chunkContext.getStepContext()
+			.getStepExecution()
+			.getJobExecution()
+			.getExecutionContext();
+		return executionContext.containsKey(FINGERPRINT_KEY) ? executionContext.getString(FINGERPRINT_KEY) : null;
+	}
+
+}
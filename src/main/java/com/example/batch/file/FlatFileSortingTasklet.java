@@ -0,0 +1,703 @@
+package com.example.batch.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Sorts the lines of a flat file by fields of the items they map to, within a fixed heap
+ * (an external merge sort).
+ * <p>
+ * The sort keys are fields of the target class annotated with {@link InputFileColumn},
+ * read with an {@link InputFileColumnLineMapper}, so that the columns are compared as the
+ * values they are mapped to: dates as dates, numbers as numbers and strings in
+ * {@link String#compareTo} order. {@code null} sorts first. The sort is stable: lines
+ * with equal keys keep their order in the input.
+ * </p>
+ * <p>
+ * The file is read as bytes and cut into runs of lines that fit in an equal share of
+ * {@code maxMemory}. Each run is mapped, sorted and written to a temporary run file of
+ * the binary keys and the line bytes on one of {@code parallelism} threads while the next
+ * run is read; at most that many runs are in memory besides the one being read. The run
+ * files are then merged with a priority queue, at most {@value #MAX_RUNS} at a time, in
+ * several passes if there are more runs. Input that fits in a single run is sorted in
+ * memory without run files.
+ * </p>
+ * <p>
+ * The lines are copied without decoding them again, so the output has the bytes of the
+ * input. Lines may be terminated by LF or CR LF and are written with the line separator;
+ * empty lines are dropped. As with {@link ByteOffsetFlatFileItemReader}, the encoding
+ * must represent LF as the single byte {@code 0x0A} that never occurs inside a multibyte
+ * character, e.g. UTF-8 or Windows-31J. The sorted file is written to a temporary file
+ * and moved into place, so it never contains a partial result.
+ * </p>
+ *
+ * @param <T> type of the items of the lines
+ */
+public class FlatFileSortingTasklet<T> implements Tasklet {
+
+	private static final byte LF = '\n';
+
+	private static final byte CR = '\r';
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Read buffers of the runs are small, as all of them are open during a merge
+	private static final int RUN_BUFFER_SIZE = 8 * 1024;
+
+	private static final int MAX_RUNS = 64;
+
+	// Estimated heap per line besides its bytes: the array headers and the entry
+	private static final int LINE_OVERHEAD = 64;
+
+	// Estimated heap per key besides its characters
+	private static final int KEY_OVERHEAD = 48;
+
+	private final Logger logger = LoggerFactory.getLogger(FlatFileSortingTasklet.class);
+
+	private final Class<T> targetClass;
+
+	private final Field[] keyFields;
+
+	private final KeyType[] keyTypes;
+
+	private final Path input;
+
+	private final Path output;
+
+	private String delimiter = ",";
+
+	private Charset encoding = Charset.forName("Windows-31J");
+
+	private String lineSeparator = System.lineSeparator();
+
+	private long maxMemory = 64 * 1024 * 1024;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private Path tempDirectory;
+
+	/**
+	 * Creates a tasklet sorting a file.
+	 * @param targetClass the class the lines are mapped to
+	 * @param keys the names of the {@link InputFileColumn} fields to sort by, most
+	 * significant first; of type {@link String}, {@link Date}, {@link BigDecimal} or an
+	 * integer type
+	 * @param input the file to sort
+	 * @param output the sorted file, which may be the input file
+	 */
+	public FlatFileSortingTasklet(Class<T> targetClass, List<String> keys, Path input, Path output) {
+		Assert.notNull(targetClass, "targetClass must not be null");
+		Assert.notEmpty(keys, "keys must not be empty");
+		Assert.notNull(input, "input must not be null");
+		Assert.notNull(output, "output must not be null");
+		this.targetClass = targetClass;
+		this.keyFields = new Field[keys.size()];
+		this.keyTypes = new KeyType[keys.size()];
+		for (int i = 0; i < keys.size(); i++) {
+			Field field = ReflectionUtils.findField(targetClass, keys.get(i));
+			Assert.isTrue(field != null && field.isAnnotationPresent(InputFileColumn.class),
+					"No field with InputFileColumn annotation named " + keys.get(i) + " in " + targetClass.getName());
+			ReflectionUtils.makeAccessible(field);
+			this.keyFields[i] = field;
+			this.keyTypes[i] = KeyType.of(field);
+		}
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * Sets the delimiter of the columns. Defaults to {@code ","}.
+	 * @param delimiter the delimiter
+	 */
+	public void setDelimiter(String delimiter) {
+		Assert.hasLength(delimiter, "delimiter must not be empty");
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Sets the encoding of the file. Defaults to Windows-31J.
+	 * @param encoding the name of an ASCII compatible encoding
+	 */
+	public void setEncoding(String encoding) {
+		Charset charset = Charset.forName(encoding);
+		Assert.isTrue(Arrays.equals("\r\n".getBytes(charset), new byte[] { CR, LF }),
+				"Encoding must represent CR and LF as single bytes: " + encoding);
+		this.encoding = charset;
+	}
+
+	/**
+	 * Sets the line separator of the sorted file. Defaults to the system line separator.
+	 * @param lineSeparator the line separator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		Assert.notNull(lineSeparator, "lineSeparator must not be null");
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Sets the heap in bytes for the lines and keys of the runs. Defaults to 64 MiB.
+	 * @param maxMemory the heap for the runs
+	 */
+	public void setMaxMemory(long maxMemory) {
+		Assert.isTrue(maxMemory > 0, "maxMemory must be positive");
+		this.maxMemory = maxMemory;
+	}
+
+	/**
+	 * Sets the number of threads sorting runs. Defaults to the number of available
+	 * processors.
+	 * @param parallelism the number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the directory of the run files. Defaults to the default temporary-file
+	 * directory.
+	 * @param tempDirectory the directory of the run files
+	 */
+	public void setTempDirectory(Path tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		contribution.incrementWriteCount(sort());
+		return RepeatStatus.FINISHED;
+	}
+
+	/**
+	 * Sorts the input file into the output file.
+	 * @return the number of lines
+	 * @throws IOException if a file cannot be read or written
+	 * @throws InterruptedException if interrupted while waiting for a run
+	 * @throws FlatFileParseException if a line cannot be mapped
+	 */
+	public long sort() throws IOException, InterruptedException {
+		Path runDirectory = this.tempDirectory != null
+				? Files.createTempDirectory(this.tempDirectory, "flat-file-sort-")
+				: Files.createTempDirectory("flat-file-sort-");
+		try {
+			return sort(runDirectory);
+		}
+		finally {
+			FileSystemUtils.deleteRecursively(runDirectory);
+		}
+	}
+
+	private long sort(Path runDirectory) throws IOException, InterruptedException {
+		long runMemory = this.maxMemory / (this.parallelism + 1);
+		LineMapper<T> lineMapper = new InputFileColumnLineMapper<>(this.targetClass, this.delimiter);
+		List<Path> runs = new ArrayList<>();
+		long lines = 0;
+		Entry[] sorted = null;
+		// Closing the executor waits for the runs being sorted, also on failure
+		try (ExecutorService executor = Executors.newFixedThreadPool(this.parallelism,
+				new CustomizableThreadFactory("flat-file-sort-"));
+				LineReader reader = new LineReader(Files.newInputStream(this.input))) {
+			Semaphore permits = new Semaphore(this.parallelism);
+			List<Future<?>> pending = new ArrayList<>();
+			List<byte[]> batch = new ArrayList<>();
+			long batchMemory = 0;
+			byte[] line;
+			while ((line = reader.nextLine()) != null) {
+				if (line.length == 0) {
+					continue;
+				}
+				lines++;
+				batch.add(line);
+				batchMemory += 3L * line.length + LINE_OVERHEAD + (long) KEY_OVERHEAD * this.keyFields.length;
+				if (batchMemory >= runMemory) {
+					checkFailures(pending, false);
+					// Blocks while as many runs are sorted as there are threads
+					permits.acquire();
+					List<byte[]> runLines = batch;
+					Path run = runDirectory.resolve("run-" + runs.size());
+					runs.add(run);
+					pending.add(executor.submit((Callable<Void>) () -> {
+						try {
+							writeRun(sortLines(lineMapper, runLines), run);
+							return null;
+						}
+						finally {
+							permits.release();
+						}
+					}));
+					batch = new ArrayList<>();
+					batchMemory = 0;
+				}
+			}
+			if (runs.isEmpty()) {
+				sorted = sortLines(lineMapper, batch);
+			}
+			else {
+				if (!batch.isEmpty()) {
+					Path run = runDirectory.resolve("run-" + runs.size());
+					runs.add(run);
+					writeRun(sortLines(lineMapper, batch), run);
+				}
+				checkFailures(pending, true);
+			}
+		}
+		if (sorted != null) {
+			// Written once the input is closed, as it may be replaced by the output
+			Entry[] entries = sorted;
+			writeOutput((consumer) -> {
+				for (Entry entry : entries) {
+					consumer.accept(entry);
+				}
+			});
+			this.logger.info("Sorted {} lines of {} in memory into {}", lines, this.input, this.output);
+			return lines;
+		}
+		int runCount = runs.size();
+		int pass = 0;
+		while (runs.size() > MAX_RUNS) {
+			pass++;
+			List<Path> merged = new ArrayList<>();
+			// Consecutive runs are merged, so that equal keys stay in input order
+			for (int from = 0; from < runs.size(); from += MAX_RUNS) {
+				List<Path> group = runs.subList(from, Math.min(runs.size(), from + MAX_RUNS));
+				Path run = runDirectory.resolve("pass-" + pass + "-" + merged.size());
+				try (DataOutputStream out = newRunStream(run)) {
+					merge(group, (entry) -> writeEntry(out, entry));
+				}
+				for (Path groupRun : group) {
+					Files.delete(groupRun);
+				}
+				merged.add(run);
+			}
+			runs = merged;
+		}
+		List<Path> lastRuns = runs;
+		writeOutput((consumer) -> merge(lastRuns, consumer));
+		this.logger.info("Sorted {} lines of {} into {} with {} runs in {} passes", lines, this.input, this.output,
+				runCount, pass + 1);
+		return lines;
+	}
+
+	private Entry[] sortLines(LineMapper<T> lineMapper, List<byte[]> lines) {
+		Entry[] entries = new Entry[lines.size()];
+		for (int i = 0; i < entries.length; i++) {
+			byte[] line = lines.get(i);
+			String text = new String(line, this.encoding);
+			T item;
+			try {
+				item = lineMapper.mapLine(text, 0);
+			}
+			catch (Exception ex) {
+				throw new FlatFileParseException("Parsing error in file=[" + this.input + "], input=[" + text + "]", ex,
+						text, 0);
+			}
+			Object[] key = new Object[this.keyFields.length];
+			for (int k = 0; k < key.length; k++) {
+				Object value = ReflectionUtils.getField(this.keyFields[k], item);
+				key[k] = value != null ? this.keyTypes[k].normalize(value) : null;
+			}
+			entries[i] = new Entry(key, line);
+		}
+		lines.clear();
+		// Stable, so that equal keys stay in input order
+		Arrays.sort(entries, Entry.ORDER);
+		return entries;
+	}
+
+	private void writeRun(Entry[] entries, Path run) throws IOException {
+		try (DataOutputStream out = newRunStream(run)) {
+			for (Entry entry : entries) {
+				writeEntry(out, entry);
+			}
+		}
+	}
+
+	private static DataOutputStream newRunStream(Path run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE));
+	}
+
+	private void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+		for (int k = 0; k < this.keyTypes.length; k++) {
+			Object value = entry.key[k];
+			out.writeBoolean(value != null);
+			if (value != null) {
+				this.keyTypes[k].write(out, value);
+			}
+		}
+		out.writeInt(entry.line.length);
+		out.write(entry.line);
+	}
+
+	private Entry readEntry(DataInputStream in) throws IOException {
+		Object[] key = new Object[this.keyTypes.length];
+		for (int k = 0; k < key.length; k++) {
+			boolean present;
+			try {
+				present = in.readBoolean();
+			}
+			catch (EOFException ex) {
+				if (k == 0) {
+					return null;
+				}
+				throw ex;
+			}
+			key[k] = present ? this.keyTypes[k].read(in) : null;
+		}
+		byte[] line = new byte[in.readInt()];
+		in.readFully(line);
+		return new Entry(key, line);
+	}
+
+	/**
+	 * Writes the lines of the entries to a temporary file and moves it to the output.
+	 */
+	private void writeOutput(EntrySource entries) throws IOException {
+		Path parent = this.output.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Path temporaryFile = this.output.resolveSibling(this.output.getFileName() + ".sorting");
+		byte[] separator = this.lineSeparator.getBytes(this.encoding);
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporaryFile), BUFFER_SIZE)) {
+			entries.forEach((entry) -> {
+				out.write(entry.line);
+				out.write(separator);
+			});
+		}
+		Files.move(temporaryFile, this.output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Merges runs in key order, taking equal keys from the earlier run first.
+	 */
+	private void merge(List<Path> runs, EntryConsumer consumer) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(),
+				Comparator.comparing((RunReader reader) -> reader.entry, Entry.ORDER)
+					.thenComparingInt((reader) -> reader.index));
+		List<RunReader> readers = new ArrayList<>(runs.size());
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				RunReader reader = new RunReader(i, new DataInputStream(
+						new BufferedInputStream(Files.newInputStream(runs.get(i)), RUN_BUFFER_SIZE)));
+				readers.add(reader);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				consumer.accept(reader.entry);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+		}
+		finally {
+			for (RunReader reader : readers) {
+				reader.in.close();
+			}
+		}
+	}
+
+	/**
+	 * Removes the finished runs from the pending ones, rethrowing the failure of a run.
+	 */
+	private static void checkFailures(List<Future<?>> pending, boolean await) throws IOException, InterruptedException {
+		for (Iterator<Future<?>> iterator = pending.iterator(); iterator.hasNext();) {
+			Future<?> future = iterator.next();
+			if (!await && !future.isDone()) {
+				continue;
+			}
+			try {
+				future.get();
+			}
+			catch (ExecutionException ex) {
+				Throwable cause = ex.getCause();
+				if (cause instanceof IOException ioException) {
+					throw ioException;
+				}
+				if (cause instanceof UncheckedIOException uncheckedIOException) {
+					throw uncheckedIOException.getCause();
+				}
+				if (cause instanceof RuntimeException runtimeException) {
+					throw runtimeException;
+				}
+				if (cause instanceof Error error) {
+					throw error;
+				}
+				throw new IllegalStateException(cause);
+			}
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Receives the entries of a merge.
+	 */
+	@FunctionalInterface
+	private interface EntryConsumer {
+
+		void accept(Entry entry) throws IOException;
+
+	}
+
+	/**
+	 * Passes entries in order to a consumer.
+	 */
+	@FunctionalInterface
+	private interface EntrySource {
+
+		void forEach(EntryConsumer consumer) throws IOException;
+
+	}
+
+	/**
+	 * A line with its normalized key values.
+	 */
+	private record Entry(Object[] key, byte[] line) {
+
+		private static final Comparator<Entry> ORDER = (left, right) -> {
+			for (int k = 0; k < left.key.length; k++) {
+				int result = compare(left.key[k], right.key[k]);
+				if (result != 0) {
+					return result;
+				}
+			}
+			return 0;
+		};
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private static int compare(Object left, Object right) {
+			if (left == null) {
+				return right == null ? 0 : -1;
+			}
+			if (right == null) {
+				return 1;
+			}
+			return ((Comparable) left).compareTo(right);
+		}
+
+	}
+
+	/**
+	 * Reads the entries of a run file.
+	 */
+	private final class RunReader {
+
+		private final int index;
+
+		private final DataInputStream in;
+
+		private Entry entry;
+
+		private RunReader(int index, DataInputStream in) {
+			this.index = index;
+			this.in = in;
+		}
+
+		private boolean next() throws IOException {
+			this.entry = readEntry(this.in);
+			return this.entry != null;
+		}
+
+	}
+
+	/**
+	 * Type of a key in memory and in the run files. Dates and integers are compared as
+	 * {@code long} values.
+	 */
+	private enum KeyType {
+
+		STRING {
+			@Override
+			Object normalize(Object value) {
+				return value;
+			}
+
+			@Override
+			void write(DataOutputStream out, Object value) throws IOException {
+				byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			@Override
+			Object read(DataInputStream in) throws IOException {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+		},
+
+		LONG {
+			@Override
+			Object normalize(Object value) {
+				return value instanceof Date date ? date.getTime() : ((Number) value).longValue();
+			}
+
+			@Override
+			void write(DataOutputStream out, Object value) throws IOException {
+				out.writeLong((Long) value);
+			}
+
+			@Override
+			Object read(DataInputStream in) throws IOException {
+				return in.readLong();
+			}
+		},
+
+		DECIMAL {
+			@Override
+			Object normalize(Object value) {
+				return value;
+			}
+
+			@Override
+			void write(DataOutputStream out, Object value) throws IOException {
+				out.writeUTF(value.toString());
+			}
+
+			@Override
+			Object read(DataInputStream in) throws IOException {
+				return new BigDecimal(in.readUTF());
+			}
+		};
+
+		abstract Object normalize(Object value);
+
+		abstract void write(DataOutputStream out, Object value) throws IOException;
+
+		abstract Object read(DataInputStream in) throws IOException;
+
+		static KeyType of(Field field) {
+			Class<?> type = field.getType();
+			if (type == String.class) {
+				return STRING;
+			}
+			if (Date.class.isAssignableFrom(type) || type == long.class || type == Long.class || type == int.class
+					|| type == Integer.class || type == short.class || type == Short.class || type == byte.class
+					|| type == Byte.class) {
+				return LONG;
+			}
+			if (type == BigDecimal.class) {
+				return DECIMAL;
+			}
+			throw new IllegalArgumentException("Unsupported type of sort key " + field.getName() + ": " + type);
+		}
+
+	}
+
+	/**
+	 * Reads lines as bytes, without their LF or CR LF terminator.
+	 */
+	private static final class LineReader implements Closeable {
+
+		private final InputStream in;
+
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		private int position;
+
+		private int limit;
+
+		private LineReader(InputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * Reads the next line.
+		 * @return the line, or {@code null} at the end of the file
+		 */
+		private byte[] nextLine() throws IOException {
+			byte[] partial = null;
+			int length = 0;
+			while (true) {
+				if (this.position == this.limit) {
+					this.limit = Math.max(0, this.in.read(this.buffer));
+					this.position = 0;
+					if (this.limit == 0) {
+						return partial != null ? stripCr(partial, 0, length) : null;
+					}
+				}
+				int lf = this.position;
+				while (lf < this.limit && this.buffer[lf] != LF) {
+					lf++;
+				}
+				int count = lf - this.position;
+				if (partial == null && lf < this.limit) {
+					// The whole line is in the buffer
+					byte[] line = stripCr(this.buffer, this.position, count);
+					this.position = lf + 1;
+					return line;
+				}
+				if (partial == null) {
+					partial = new byte[Math.max(256, count * 2)];
+				}
+				else if (length + count > partial.length) {
+					partial = Arrays.copyOf(partial, Math.max(partial.length * 2, length + count));
+				}
+				System.arraycopy(this.buffer, this.position, partial, length, count);
+				length += count;
+				if (lf < this.limit) {
+					this.position = lf + 1;
+					return stripCr(partial, 0, length);
+				}
+				this.position = this.limit;
+			}
+		}
+
+		private static byte[] stripCr(byte[] bytes, int from, int count) {
+			if (count > 0 && bytes[from + count - 1] == CR) {
+				count--;
+			}
+			return Arrays.copyOfRange(bytes, from, from + count);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.example.batch.file;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Builds a string key from the properties of an item, such as the name of the file the
+ * item is written to.
+ * <p>
+ * The template is literal text with placeholders of the form {@code {property}} or
+ * {@code {property:pattern}}. The pattern formats a date ({@link Date} or
+ * {@link TemporalAccessor}) with {@link DateTimeFormatter}, or a number with
+ * {@link DecimalFormat}. For example, {@code "{shitenName}/{torihikibi:yyyyMM}.csv"}. A
+ * {@code null} property is rendered as an empty string. The template is parsed and the
+ * getters are resolved once.
+ * </p>
+ *
+ * @param <T> type of item
+ */
+public class ItemKeyTemplate<T> implements Function<T, String> {
+
+	private final String template;
+
+	private final List<Segment> segments = new ArrayList<>();
+
+	/**
+	 * Creates a template for items of the given class.
+	 * @param targetType the class of the items
+	 * @param template the template
+	 * @throws IllegalArgumentException if a placeholder is not closed or names a property
+	 * without a getter
+	 */
+	public ItemKeyTemplate(Class<T> targetType, String template) {
+		Assert.notNull(template, "template must not be null");
+		this.template = template;
+		int start = 0;
+		while (start < template.length()) {
+			int open = template.indexOf('{', start);
+			if (open < 0) {
+				this.segments.add(new Segment(template.substring(start), null, null));
+				break;
+			}
+			int close = template.indexOf('}', open);
+			Assert.isTrue(close > open, () -> "Unclosed placeholder in template: " + template);
+			if (open > start) {
+				this.segments.add(new Segment(template.substring(start, open), null, null));
+			}
+			String placeholder = template.substring(open + 1, close);
+			int colon = placeholder.indexOf(':');
+			String property = colon < 0 ? placeholder : placeholder.substring(0, colon);
+			PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(targetType, property);
+			Assert.isTrue(descriptor != null && descriptor.getReadMethod() != null,
+					() -> "No readable property '" + property + "' in class " + targetType.getName());
+			this.segments.add(
+					new Segment(null, descriptor.getReadMethod(), colon < 0 ? null : placeholder.substring(colon + 1)));
+			start = close + 1;
+		}
+	}
+
+	/**
+	 * Returns the key of an item.
+	 * @param item the item
+	 * @return the template with the placeholders replaced by the properties of the item
+	 */
+	@Override
+	public String apply(T item) {
+		StringBuilder key = new StringBuilder(this.template.length() + 32);
+		for (Segment segment : this.segments) {
+			segment.appendTo(item, key);
+		}
+		return key.toString();
+	}
+
+	@Override
+	public String toString() {
+		return this.template;
+	}
+
+	/**
+	 * Literal text, or a property with an optional pattern.
+	 */
+	private static final class Segment {
+
+		private final String text;
+
+		private final Method getter;
+
+		private final DateTimeFormatter dateFormatter;
+
+		private final String pattern;
+
+		private Segment(String text, Method getter, String pattern) {
+			this.text = text;
+			this.getter = getter;
+			this.pattern = pattern;
+			this.dateFormatter = pattern != null
+					&& !Number.class.isAssignableFrom(ClassUtils.resolvePrimitiveIfNecessary(getter.getReturnType()))
+							? DateTimeFormatter.ofPattern(pattern).withZone(ZoneId.systemDefault()) : null;
+		}
+
+		private void appendTo(Object item, StringBuilder key) {
+			if (this.text != null) {
+				key.append(this.text);
+				return;
+			}
+			Object value;
+			try {
+				value = this.getter.invoke(item);
+			}
+			catch (IllegalAccessException | InvocationTargetException ex) {
+				throw new IllegalStateException("Unable to read property with " + this.getter, ex);
+			}
+			if (value == null) {
+				return;
+			}
+			if (this.pattern == null) {
+				key.append(value);
+			}
+			else if (value instanceof Date date && this.dateFormatter != null) {
+				// java.sql.Date does not support toInstant()
+				this.dateFormatter.formatTo(Instant.ofEpochMilli(date.getTime()), key);
+			}
+			else if (value instanceof TemporalAccessor temporal && this.dateFormatter != null) {
+				this.dateFormatter.formatTo(temporal, key);
+			}
+			else if (value instanceof Number) {
+				key.append(new DecimalFormat(this.pattern).format(value));
+			}
+			else {
+				key.append(value);
+			}
+		}
+
+	}
+
+}
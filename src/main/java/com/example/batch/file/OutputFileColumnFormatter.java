@@ -0,0 +1,151 @@
+package com.example.batch.file;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.function.Function;
+import org.springframework.format.datetime.DateFormatter;
+import org.springframework.util.Assert;
+
+/**
+ * Formats the value of a field according to its {@link OutputFileColumn} annotation.
+ * <p>
+ * The steps are applied in this order: {@code columnFormat} (dates and decimals),
+ * {@code stringConverter} and {@code trimType} (strings), {@code paddingType} and
+ * {@code columnEncloseChar}. A {@code null} value is only enclosed. The string converter
+ * is instantiated once, when the formatter is created.
+ * </p>
+ */
+public class OutputFileColumnFormatter {
+
+	private final OutputFileColumn column;
+
+	private final Function<? super String, ? extends String> stringConverter;
+
+	/**
+	 * Creates a formatter for the given column.
+	 * @param column the annotation of the field
+	 */
+	public OutputFileColumnFormatter(OutputFileColumn column) {
+		Assert.notNull(column, "column must not be null");
+		this.column = column;
+		this.stringConverter = NoOpConverter.class.equals(column.stringConverter()) ? null : newStringConverter(column);
+	}
+
+	/**
+	 * Returns the annotation of the field.
+	 * @return the annotation
+	 */
+	public OutputFileColumn getColumn() {
+		return column;
+	}
+
+	/**
+	 * Formats a value of the field.
+	 * @param value the value, may be {@code null}
+	 * @return the formatted value, which is the value itself when no formatting applies
+	 */
+	public Object format(Object value) {
+		if (value != null) {
+			// Format Date values
+			if (value instanceof Date date && !column.columnFormat().isEmpty()) {
+				value = new DateFormatter(column.columnFormat()).print(date, Locale.getDefault());
+			}
+			// Format BigDecimal values
+			else if (value instanceof BigDecimal && !column.columnFormat().isEmpty()) {
+				value = new DecimalFormat(column.columnFormat()).format(value);
+			}
+
+			// Apply string conversion if applicable
+			if (value instanceof String strValue && stringConverter != null) {
+				value = stringConverter.apply(strValue);
+			}
+
+			// Apply trimming if applicable
+			if (value instanceof String strValue && column.trimType() != TrimType.NONE) {
+				char trimChar = column.trimChar();
+				TrimType trimType = column.trimType();
+				if (trimType == TrimType.LEFT || trimType == TrimType.BOTH) {
+					strValue = trimLeft(strValue, trimChar);
+				}
+				if (trimType == TrimType.RIGHT || trimType == TrimType.BOTH) {
+					strValue = trimRight(strValue, trimChar);
+				}
+				value = strValue;
+			}
+
+			// Apply padding if applicable
+			PaddingType paddingType = column.paddingType();
+			if (column.bytes() > 0 && paddingType != PaddingType.NONE) {
+				String strValue = value.toString();
+				int targetLength = column.bytes();
+				if (strValue.length() < targetLength) {
+					char padChar = column.paddingChar();
+					if (paddingType == PaddingType.LEFT) {
+						// Left pad (right-aligned)
+						strValue = padLeft(strValue, targetLength, padChar);
+					}
+					if (paddingType == PaddingType.RIGHT) {
+						// Right pad (left-aligned)
+						strValue = padRight(strValue, targetLength, padChar);
+					}
+					value = strValue;
+				}
+			}
+		}
+
+		// Apply enclosing characters
+		if (column.columnEncloseChar() != Character.MIN_VALUE) {
+			char encloseChar = column.columnEncloseChar();
+			value = encloseChar + (value == null ? "" : value.toString()) + encloseChar;
+		}
+		return value;
+	}
+
+	private static Function<? super String, ? extends String> newStringConverter(OutputFileColumn column) {
+		try {
+			return column.stringConverter().getDeclaredConstructor().newInstance();
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Error instantiating string converter " + column.stringConverter(), e);
+		}
+	}
+
+	/**
+	 * Helper method to left-trim the specified character from a string.
+	 */
+	private static String trimLeft(String str, char trimChar) {
+		int i = 0;
+		while (i < str.length() && str.charAt(i) == trimChar) {
+			i++;
+		}
+		return str.substring(i);
+	}
+
+	/**
+	 * Helper method to right-trim the specified character from a string.
+	 */
+	private static String trimRight(String str, char trimChar) {
+		int i = str.length() - 1;
+		while (i >= 0 && str.charAt(i) == trimChar) {
+			i--;
+		}
+		return str.substring(0, i + 1);
+	}
+
+	/**
+	 * Helper method to left-pad a string with the specified character.
+	 */
+	private static String padLeft(String str, int length, char padChar) {
+		return String.valueOf(padChar).repeat(Math.max(0, length - str.length())) + str;
+	}
+
+	/**
+	 * Helper method to right-pad a string with the specified character.
+	 */
+	private static String padRight(String str, int length, char padChar) {
+		return str + String.valueOf(padChar).repeat(Math.max(0, length - str.length()));
+	}
+
+}
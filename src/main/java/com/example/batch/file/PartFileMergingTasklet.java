@@ -0,0 +1,123 @@
+package com.example.batch.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+/**
+ * Concatenates the part files written by the workers of a partitioned step into the final
+ * output files.
+ * <p>
+ * The part file of a partition is named after the final file followed by {@code '.'} and
+ * the partition name (see {@link #partFile(Path, String)}). The parts are appended in the
+ * order of the partition names with {@link FileChannel#transferTo}, which lets the
+ * operating system copy the data without passing it through the JVM heap. Each final file
+ * is written to a temporary file first and moved into place, so it never contains a
+ * partial result. The part files are deleted once every final file is complete.
+ * </p>
+ * <p>
+ * The partition names are taken from the worker step executions of every execution of the
+ * job instance, so the parts are also found when only this step is restarted.
+ * </p>
+ */
+public class PartFileMergingTasklet implements Tasklet {
+
+	private final Logger logger = LoggerFactory.getLogger(PartFileMergingTasklet.class);
+
+	private final JobExplorer jobExplorer;
+
+	private final String workerStepName;
+
+	private final List<Path> targetFiles;
+
+	/**
+	 * Creates a tasklet merging the parts of the given files.
+	 * @param jobExplorer the explorer used to find the partitions of the job instance
+	 * @param workerStepName the name of the worker step of the partitioned step
+	 * @param targetFiles the final files to assemble from their parts
+	 */
+	public PartFileMergingTasklet(JobExplorer jobExplorer, String workerStepName, List<Path> targetFiles) {
+		Assert.notNull(jobExplorer, "jobExplorer must not be null");
+		Assert.hasText(workerStepName, "workerStepName must not be empty");
+		Assert.notEmpty(targetFiles, "targetFiles must not be empty");
+		this.jobExplorer = jobExplorer;
+		this.workerStepName = workerStepName;
+		this.targetFiles = List.copyOf(targetFiles);
+	}
+
+	/**
+	 * Returns the part file of a partition.
+	 * @param targetFile the final file
+	 * @param partitionName the name of the partition
+	 * @return the part file written by the partition
+	 */
+	public static Path partFile(Path targetFile, String partitionName) {
+		return targetFile.resolveSibling(targetFile.getFileName() + "." + partitionName);
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		List<String> partitionNames = findPartitionNames(
+				chunkContext.getStepContext().getStepExecution().getJobExecution());
+		Assert.state(!partitionNames.isEmpty(), "No partitions of step [" + this.workerStepName + "] found");
+		for (Path targetFile : this.targetFiles) {
+			long size = merge(targetFile, partitionNames);
+			logger.info("Merged {} parts into {} ({} bytes)", partitionNames.size(), targetFile, size);
+		}
+		for (Path targetFile : this.targetFiles) {
+			for (String partitionName : partitionNames) {
+				Files.deleteIfExists(partFile(targetFile, partitionName));
+			}
+		}
+		return RepeatStatus.FINISHED;
+	}
+
+	private List<String> findPartitionNames(JobExecution jobExecution) {
+		String prefix = this.workerStepName + ":";
+		return this.jobExplorer.getJobExecutions(Objects.requireNonNull(jobExecution.getJobInstance()))
+			.stream()
+			.flatMap(execution -> execution.getStepExecutions().stream())
+			.map(StepExecution::getStepName)
+			.filter(stepName -> stepName.startsWith(prefix))
+			.map(stepName -> stepName.substring(prefix.length()))
+			.distinct()
+			.sorted()
+			.toList();
+	}
+
+	private static long merge(Path targetFile, List<String> partitionNames) throws IOException {
+		Path temporaryFile = targetFile.resolveSibling(targetFile.getFileName() + ".merging");
+		long size;
+		try (FileChannel out = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (String partitionName : partitionNames) {
+				try (FileChannel in = FileChannel.open(partFile(targetFile, partitionName), StandardOpenOption.READ)) {
+					long partSize = in.size();
+					long position = 0;
+					while (position < partSize) {
+						position += in.transferTo(position, partSize - position, out);
+					}
+				}
+			}
+			size = out.size();
+		}
+		Files.move(temporaryFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return size;
+	}
+
+}
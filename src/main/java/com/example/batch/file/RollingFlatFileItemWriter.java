@@ -0,0 +1,509 @@
+package com.example.batch.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.WriteFailedException;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * Writes items to a series of part files that roll over at a number of records or bytes.
+ * <p>
+ * The parts of a target file are numbered from 1 and named deterministically by
+ * {@link #partFile(Path, int)}, e.g. {@code output.0001.csv}. A part rolls over before a
+ * line that would exceed {@code maxRecords} records or {@code maxBytes} bytes, so parts
+ * always end on a record boundary; a single line longer than {@code maxBytes} gets a part
+ * of its own.
+ * </p>
+ * <p>
+ * As with {@link RoutingFlatFileItemWriter}, the lines are buffered and written when the
+ * transaction commits, or at once outside a transaction. The index of the current part,
+ * its size and its number of records are saved in the {@link ExecutionContext} on update.
+ * On restart the writer continues in the saved part, truncated to the saved size. The
+ * parts after the current one and the compressed current part are left over from an
+ * earlier execution and deleted on open, so a fresh start removes every part of the
+ * previous run.
+ * </p>
+ * <p>
+ * With {@link #setCompress(boolean) compression}, each finished part is gzipped to
+ * {@code <part>.gz} on the {@link TaskExecutor} once the transaction that rolled it over
+ * has committed, while the next part fills, and the plain part is deleted. The last part
+ * is compressed when the step completes, which needs the writer to be registered as a
+ * {@link StepExecutionListener} of the step, and close waits for all compressions. Parts
+ * left uncompressed by a failed execution are compressed on restart.
+ * </p>
+ * <p>
+ * The writer is not thread-safe.
+ * </p>
+ *
+ * @param <T> type of item to write
+ */
+public class RollingFlatFileItemWriter<T> extends ItemStreamSupport
+		implements ItemStreamWriter<T>, StepExecutionListener {
+
+	private static final String PART_INDEX = "part.index";
+
+	private static final String PART_SIZE = "part.size";
+
+	private static final String PART_COUNT = "part.count";
+
+	private final Path target;
+
+	private final LineAggregator<? super T> lineAggregator;
+
+	private Charset encoding = Charset.forName("Windows-31J");
+
+	private String lineSeparator = System.lineSeparator();
+
+	private long maxRecords = Long.MAX_VALUE;
+
+	private long maxBytes = Long.MAX_VALUE;
+
+	private boolean compress = false;
+
+	private TaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("rolling-compress-");
+
+	private boolean saveState = true;
+
+	/**
+	 * Position after the lines written to the file.
+	 */
+	private Position written;
+
+	/**
+	 * Position after the lines of the current transaction that are not written yet.
+	 */
+	private Position buffered;
+
+	/**
+	 * Bytes not written yet, each with the index of its part.
+	 */
+	private final List<Segment> pending = new ArrayList<>();
+
+	/**
+	 * Parts rolled over in the current transaction, compressed once it commits.
+	 */
+	private final List<Integer> rolled = new ArrayList<>();
+
+	private final List<CompletableFuture<Void>> compressions = new ArrayList<>();
+
+	private FileChannel channel;
+
+	private int channelIndex;
+
+	/**
+	 * Creates a writer.
+	 * @param target the file whose parts are written
+	 * @param lineAggregator the aggregator that formats an item as a line
+	 */
+	public RollingFlatFileItemWriter(Path target, LineAggregator<? super T> lineAggregator) {
+		Assert.notNull(target, "target must not be null");
+		Assert.notNull(lineAggregator, "lineAggregator must not be null");
+		this.target = target;
+		this.lineAggregator = lineAggregator;
+	}
+
+	/**
+	 * Returns the file of a part: the target file with the part index inserted before its
+	 * extension, e.g. {@code output.0001.csv} for the first part of {@code output.csv}.
+	 * @param target the target file
+	 * @param index the index of the part, from 1
+	 * @return the part file
+	 */
+	public static Path partFile(Path target, int index) {
+		String fileName = target.getFileName().toString();
+		int dot = fileName.lastIndexOf('.');
+		String part = String.format("%04d", index);
+		return target.resolveSibling(
+				dot > 0 ? fileName.substring(0, dot) + "." + part + fileName.substring(dot) : fileName + "." + part);
+	}
+
+	/**
+	 * Sets the encoding of the files. Defaults to Windows-31J.
+	 * @param encoding the encoding
+	 */
+	public void setEncoding(String encoding) {
+		this.encoding = Charset.forName(encoding);
+	}
+
+	/**
+	 * Sets the line separator. Defaults to the system line separator.
+	 * @param lineSeparator the line separator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Sets the maximum number of records of a part. Defaults to no limit.
+	 * @param maxRecords the maximum number of records
+	 */
+	public void setMaxRecords(long maxRecords) {
+		Assert.isTrue(maxRecords > 0, "maxRecords must be positive");
+		this.maxRecords = maxRecords;
+	}
+
+	/**
+	 * Sets the maximum size of a part in bytes. Defaults to no limit.
+	 * @param maxBytes the maximum size
+	 */
+	public void setMaxBytes(long maxBytes) {
+		Assert.isTrue(maxBytes > 0, "maxBytes must be positive");
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Whether to gzip the finished parts. Defaults to {@code false}.
+	 * @param compress {@code true} to compress the parts
+	 */
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+
+	/**
+	 * Sets the executor that compresses the finished parts. Defaults to a
+	 * {@link SimpleAsyncTaskExecutor}.
+	 * @param taskExecutor the executor
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		Assert.notNull(taskExecutor, "taskExecutor must not be null");
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Whether to save the current part in the {@link ExecutionContext}. Defaults to
+	 * {@code true}.
+	 * @param saveState {@code false} to always start from the first part
+	 */
+	public void setSaveState(boolean saveState) {
+		this.saveState = saveState;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		super.open(executionContext);
+		if (this.saveState && executionContext.containsKey(getExecutionContextKey(PART_INDEX))) {
+			this.written = new Position(executionContext.getInt(getExecutionContextKey(PART_INDEX)),
+					executionContext.getLong(getExecutionContextKey(PART_SIZE)),
+					executionContext.getLong(getExecutionContextKey(PART_COUNT)));
+		}
+		else {
+			this.written = new Position(1, 0, 0);
+		}
+		this.buffered = this.written;
+		this.pending.clear();
+		this.rolled.clear();
+		this.compressions.clear();
+		try {
+			deleteStaleParts();
+		}
+		catch (IOException ex) {
+			throw new ItemStreamException("Unable to delete the stale parts of " + this.target, ex);
+		}
+		if (this.compress) {
+			for (int index = 1; index < this.written.index; index++) {
+				if (Files.exists(partFile(this.target, index))) {
+					compressAsync(index);
+				}
+			}
+		}
+		Path file = partFile(this.target, this.written.index);
+		try {
+			this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+			this.channelIndex = this.written.index;
+			if (this.channel.size() < this.written.size) {
+				throw new ItemStreamException("Current file size is smaller than size at last commit: " + file + " ("
+						+ this.written.size + " bytes)");
+			}
+			this.channel.truncate(this.written.size);
+			this.channel.position(this.written.size);
+		}
+		catch (IOException ex) {
+			throw new ItemStreamException("Unable to open file: " + file, ex);
+		}
+	}
+
+	@Override
+	public void write(Chunk<? extends T> chunk) throws Exception {
+		boolean transactional = TransactionSynchronizationManager.isSynchronizationActive();
+		if (transactional && !TransactionSynchronizationManager.hasResource(this)) {
+			TransactionSynchronizationManager.bindResource(this, this.pending);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					writePending();
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(RollingFlatFileItemWriter.this);
+					if (status == STATUS_COMMITTED) {
+						commit();
+					}
+					else {
+						rollback();
+					}
+				}
+
+			});
+		}
+		Position position = this.buffered;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (T item : chunk) {
+			byte[] line = (this.lineAggregator.aggregate(item) + this.lineSeparator).getBytes(this.encoding);
+			if (position.count > 0
+					&& (position.count >= this.maxRecords || position.size + line.length > this.maxBytes)) {
+				if (bytes.size() > 0) {
+					this.pending.add(new Segment(position.index, bytes));
+					bytes = new ByteArrayOutputStream();
+				}
+				position = new Position(position.index + 1, 0, 0);
+			}
+			bytes.write(line);
+			position = new Position(position.index, position.size + line.length, position.count + 1);
+		}
+		if (bytes.size() > 0) {
+			this.pending.add(new Segment(position.index, bytes));
+		}
+		this.buffered = position;
+		if (!transactional) {
+			writePending();
+			commit();
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		super.update(executionContext);
+		if (this.saveState) {
+			executionContext.putInt(getExecutionContextKey(PART_INDEX), this.buffered.index);
+			executionContext.putLong(getExecutionContextKey(PART_SIZE), this.buffered.size);
+			executionContext.putLong(getExecutionContextKey(PART_COUNT), this.buffered.count);
+		}
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		if (this.compress && stepExecution.getStatus() == BatchStatus.COMPLETED && this.channel != null) {
+			try {
+				this.channel.close();
+				this.channel = null;
+				compressAsync(this.written.index);
+				awaitCompressions();
+			}
+			catch (IOException | RuntimeException ex) {
+				stepExecution.addFailureException(ex);
+				stepExecution.setStatus(BatchStatus.FAILED);
+				return ExitStatus.FAILED.addExitDescription(ex);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		super.close();
+		try {
+			if (this.channel != null) {
+				this.channel.close();
+			}
+			awaitCompressions();
+		}
+		catch (IOException ex) {
+			throw new ItemStreamException("Unable to close file: " + partFile(this.target, this.written.index), ex);
+		}
+		catch (RuntimeException ex) {
+			throw new ItemStreamException("Unable to compress the parts of " + this.target, ex);
+		}
+		finally {
+			this.channel = null;
+		}
+	}
+
+	/**
+	 * Writes the pending bytes after {@link #written}, which is only advanced once they
+	 * are committed.
+	 */
+	private void writePending() {
+		Position position = this.written;
+		for (Segment segment : this.pending) {
+			try {
+				if (segment.index != position.index) {
+					this.channel.close();
+					this.rolled.add(position.index);
+					this.channel = FileChannel.open(partFile(this.target, segment.index), StandardOpenOption.WRITE,
+							StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+					this.channelIndex = segment.index;
+					position = new Position(segment.index, 0, 0);
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(segment.bytes.toByteArray());
+				while (buffer.hasRemaining()) {
+					this.channel.write(buffer);
+				}
+			}
+			catch (IOException ex) {
+				throw new WriteFailedException("Could not write data to file: " + partFile(this.target, segment.index),
+						ex);
+			}
+			position = new Position(segment.index, position.size + segment.bytes.size(), 0);
+		}
+		this.pending.clear();
+	}
+
+	private void commit() {
+		this.written = this.buffered;
+		compressRolled();
+	}
+
+	/**
+	 * Discards the pending bytes and removes those written before a failed commit.
+	 */
+	private void rollback() {
+		this.pending.clear();
+		this.rolled.clear();
+		this.buffered = this.written;
+		if (this.channel == null) {
+			return;
+		}
+		Path file = partFile(this.target, this.written.index);
+		try {
+			if (this.channelIndex != this.written.index) {
+				this.channel.close();
+				for (int index = this.written.index + 1; index <= this.channelIndex; index++) {
+					Files.deleteIfExists(partFile(this.target, index));
+				}
+				this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+				this.channelIndex = this.written.index;
+			}
+			this.channel.truncate(this.written.size);
+			this.channel.position(this.written.size);
+		}
+		catch (IOException ex) {
+			throw new ItemStreamException("Unable to restore file: " + file, ex);
+		}
+	}
+
+	/**
+	 * Deletes the parts after the current one and the compressed current part.
+	 */
+	private void deleteStaleParts() throws IOException {
+		Path directory = this.target.toAbsolutePath().getParent();
+		if (directory == null || !Files.isDirectory(directory)) {
+			return;
+		}
+		String fileName = this.target.getFileName().toString();
+		int dot = fileName.lastIndexOf('.');
+		Pattern pattern = Pattern.compile(Pattern.quote(dot > 0 ? fileName.substring(0, dot) : fileName)
+				+ "\\.(\\d{4,})" + Pattern.quote(dot > 0 ? fileName.substring(dot) : "") + "(\\.gz(\\.tmp)?)?");
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Matcher matcher = pattern.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					int index = Integer.parseInt(matcher.group(1));
+					if (index > this.written.index || (index == this.written.index && matcher.group(2) != null)) {
+						Files.delete(file);
+					}
+				}
+			}
+		}
+	}
+
+	private void compressRolled() {
+		if (this.compress) {
+			this.rolled.forEach(this::compressAsync);
+		}
+		this.rolled.clear();
+	}
+
+	private void compressAsync(int index) {
+		Path part = partFile(this.target, index);
+		this.compressions.add(CompletableFuture.runAsync(() -> gzip(part), this.taskExecutor));
+	}
+
+	/**
+	 * Gzips a part to a temporary file, moves it into place and deletes the part.
+	 */
+	private static void gzip(Path part) {
+		Path compressed = part.resolveSibling(part.getFileName() + ".gz");
+		Path temporary = part.resolveSibling(part.getFileName() + ".gz.tmp");
+		try {
+			try (InputStream in = Files.newInputStream(part);
+					OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary), 64 * 1024)) {
+				in.transferTo(out);
+			}
+			Files.move(temporary, compressed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(part);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Unable to compress " + part, ex);
+		}
+	}
+
+	private void awaitCompressions() {
+		RuntimeException failure = null;
+		for (CompletableFuture<Void> compression : this.compressions) {
+			try {
+				compression.join();
+			}
+			catch (CompletionException ex) {
+				RuntimeException cause = ex.getCause() instanceof RuntimeException runtimeException ? runtimeException
+						: ex;
+				if (failure == null) {
+					failure = cause;
+				}
+				else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+		this.compressions.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Index of a part, with its size and number of records.
+	 */
+	private record Position(int index, long size, long count) {
+	}
+
+	/**
+	 * Bytes to write to a part.
+	 */
+	private record Segment(int index, ByteArrayOutputStream bytes) {
+	}
+
+}
@@ -0,0 +1,608 @@
+package com.example.batch.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.WriteFailedException;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * Writes each item to one of several flat files, chosen by an {@code int} key of the
+ * item.
+ * <p>
+ * Unlike a {@link org.springframework.batch.item.support.ClassifierCompositeItemWriter}
+ * over one {@link org.springframework.batch.item.file.FlatFileItemWriter} per file, the
+ * chunk is partitioned into the destinations in a single pass, the items of each
+ * destination are formatted and encoded on the {@link TaskExecutor}, in parallel, and the
+ * bytes of all destinations are written to their files together when the chunk
+ * transaction commits, again in parallel.
+ * </p>
+ * <p>
+ * The file of a key is given by a function and opened on the first item with that key, so
+ * the number of destinations does not need to be known in advance (e.g. one file per
+ * branch). Keys for which the function returns {@code null} fail the write. The files of
+ * the keys set with {@link #setInitialKeys} are created on open even if no item is routed
+ * to them.
+ * </p>
+ * <p>
+ * The size of every file, including the bytes pending in the current transaction, is
+ * saved in the {@link ExecutionContext} on update, which is part of the same commit. On
+ * restart each file is truncated to its saved size, so if writing any file fails at
+ * commit, the files are restored together to the last committed chunk. A transaction that
+ * is rolled back after its bytes were written, e.g. because a later resource failed to
+ * commit, truncates the files to the last commit and restores their record counts and
+ * digests. Outside a transaction the bytes are written at once. The writer is
+ * thread-safe: each transaction has its own pending bytes, and since a multi-threaded
+ * step updates its streams and commits its chunks one at a time, the saved sizes match
+ * the committed chunks there as well.
+ * </p>
+ * <p>
+ * Optionally a {@link FileDigest} of each file is computed as the bytes are written, and
+ * a manifest listing the records, bytes and digest of every file is written when the step
+ * completes, so that a failed execution never leaves a manifest of partial files. This
+ * needs the writer to be registered as a {@link StepExecutionListener} of the step, which
+ * the step builder does when it is the writer of the step. The digest state and record
+ * counts are saved with the sizes, so that a restarted execution continues them from the
+ * last commit.
+ * </p>
+ *
+ * @param <T> type of item to write
+ */
+public class RoutingFlatFileItemWriter<T> extends ItemStreamSupport
+		implements ItemStreamWriter<T>, StepExecutionListener {
+
+	private static final String SIZE = "size.";
+
+	private static final String RECORDS = "records.";
+
+	private static final String DIGEST = "digest.";
+
+	private final ToIntFunction<? super T> router;
+
+	private final IntFunction<Path> files;
+
+	private final LineAggregator<? super T> lineAggregator;
+
+	private Charset encoding = Charset.forName("Windows-31J");
+
+	private String lineSeparator = System.lineSeparator();
+
+	private TaskExecutor taskExecutor = new SyncTaskExecutor();
+
+	private int[] initialKeys = new int[0];
+
+	private boolean saveState = true;
+
+	private boolean appendAllowed;
+
+	private String digestAlgorithm;
+
+	private Path manifest;
+
+	private final Map<Integer, Destination> destinations = new ConcurrentHashMap<>();
+
+	private final Map<Integer, Long> restartSizes = new HashMap<>();
+
+	private final Map<Integer, Long> restartRecords = new HashMap<>();
+
+	private final Map<Integer, String> restartDigests = new HashMap<>();
+
+	/**
+	 * Creates a writer.
+	 * @param router the function that returns the key of an item
+	 * @param files the function that returns the file of a key, or {@code null} if the
+	 * key is not valid
+	 * @param lineAggregator the aggregator that formats an item as a line
+	 */
+	public RoutingFlatFileItemWriter(ToIntFunction<? super T> router, IntFunction<Path> files,
+			LineAggregator<? super T> lineAggregator) {
+		Assert.notNull(router, "router must not be null");
+		Assert.notNull(files, "files must not be null");
+		Assert.notNull(lineAggregator, "lineAggregator must not be null");
+		this.router = router;
+		this.files = files;
+		this.lineAggregator = lineAggregator;
+	}
+
+	/**
+	 * Sets the encoding of the files. Defaults to Windows-31J.
+	 * @param encoding the encoding
+	 */
+	public void setEncoding(String encoding) {
+		this.encoding = Charset.forName(encoding);
+	}
+
+	/**
+	 * Sets the line separator. Defaults to the system line separator.
+	 * @param lineSeparator the line separator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Sets the executor that formats and writes the destinations in parallel, in which
+	 * case the line aggregator must be thread-safe. Defaults to a
+	 * {@link SyncTaskExecutor}, which does so one after the other on the calling thread.
+	 * @param taskExecutor the executor
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		Assert.notNull(taskExecutor, "taskExecutor must not be null");
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Sets the keys whose files are created on open, even if they stay empty.
+	 * @param initialKeys the keys
+	 */
+	public void setInitialKeys(int... initialKeys) {
+		this.initialKeys = initialKeys.clone();
+	}
+
+	/**
+	 * Whether to save the file sizes in the {@link ExecutionContext}. Defaults to
+	 * {@code true}.
+	 * @param saveState {@code false} to always start with empty files
+	 */
+	public void setSaveState(boolean saveState) {
+		this.saveState = saveState;
+	}
+
+	/**
+	 * Whether to append to existing files on a new execution instead of truncating them.
+	 * On restart the files are still truncated to their saved sizes. The digest of an
+	 * existing file is computed by reading it, and its records are not counted. Defaults
+	 * to {@code false}.
+	 * @param appendAllowed {@code true} to append to existing files
+	 */
+	public void setAppendAllowed(boolean appendAllowed) {
+		this.appendAllowed = appendAllowed;
+	}
+
+	/**
+	 * Sets the algorithm of the digest computed for each file, one of
+	 * {@link FileDigest#CRC32C}, {@link FileDigest#FNV1A_64} or
+	 * {@link FileDigest#SHA_256}. Defaults to {@code null}, for no digest.
+	 * @param digestAlgorithm the algorithm, or {@code null}
+	 */
+	public void setDigestAlgorithm(String digestAlgorithm) {
+		if (digestAlgorithm != null) {
+			FileDigest.newDigest(digestAlgorithm);
+		}
+		this.digestAlgorithm = digestAlgorithm;
+	}
+
+	/**
+	 * Sets the manifest file written when the step completes. It has a header line and
+	 * one line per file with its name, records, bytes, digest algorithm and digest,
+	 * separated by commas. Defaults to {@code null}, for no manifest.
+	 * @param manifest the manifest file, or {@code null}
+	 */
+	public void setManifest(Path manifest) {
+		this.manifest = manifest;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		super.open(executionContext);
+		this.restartSizes.clear();
+		this.restartRecords.clear();
+		this.restartDigests.clear();
+		if (this.saveState) {
+			String sizePrefix = getExecutionContextKey(SIZE);
+			String recordsPrefix = getExecutionContextKey(RECORDS);
+			String digestPrefix = getExecutionContextKey(DIGEST);
+			for (Map.Entry<String, Object> entry : executionContext.entrySet()) {
+				String key = entry.getKey();
+				if (key.startsWith(sizePrefix)) {
+					this.restartSizes.put(Integer.valueOf(key.substring(sizePrefix.length())),
+							((Number) entry.getValue()).longValue());
+				}
+				else if (key.startsWith(recordsPrefix)) {
+					this.restartRecords.put(Integer.valueOf(key.substring(recordsPrefix.length())),
+							((Number) entry.getValue()).longValue());
+				}
+				else if (key.startsWith(digestPrefix)) {
+					this.restartDigests.put(Integer.valueOf(key.substring(digestPrefix.length())),
+							(String) entry.getValue());
+				}
+			}
+		}
+		for (int key : this.initialKeys) {
+			destination(key);
+		}
+		for (int key : this.restartSizes.keySet()) {
+			destination(key);
+		}
+	}
+
+	@Override
+	public void write(Chunk<? extends T> chunk) throws Exception {
+		Map<Destination, List<T>> items = new LinkedHashMap<>();
+		for (T item : chunk) {
+			items.computeIfAbsent(destination(this.router.applyAsInt(item)), destination -> new ArrayList<>())
+				.add(item);
+		}
+		Map<Destination, Buffer> pending = pending();
+		List<Runnable> tasks = new ArrayList<>(items.size());
+		items.forEach((destination, destinationItems) -> {
+			Buffer bytes = pending.computeIfAbsent(destination, key -> new Buffer());
+			tasks.add(() -> format(destinationItems, bytes));
+		});
+		runAll(tasks);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			writePending(pending);
+			this.destinations.values().forEach(Destination::commit);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		super.update(executionContext);
+		if (this.saveState) {
+			Map<Destination, Buffer> pending = currentPending();
+			for (Destination destination : this.destinations.values()) {
+				Buffer bytes = pending.get(destination);
+				FileDigest digest;
+				synchronized (destination) {
+					executionContext.putLong(getExecutionContextKey(SIZE + destination.key),
+							destination.buffered.size() + (bytes != null ? bytes.size() : 0));
+					executionContext.putLong(getExecutionContextKey(RECORDS + destination.key),
+							destination.buffered.records() + (bytes != null ? bytes.records : 0));
+					digest = destination.digest != null ? destination.digest.copy() : null;
+				}
+				if (digest != null && digest.getState() != null) {
+					if (bytes != null) {
+						digest.update(bytes.buffer(), 0, bytes.size());
+					}
+					executionContext.putString(getExecutionContextKey(DIGEST + destination.key), digest.getState());
+				}
+			}
+		}
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		if (this.manifest != null && stepExecution.getStatus() == BatchStatus.COMPLETED
+				&& !this.destinations.isEmpty()) {
+			try {
+				writeManifest();
+			}
+			catch (IOException ex) {
+				ItemStreamException failure = new ItemStreamException("Unable to write manifest: " + this.manifest, ex);
+				stepExecution.addFailureException(failure);
+				stepExecution.setStatus(BatchStatus.FAILED);
+				return ExitStatus.FAILED.addExitDescription(failure);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		super.close();
+		ItemStreamException failure = null;
+		for (Destination destination : this.destinations.values()) {
+			try {
+				destination.channel.close();
+			}
+			catch (IOException ex) {
+				if (failure == null) {
+					failure = new ItemStreamException("Unable to close file: " + destination.file, ex);
+				}
+			}
+		}
+		this.destinations.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private Destination destination(int key) {
+		Destination destination = this.destinations.get(key);
+		if (destination != null) {
+			return destination;
+		}
+		synchronized (this.destinations) {
+			return this.destinations.computeIfAbsent(key, this::open);
+		}
+	}
+
+	private Destination open(int key) {
+		Path file = this.files.apply(key);
+		if (file == null) {
+			throw new IllegalArgumentException("No destination for key: " + key);
+		}
+		try {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+			Long restartSize = this.restartSizes.get(key);
+			long size = restartSize != null ? restartSize : this.appendAllowed ? channel.size() : 0;
+			if (channel.size() < size) {
+				channel.close();
+				throw new ItemStreamException(
+						"Current file size is smaller than size at last commit: " + file + " (" + size + " bytes)");
+			}
+			channel.truncate(size);
+			channel.position(size);
+			FileDigest digest = null;
+			if (this.digestAlgorithm != null) {
+				digest = size > 0 ? FileDigest.restore(this.digestAlgorithm, this.restartDigests.get(key), file, size)
+						: FileDigest.newDigest(this.digestAlgorithm);
+			}
+			return new Destination(key, file, channel, size, this.restartRecords.getOrDefault(key, 0L), digest);
+		}
+		catch (IOException ex) {
+			throw new ItemStreamException("Unable to open file: " + file, ex);
+		}
+	}
+
+	/**
+	 * Writes the manifest to a temporary file that is then moved over the manifest, so
+	 * that readers never see a partial manifest.
+	 */
+	private void writeManifest() throws IOException {
+		StringBuilder lines = new StringBuilder("file,records,bytes,algorithm,digest").append(this.lineSeparator);
+		List<Destination> sorted = new ArrayList<>(this.destinations.values());
+		sorted.sort(Comparator.comparingInt(destination -> destination.key));
+		for (Destination destination : sorted) {
+			synchronized (destination) {
+				lines.append(destination.file.getFileName())
+					.append(',')
+					.append(destination.written.records())
+					.append(',')
+					.append(destination.written.size())
+					.append(',')
+					.append(destination.writtenDigest != null ? destination.writtenDigest.getAlgorithm() : "")
+					.append(',')
+					.append(destination.writtenDigest != null ? destination.writtenDigest.getValue() : "")
+					.append(this.lineSeparator);
+			}
+		}
+		Path manifest = this.manifest.toAbsolutePath();
+		Path temp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+		Files.writeString(temp, lines, this.encoding);
+		Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Returns the bytes not written yet of the current transaction, registering the
+	 * synchronization that writes them on commit for a new transaction. Once the
+	 * transaction completes, the files are committed, or restored to the last commit if
+	 * it was rolled back after the bytes were written.
+	 */
+	private Map<Destination, Buffer> pending() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return new LinkedHashMap<>();
+		}
+		@SuppressWarnings("unchecked")
+		Map<Destination, Buffer> pending = (Map<Destination, Buffer>) TransactionSynchronizationManager
+			.getResource(this);
+		if (pending == null) {
+			Map<Destination, Buffer> newPending = new LinkedHashMap<>();
+			TransactionSynchronizationManager.bindResource(this, newPending);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					writePending(newPending);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(RoutingFlatFileItemWriter.this);
+					for (Destination destination : RoutingFlatFileItemWriter.this.destinations.values()) {
+						if (status == STATUS_COMMITTED) {
+							destination.commit();
+						}
+						else {
+							destination.rollback();
+						}
+					}
+				}
+
+			});
+			pending = newPending;
+		}
+		return pending;
+	}
+
+	private Map<Destination, Buffer> currentPending() {
+		@SuppressWarnings("unchecked")
+		Map<Destination, Buffer> pending = (Map<Destination, Buffer>) TransactionSynchronizationManager
+			.getResource(this);
+		return pending != null ? pending : Map.of();
+	}
+
+	private void format(List<T> items, Buffer bytes) {
+		StringBuilder lines = new StringBuilder(items.size() * 64);
+		for (T item : items) {
+			lines.append(this.lineAggregator.aggregate(item)).append(this.lineSeparator);
+		}
+		bytes.writeBytes(lines.toString().getBytes(this.encoding));
+		bytes.records += items.size();
+	}
+
+	private void writePending(Map<Destination, Buffer> pending) {
+		List<Runnable> tasks = new ArrayList<>(pending.size());
+		pending.forEach((destination, bytes) -> {
+			if (bytes.size() > 0) {
+				tasks.add(() -> destination.write(bytes));
+			}
+		});
+		runAll(tasks);
+		pending.clear();
+	}
+
+	/**
+	 * Runs the tasks on the executor and waits for all of them, rethrowing the first
+	 * failure with the others suppressed.
+	 */
+	private void runAll(List<Runnable> tasks) {
+		if (tasks.size() == 1) {
+			tasks.get(0).run();
+			return;
+		}
+		List<CompletableFuture<Void>> futures = new ArrayList<>(tasks.size());
+		for (Runnable task : tasks) {
+			futures.add(CompletableFuture.runAsync(task, this.taskExecutor));
+		}
+		RuntimeException failure = null;
+		for (CompletableFuture<Void> future : futures) {
+			try {
+				future.join();
+			}
+			catch (CompletionException ex) {
+				RuntimeException cause = ex.getCause() instanceof RuntimeException runtimeException ? runtimeException
+						: ex;
+				if (failure == null) {
+					failure = cause;
+				}
+				else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Bytes not written yet and the number of records they contain.
+	 */
+	private static final class Buffer extends ByteArrayOutputStream {
+
+		private int records;
+
+		private byte[] buffer() {
+			return this.buf;
+		}
+
+	}
+
+	/**
+	 * An open file with its position after the bytes written to it and after those of the
+	 * last committed transaction.
+	 * <p>
+	 * The bytes of a transaction are written before it commits, so a transaction that is
+	 * rolled back after that truncates the file to the committed position. This assumes
+	 * that the transactions writing to the file commit one at a time, as the chunks of a
+	 * step do, even in a multi-threaded step.
+	 * </p>
+	 */
+	private static final class Destination {
+
+		private final int key;
+
+		private final Path file;
+
+		private final FileChannel channel;
+
+		/**
+		 * Position after the bytes of the last committed transaction.
+		 */
+		private Position written;
+
+		/**
+		 * Position after the bytes written to the file, committed or not.
+		 */
+		private Position buffered;
+
+		/**
+		 * Digest of the bytes written to the file, committed or not.
+		 */
+		private FileDigest digest;
+
+		/**
+		 * Digest of the bytes of the last committed transaction.
+		 */
+		private FileDigest writtenDigest;
+
+		private Destination(int key, Path file, FileChannel channel, long size, long records, FileDigest digest) {
+			this.key = key;
+			this.file = file;
+			this.channel = channel;
+			this.written = new Position(size, records);
+			this.buffered = this.written;
+			this.digest = digest;
+			this.writtenDigest = digest != null ? digest.copy() : null;
+		}
+
+		private synchronized void write(Buffer bytes) {
+			try {
+				bytes.writeTo(Channels.newOutputStream(this.channel));
+			}
+			catch (IOException ex) {
+				throw new WriteFailedException("Could not write data to file: " + this.file, ex);
+			}
+			if (this.digest != null) {
+				this.digest.update(bytes.buffer(), 0, bytes.size());
+			}
+			this.buffered = new Position(this.buffered.size() + bytes.size(), this.buffered.records() + bytes.records);
+		}
+
+		private synchronized void commit() {
+			if (this.buffered != this.written) {
+				this.written = this.buffered;
+				this.writtenDigest = this.digest != null ? this.digest.copy() : null;
+			}
+		}
+
+		/**
+		 * Removes the bytes written since the last commit and restores the digest.
+		 */
+		private synchronized void rollback() {
+			if (this.buffered == this.written) {
+				return;
+			}
+			this.buffered = this.written;
+			this.digest = this.writtenDigest != null ? this.writtenDigest.copy() : null;
+			try {
+				this.channel.truncate(this.written.size());
+				this.channel.position(this.written.size());
+			}
+			catch (IOException ex) {
+				throw new ItemStreamException("Unable to restore file: " + this.file, ex);
+			}
+		}
+
+	}
+
+	/**
+	 * Size of a file with its number of records.
+	 */
+	private record Position(long size, long records) {
+	}
+
+}
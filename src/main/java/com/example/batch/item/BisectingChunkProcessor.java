@@ -0,0 +1,162 @@
+package com.example.batch.item;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.core.step.skip.AlwaysSkipItemSkipPolicy;
+import org.springframework.batch.core.step.skip.SkipPolicy;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Chunk processor that isolates the items a bulk write fails on by splitting the chunk in
+ * halves.
+ * <p>
+ * Each write attempt runs in a nested transaction (a savepoint in the chunk transaction),
+ * so a failed attempt can be rolled back without losing the work of the chunk. When the
+ * writer fails on a list of items, the list is split in two halves and each half is
+ * written again, down to single items. Only a single failing item is checked against the
+ * skip policy: it is skipped if the exception is skippable, and fails the chunk
+ * otherwise. With {@code k} bad items in a chunk of {@code n} this needs
+ * {@code O(k log n)} writes instead of the {@code n} single-item writes of the fault
+ * tolerant chunk processor's scan.
+ * </p>
+ * <p>
+ * Skipped items are left out of the write count and added to the write skip count of the
+ * chunk's {@link StepContribution}, so they are counted with the chunk and rolled back
+ * with it. Once the chunk is written, they are reported to the {@link SkipListener}s
+ * registered with the processor. Use {@link BisectingStepBuilder} to build a step with
+ * it.
+ * </p>
+ *
+ * @param <I> type of input item
+ * @param <O> type of output item
+ */
+public class BisectingChunkProcessor<I, O> extends SimpleChunkProcessor<I, O> {
+
+	private final TransactionOperations transactionOperations;
+
+	private SkipPolicy skipPolicy = new AlwaysSkipItemSkipPolicy();
+
+	/**
+	 * Creates a processor that runs each write attempt in a nested transaction of the
+	 * given transaction manager, which must support savepoints.
+	 * @param itemProcessor the item processor, or {@code null} for none
+	 * @param itemWriter the writer to write the items with
+	 * @param transactionManager the transaction manager of the step
+	 */
+	public BisectingChunkProcessor(ItemProcessor<? super I, ? extends O> itemProcessor,
+			ItemWriter<? super O> itemWriter, PlatformTransactionManager transactionManager) {
+		this(itemProcessor, itemWriter, nestedTransactionTemplate(transactionManager));
+	}
+
+	/**
+	 * Creates a processor that runs each write attempt through the given transaction
+	 * operations.
+	 * @param itemProcessor the item processor, or {@code null} for none
+	 * @param itemWriter the writer to write the items with
+	 * @param transactionOperations the operations that isolate a single attempt
+	 */
+	public BisectingChunkProcessor(ItemProcessor<? super I, ? extends O> itemProcessor,
+			ItemWriter<? super O> itemWriter, TransactionOperations transactionOperations) {
+		super(itemProcessor, itemWriter);
+		Assert.notNull(transactionOperations, "transactionOperations must not be null");
+		this.transactionOperations = transactionOperations;
+	}
+
+	/**
+	 * Sets the policy that decides whether an item failing with a given exception is
+	 * skipped. Defaults to skipping on any exception. Exceptions that are not skippable
+	 * fail the chunk.
+	 * @param skipPolicy the skip policy
+	 */
+	public void setSkipPolicy(SkipPolicy skipPolicy) {
+		Assert.notNull(skipPolicy, "skipPolicy must not be null");
+		this.skipPolicy = skipPolicy;
+	}
+
+	@Override
+	protected void write(StepContribution contribution, Chunk<I> inputs, Chunk<O> outputs) throws Exception {
+		if (outputs.isEmpty()) {
+			return;
+		}
+		Map<O, Exception> skipped = new IdentityHashMap<>();
+		try {
+			writeOrSplit(contribution, new ArrayList<>(outputs.getItems()), skipped);
+		}
+		catch (Exception ex) {
+			inputs.clear();
+			throw ex;
+		}
+		for (Chunk<O>.ChunkIterator iterator = outputs.iterator(); iterator.hasNext();) {
+			O item = iterator.next();
+			Exception exception = skipped.get(item);
+			if (exception != null) {
+				iterator.remove(exception);
+				getListener().onSkipInWrite(item, exception);
+			}
+		}
+		contribution.incrementWriteCount(outputs.size());
+	}
+
+	private void writeOrSplit(StepContribution contribution, List<O> items, Map<O, Exception> skipped)
+			throws Exception {
+		try {
+			this.transactionOperations.executeWithoutResult(status -> {
+				try {
+					doWrite(new Chunk<>(items));
+				}
+				catch (RuntimeException ex) {
+					throw ex;
+				}
+				catch (Exception ex) {
+					throw new WriteFailedException(ex);
+				}
+			});
+		}
+		catch (RuntimeException ex) {
+			Exception cause = ex instanceof WriteFailedException ? (Exception) ex.getCause() : ex;
+			if (items.size() > 1) {
+				int middle = items.size() / 2;
+				writeOrSplit(contribution, items.subList(0, middle), skipped);
+				writeOrSplit(contribution, items.subList(middle, items.size()), skipped);
+				return;
+			}
+			if (!this.skipPolicy.shouldSkip(cause, contribution.getStepSkipCount())) {
+				throw cause;
+			}
+			skipped.put(items.get(0), cause);
+			contribution.incrementWriteSkipCount();
+		}
+	}
+
+	private static TransactionTemplate nestedTransactionTemplate(PlatformTransactionManager transactionManager) {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+		return transactionTemplate;
+	}
+
+	/**
+	 * Carries a checked exception of the writer through the transaction callback.
+	 */
+	private static class WriteFailedException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		WriteFailedException(Exception cause) {
+			super(cause);
+		}
+
+	}
+
+}
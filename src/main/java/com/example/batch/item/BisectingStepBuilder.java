@@ -0,0 +1,89 @@
+package com.example.batch.item;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepListener;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.core.step.item.ChunkOrientedTasklet;
+import org.springframework.batch.core.step.item.SimpleChunkProvider;
+import org.springframework.batch.core.step.skip.AlwaysSkipItemSkipPolicy;
+import org.springframework.batch.core.step.skip.SkipPolicy;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.util.Assert;
+
+/**
+ * Step builder for a chunk-oriented step that writes its chunks with a
+ * {@link BisectingChunkProcessor}. It is created from a configured
+ * {@link SimpleStepBuilder}, the way {@link SimpleStepBuilder#faultTolerant()} is:
+ *
+ * <pre class="code">
+ * new BisectingStepBuilder&lt;&gt;(new StepBuilder("step", jobRepository)
+ *     .&lt;I, O&gt;chunk(1000, transactionManager)
+ *     .reader(reader)
+ *     .writer(writer))
+ *     .skipPolicy(skipPolicy)
+ *     .listener(skipListener)
+ *     .build();
+ * </pre>
+ *
+ * @param <I> type of input item
+ * @param <O> type of output item
+ */
+public class BisectingStepBuilder<I, O> extends SimpleStepBuilder<I, O> {
+
+	private SkipPolicy skipPolicy = new AlwaysSkipItemSkipPolicy();
+
+	private final Set<SkipListener<? super I, ? super O>> skipListeners = new LinkedHashSet<>();
+
+	/**
+	 * Creates a builder with the properties of the given one.
+	 * @param parent the builder of the chunk-oriented step
+	 */
+	public BisectingStepBuilder(SimpleStepBuilder<I, O> parent) {
+		super(parent);
+	}
+
+	/**
+	 * Sets the policy that decides whether an item the writer fails on is skipped.
+	 * Defaults to skipping on any exception.
+	 * @param skipPolicy the skip policy
+	 * @return this for fluent chaining
+	 * @see BisectingChunkProcessor#setSkipPolicy(SkipPolicy)
+	 */
+	public BisectingStepBuilder<I, O> skipPolicy(SkipPolicy skipPolicy) {
+		Assert.notNull(skipPolicy, "skipPolicy must not be null");
+		this.skipPolicy = skipPolicy;
+		return this;
+	}
+
+	/**
+	 * Registers a listener notified of each item skipped on write.
+	 * @param listener the skip listener
+	 * @return this for fluent chaining
+	 */
+	public BisectingStepBuilder<I, O> listener(SkipListener<? super I, ? super O> listener) {
+		this.skipListeners.add(listener);
+		return this;
+	}
+
+	@Override
+	protected Tasklet createTasklet() {
+		Assert.state(getReader() != null, "ItemReader must be provided");
+		Assert.state(getWriter() != null, "ItemWriter must be provided");
+		SimpleChunkProvider<I> chunkProvider = new SimpleChunkProvider<>(getReader(), createChunkOperations());
+		chunkProvider.setListeners(new ArrayList<>(getItemListeners()));
+		BisectingChunkProcessor<I, O> chunkProcessor = new BisectingChunkProcessor<>(getProcessor(), getWriter(),
+				getTransactionManager());
+		chunkProcessor.setSkipPolicy(this.skipPolicy);
+		List<StepListener> listeners = new ArrayList<>(getItemListeners());
+		listeners.addAll(this.skipListeners);
+		chunkProcessor.setListeners(listeners);
+		ChunkOrientedTasklet<I> tasklet = new ChunkOrientedTasklet<>(chunkProvider, chunkProcessor);
+		tasklet.setBuffering(!isReaderTransactionalQueue());
+		return tasklet;
+	}
+
+}
@@ -0,0 +1,160 @@
+package com.example.batch.item;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.util.Assert;
+
+/**
+ * MyBatis reader that fetches the result one page at a time, using the key of the last
+ * item read instead of an offset to find the next page (keyset pagination).
+ * <p>
+ * Unlike {@link org.mybatis.spring.batch.MyBatisCursorItemReader}, no connection or
+ * transaction is held between pages: every page is a separate query executed in the
+ * transaction of the current chunk, or on its own when there is none. Unlike
+ * {@link org.mybatis.spring.batch.MyBatisPagingItemReader}, the cost of a page does not
+ * grow with its position, because the query can start an index range scan right after the
+ * last key instead of skipping the preceding rows.
+ * </p>
+ * <p>
+ * The query must order the result by a unique key and select only the rows after the key
+ * given in the parameter {@code _lastkey} (a map of the key values, {@code null} for the
+ * first page), limited to {@code _pagesize} rows. The key of the last item read is saved
+ * in the {@link ExecutionContext}, so on restart the reader continues after it without
+ * reading the preceding items again. The key values must be serializable by the execution
+ * context serializer of the job repository.
+ * </p>
+ *
+ * @param <T> the type of item to read
+ */
+public class MyBatisKeysetPagingItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> {
+
+	private static final String LAST_KEY = "last.key";
+
+	private final SqlSessionFactory sqlSessionFactory;
+
+	private final String queryId;
+
+	private final Function<? super T, Map<String, Object>> keyExtractor;
+
+	private Map<String, Object> parameterValues = Map.of();
+
+	private int pageSize = 1000;
+
+	private SqlSessionTemplate sqlSessionTemplate;
+
+	private List<T> page = List.of();
+
+	private int current;
+
+	private boolean lastPage;
+
+	/**
+	 * Key of the last item returned by {@link #read()}.
+	 */
+	private Map<String, Object> lastKey;
+
+	/**
+	 * Creates a reader for the given query.
+	 * @param sqlSessionFactory the session factory
+	 * @param queryId the ID of the mapped statement returning a page
+	 * @param keyExtractor the function returning the key values of an item
+	 */
+	public MyBatisKeysetPagingItemReader(SqlSessionFactory sqlSessionFactory, String queryId,
+			Function<? super T, Map<String, Object>> keyExtractor) {
+		Assert.notNull(sqlSessionFactory, "sqlSessionFactory must not be null");
+		Assert.hasText(queryId, "queryId must not be empty");
+		Assert.notNull(keyExtractor, "keyExtractor must not be null");
+		this.sqlSessionFactory = sqlSessionFactory;
+		this.queryId = queryId;
+		this.keyExtractor = keyExtractor;
+	}
+
+	/**
+	 * Sets the parameters passed to the query in addition to the key and page size.
+	 * @param parameterValues the parameter values
+	 */
+	public void setParameterValues(Map<String, Object> parameterValues) {
+		this.parameterValues = new HashMap<>(parameterValues);
+	}
+
+	/**
+	 * Sets the maximum number of items fetched by one query. Defaults to 1000. Using the
+	 * commit interval of the step keeps every page inside one chunk transaction.
+	 * @param pageSize the page size
+	 */
+	public void setPageSize(int pageSize) {
+		Assert.isTrue(pageSize > 0, "pageSize must be positive");
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		super.open(executionContext);
+		if (isSaveState() && executionContext.containsKey(getExecutionContextKey(LAST_KEY))) {
+			this.lastKey = (Map<String, Object>) executionContext.get(getExecutionContextKey(LAST_KEY));
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		super.update(executionContext);
+		if (isSaveState() && this.lastKey != null) {
+			executionContext.put(getExecutionContextKey(LAST_KEY), new HashMap<>(this.lastKey));
+		}
+	}
+
+	@Override
+	protected void doOpen() throws Exception {
+		this.sqlSessionTemplate = new SqlSessionTemplate(this.sqlSessionFactory);
+		this.page = List.of();
+		this.current = 0;
+		this.lastPage = false;
+		this.lastKey = null;
+	}
+
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		// The position is restored from the saved key in open(), after this method
+	}
+
+	@Override
+	protected T doRead() throws Exception {
+		if (this.current == this.page.size()) {
+			if (this.lastPage) {
+				return null;
+			}
+			fetchPage();
+			if (this.page.isEmpty()) {
+				return null;
+			}
+		}
+		T item = this.page.get(this.current++);
+		this.lastKey = this.keyExtractor.apply(item);
+		return item;
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		this.sqlSessionTemplate = null;
+		this.page = List.of();
+		this.lastKey = null;
+	}
+
+	private void fetchPage() {
+		Map<String, Object> parameters = new HashMap<>(this.parameterValues);
+		parameters.put("_lastkey", this.lastKey);
+		parameters.put("_pagesize", this.pageSize);
+		this.page = this.sqlSessionTemplate.selectList(this.queryId, parameters);
+		this.current = 0;
+		this.lastPage = this.page.size() < this.pageSize;
+	}
+
+}
@@ -0,0 +1,343 @@
+package com.example.batch.item;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.util.Assert;
+
+/**
+ * Thread-safe {@link ItemStreamReader} that reads the items of its delegate ahead on a
+ * background thread.
+ * <p>
+ * The delegate, which does not need to be thread-safe, is read by a single producer
+ * thread into a bounded lock-free ring buffer (a multi-consumer array queue with per-slot
+ * sequence numbers), from which any number of chunk threads take items. The chunk threads
+ * no longer wait for each fetch of the delegate, only for an empty buffer.
+ * </p>
+ * <p>
+ * The items are numbered in the order of the delegate. On {@link #update} the items read
+ * by the calling thread since its previous update are considered committed, which is the
+ * case when the reader is registered as a stream of a step: the step updates its streams
+ * in the transaction of each chunk, on the thread of the chunk. The reader saves the
+ * number of items before the first one that is not committed yet (the committed
+ * watermark) and, since the chunks of a multi-threaded step commit out of order, the
+ * items committed after the watermark. On restart the delegate is opened without saved
+ * state and the committed items are read and discarded on the producer thread, so that
+ * only the items that were not committed are read again.
+ * </p>
+ * <p>
+ * Register the reader as a {@link ChunkListener} of the step as well, so that the items
+ * of a chunk that is rolled back are not committed with the next chunk of the thread.
+ * </p>
+ *
+ * @param <T> type of item to read
+ */
+public class PrefetchingItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T>, ChunkListener {
+
+	private static final String COMMITTED_COUNT = "committed.count";
+
+	private static final String COMMITTED_ABOVE = "committed.above";
+
+	private static final int SPINS = 100;
+
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final ItemStreamReader<T> delegate;
+
+	private int capacity = 1024;
+
+	private boolean saveState = true;
+
+	private AtomicReferenceArray<T> buffer;
+
+	/**
+	 * Sequence number of each slot: {@code position} when it is free for the producer at
+	 * that position, {@code position + 1} when it holds the item of that position.
+	 */
+	private AtomicLongArray sequences;
+
+	/**
+	 * Number of the item held by each slot, in the order of the delegate.
+	 */
+	private AtomicLongArray numbers;
+
+	private int mask;
+
+	private final AtomicLong head = new AtomicLong();
+
+	private volatile boolean exhausted;
+
+	private volatile Throwable failure;
+
+	private volatile boolean closed;
+
+	private Thread producer;
+
+	/**
+	 * Step execution the reader was opened in, registered on the producer thread so that
+	 * step scoped delegates can be resolved there.
+	 */
+	private StepExecution stepExecution;
+
+	/**
+	 * Number of items skipped on restart, which is added to the buffer positions.
+	 */
+	private long base;
+
+	/**
+	 * Items above {@link #base} committed before the restart, by offset from the base.
+	 */
+	private BitSet restartCommitted;
+
+	private final ThreadLocal<LongList> uncommitted = ThreadLocal.withInitial(LongList::new);
+
+	private final Object commitLock = new Object();
+
+	/**
+	 * Committed items at or above the watermark, by offset from {@link #committedOffset}.
+	 */
+	private BitSet committed;
+
+	private long committedOffset;
+
+	private long watermark;
+
+	/**
+	 * Creates a reader that reads ahead from the given delegate.
+	 * @param delegate the reader to read from
+	 */
+	public PrefetchingItemReader(ItemStreamReader<T> delegate) {
+		Assert.notNull(delegate, "delegate must not be null");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Sets the maximum number of items read ahead. Rounded up to a power of two. Defaults
+	 * to 1024.
+	 * @param capacity the capacity of the buffer
+	 */
+	public void setCapacity(int capacity) {
+		Assert.isTrue(capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Whether to save the committed watermark and the items committed after it in the
+	 * {@link ExecutionContext}. Defaults to {@code true}.
+	 * @param saveState {@code false} to always start from the first item
+	 */
+	public void setSaveState(boolean saveState) {
+		this.saveState = saveState;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		super.open(executionContext);
+		this.base = !this.saveState ? 0 : executionContext.getLong(getExecutionContextKey(COMMITTED_COUNT), 0L);
+		this.restartCommitted = this.saveState && executionContext.containsKey(getExecutionContextKey(COMMITTED_ABOVE))
+				? BitSet.valueOf((long[]) executionContext.get(getExecutionContextKey(COMMITTED_ABOVE))) : new BitSet();
+		int size = Math.max(2, Integer.highestOneBit(Math.max(1, this.capacity - 1)) << 1);
+		this.buffer = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		this.numbers = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+		this.mask = size - 1;
+		this.head.set(0);
+		this.exhausted = false;
+		this.failure = null;
+		this.closed = false;
+		this.committed = (BitSet) this.restartCommitted.clone();
+		this.committedOffset = this.base;
+		this.watermark = this.base;
+		this.delegate.open(new ExecutionContext());
+		StepContext stepContext = StepSynchronizationManager.getContext();
+		this.stepExecution = stepContext != null ? stepContext.getStepExecution() : null;
+		this.producer = new Thread(this::produce, getExecutionContextKey("prefetch"));
+		this.producer.setDaemon(true);
+		this.producer.start();
+	}
+
+	@Override
+	public T read() throws Exception {
+		int spins = 0;
+		while (true) {
+			long position = this.head.get();
+			int index = (int) (position & this.mask);
+			long difference = this.sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (this.head.compareAndSet(position, position + 1)) {
+					T item = this.buffer.getAndSet(index, null);
+					long number = this.numbers.get(index);
+					this.sequences.set(index, position + this.mask + 1);
+					this.uncommitted.get().add(number);
+					return item;
+				}
+			}
+			else if (difference < 0) {
+				// Empty: check the end of input after the check of the slot, so that an
+				// item published just before the end is not missed
+				if (this.exhausted && this.sequences.get(index) - (position + 1) < 0) {
+					Throwable throwable = this.failure;
+					if (throwable instanceof Exception exception) {
+						throw exception;
+					}
+					if (throwable instanceof Error error) {
+						throw error;
+					}
+					return null;
+				}
+				idle(spins++);
+			}
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		super.update(executionContext);
+		LongList positions = this.uncommitted.get();
+		synchronized (this.commitLock) {
+			for (int i = 0; i < positions.size; i++) {
+				this.committed.set(Math.toIntExact(positions.values[i] - this.committedOffset));
+			}
+			this.watermark = this.committedOffset
+					+ this.committed.nextClearBit((int) (this.watermark - this.committedOffset));
+			// Drops the bits below the watermark once in a while
+			if (this.watermark - this.committedOffset > 1 << 16) {
+				this.committed = this.committed.get((int) (this.watermark - this.committedOffset),
+						Math.max(this.committed.length(), (int) (this.watermark - this.committedOffset)));
+				this.committedOffset = this.watermark;
+			}
+			if (this.saveState) {
+				int offset = (int) (this.watermark - this.committedOffset);
+				executionContext.putLong(getExecutionContextKey(COMMITTED_COUNT), this.watermark);
+				executionContext.put(getExecutionContextKey(COMMITTED_ABOVE),
+						this.committed.get(offset, Math.max(this.committed.length(), offset)).toLongArray());
+			}
+		}
+		positions.clear();
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		super.close();
+		this.closed = true;
+		Thread thread = this.producer;
+		this.producer = null;
+		try {
+			if (thread != null) {
+				thread.join();
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			this.buffer = null;
+			this.delegate.close();
+		}
+	}
+
+	@Override
+	public void beforeChunk(ChunkContext context) {
+		this.uncommitted.get().clear();
+	}
+
+	@Override
+	public void afterChunkError(ChunkContext context) {
+		this.uncommitted.get().clear();
+	}
+
+	private void produce() {
+		if (this.stepExecution != null) {
+			StepSynchronizationManager.register(this.stepExecution);
+		}
+		try {
+			for (long i = 0; i < this.base; i++) {
+				if (this.closed || this.delegate.read() == null) {
+					return;
+				}
+			}
+			long position = 0;
+			long number = this.base;
+			T item;
+			while (!this.closed && (item = this.delegate.read()) != null) {
+				if (number - this.base < this.restartCommitted.length()
+						&& this.restartCommitted.get((int) (number - this.base))) {
+					number++;
+					continue;
+				}
+				int index = (int) (position & this.mask);
+				int spins = 0;
+				// Single producer: wait until the consumer of the previous lap has
+				// taken the item of this slot
+				while (this.sequences.get(index) != position) {
+					if (this.closed) {
+						return;
+					}
+					idle(spins++);
+				}
+				this.buffer.set(index, item);
+				this.numbers.set(index, number);
+				this.sequences.set(index, position + 1);
+				position++;
+				number++;
+			}
+		}
+		catch (Throwable ex) {
+			this.failure = ex;
+		}
+		finally {
+			this.exhausted = true;
+			if (this.stepExecution != null) {
+				StepSynchronizationManager.close();
+			}
+		}
+	}
+
+	private static void idle(int spins) {
+		if (spins < SPINS) {
+			Thread.onSpinWait();
+		}
+		else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Growable list of primitive longs.
+	 */
+	private static final class LongList {
+
+		private long[] values = new long[64];
+
+		private int size;
+
+		private void add(long value) {
+			if (this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+			this.values[this.size++] = value;
+		}
+
+		private void clear() {
+			this.size = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.example.batch.jdbc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+/**
+ * Renders a MyBatis mapped statement as plain SQL, with its parameters inlined as
+ * PostgreSQL literals.
+ * <p>
+ * Needed for statements that cannot take bind parameters, such as the query of a
+ * {@code COPY (...) TO STDOUT}. Only parameters of simple types are supported: strings,
+ * integral numbers, {@link BigDecimal}, booleans, {@link LocalDate},
+ * {@link LocalDateTime} and {@link java.sql.Date}. Strings are quoted assuming
+ * {@code standard_conforming_strings} is on, the default since PostgreSQL 9.1.
+ * </p>
+ */
+public final class MyBatisStatementRenderer {
+
+	private MyBatisStatementRenderer() {
+	}
+
+	/**
+	 * Renders a mapped statement.
+	 * @param configuration the MyBatis configuration
+	 * @param statementId the ID of the mapped statement
+	 * @param parameterObject the parameter of the statement
+	 * @return the SQL with the parameters inlined
+	 * @throws IllegalArgumentException if a parameter has an unsupported type
+	 */
+	public static String render(Configuration configuration, String statementId, Object parameterObject) {
+		MappedStatement mappedStatement = configuration.getMappedStatement(statementId);
+		BoundSql boundSql = mappedStatement.getBoundSql(parameterObject);
+		List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+		TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+		MetaObject metaObject = parameterObject == null ? null : configuration.newMetaObject(parameterObject);
+
+		String sql = boundSql.getSql();
+		StringBuilder rendered = new StringBuilder(sql.length() + 16 * parameterMappings.size());
+		int parameterIndex = 0;
+		char quote = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				// Inside a string literal or quoted identifier
+				if (c == quote) {
+					quote = 0;
+				}
+				rendered.append(c);
+			}
+			else if (c == '\'' || c == '"') {
+				quote = c;
+				rendered.append(c);
+			}
+			else if (c == '?') {
+				ParameterMapping parameterMapping = parameterMappings.get(parameterIndex++);
+				// Resolves the value the same way as DefaultParameterHandler
+				String property = parameterMapping.getProperty();
+				Object value;
+				if (boundSql.hasAdditionalParameter(property)) {
+					value = boundSql.getAdditionalParameter(property);
+				}
+				else if (parameterObject == null) {
+					value = null;
+				}
+				else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+					value = parameterObject;
+				}
+				else {
+					value = metaObject.getValue(property);
+				}
+				rendered.append(toLiteral(value));
+			}
+			else {
+				rendered.append(c);
+			}
+		}
+		return rendered.toString();
+	}
+
+	/**
+	 * Returns the PostgreSQL literal of a value.
+	 * @param value the value
+	 * @return the literal
+	 * @throws IllegalArgumentException if the value has an unsupported type
+	 */
+	public static String toLiteral(Object value) {
+		if (value == null) {
+			return "NULL";
+		}
+		if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+				|| value instanceof BigInteger) {
+			return number(value.toString());
+		}
+		if (value instanceof BigDecimal decimal) {
+			return number(decimal.toPlainString());
+		}
+		if (value instanceof Boolean bool) {
+			return bool ? "TRUE" : "FALSE";
+		}
+		if (value instanceof String || value instanceof Character) {
+			return quote(value.toString());
+		}
+		if (value instanceof LocalDate || value instanceof java.sql.Date) {
+			return "DATE " + quote(value.toString());
+		}
+		if (value instanceof LocalDateTime) {
+			return "TIMESTAMP " + quote(value.toString());
+		}
+		throw new IllegalArgumentException("Unsupported parameter type: " + value.getClass().getName());
+	}
+
+	// A negative number is parenthesized so that its sign cannot form a comment ("--")
+	// with a preceding minus operator
+	private static String number(String value) {
+		return value.startsWith("-") ? "(" + value + ")" : value;
+	}
+
+	/**
+	 * Returns a string as a PostgreSQL string literal.
+	 * @param value the string
+	 * @return the quoted string
+	 */
+	public static String quote(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+}
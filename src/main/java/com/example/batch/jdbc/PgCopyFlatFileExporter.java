@@ -0,0 +1,450 @@
+package com.example.batch.jdbc;
+
+import com.example.batch.file.NoOpConverter;
+import com.example.batch.file.OutputFileColumn;
+import com.example.batch.file.OutputFileColumnFormatter;
+import com.example.batch.file.PaddingType;
+import com.example.batch.file.TrimType;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.util.Assert;
+
+/**
+ * Exports the result of a query to a flat file with PostgreSQL's
+ * {@code COPY (...) TO STDOUT}, formatted like
+ * {@link com.example.batch.file.OutputFileColumnLineAggregator} would format the items.
+ * <p>
+ * The {@link OutputFileColumn} annotations of the output class are translated into SQL
+ * expressions ({@code to_char}, {@code ltrim}, {@code lpad}, ...), so the database
+ * returns every line already formatted and the rows are never mapped to objects. The text
+ * received from the driver is only unescaped and transcoded to the file encoding. Columns
+ * that cannot be expressed in SQL, those with a {@code stringConverter} or a
+ * {@link BigDecimal} {@code columnFormat}, are returned raw and formatted in Java by an
+ * {@link OutputFileColumnFormatter}.
+ * </p>
+ * <p>
+ * The query must return one column per annotated field, named after the field (e.g.
+ * {@code SHITENNAME AS "shitenName"}). Supported field types are strings, integral
+ * numbers, booleans, {@link BigDecimal}, {@link LocalDate}, and {@link Date} with a
+ * {@code columnFormat} made of the patterns {@code yyyy}, {@code yy}, {@code M},
+ * {@code d}, {@code H}, {@code m}, {@code s} (one or two letters), {@code SSS} and
+ * literal text. The connection is taken from the current transaction, if any.
+ * </p>
+ *
+ * @param <T> the output class whose fields carry the {@link OutputFileColumn} annotations
+ */
+public class PgCopyFlatFileExporter<T> {
+
+	private final DataSource dataSource;
+
+	private final String delimiter;
+
+	/**
+	 * The output line, made of SQL formatted column groups and Java formatted columns.
+	 */
+	private final List<Segment> segments = new ArrayList<>();
+
+	private final boolean javaFormatted;
+
+	private Charset encoding = Charset.forName("Windows-31J");
+
+	private String lineSeparator = System.lineSeparator();
+
+	/**
+	 * Creates an exporter for the given output class.
+	 * @param dataSource the PostgreSQL data source
+	 * @param targetType the output class
+	 * @param delimiter the column delimiter
+	 * @throws IllegalArgumentException if a field has an unsupported type or format
+	 */
+	public PgCopyFlatFileExporter(DataSource dataSource, Class<T> targetType, String delimiter) {
+		Assert.notNull(dataSource, "dataSource must not be null");
+		Assert.notNull(delimiter, "delimiter must not be null");
+		this.dataSource = dataSource;
+		this.delimiter = delimiter;
+		var fields = Arrays.stream(targetType.getDeclaredFields())
+			.filter(field -> field.isAnnotationPresent(OutputFileColumn.class))
+			.sorted(Comparator.comparingInt(field -> field.getAnnotation(OutputFileColumn.class).columnIndex()))
+			.toList();
+		Assert.notEmpty(fields, "No fields with OutputFileColumn annotation found in class " + targetType.getName());
+		for (var field : fields) {
+			OutputFileColumn column = field.getAnnotation(OutputFileColumn.class);
+			String reference = "t." + quoteIdentifier(field.getName());
+			String expression = toSqlExpression(reference, field.getType(), column);
+			Segment last = this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1);
+			if (expression != null && last != null && last.formatter == null) {
+				last.expression += " || " + MyBatisStatementRenderer.quote(delimiter) + " || " + expression;
+			}
+			else if (expression != null) {
+				this.segments.add(new Segment(expression, null, null));
+			}
+			else {
+				this.segments.add(new Segment(reference + "::text", new OutputFileColumnFormatter(column),
+						parserFor(field.getType(), targetType, field.getName())));
+			}
+		}
+		this.javaFormatted = this.segments.size() > 1 || this.segments.get(0).formatter != null;
+	}
+
+	/**
+	 * Sets the encoding of the file. Defaults to Windows-31J. Characters that cannot be
+	 * encoded are replaced, as by
+	 * {@link org.springframework.batch.item.file.FlatFileItemWriter}.
+	 * @param encoding the encoding
+	 */
+	public void setEncoding(String encoding) {
+		this.encoding = Charset.forName(encoding);
+	}
+
+	/**
+	 * Sets the line separator. Defaults to the system line separator.
+	 * @param lineSeparator the line separator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Returns the {@code COPY} statement exporting the result of a query.
+	 * @param query the query returning the fields of the output class
+	 * @return the {@code COPY} statement
+	 */
+	public String getCopyStatement(String query) {
+		StringBuilder statement = new StringBuilder("COPY (SELECT ");
+		for (int i = 0; i < this.segments.size(); i++) {
+			if (i > 0) {
+				statement.append(", ");
+			}
+			statement.append(this.segments.get(i).expression);
+		}
+		return statement.append(" FROM (").append(query).append(") t) TO STDOUT").toString();
+	}
+
+	/**
+	 * Exports the result of a query to a file, replacing its content.
+	 * @param query the query returning the fields of the output class, without bind
+	 * parameters (see {@link MyBatisStatementRenderer})
+	 * @param file the file to write
+	 * @return the number of lines written
+	 * @throws IOException if the file cannot be written
+	 * @throws SQLException if the query fails
+	 */
+	public long export(String query, Path file) throws IOException, SQLException {
+		Connection connection = DataSourceUtils.getConnection(this.dataSource);
+		try (Writer writer = copyTextWriter(
+				new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), this.encoding), 64 * 1024))) {
+			return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(getCopyStatement(query), writer);
+		}
+		finally {
+			DataSourceUtils.releaseConnection(connection, this.dataSource);
+		}
+	}
+
+	/**
+	 * Returns a writer that turns the text output of {@code COPY ... TO STDOUT} into the
+	 * lines of the file.
+	 * @param out the writer of the file, closed with the returned writer
+	 * @return the writer to pass to the {@code COPY} API
+	 */
+	Writer copyTextWriter(Writer out) {
+		return new CopyTextWriter(out);
+	}
+
+	/**
+	 * Returns the SQL expression of a formatted column, or {@code null} if it must be
+	 * formatted in Java.
+	 */
+	private static String toSqlExpression(String reference, Class<?> type, OutputFileColumn column) {
+		if (!NoOpConverter.class.equals(column.stringConverter()) && type == String.class) {
+			return null;
+		}
+		String value;
+		// Whether the Java value is a String, to which trimming applies
+		boolean string = false;
+		if (type == String.class || type == Character.class || type == char.class) {
+			value = reference + "::text";
+			string = type == String.class;
+		}
+		else if (type == int.class || type == long.class || type == short.class || type == byte.class) {
+			// MyBatis leaves a primitive field at 0 for NULL
+			value = "COALESCE(" + reference + "::bigint, 0)::text";
+		}
+		else if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+			value = reference + "::bigint::text";
+		}
+		else if (type == boolean.class) {
+			value = "COALESCE(" + reference + "::boolean, FALSE)::text";
+		}
+		else if (type == Boolean.class) {
+			value = reference + "::boolean::text";
+		}
+		else if (type == BigDecimal.class) {
+			return null;
+		}
+		else if (type == LocalDate.class) {
+			value = "to_char(" + reference + "::date, 'YYYY-MM-DD')";
+		}
+		else if (Date.class.isAssignableFrom(type) && !column.columnFormat().isEmpty()) {
+			value = "to_char(" + reference + ", "
+					+ MyBatisStatementRenderer.quote(toPgDatePattern(column.columnFormat())) + ")";
+			string = true;
+		}
+		else {
+			throw new IllegalArgumentException("Unsupported field type for COPY export: " + type.getName());
+		}
+
+		if (string && column.trimType() != TrimType.NONE) {
+			String function = switch (column.trimType()) {
+				case LEFT -> "ltrim";
+				case RIGHT -> "rtrim";
+				default -> "btrim";
+			};
+			value = function + "(" + value + ", " + MyBatisStatementRenderer.quote(String.valueOf(column.trimChar()))
+					+ ")";
+		}
+		if (column.bytes() > 0 && column.paddingType() != PaddingType.NONE) {
+			// Unlike the Java formatting, lpad and rpad also truncate longer values
+			String function = column.paddingType() == PaddingType.LEFT ? "lpad" : "rpad";
+			value = "CASE WHEN length(" + value + ") < " + column.bytes() + " THEN " + function + "(" + value + ", "
+					+ column.bytes() + ", " + MyBatisStatementRenderer.quote(String.valueOf(column.paddingChar()))
+					+ ") ELSE " + value + " END";
+		}
+		value = "COALESCE(" + value + ", '')";
+		if (column.columnEncloseChar() != Character.MIN_VALUE) {
+			String enclose = MyBatisStatementRenderer.quote(String.valueOf(column.columnEncloseChar()));
+			value = enclose + " || " + value + " || " + enclose;
+		}
+		return value;
+	}
+
+	/**
+	 * Translates a {@link java.text.SimpleDateFormat} pattern into a PostgreSQL
+	 * {@code to_char} template.
+	 */
+	static String toPgDatePattern(String pattern) {
+		StringBuilder template = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if (c == '\'') {
+				// Quoted text, where '' is a single quote
+				int end = i + 1;
+				if (end < pattern.length() && pattern.charAt(end) == '\'') {
+					literal.append('\'');
+					i = end + 1;
+					continue;
+				}
+				while (end < pattern.length()) {
+					if (pattern.charAt(end) == '\'') {
+						if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+							literal.append('\'');
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					literal.append(pattern.charAt(end++));
+				}
+				Assert.isTrue(end < pattern.length(), "Unterminated quote in date pattern: " + pattern);
+				i = end + 1;
+				continue;
+			}
+			if (!Character.isLetter(c)) {
+				literal.append(c);
+				i++;
+				continue;
+			}
+			int count = 1;
+			while (i + count < pattern.length() && pattern.charAt(i + count) == c) {
+				count++;
+			}
+			String field = switch (c + String.valueOf(count)) {
+				case "y4" -> "YYYY";
+				case "y2" -> "YY";
+				case "M2" -> "MM";
+				case "M1" -> "FMMM";
+				case "d2" -> "DD";
+				case "d1" -> "FMDD";
+				case "H2" -> "HH24";
+				case "H1" -> "FMHH24";
+				case "m2" -> "MI";
+				case "m1" -> "FMMI";
+				case "s2" -> "SS";
+				case "s1" -> "FMSS";
+				case "S3" -> "MS";
+				default -> throw new IllegalArgumentException(
+						"Unsupported date pattern '" + pattern.substring(i, i + count) + "' in " + pattern);
+			};
+			appendLiteral(template, literal);
+			template.append(field);
+			i += count;
+		}
+		appendLiteral(template, literal);
+		return template.toString();
+	}
+
+	private static void appendLiteral(StringBuilder template, StringBuilder literal) {
+		if (!literal.isEmpty()) {
+			template.append('"').append(literal.toString().replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+			literal.setLength(0);
+		}
+	}
+
+	private static Function<String, Object> parserFor(Class<?> type, Class<?> targetType, String fieldName) {
+		if (type == String.class) {
+			return value -> value;
+		}
+		if (type == BigDecimal.class) {
+			return BigDecimal::new;
+		}
+		throw new IllegalArgumentException(
+				"Unsupported field type for COPY export: " + targetType.getName() + "#" + fieldName);
+	}
+
+	private static String quoteIdentifier(String identifier) {
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
+
+	private static final class Segment {
+
+		private String expression;
+
+		private final OutputFileColumnFormatter formatter;
+
+		private final Function<String, Object> parser;
+
+		private Segment(String expression, OutputFileColumnFormatter formatter, Function<String, Object> parser) {
+			this.expression = expression;
+			this.formatter = formatter;
+			this.parser = parser;
+		}
+
+	}
+
+	/**
+	 * Turns the output of {@code COPY ... TO STDOUT} (text format) into the lines of the
+	 * file. When every column is formatted by the database, the text is unescaped as it
+	 * streams through; otherwise each row is split into its columns first.
+	 */
+	private final class CopyTextWriter extends Writer {
+
+		private final Writer out;
+
+		private final StringBuilder row = new StringBuilder();
+
+		private boolean escape;
+
+		private CopyTextWriter(Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(char[] buffer, int offset, int length) throws IOException {
+			for (int i = offset; i < offset + length; i++) {
+				char c = buffer[i];
+				if (javaFormatted) {
+					if (c == '\n') {
+						writeRow();
+					}
+					else {
+						this.row.append(c);
+					}
+				}
+				else if (this.escape) {
+					this.out.write(unescape(c));
+					this.escape = false;
+				}
+				else if (c == '\\') {
+					this.escape = true;
+				}
+				else if (c == '\n') {
+					this.out.write(lineSeparator);
+				}
+				else {
+					this.out.write(c);
+				}
+			}
+		}
+
+		private void writeRow() throws IOException {
+			int start = 0;
+			for (int i = 0; i < segments.size(); i++) {
+				int end = this.row.indexOf("\t", start);
+				if (end < 0) {
+					end = this.row.length();
+				}
+				String text = this.row.substring(start, end);
+				start = end + 1;
+				if (i > 0) {
+					this.out.write(delimiter);
+				}
+				Segment segment = segments.get(i);
+				if (segment.formatter == null) {
+					this.out.write(unescape(text));
+				}
+				else {
+					Object value = text.equals("\\N") ? null : segment.parser.apply(unescape(text));
+					this.out.write(Objects.toString(segment.formatter.format(value), ""));
+				}
+			}
+			this.out.write(lineSeparator);
+			this.row.setLength(0);
+		}
+
+		private static String unescape(String text) {
+			if (text.indexOf('\\') < 0) {
+				return text;
+			}
+			StringBuilder unescaped = new StringBuilder(text.length());
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				unescaped.append(c == '\\' && i + 1 < text.length() ? unescape(text.charAt(++i)) : c);
+			}
+			return unescaped.toString();
+		}
+
+		private static char unescape(char c) {
+			return switch (c) {
+				case 'b' -> '\b';
+				case 'f' -> '\f';
+				case 'n' -> '\n';
+				case 'r' -> '\r';
+				case 't' -> '\t';
+				case 'v' -> '\u000B';
+				default -> c;
+			};
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,316 @@
+package com.example.batch.jdbc;
+
+import com.example.batch.file.NoOpConverter;
+import com.example.batch.file.OutputFileColumn;
+import com.example.batch.file.OutputFileColumnFormatter;
+import com.example.batch.file.PaddingType;
+import com.example.batch.file.TrimType;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import org.springframework.util.Assert;
+
+/**
+ * Writes the rows of a {@link ResultSet} to a flat file, formatted like
+ * {@link com.example.batch.file.OutputFileColumnLineAggregator} would format the items,
+ * without mapping the rows to objects.
+ * <p>
+ * The {@link OutputFileColumn} fields of the output class are bound once per export to
+ * the result set columns of the same name, each with a reader that calls the JDBC getter
+ * matching the field type. Columns without formatting other than a date pattern are
+ * appended to a reusable line buffer directly from the getter (numbers without any
+ * intermediate string); the others go through an {@link OutputFileColumnFormatter}. Each
+ * line is encoded into a reusable byte buffer, which is written to the file when full.
+ * </p>
+ * <p>
+ * Supported field types are strings, primitive and boxed integral numbers, booleans,
+ * {@link BigDecimal}, {@link LocalDate} and {@link Date}. As with MyBatis, a {@code NULL}
+ * is read as 0 for a primitive field. Characters that cannot be encoded are replaced, as
+ * by {@link org.springframework.batch.item.file.FlatFileItemWriter}.
+ * </p>
+ *
+ * @param <T> the output class whose fields carry the {@link OutputFileColumn} annotations
+ */
+public class ResultSetFlatFileExporter<T> {
+
+	private final List<FieldColumn> fields;
+
+	private final String delimiter;
+
+	private Charset encoding = Charset.forName("Windows-31J");
+
+	private String lineSeparator = System.lineSeparator();
+
+	private int bufferSize = 64 * 1024;
+
+	/**
+	 * Creates an exporter for the given output class.
+	 * @param targetType the output class
+	 * @param delimiter the column delimiter
+	 * @throws IllegalArgumentException if a field has an unsupported type
+	 */
+	public ResultSetFlatFileExporter(Class<T> targetType, String delimiter) {
+		Assert.notNull(delimiter, "delimiter must not be null");
+		this.delimiter = delimiter;
+		this.fields = Arrays.stream(targetType.getDeclaredFields())
+			.filter(field -> field.isAnnotationPresent(OutputFileColumn.class))
+			.sorted(Comparator.comparingInt(field -> field.getAnnotation(OutputFileColumn.class).columnIndex()))
+			.map(field -> new FieldColumn(field.getName(), field.getType(),
+					field.getAnnotation(OutputFileColumn.class)))
+			.toList();
+		Assert.notEmpty(this.fields,
+				"No fields with OutputFileColumn annotation found in class " + targetType.getName());
+	}
+
+	/**
+	 * Sets the encoding of the file. Defaults to Windows-31J.
+	 * @param encoding the encoding
+	 */
+	public void setEncoding(String encoding) {
+		this.encoding = Charset.forName(encoding);
+	}
+
+	/**
+	 * Sets the line separator. Defaults to the system line separator.
+	 * @param lineSeparator the line separator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Sets the size of the output buffer in bytes. Defaults to 64 KiB.
+	 * @param bufferSize the buffer size
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.isTrue(bufferSize >= 16, "bufferSize must be at least 16");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Writes the remaining rows of a result set to a file, replacing its content.
+	 * @param resultSet the result set, with one column named after each field
+	 * @param file the file to write
+	 * @return the number of lines written
+	 * @throws SQLException if a column is missing or cannot be read
+	 * @throws IOException if the file cannot be written
+	 */
+	public long export(ResultSet resultSet, Path file) throws SQLException, IOException {
+		ColumnReader[] readers = new ColumnReader[this.fields.size()];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = this.fields.get(i).bind(resultSet);
+		}
+		CharsetEncoder encoder = this.encoding.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		StringBuilder line = new StringBuilder(256);
+		char[] chars = new char[256];
+		CharBuffer charBuffer = CharBuffer.wrap(chars);
+		ByteBuffer bytes = ByteBuffer.allocateDirect(this.bufferSize);
+		long count = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (resultSet.next()) {
+				line.setLength(0);
+				for (int i = 0; i < readers.length; i++) {
+					if (i > 0) {
+						line.append(this.delimiter);
+					}
+					readers[i].append(resultSet, line);
+				}
+				line.append(this.lineSeparator);
+				if (chars.length < line.length()) {
+					chars = new char[Math.max(line.length(), chars.length * 2)];
+					charBuffer = CharBuffer.wrap(chars);
+				}
+				line.getChars(0, line.length(), chars, 0);
+				charBuffer.clear().limit(line.length());
+				encode(encoder, charBuffer, bytes, channel, false);
+				count++;
+			}
+			encode(encoder, CharBuffer.allocate(0), bytes, channel, true);
+			while (encoder.flush(bytes).isOverflow()) {
+				drain(bytes, channel);
+			}
+			drain(bytes, channel);
+		}
+		return count;
+	}
+
+	private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes, FileChannel channel,
+			boolean endOfInput) throws IOException {
+		while (true) {
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			if (!result.isOverflow()) {
+				return;
+			}
+			drain(bytes, channel);
+		}
+	}
+
+	private static void drain(ByteBuffer bytes, FileChannel channel) throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * Reads one column of the current row and appends it formatted to the line.
+	 */
+	@FunctionalInterface
+	private interface ColumnReader {
+
+		void append(ResultSet resultSet, StringBuilder line) throws SQLException;
+
+	}
+
+	/**
+	 * An annotated field of the output class.
+	 */
+	private static final class FieldColumn {
+
+		private final String name;
+
+		private final Class<?> type;
+
+		private final OutputFileColumnFormatter formatter;
+
+		/**
+		 * Whether the value is written as is, apart from a date pattern.
+		 */
+		private final boolean plain;
+
+		private FieldColumn(String name, Class<?> type, OutputFileColumn column) {
+			this.name = name;
+			this.type = type;
+			this.formatter = new OutputFileColumnFormatter(column);
+			this.plain = NoOpConverter.class.equals(column.stringConverter()) && column.trimType() == TrimType.NONE
+					&& (column.bytes() <= 0 || column.paddingType() == PaddingType.NONE)
+					&& column.columnEncloseChar() == Character.MIN_VALUE;
+			Assert.isTrue(type == String.class || type == int.class || type == Integer.class || type == long.class
+					|| type == Long.class || type == short.class || type == Short.class || type == boolean.class
+					|| type == Boolean.class || type == BigDecimal.class || type == LocalDate.class
+					|| Date.class.isAssignableFrom(type), () -> "Unsupported field type: " + type.getName());
+		}
+
+		private ColumnReader bind(ResultSet resultSet) throws SQLException {
+			int index = resultSet.findColumn(this.name);
+			if (this.plain && (type == int.class || type == long.class || type == short.class)) {
+				// A primitive field is 0 for NULL, so the value is always written
+				return (rs, line) -> line.append(rs.getLong(index));
+			}
+			if (this.plain && (type == Integer.class || type == Long.class || type == Short.class)) {
+				return (rs, line) -> {
+					long value = rs.getLong(index);
+					if (!rs.wasNull()) {
+						line.append(value);
+					}
+				};
+			}
+			if (this.plain && type == String.class) {
+				return (rs, line) -> {
+					String value = rs.getString(index);
+					if (value != null) {
+						line.append(value);
+					}
+				};
+			}
+			DateTimeFormatter dateFormatter = this.plain && Date.class.isAssignableFrom(type)
+					? toDateFormatter(this.formatter.getColumn().columnFormat()) : null;
+			if (dateFormatter != null && resultSet.getMetaData().getColumnType(index) == Types.DATE) {
+				return (rs, line) -> {
+					LocalDate value = rs.getObject(index, LocalDate.class);
+					if (value != null) {
+						dateFormatter.formatTo(value, line);
+					}
+				};
+			}
+			return (rs, line) -> {
+				Object value = read(rs, index);
+				Object formatted = this.formatter.format(value);
+				if (formatted != null) {
+					line.append(formatted);
+				}
+			};
+		}
+
+		private Object read(ResultSet resultSet, int index) throws SQLException {
+			if (type == String.class) {
+				return resultSet.getString(index);
+			}
+			if (type == int.class || type == Integer.class) {
+				int value = resultSet.getInt(index);
+				return resultSet.wasNull() && type == Integer.class ? null : value;
+			}
+			if (type == long.class || type == Long.class) {
+				long value = resultSet.getLong(index);
+				return resultSet.wasNull() && type == Long.class ? null : value;
+			}
+			if (type == short.class || type == Short.class) {
+				short value = resultSet.getShort(index);
+				return resultSet.wasNull() && type == Short.class ? null : value;
+			}
+			if (type == boolean.class || type == Boolean.class) {
+				boolean value = resultSet.getBoolean(index);
+				return resultSet.wasNull() && type == Boolean.class ? null : value;
+			}
+			if (type == BigDecimal.class) {
+				return resultSet.getBigDecimal(index);
+			}
+			if (type == LocalDate.class) {
+				return resultSet.getObject(index, LocalDate.class);
+			}
+			return resultSet.getTimestamp(index);
+		}
+
+		/**
+		 * Returns the {@link DateTimeFormatter} printing a {@link LocalDate} like the
+		 * given {@link java.text.SimpleDateFormat} pattern prints a date, or {@code null}
+		 * if the pattern uses letters other than {@code y}, {@code M} and {@code d} or
+		 * characters reserved by {@link DateTimeFormatter}.
+		 */
+		private static DateTimeFormatter toDateFormatter(String pattern) {
+			if (pattern.isEmpty()) {
+				return null;
+			}
+			boolean quoted = false;
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = pattern.charAt(i);
+				if (c == '\'') {
+					quoted = !quoted;
+				}
+				else if (!quoted
+						&& ((Character.isLetter(c) && c != 'y' && c != 'M' && c != 'd') || "[]{}#".indexOf(c) >= 0)) {
+					return null;
+				}
+			}
+			// A single 'y' prints the full year in SimpleDateFormat, but 'y' and 'yyy'
+			// differ in DateTimeFormatter
+			if (pattern.replaceAll("'[^']*'", "").matches(".*(?<!y)(y|yyy)(?!y).*")) {
+				return null;
+			}
+			return DateTimeFormatter.ofPattern(pattern);
+		}
+
+	}
+
+}
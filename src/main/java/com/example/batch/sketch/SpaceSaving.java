@@ -0,0 +1,190 @@
+package com.example.batch.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.util.Assert;
+
+/**
+ * Finds the items with the largest total weight, e.g. the customers with the largest
+ * amounts, with a fixed number of counters (the Space-Saving algorithm).
+ * <p>
+ * An item that is not counted yet takes over the counter with the smallest count when all
+ * counters are in use, inheriting that count as its error. The count of an item is thus
+ * an upper bound of its true weight and {@code count - error} a lower bound, and every
+ * item heavier than the total weight divided by the capacity is counted. Finding the
+ * smallest counter scans all counters, which is cheap for the small capacities a top list
+ * needs.
+ * </p>
+ * <p>
+ * Sketches are combined with {@link #merge} (the mergeable summary of Agarwal et al.): an
+ * item missing from one sketch is charged that sketch's smallest count, and the largest
+ * counters are kept. Not thread-safe.
+ * </p>
+ *
+ * @param <T> type of the items
+ */
+public final class SpaceSaving<T> {
+
+	private final int capacity;
+
+	private final Map<T, Counter<T>> counters;
+
+	/**
+	 * Creates an empty sketch.
+	 * @param capacity the number of counters, larger than the number of top items wanted
+	 * for accurate results
+	 */
+	public SpaceSaving(int capacity) {
+		Assert.isTrue(capacity > 0, "capacity must be positive");
+		this.capacity = capacity;
+		this.counters = new HashMap<>(capacity * 2);
+	}
+
+	/**
+	 * Creates a sketch with the counters of another one, e.g. read back from a file.
+	 * @param <T> type of the items
+	 * @param capacity the number of counters
+	 * @param entries the counters, as returned by {@link #top(int)}
+	 * @return the sketch
+	 */
+	public static <T> SpaceSaving<T> of(int capacity, List<Entry<T>> entries) {
+		Assert.isTrue(entries.size() <= capacity, "entries must not exceed the capacity");
+		SpaceSaving<T> sketch = new SpaceSaving<>(capacity);
+		for (Entry<T> entry : entries) {
+			sketch.counters.put(entry.item(), new Counter<>(entry.item(), entry.count(), entry.error()));
+		}
+		return sketch;
+	}
+
+	/**
+	 * Adds a weight to an item. {@code null} is ignored.
+	 * @param item the item
+	 * @param weight the non-negative weight
+	 */
+	public void add(T item, long weight) {
+		Assert.isTrue(weight >= 0, "weight must not be negative");
+		if (item == null) {
+			return;
+		}
+		Counter<T> counter = this.counters.get(item);
+		if (counter != null) {
+			counter.count += weight;
+		}
+		else if (this.counters.size() < this.capacity) {
+			this.counters.put(item, new Counter<>(item, weight, 0));
+		}
+		else {
+			Counter<T> min = minCounter();
+			this.counters.remove(min.item);
+			min.item = item;
+			min.error = min.count;
+			min.count += weight;
+			this.counters.put(item, min);
+		}
+	}
+
+	/**
+	 * Adds the items of another sketch to this sketch.
+	 * @param other the other sketch
+	 */
+	public void merge(SpaceSaving<T> other) {
+		long thisMin = minCount();
+		long otherMin = other.minCount();
+		List<Counter<T>> merged = new ArrayList<>(this.counters.size() + other.counters.size());
+		for (Counter<T> counter : this.counters.values()) {
+			Counter<T> otherCounter = other.counters.get(counter.item);
+			merged.add(otherCounter != null
+					? new Counter<>(counter.item, counter.count + otherCounter.count,
+							counter.error + otherCounter.error)
+					: new Counter<>(counter.item, counter.count + otherMin, counter.error + otherMin));
+		}
+		for (Counter<T> otherCounter : other.counters.values()) {
+			if (!this.counters.containsKey(otherCounter.item)) {
+				merged
+					.add(new Counter<>(otherCounter.item, otherCounter.count + thisMin, otherCounter.error + thisMin));
+			}
+		}
+		merged.sort(Comparator.comparingLong((Counter<T> counter) -> counter.count).reversed());
+		this.counters.clear();
+		for (Counter<T> counter : merged.subList(0, Math.min(this.capacity, merged.size()))) {
+			this.counters.put(counter.item, counter);
+		}
+	}
+
+	/**
+	 * Returns the items with the largest counts.
+	 * @param n the maximum number of items
+	 * @return the items, largest count first
+	 */
+	public List<Entry<T>> top(int n) {
+		return this.counters.values()
+			.stream()
+			.sorted(Comparator.comparingLong((Counter<T> counter) -> counter.count).reversed())
+			.limit(n)
+			.map((counter) -> new Entry<>(counter.item, counter.count, counter.error))
+			.toList();
+	}
+
+	/**
+	 * Returns the number of counters.
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the approximate number of bytes of the counters in use, not counting the
+	 * items.
+	 * @return the memory usage in bytes
+	 */
+	public long memoryUsage() {
+		// Counter object and hash map entry per item, and the table once allocated
+		return this.counters.isEmpty() ? 0 : this.capacity * 8L + this.counters.size() * 72L;
+	}
+
+	private long minCount() {
+		return this.counters.size() < this.capacity ? 0 : minCounter().count;
+	}
+
+	private Counter<T> minCounter() {
+		Counter<T> min = null;
+		for (Counter<T> counter : this.counters.values()) {
+			if (min == null || counter.count < min.count) {
+				min = counter;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * An item with its count.
+	 *
+	 * @param <T> type of the item
+	 * @param item the item
+	 * @param count the upper bound of its total weight
+	 * @param error the maximum overestimation of the count
+	 */
+	public record Entry<T>(T item, long count, long error) {
+	}
+
+	private static final class Counter<T> {
+
+		private T item;
+
+		private long count;
+
+		private long error;
+
+		private Counter(T item, long count, long error) {
+			this.item = item;
+			this.count = count;
+			this.error = error;
+		}
+
+	}
+
+}
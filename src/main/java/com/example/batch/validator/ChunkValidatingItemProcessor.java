@@ -0,0 +1,103 @@
+package com.example.batch.validator;
+
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.validator.ValidationException;
+import org.springframework.util.Assert;
+
+/**
+ * {@link ItemProcessor} that validates items with a
+ * {@link CompiledValidatingItemProcessor} and reports the violations once per chunk
+ * instead of once per item.
+ * <p>
+ * When filtering, invalid items are filtered as with the delegate, so the step counts
+ * them in its filter count, and the violations of the chunk are counted per constraint.
+ * The processor is also a {@link ChunkListener}, registered automatically with the step,
+ * that logs a single summary of those violations once the chunk is committed. Otherwise
+ * the first invalid item fails the chunk with a {@link ValidationException}, as with the
+ * delegate.
+ * </p>
+ * <p>
+ * The violations are counted per chunk, so the processor must not be shared by concurrent
+ * chunks.
+ * </p>
+ *
+ * @param <T> type of item to validate
+ */
+public class ChunkValidatingItemProcessor<T> implements ItemProcessor<T, T>, ChunkListener {
+
+	private final Logger logger = LoggerFactory.getLogger(ChunkValidatingItemProcessor.class);
+
+	private final CompiledValidatingItemProcessor<T> validator;
+
+	private final int[] counts;
+
+	private boolean filter = false;
+
+	private int processed = 0;
+
+	private int filtered = 0;
+
+	/**
+	 * Creates a processor that validates the items with the given constraints.
+	 * @param validator the compiled constraints of the items
+	 */
+	public ChunkValidatingItemProcessor(CompiledValidatingItemProcessor<T> validator) {
+		Assert.notNull(validator, "validator must not be null");
+		this.validator = validator;
+		this.counts = validator.newViolationCounts();
+	}
+
+	/**
+	 * Whether to filter invalid items (return {@code null}) instead of throwing a
+	 * {@link ValidationException}. Defaults to {@code false}.
+	 * @param filter {@code true} to filter invalid items
+	 */
+	public void setFilter(boolean filter) {
+		this.filter = filter;
+	}
+
+	@Override
+	public T process(T item) throws ValidationException {
+		if (!this.filter) {
+			return this.validator.process(item);
+		}
+		this.processed++;
+		if (this.validator.validate(item, this.counts)) {
+			return item;
+		}
+		this.filtered++;
+		return null;
+	}
+
+	@Override
+	public void beforeChunk(ChunkContext context) {
+		reset();
+	}
+
+	@Override
+	public void afterChunk(ChunkContext context) {
+		if (this.filtered > 0) {
+			this.logger.info("Filtered {} of {} items: {}", this.filtered, this.processed,
+					this.validator.report(this.filtered, this.counts).violations());
+		}
+		reset();
+	}
+
+	@Override
+	public void afterChunkError(ChunkContext context) {
+		// The chunk was rolled back, so its violations are not reported
+		reset();
+	}
+
+	private void reset() {
+		this.processed = 0;
+		this.filtered = 0;
+		Arrays.fill(this.counts, 0);
+	}
+
+}
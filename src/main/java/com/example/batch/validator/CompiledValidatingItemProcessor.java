@@ -0,0 +1,369 @@
+package com.example.batch.validator;
+
+import jakarta.validation.Constraint;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.validator.ValidationException;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * {@link ItemProcessor} that validates items against their Bean Validation constraints
+ * without going through a {@link jakarta.validation.Validator} for every item.
+ * <p>
+ * The constraints declared on the fields of the target class are resolved once, when the
+ * processor is created, into an array of checks that read the field through a
+ * {@link MethodHandle}. Validating an item then only runs those checks one after another.
+ * It can be used in place of
+ * {@link org.springframework.batch.item.validator.BeanValidatingItemProcessor} and
+ * follows the same {@link #setFilter(boolean) filter} semantics.
+ * </p>
+ * <p>
+ * Only the built-in constraints {@code @NotNull}, {@code @NotEmpty}, {@code @NotBlank},
+ * {@code @Size}, {@code @Min}, {@code @Max}, {@code @Positive}, {@code @PositiveOrZero}
+ * and {@code @Pattern} on instance fields in the default group are supported; static
+ * fields are ignored, as Bean Validation does. Any other constraint (custom constraints,
+ * class or getter level constraints, groups) is rejected when the processor is created
+ * rather than silently ignored.
+ * </p>
+ *
+ * @param <T> type of item to validate
+ */
+public class CompiledValidatingItemProcessor<T> implements ItemProcessor<T, T> {
+
+	private final Check[] checks;
+
+	private boolean filter = false;
+
+	/**
+	 * Creates a processor for the given item class.
+	 * @param targetType the class of the items to validate
+	 * @throws IllegalArgumentException if the class declares an unsupported constraint
+	 */
+	public CompiledValidatingItemProcessor(Class<T> targetType) {
+		this.checks = compile(targetType);
+	}
+
+	/**
+	 * Whether to filter invalid items (return {@code null}) instead of throwing a
+	 * {@link ValidationException}. Defaults to {@code false}.
+	 * @param filter {@code true} to filter invalid items
+	 */
+	public void setFilter(boolean filter) {
+		this.filter = filter;
+	}
+
+	@Override
+	public T process(T item) throws ValidationException {
+		for (Check check : this.checks) {
+			if (!check.isValid(item)) {
+				if (this.filter) {
+					return null;
+				}
+				throw new ValidationException("Validation failed for " + item + ": " + check.describe());
+			}
+		}
+		return item;
+	}
+
+	/**
+	 * Validates a whole chunk. Invalid items are always left out of the returned chunk,
+	 * regardless of the {@link #setFilter(boolean) filter} setting.
+	 * @param chunk the items to validate
+	 * @return the valid items and a report of the violations found
+	 */
+	public Result<T> validate(Chunk<? extends T> chunk) {
+		Chunk<T> valid = new Chunk<>();
+		int[] counts = newViolationCounts();
+		int invalidItems = 0;
+		for (T item : chunk) {
+			if (validate(item, counts)) {
+				valid.add(item);
+			}
+			else {
+				invalidItems++;
+			}
+		}
+		return new Result<>(valid, report(invalidItems, counts));
+	}
+
+	/**
+	 * Creates the array in which {@link #validate(Object, int[])} counts the violations
+	 * of each check.
+	 */
+	int[] newViolationCounts() {
+		return new int[this.checks.length];
+	}
+
+	/**
+	 * Runs every check on an item and counts its violations.
+	 * @param item the item to validate
+	 * @param counts the violations per check, from {@link #newViolationCounts()}
+	 * @return {@code true} if the item is valid
+	 */
+	boolean validate(T item, int[] counts) {
+		boolean valid = true;
+		for (int i = 0; i < this.checks.length; i++) {
+			if (!this.checks[i].isValid(item)) {
+				counts[i]++;
+				valid = false;
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * Summarizes the violations counted by {@link #validate(Object, int[])}.
+	 */
+	ViolationReport report(int invalidItems, int[] counts) {
+		Map<String, Integer> violations = new LinkedHashMap<>();
+		for (int i = 0; i < this.checks.length; i++) {
+			if (counts[i] > 0) {
+				violations.merge(this.checks[i].describe(), counts[i], Integer::sum);
+			}
+		}
+		return new ViolationReport(invalidItems, violations);
+	}
+
+	private static Check[] compile(Class<?> targetType) {
+		rejectConstraints(targetType.getAnnotations(), targetType.getName());
+		ReflectionUtils.doWithMethods(targetType,
+				method -> rejectConstraints(method.getAnnotations(), targetType.getName() + "#" + method.getName()),
+				method -> method.getDeclaringClass() != Object.class);
+		List<Check> checks = new ArrayList<>();
+		ReflectionUtils.doWithFields(targetType, field -> {
+			MethodHandle getter = null;
+			for (Annotation annotation : field.getAnnotations()) {
+				if (!isConstraint(annotation)) {
+					continue;
+				}
+				if (getter == null) {
+					getter = getter(field);
+				}
+				checks.add(new Check(field.getName(), getter, predicate(annotation, field), message(annotation)));
+			}
+		}, field -> !Modifier.isStatic(field.getModifiers()));
+		return checks.toArray(Check[]::new);
+	}
+
+	private static void rejectConstraints(Annotation[] annotations, String location) {
+		for (Annotation annotation : annotations) {
+			if (isConstraint(annotation)) {
+				throw new IllegalArgumentException(
+						"Unsupported constraint @" + annotation.annotationType().getSimpleName() + " on " + location
+								+ " (only fields are supported)");
+			}
+		}
+	}
+
+	private static boolean isConstraint(Annotation annotation) {
+		return annotation.annotationType().isAnnotationPresent(Constraint.class);
+	}
+
+	private static MethodHandle getter(Field field) {
+		try {
+			// Typed as (Object)Object once, so that checks can call it with invokeExact
+			return MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup())
+				.unreflectGetter(field)
+				.asType(MethodType.methodType(Object.class, Object.class));
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot access field: " + field, e);
+		}
+	}
+
+	private static Predicate<Object> predicate(Annotation annotation, Field field) {
+		checkDefaultGroup(annotation, field);
+		if (annotation instanceof NotNull) {
+			return value -> value != null;
+		}
+		if (annotation instanceof NotEmpty) {
+			return value -> value != null && size(value) > 0;
+		}
+		if (annotation instanceof NotBlank) {
+			return value -> value != null && !value.toString().isBlank();
+		}
+		if (annotation instanceof Size size) {
+			int min = size.min();
+			int max = size.max();
+			return value -> {
+				if (value == null) {
+					return true;
+				}
+				int length = size(value);
+				return length >= min && length <= max;
+			};
+		}
+		if (annotation instanceof Min min) {
+			BigDecimal bound = BigDecimal.valueOf(min.value());
+			return value -> value == null || toBigDecimal(value).compareTo(bound) >= 0;
+		}
+		if (annotation instanceof Max max) {
+			BigDecimal bound = BigDecimal.valueOf(max.value());
+			return value -> value == null || toBigDecimal(value).compareTo(bound) <= 0;
+		}
+		if (annotation instanceof Positive) {
+			return value -> value == null || toBigDecimal(value).signum() > 0;
+		}
+		if (annotation instanceof PositiveOrZero) {
+			return value -> value == null || toBigDecimal(value).signum() >= 0;
+		}
+		if (annotation instanceof Pattern pattern) {
+			int flags = 0;
+			for (Pattern.Flag flag : pattern.flags()) {
+				flags |= flag.getValue();
+			}
+			java.util.regex.Pattern compiled = java.util.regex.Pattern.compile(pattern.regexp(), flags);
+			return value -> value == null || compiled.matcher(value.toString()).matches();
+		}
+		throw new IllegalArgumentException("Unsupported constraint @" + annotation.annotationType().getSimpleName()
+				+ " on " + field.getDeclaringClass().getName() + "#" + field.getName());
+	}
+
+	private static void checkDefaultGroup(Annotation annotation, Field field) {
+		Method groups = ReflectionUtils.findMethod(annotation.annotationType(), "groups");
+		if (groups != null && ((Class<?>[]) ReflectionUtils.invokeMethod(groups, annotation)).length > 0) {
+			throw new IllegalArgumentException("Validation groups are not supported: @"
+					+ annotation.annotationType().getSimpleName() + " on " + field.getName());
+		}
+	}
+
+	private static int size(Object value) {
+		if (value instanceof CharSequence charSequence) {
+			return charSequence.length();
+		}
+		if (value instanceof Collection<?> collection) {
+			return collection.size();
+		}
+		if (value instanceof Map<?, ?> map) {
+			return map.size();
+		}
+		if (value.getClass().isArray()) {
+			return Array.getLength(value);
+		}
+		throw new IllegalArgumentException("Cannot determine the size of " + value.getClass().getName());
+	}
+
+	private static BigDecimal toBigDecimal(Object value) {
+		if (value instanceof BigDecimal bigDecimal) {
+			return bigDecimal;
+		}
+		if (value instanceof BigInteger bigInteger) {
+			return new BigDecimal(bigInteger);
+		}
+		if (value instanceof Double || value instanceof Float) {
+			return BigDecimal.valueOf(((Number) value).doubleValue());
+		}
+		if (value instanceof Number number) {
+			return BigDecimal.valueOf(number.longValue());
+		}
+		return new BigDecimal(value.toString());
+	}
+
+	private static String message(Annotation annotation) {
+		if (annotation instanceof NotNull) {
+			return "must not be null";
+		}
+		if (annotation instanceof NotEmpty) {
+			return "must not be empty";
+		}
+		if (annotation instanceof NotBlank) {
+			return "must not be blank";
+		}
+		if (annotation instanceof Size size) {
+			return "size must be between " + size.min() + " and " + size.max();
+		}
+		if (annotation instanceof Min min) {
+			return "must be greater than or equal to " + min.value();
+		}
+		if (annotation instanceof Max max) {
+			return "must be less than or equal to " + max.value();
+		}
+		if (annotation instanceof Positive) {
+			return "must be greater than 0";
+		}
+		if (annotation instanceof PositiveOrZero) {
+			return "must be greater than or equal to 0";
+		}
+		if (annotation instanceof Pattern pattern) {
+			return "must match \"" + pattern.regexp() + "\"";
+		}
+		return "is invalid";
+	}
+
+	/**
+	 * A single precompiled constraint check.
+	 */
+	private record Check(String fieldName, MethodHandle getter, Predicate<Object> predicate, String message) {
+
+		boolean isValid(Object item) {
+			Object value;
+			try {
+				value = (Object) this.getter.invokeExact(item);
+			}
+			catch (Throwable e) {
+				throw new IllegalStateException("Failed to read field: " + this.fieldName, e);
+			}
+			return this.predicate.test(value);
+		}
+
+		String describe() {
+			return this.fieldName + " " + this.message;
+		}
+
+	}
+
+	/**
+	 * Result of validating a chunk.
+	 *
+	 * @param <T> type of item
+	 * @param valid the valid items, in their original order
+	 * @param report the violations found in the chunk
+	 */
+	public record Result<T>(Chunk<T> valid, ViolationReport report) {
+
+	}
+
+	/**
+	 * Compact summary of the violations found in a chunk.
+	 *
+	 * @param invalidItems the number of items with at least one violation
+	 * @param violations the number of violations per "field message"
+	 */
+	public record ViolationReport(int invalidItems, Map<String, Integer> violations) {
+
+		/**
+		 * Whether the chunk had no violation.
+		 * @return {@code true} if every item was valid
+		 */
+		public boolean isEmpty() {
+			return this.invalidItems == 0;
+		}
+
+	}
+
+}
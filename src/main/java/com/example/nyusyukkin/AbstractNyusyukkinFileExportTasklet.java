@@ -0,0 +1,66 @@
+package com.example.nyusyukkin;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+/**
+ * Base class of the tasklets that write the same files as the ExportNyusyukkinData job
+ * without going through items.
+ * <p>
+ * The deposit and withdrawal files are exported by
+ * {@link NyusyukkinMapper#selectNyusyukkinData} restricted to transaction type 0 and 1
+ * respectively, in the optional transaction date range of the 'from' (inclusive) and 'to'
+ * (exclusive) job parameters. Unlike the chunk-oriented job, this does not fail on
+ * records of any other type; they are not exported. Subclasses only write the records of
+ * the query to a file.
+ * </p>
+ */
+public abstract class AbstractNyusyukkinFileExportTasklet implements Tasklet {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final LocalDate from;
+
+	private final LocalDate to;
+
+	protected AbstractNyusyukkinFileExportTasklet(String from, String to) {
+		this.from = from != null ? LocalDate.parse(from) : null;
+		this.to = to != null ? LocalDate.parse(to) : null;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		export(contribution, "0", Path.of("outputFile/SMP001_output_nyukin.csv"));
+		export(contribution, "1", Path.of("outputFile/SMP001_output_syukkin.csv"));
+		return RepeatStatus.FINISHED;
+	}
+
+	private void export(StepContribution contribution, String nyusyukkinKubun, Path file) throws Exception {
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put("from", this.from);
+		parameters.put("to", this.to);
+		parameters.put("nyusyukkinKubun", nyusyukkinKubun);
+		long lines = export(NyusyukkinMapper.class.getName() + ".selectNyusyukkinData", parameters, file);
+		contribution.incrementWriteCount(lines);
+		logger.info("Exported {} records to {}", lines, file);
+	}
+
+	/**
+	 * Writes the records of a query to a file, replacing its content.
+	 * @param statementId the ID of the MyBatis statement to run
+	 * @param parameters the parameters of the statement
+	 * @param file the file to write
+	 * @return the number of records written
+	 * @throws Exception if the query or the write fails
+	 */
+	protected abstract long export(String statementId, Map<String, Object> parameters, Path file) throws Exception;
+
+}
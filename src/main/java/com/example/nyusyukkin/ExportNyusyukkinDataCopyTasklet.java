@@ -0,0 +1,40 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.jdbc.MyBatisStatementRenderer;
+import com.example.batch.jdbc.PgCopyFlatFileExporter;
+import java.nio.file.Path;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the same files as the ExportNyusyukkinData job with one
+ * {@code COPY (...) TO STDOUT} per file, formatted by the database.
+ */
+@Component
+@StepScope
+public class ExportNyusyukkinDataCopyTasklet extends AbstractNyusyukkinFileExportTasklet {
+
+	private final SqlSessionFactory sqlSessionFactory;
+
+	private final PgCopyFlatFileExporter<NyusyukkinData> exporter;
+
+	public ExportNyusyukkinDataCopyTasklet(SqlSessionFactory sqlSessionFactory, DataSource dataSource,
+			@Value("#{jobParameters['from']}") String from, @Value("#{jobParameters['to']}") String to) {
+		super(from, to);
+		this.sqlSessionFactory = sqlSessionFactory;
+		this.exporter = new PgCopyFlatFileExporter<>(dataSource, NyusyukkinData.class, ",");
+		this.exporter.setEncoding("Windows-31J");
+	}
+
+	@Override
+	protected long export(String statementId, Map<String, Object> parameters, Path file) throws Exception {
+		String query = MyBatisStatementRenderer.render(this.sqlSessionFactory.getConfiguration(), statementId,
+				parameters);
+		return this.exporter.export(query, file);
+	}
+
+}
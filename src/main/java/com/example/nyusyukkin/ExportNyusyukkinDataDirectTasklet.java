@@ -0,0 +1,69 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.jdbc.ResultSetFlatFileExporter;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the same files as the ExportNyusyukkinData job straight from the JDBC result
+ * set, without creating a {@link NyusyukkinData} per record.
+ * <p>
+ * The query is prepared and bound by MyBatis and run on the connection of the step
+ * transaction so that the rows are fetched with a cursor, {@code fetchSize} at a time.
+ * </p>
+ */
+@Component
+@StepScope
+public class ExportNyusyukkinDataDirectTasklet extends AbstractNyusyukkinFileExportTasklet {
+
+	private final SqlSessionFactory sqlSessionFactory;
+
+	private final DataSource dataSource;
+
+	private final ResultSetFlatFileExporter<NyusyukkinData> exporter;
+
+	private final int fetchSize;
+
+	public ExportNyusyukkinDataDirectTasklet(SqlSessionFactory sqlSessionFactory, DataSource dataSource,
+			@Value("#{jobParameters['from']}") String from, @Value("#{jobParameters['to']}") String to,
+			@Value("#{jobParameters['fetchSize'] ?: 1000}") int fetchSize) {
+		super(from, to);
+		this.sqlSessionFactory = sqlSessionFactory;
+		this.dataSource = dataSource;
+		this.exporter = new ResultSetFlatFileExporter<>(NyusyukkinData.class, ",");
+		this.exporter.setEncoding("Windows-31J");
+		this.fetchSize = fetchSize;
+	}
+
+	@Override
+	protected long export(String statementId, Map<String, Object> parameters, Path file) throws Exception {
+		Configuration configuration = this.sqlSessionFactory.getConfiguration();
+		MappedStatement statement = configuration.getMappedStatement(statementId);
+		BoundSql boundSql = statement.getBoundSql(parameters);
+		Connection connection = DataSourceUtils.getConnection(this.dataSource);
+		try (PreparedStatement preparedStatement = connection.prepareStatement(boundSql.getSql(),
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			configuration.newParameterHandler(statement, parameters, boundSql).setParameters(preparedStatement);
+			preparedStatement.setFetchSize(this.fetchSize);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return this.exporter.export(resultSet, file);
+			}
+		}
+		finally {
+			DataSourceUtils.releaseConnection(connection, this.dataSource);
+		}
+	}
+
+}
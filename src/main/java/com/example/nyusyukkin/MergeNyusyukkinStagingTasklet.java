@@ -0,0 +1,60 @@
+package com.example.nyusyukkin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the records loaded into the staging table into {@code NYUSYUKKINTBL} with a
+ * single set-based statement. Missing monthly partitions for the staged transaction dates
+ * are created first. The same statement adds the totals of the merged records to the
+ * daily summary.
+ * <p>
+ * Records already merged by the same job instance are skipped and counted as
+ * {@value #SKIPPED_COUNT}.
+ * </p>
+ * <p>
+ * The merge and the truncation of the staging table run in the same transaction, so a
+ * failed merge leaves the staged records in place and the step can simply be restarted.
+ * </p>
+ */
+@Component
+@StepScope
+public class MergeNyusyukkinStagingTasklet implements Tasklet {
+
+	/**
+	 * Key of the number of staged records skipped as already merged, stored in the step
+	 * {@link org.springframework.batch.item.ExecutionContext}.
+	 */
+	public static final String SKIPPED_COUNT = "merge.skippedCount";
+
+	private final Logger logger = LoggerFactory.getLogger(MergeNyusyukkinStagingTasklet.class);
+
+	private final NyusyukkinMapper nyusyukkinMapper;
+
+	public MergeNyusyukkinStagingTasklet(NyusyukkinMapper nyusyukkinMapper) {
+		this.nyusyukkinMapper = nyusyukkinMapper;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		long staged = this.nyusyukkinMapper.countNyusyukkinStagingData();
+		long skipped = this.nyusyukkinMapper.countMergedNyusyukkinStagingData();
+		this.nyusyukkinMapper.createNyusyukkinPartitionsForStagingData();
+		int merged = this.nyusyukkinMapper.mergeNyusyukkinStagingData();
+		this.nyusyukkinMapper.truncateNyusyukkinStagingData();
+		// Rejected and already imported records are reported as filtered
+		contribution.incrementWriteCount(merged);
+		contribution.incrementFilterCount(staged - merged);
+		contribution.getStepExecution().getExecutionContext().putLong(SKIPPED_COUNT, skipped);
+		logger.info("Merged {} of {} staged records, skipped {} already merged and rejected {}", merged, staged,
+				skipped, staged - merged - skipped);
+		return RepeatStatus.FINISHED;
+	}
+
+}
@@ -0,0 +1,473 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.aggregate.AggregateMemoryBudget;
+import com.example.batch.aggregate.SpillingAggregateMap;
+import com.example.batch.sketch.HyperLogLog;
+import com.example.batch.sketch.SpaceSaving;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Collectors;
+import org.springframework.util.Assert;
+
+/**
+ * Customer sketches per group of {@link NyusyukkinTotals}: a {@link HyperLogLog} of the
+ * customer IDs and a {@link SpaceSaving} sketch of the amounts per customer, deposits and
+ * withdrawals together.
+ * <p>
+ * The sketches grow with the customers of their group, up to the size fixed by their
+ * parameters, and reserve their memory from the budget of the totals. When the budget is
+ * used up, the sketches are written to a run file in key order and cleared, like the
+ * totals of a {@link SpillingAggregateMap}. {@link #fill} merges the sketches of a group
+ * from the run files and memory, so it must be called in ascending key order, as
+ * {@link NyusyukkinTotals#writeTo} does. Not thread-safe; the run files are deleted and
+ * the memory released on {@link #close()}.
+ * </p>
+ */
+public class NyusyukkinCustomerSketches implements AutoCloseable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Read buffers of the runs are small, as all of them are open during a merge
+	private static final int RUN_BUFFER_SIZE = 8 * 1024;
+
+	private static final int MAX_RUNS = 64;
+
+	// Hash map entry, boxed key and sketch objects of a group
+	private static final long GROUP_OVERHEAD = 128;
+
+	private final AggregateMemoryBudget budget;
+
+	private final Path tempDirectory;
+
+	private final int precision;
+
+	private final int capacity;
+
+	private final int topK;
+
+	private final Map<Long, GroupSketch> sketches = new HashMap<>();
+
+	private final List<Path> runs = new ArrayList<>();
+
+	private long reserved;
+
+	private int spillCount;
+
+	private Merge merge;
+
+	/**
+	 * Creates empty sketches.
+	 * @param budget the memory budget of the totals
+	 * @param tempDirectory the directory of the spilled sketches
+	 * @param precision the precision of the HyperLogLog sketches
+	 * @param capacity the number of counters of the Space-Saving sketches
+	 * @param topK the number of customers of the output column
+	 */
+	public NyusyukkinCustomerSketches(AggregateMemoryBudget budget, Path tempDirectory, int precision, int capacity,
+			int topK) {
+		Assert.notNull(budget, "budget must not be null");
+		Assert.notNull(tempDirectory, "tempDirectory must not be null");
+		Assert.isTrue(topK > 0 && topK <= capacity, "topK must be positive and at most the capacity");
+		this.budget = budget;
+		this.tempDirectory = tempDirectory;
+		this.precision = precision;
+		this.capacity = capacity;
+		this.topK = topK;
+	}
+
+	/**
+	 * Adds a deposit or withdrawal to the sketches of its group.
+	 * @param key the key of the group
+	 * @param data the deposit or withdrawal
+	 * @throws UncheckedIOException if the sketches cannot be spilled
+	 */
+	public void add(long key, NyusyukkinData data) {
+		GroupSketch sketch = sketch(key);
+		sketch.kokyakuIds.add(data.getKokyakuId());
+		sketch.amounts.add(data.getKokyakuId(), Math.max(0, data.getKingaku()));
+		reserve(sketch);
+	}
+
+	/**
+	 * Adds the sketches of another part of the input to these sketches and closes the
+	 * other sketches.
+	 * @param other the other sketches
+	 * @param keyMapping the function translating the keys of the other sketches
+	 * @throws UncheckedIOException if the sketches cannot be spilled or read back
+	 */
+	public void merge(NyusyukkinCustomerSketches other, LongUnaryOperator keyMapping) {
+		try (other) {
+			for (Path run : other.runs) {
+				try (RunReader reader = new RunReader(run, this.capacity)) {
+					while (reader.next()) {
+						merge(keyMapping.applyAsLong(reader.key), reader.sketch);
+					}
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException("Unable to read sketches from " + run, ex);
+				}
+			}
+			other.sketches.forEach((otherKey, otherSketch) -> merge(keyMapping.applyAsLong(otherKey), otherSketch));
+		}
+	}
+
+	/**
+	 * Sets the customer columns of the totals of a group. The groups must be filled in
+	 * ascending key order and no sketches added afterwards.
+	 * @param key the key of the group
+	 * @param outputData the totals of the group
+	 * @throws UncheckedIOException if the spilled sketches cannot be read
+	 */
+	public void fill(long key, NyusyukkinSketchFileOutput outputData) {
+		GroupSketch sketch;
+		try {
+			if (this.merge == null) {
+				this.merge = new Merge(this.runs, this.sketches, this.capacity);
+			}
+			sketch = this.merge.next(key);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Unable to read sketches from " + this.tempDirectory, ex);
+		}
+		if (sketch == null) {
+			return;
+		}
+		outputData.setKokyakuNum(sketch.kokyakuIds.estimate());
+		outputData.setTopKokyaku(sketch.amounts.top(this.topK)
+			.stream()
+			.map((entry) -> entry.item() + ":" + entry.count())
+			.collect(Collectors.joining(";")));
+	}
+
+	/**
+	 * Returns the number of times the sketches were spilled to disk.
+	 * @return the number of spills
+	 */
+	public int getSpillCount() {
+		return this.spillCount;
+	}
+
+	/**
+	 * Deletes the spilled sketches and releases the memory of the sketches.
+	 */
+	@Override
+	public void close() {
+		if (this.merge != null) {
+			this.merge.close();
+			this.merge = null;
+		}
+		this.budget.release(this.reserved);
+		this.reserved = 0;
+		this.sketches.clear();
+		for (Path run : this.runs) {
+			try {
+				Files.deleteIfExists(run);
+			}
+			catch (IOException ignored) {
+			}
+		}
+		this.runs.clear();
+	}
+
+	private void merge(long key, GroupSketch otherSketch) {
+		GroupSketch sketch = sketch(key);
+		sketch.kokyakuIds.merge(otherSketch.kokyakuIds);
+		sketch.amounts.merge(otherSketch.amounts);
+		reserve(sketch);
+	}
+
+	private GroupSketch sketch(long key) {
+		Assert.state(this.merge == null, "Sketches are being filled");
+		return this.sketches.computeIfAbsent(key,
+				(k) -> new GroupSketch(new HyperLogLog(this.precision), new SpaceSaving<>(this.capacity)));
+	}
+
+	/**
+	 * Reserves the memory a sketch grew by, spilling all sketches if it does not fit in
+	 * the budget.
+	 */
+	private void reserve(GroupSketch sketch) {
+		long size = GROUP_OVERHEAD + sketch.kokyakuIds.memoryUsage() + sketch.amounts.memoryUsage();
+		long grown = size - sketch.reserved;
+		if (grown <= 0) {
+			return;
+		}
+		if (this.budget.tryReserve(grown)) {
+			sketch.reserved = size;
+			this.reserved += grown;
+			return;
+		}
+		try {
+			spill();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Unable to spill sketches to " + this.tempDirectory, ex);
+		}
+	}
+
+	private void spill() throws IOException {
+		long[] keys = this.sketches.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+		this.runs.add(writeRun((out) -> {
+			for (long key : keys) {
+				out.write(key, this.sketches.get(key));
+			}
+		}));
+		this.sketches.clear();
+		this.budget.release(this.reserved);
+		this.reserved = 0;
+		this.spillCount++;
+		this.budget.recordSpill();
+		if (this.runs.size() >= MAX_RUNS) {
+			List<Path> merged = new ArrayList<>(this.runs);
+			Path run = writeRun((out) -> {
+				try (Merge merge = new Merge(merged, Map.of(), this.capacity)) {
+					while (merge.hasNext()) {
+						long key = merge.nextKey();
+						out.write(key, merge.next(key));
+					}
+				}
+			});
+			this.runs.clear();
+			this.runs.add(run);
+			for (Path file : merged) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	private Path writeRun(RunSource source) throws IOException {
+		Path run = Files.createTempFile(this.tempDirectory, "sketches-", ".run");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+			source.writeTo((key, sketch) -> {
+				out.writeLong(key);
+				sketch.kokyakuIds.writeTo(out);
+				List<SpaceSaving.Entry<String>> entries = sketch.amounts.top(this.capacity);
+				out.writeInt(entries.size());
+				for (SpaceSaving.Entry<String> entry : entries) {
+					out.writeUTF(entry.item());
+					out.writeLong(entry.count());
+					out.writeLong(entry.error());
+				}
+			});
+		}
+		catch (IOException ex) {
+			try {
+				Files.deleteIfExists(run);
+			}
+			catch (IOException suppressed) {
+				ex.addSuppressed(suppressed);
+			}
+			throw ex;
+		}
+		return run;
+	}
+
+	private static final class GroupSketch {
+
+		private final HyperLogLog kokyakuIds;
+
+		private final SpaceSaving<String> amounts;
+
+		// Memory reserved from the budget for the sketch
+		private long reserved;
+
+		private GroupSketch(HyperLogLog kokyakuIds, SpaceSaving<String> amounts) {
+			this.kokyakuIds = kokyakuIds;
+			this.amounts = amounts;
+		}
+
+	}
+
+	/**
+	 * Receives the sketches of a run in key order.
+	 */
+	@FunctionalInterface
+	private interface RunWriter {
+
+		void write(long key, GroupSketch sketch) throws IOException;
+
+	}
+
+	/**
+	 * Writes the sorted sketches of a run.
+	 */
+	@FunctionalInterface
+	private interface RunSource {
+
+		void writeTo(RunWriter out) throws IOException;
+
+	}
+
+	/**
+	 * Reads the sketches of a run file in key order.
+	 */
+	private static final class RunReader implements AutoCloseable {
+
+		private final DataInputStream in;
+
+		private final int capacity;
+
+		private long key;
+
+		private GroupSketch sketch;
+
+		private RunReader(Path file, int capacity) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), RUN_BUFFER_SIZE));
+			this.capacity = capacity;
+		}
+
+		private boolean next() throws IOException {
+			try {
+				this.key = this.in.readLong();
+			}
+			catch (EOFException ex) {
+				return false;
+			}
+			HyperLogLog kokyakuIds = HyperLogLog.readFrom(this.in);
+			int size = this.in.readInt();
+			List<SpaceSaving.Entry<String>> entries = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				entries.add(new SpaceSaving.Entry<>(this.in.readUTF(), this.in.readLong(), this.in.readLong()));
+			}
+			this.sketch = new GroupSketch(kokyakuIds, SpaceSaving.of(this.capacity, entries));
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+
+	}
+
+	/**
+	 * Merges the sketches of the run files and memory in key order.
+	 */
+	private static final class Merge implements AutoCloseable {
+
+		private final PriorityQueue<Source> queue = new PriorityQueue<>((a, b) -> Long.compare(a.key, b.key));
+
+		private final List<RunReader> readers = new ArrayList<>();
+
+		private Merge(List<Path> runs, Map<Long, GroupSketch> sketches, int capacity) throws IOException {
+			try {
+				for (Path run : runs) {
+					RunReader reader = new RunReader(run, capacity);
+					this.readers.add(reader);
+					advance(new Source(reader, null, null));
+				}
+			}
+			catch (IOException ex) {
+				close();
+				throw ex;
+			}
+			long[] keys = sketches.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+			advance(new Source(null, keys, sketches));
+		}
+
+		private boolean hasNext() {
+			return !this.queue.isEmpty();
+		}
+
+		private long nextKey() {
+			return this.queue.peek().key;
+		}
+
+		/**
+		 * Returns the merged sketch of a key, skipping the smaller keys.
+		 */
+		private GroupSketch next(long key) throws IOException {
+			while (!this.queue.isEmpty() && this.queue.peek().key < key) {
+				advance(this.queue.poll());
+			}
+			GroupSketch merged = null;
+			while (!this.queue.isEmpty() && this.queue.peek().key == key) {
+				Source source = this.queue.poll();
+				if (merged == null) {
+					merged = source.sketch;
+				}
+				else {
+					merged.kokyakuIds.merge(source.sketch.kokyakuIds);
+					merged.amounts.merge(source.sketch.amounts);
+				}
+				advance(source);
+			}
+			return merged;
+		}
+
+		private void advance(Source source) throws IOException {
+			if (source.next()) {
+				this.queue.add(source);
+			}
+		}
+
+		@Override
+		public void close() {
+			for (RunReader reader : this.readers) {
+				try {
+					reader.close();
+				}
+				catch (IOException ignored) {
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Sorted source of sketches for the merge: a run file or the sketches in memory.
+	 */
+	private static final class Source {
+
+		private final RunReader reader;
+
+		private final long[] keys;
+
+		private final Map<Long, GroupSketch> sketches;
+
+		private int index;
+
+		private long key;
+
+		private GroupSketch sketch;
+
+		private Source(RunReader reader, long[] keys, Map<Long, GroupSketch> sketches) {
+			this.reader = reader;
+			this.keys = keys;
+			this.sketches = sketches;
+		}
+
+		private boolean next() throws IOException {
+			if (this.reader != null) {
+				if (!this.reader.next()) {
+					return false;
+				}
+				this.key = this.reader.key;
+				this.sketch = this.reader.sketch;
+				return true;
+			}
+			if (this.index == this.keys.length) {
+				return false;
+			}
+			this.key = this.keys[this.index++];
+			this.sketch = this.sketches.get(this.key);
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.example.nyusyukkin;
+
+import java.time.LocalDate;
+
+/**
+ * Number of deposit and withdrawal records of one transaction date.
+ */
+public class NyusyukkinDailyCount {
+
+	/**
+	 * Transaction date.
+	 */
+	private LocalDate torihikibi;
+
+	/**
+	 * Number of records.
+	 */
+	private long count;
+
+	/**
+	 * Gets the transaction date.
+	 * @return torihikibi
+	 */
+	public LocalDate getTorihikibi() {
+		return torihikibi;
+	}
+
+	/**
+	 * Sets the transaction date.
+	 * @param torihikibi the transaction date
+	 */
+	public void setTorihikibi(LocalDate torihikibi) {
+		this.torihikibi = torihikibi;
+	}
+
+	/**
+	 * Gets the number of records.
+	 * @return count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Sets the number of records.
+	 * @param count the number of records
+	 */
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.example.nyusyukkin;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Deposit and withdrawal totals of one transaction date and branch, as stored in
+ * {@code NYUSYUKKIN_DAILY_SUMMARY}.
+ */
+public class NyusyukkinDailySummary {
+
+	private static final Comparator<NyusyukkinDailySummary> KEY_ORDER = Comparator
+		.comparing(NyusyukkinDailySummary::getTorihikibi, Comparator.nullsFirst(Comparator.naturalOrder()))
+		.thenComparing(NyusyukkinDailySummary::getShitenName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+	/**
+	 * Transaction date.
+	 */
+	private LocalDate torihikibi;
+
+	/**
+	 * Branch name.
+	 */
+	private String shitenName;
+
+	/**
+	 * Number of deposits.
+	 */
+	private long nyukinNum;
+
+	/**
+	 * Total deposits.
+	 */
+	private long nyukinSum;
+
+	/**
+	 * Number of withdrawals.
+	 */
+	private long syukkinNum;
+
+	/**
+	 * Total withdrawals.
+	 */
+	private long syukkinSum;
+
+	/**
+	 * Totals deposit and withdrawal records per transaction date and branch, with the
+	 * same mapping of the transaction type as {@link ReportingNyusyukkinTasklet}.
+	 * @param items the records, e.g. the items of a chunk
+	 * @return the totals, ordered by transaction date and branch name so that concurrent
+	 * upserts lock the rows of the summary in the same order
+	 */
+	public static List<NyusyukkinDailySummary> summarize(List<? extends NyusyukkinData> items) {
+		ZoneId zone = ZoneId.systemDefault();
+		Map<NyusyukkinDailySummary, NyusyukkinDailySummary> groups = new TreeMap<>(KEY_ORDER);
+		NyusyukkinDailySummary key = new NyusyukkinDailySummary();
+		for (NyusyukkinData data : items) {
+			Date torihikibi = data.getTorihikibi();
+			key.setTorihikibi(torihikibi != null ? torihikibi.toInstant().atZone(zone).toLocalDate() : null);
+			key.setShitenName(data.getShitenName());
+			NyusyukkinDailySummary group = groups.get(key);
+			if (group == null) {
+				group = new NyusyukkinDailySummary();
+				group.setTorihikibi(key.getTorihikibi());
+				group.setShitenName(key.getShitenName());
+				groups.put(group, group);
+			}
+			if (data.getNyusyukkinKubun() == 0) {
+				group.syukkinNum++;
+				group.syukkinSum += data.getKingaku();
+			}
+			else if (data.getNyusyukkinKubun() == 1) {
+				group.nyukinNum++;
+				group.nyukinSum += data.getKingaku();
+			}
+		}
+		return new ArrayList<>(groups.values());
+	}
+
+	/**
+	 * Gets the transaction date.
+	 * @return torihikibi
+	 */
+	public LocalDate getTorihikibi() {
+		return torihikibi;
+	}
+
+	/**
+	 * Sets the transaction date.
+	 * @param torihikibi the transaction date
+	 */
+	public void setTorihikibi(LocalDate torihikibi) {
+		this.torihikibi = torihikibi;
+	}
+
+	/**
+	 * Gets the branch name.
+	 * @return shitenName
+	 */
+	public String getShitenName() {
+		return shitenName;
+	}
+
+	/**
+	 * Sets the branch name.
+	 * @param shitenName the branch name
+	 */
+	public void setShitenName(String shitenName) {
+		this.shitenName = shitenName;
+	}
+
+	/**
+	 * Gets the number of deposits.
+	 * @return nyukinNum
+	 */
+	public long getNyukinNum() {
+		return nyukinNum;
+	}
+
+	/**
+	 * Sets the number of deposits.
+	 * @param nyukinNum the number of deposits
+	 */
+	public void setNyukinNum(long nyukinNum) {
+		this.nyukinNum = nyukinNum;
+	}
+
+	/**
+	 * Gets the total deposits.
+	 * @return nyukinSum
+	 */
+	public long getNyukinSum() {
+		return nyukinSum;
+	}
+
+	/**
+	 * Sets the total deposits.
+	 * @param nyukinSum the total deposits
+	 */
+	public void setNyukinSum(long nyukinSum) {
+		this.nyukinSum = nyukinSum;
+	}
+
+	/**
+	 * Gets the number of withdrawals.
+	 * @return syukkinNum
+	 */
+	public long getSyukkinNum() {
+		return syukkinNum;
+	}
+
+	/**
+	 * Sets the number of withdrawals.
+	 * @param syukkinNum the number of withdrawals
+	 */
+	public void setSyukkinNum(long syukkinNum) {
+		this.syukkinNum = syukkinNum;
+	}
+
+	/**
+	 * Gets the total withdrawals.
+	 * @return syukkinSum
+	 */
+	public long getSyukkinSum() {
+		return syukkinSum;
+	}
+
+	/**
+	 * Sets the total withdrawals.
+	 * @param syukkinSum the total withdrawals
+	 */
+	public void setSyukkinSum(long syukkinSum) {
+		this.syukkinSum = syukkinSum;
+	}
+
+}
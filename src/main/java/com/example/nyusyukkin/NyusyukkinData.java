@@ -4,11 +4,17 @@ import com.example.batch.file.InputFileColumn;
 import com.example.batch.file.OutputFileColumn;
 import jakarta.validation.constraints.NotEmpty;
 import java.util.Date;
+import org.springframework.batch.item.ItemCountAware;
 
 /**
  * Parameter class representing deposit and withdrawal information.
  */
-public class NyusyukkinData {
+public class NyusyukkinData implements ItemCountAware {
+
+	/**
+	 * Record ID assigned by the database ({@code null} until the record is stored).
+	 */
+	private Long id;
 
 	/**
 	 * Branch name.
@@ -46,6 +52,28 @@ public class NyusyukkinData {
 	@OutputFileColumn(columnIndex = 4, columnFormat = "yyyyMMdd")
 	private Date torihikibi;
 
+	/**
+	 * Position of the record in the input file, counted from 1 by the item reader (0 if
+	 * not read from a file).
+	 */
+	private int itemCount;
+
+	/**
+	 * Gets the record ID.
+	 * @return id
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * Sets the record ID.
+	 * @param id the record ID
+	 */
+	public void setId(Long id) {
+		this.id = id;
+	}
+
 	/**
 	 * Gets the branch name.
 	 * @return shitenName
@@ -126,6 +154,23 @@ public class NyusyukkinData {
 		this.torihikibi = torihikibi;
 	}
 
+	/**
+	 * Gets the position of the record in the input file.
+	 * @return itemCount
+	 */
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * Sets the position of the record in the input file.
+	 * @param itemCount the position, counted from 1
+	 */
+	@Override
+	public void setItemCount(int itemCount) {
+		this.itemCount = itemCount;
+	}
+
 	@Override
 	public String toString() {
 		return "NyusyukkinData{" + "shitenName='" + shitenName + '\'' + ", kokyakuId='" + kokyakuId + '\''
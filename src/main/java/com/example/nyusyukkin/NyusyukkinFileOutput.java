@@ -24,25 +24,25 @@ public class NyusyukkinFileOutput {
 	 * Number of deposits.
 	 */
 	@OutputFileColumn(columnIndex = 2)
-	private int nyukinNum;
+	private long nyukinNum;
 
 	/**
 	 * Number of withdrawals.
 	 */
 	@OutputFileColumn(columnIndex = 3)
-	private int syukkinNum;
+	private long syukkinNum;
 
 	/**
 	 * Total deposits.
 	 */
 	@OutputFileColumn(columnIndex = 4)
-	private int nyukinSum;
+	private long nyukinSum;
 
 	/**
 	 * Total withdrawals.
 	 */
 	@OutputFileColumn(columnIndex = 5)
-	private int syukkinSum;
+	private long syukkinSum;
 
 	/**
 	 * Gets the transaction date.
@@ -80,7 +80,7 @@ public class NyusyukkinFileOutput {
 	 * Gets the number of deposits.
 	 * @return nyukinNum
 	 */
-	public int getNyukinNum() {
+	public long getNyukinNum() {
 		return nyukinNum;
 	}
 
@@ -88,7 +88,7 @@ public class NyusyukkinFileOutput {
 	 * Sets the number of deposits.
 	 * @param nyukinNum the number of deposits
 	 */
-	public void setNyukinNum(int nyukinNum) {
+	public void setNyukinNum(long nyukinNum) {
 		this.nyukinNum = nyukinNum;
 	}
 
@@ -96,7 +96,7 @@ public class NyusyukkinFileOutput {
 	 * Gets the number of withdrawals.
 	 * @return syukkinNum
 	 */
-	public int getSyukkinNum() {
+	public long getSyukkinNum() {
 		return syukkinNum;
 	}
 
@@ -104,7 +104,7 @@ public class NyusyukkinFileOutput {
 	 * Sets the number of withdrawals.
 	 * @param syukkinNum the number of withdrawals
 	 */
-	public void setSyukkinNum(int syukkinNum) {
+	public void setSyukkinNum(long syukkinNum) {
 		this.syukkinNum = syukkinNum;
 	}
 
@@ -112,7 +112,7 @@ public class NyusyukkinFileOutput {
 	 * Gets the total deposits.
 	 * @return nyukinSum
 	 */
-	public int getNyukinSum() {
+	public long getNyukinSum() {
 		return nyukinSum;
 	}
 
@@ -120,7 +120,7 @@ public class NyusyukkinFileOutput {
 	 * Sets the total deposits.
 	 * @param nyukinSum the total deposits
 	 */
-	public void setNyukinSum(int nyukinSum) {
+	public void setNyukinSum(long nyukinSum) {
 		this.nyukinSum = nyukinSum;
 	}
 
@@ -128,7 +128,7 @@ public class NyusyukkinFileOutput {
 	 * Gets the total withdrawals.
 	 * @return syukkinSum
 	 */
-	public int getSyukkinSum() {
+	public long getSyukkinSum() {
 		return syukkinSum;
 	}
 
@@ -136,7 +136,7 @@ public class NyusyukkinFileOutput {
 	 * Sets the total withdrawals.
 	 * @param syukkinSum the total withdrawals
 	 */
-	public void setSyukkinSum(int syukkinSum) {
+	public void setSyukkinSum(long syukkinSum) {
 		this.syukkinSum = syukkinSum;
 	}
 
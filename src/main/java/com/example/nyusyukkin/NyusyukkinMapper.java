@@ -1,19 +1,31 @@
 package com.example.nyusyukkin;
 
+import java.time.LocalDate;
 import java.util.List;
-import org.apache.ibatis.annotations.Delete;
+import java.util.Map;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
 
 @Mapper
 public interface NyusyukkinMapper {
 
 	/**
-	 * Retrieves deposit and withdrawal information.
+	 * Retrieves deposit and withdrawal information ordered by transaction date. When a
+	 * date range is given, only the partitions covering that range are scanned.
+	 * @param from the first transaction date to retrieve (inclusive), or {@code null} for
+	 * no lower bound
+	 * @param to the transaction date to stop at (exclusive), or {@code null} for no upper
+	 * bound
+	 * @param nyusyukkinKubun the transaction type to retrieve, or {@code null} for both
 	 * @return the list of deposit and withdrawal information
 	 */
 	@Select("""
+			<script>
 			SELECT
 			    SHITENNAME AS "shitenName",
 			    KOKYAKUID AS "kokyakuId",
@@ -22,19 +34,245 @@ public interface NyusyukkinMapper {
 			    TORIHIKIBI AS "torihikibi"
 			FROM
 			    NYUSYUKKINTBL
+			<where>
+			    <if test="from != null">TORIHIKIBI &gt;= #{from}</if>
+			    <if test="to != null">AND TORIHIKIBI &lt; #{to}</if>
+			    <if test="nyusyukkinKubun != null">AND NYUSYUKKINKUBUN = #{nyusyukkinKubun}</if>
+			</where>
+			ORDER BY
+			    TORIHIKIBI, ID
+			</script>
 			""")
-	List<NyusyukkinData> selectNyusyukkinData();
+	List<NyusyukkinData> selectNyusyukkinData(@Param("from") LocalDate from, @Param("to") LocalDate to,
+			@Param("nyusyukkinKubun") String nyusyukkinKubun);
 
 	/**
-	 * Deletes deposit and withdrawal information.
-	 * @return the number of records deleted
+	 * Retrieves one page of deposit and withdrawal information in the same order as
+	 * {@link #selectNyusyukkinData(LocalDate, LocalDate, String)}, starting after the
+	 * given key instead of at an offset so that every page is an index range scan.
+	 * @param from the first transaction date to retrieve (inclusive), or {@code null} for
+	 * no lower bound
+	 * @param to the transaction date to stop at (exclusive), or {@code null} for no upper
+	 * bound
+	 * @param lastKey the {@code torihikibi} and {@code id} of the last record of the
+	 * previous page, or {@code null} for the first page
+	 * @param pageSize the maximum number of records to retrieve
+	 * @return the page of deposit and withdrawal information
 	 */
-	@Delete("""
-			DELETE
+	@Select("""
+			<script>
+			SELECT
+			    ID AS "id",
+			    SHITENNAME AS "shitenName",
+			    KOKYAKUID AS "kokyakuId",
+			    NYUSYUKKINKUBUN AS "nyusyukkinKubun",
+			    KINGAKU AS "kingaku",
+			    TORIHIKIBI AS "torihikibi"
 			FROM
 			    NYUSYUKKINTBL
+			<where>
+			    <if test="from != null">TORIHIKIBI &gt;= #{from}</if>
+			    <if test="to != null">AND TORIHIKIBI &lt; #{to}</if>
+			    <if test="_lastkey != null">AND (TORIHIKIBI, ID) &gt; (#{_lastkey.torihikibi}, #{_lastkey.id})</if>
+			</where>
+			ORDER BY
+			    TORIHIKIBI, ID
+			LIMIT #{_pagesize}
+			</script>
 			""")
-	int deleteNyusyukkinData();
+	List<NyusyukkinData> selectNyusyukkinDataPage(@Param("from") LocalDate from, @Param("to") LocalDate to,
+			@Param("_lastkey") Map<String, Object> lastKey, @Param("_pagesize") int pageSize);
+
+	/**
+	 * Retrieves the deposit and withdrawal information added within a range of IDs,
+	 * ordered by transaction date. As the ID is generated on insert, a range of IDs is a
+	 * range of ingested records.
+	 * @param afterId the ID after which to retrieve (exclusive)
+	 * @param toId the last ID to retrieve (inclusive)
+	 * @return the list of deposit and withdrawal information
+	 */
+	@Select("""
+			SELECT
+			    SHITENNAME AS "shitenName",
+			    KOKYAKUID AS "kokyakuId",
+			    NYUSYUKKINKUBUN AS "nyusyukkinKubun",
+			    KINGAKU AS "kingaku",
+			    TORIHIKIBI AS "torihikibi"
+			FROM
+			    NYUSYUKKINTBL
+			WHERE
+			    ID > #{afterId}
+			    AND ID <= #{toId}
+			ORDER BY
+			    TORIHIKIBI, ID
+			""")
+	List<NyusyukkinData> selectNyusyukkinDataByIdRange(@Param("afterId") long afterId, @Param("toId") long toId);
+
+	/**
+	 * Locks the deposit and withdrawal information against inserts until the end of the
+	 * current transaction. The lock is only granted once the transactions inserting into
+	 * the table have ended, so IDs read afterwards in the same transaction are not
+	 * followed by lower IDs committed later.
+	 */
+	@Update("""
+			LOCK TABLE NYUSYUKKINTBL IN SHARE MODE
+			""")
+	void lockNyusyukkinDataAgainstInserts();
+
+	/**
+	 * Returns the highest ID of the deposit and withdrawal information.
+	 * @return the highest ID, or 0 if there is none
+	 */
+	@Select("""
+			SELECT
+			    COALESCE(MAX(ID), 0)
+			FROM
+			    NYUSYUKKINTBL
+			""")
+	long selectMaxNyusyukkinId();
+
+	/**
+	 * Counts deposit and withdrawal information per transaction date.
+	 * @param from the first transaction date to count (inclusive), or {@code null} for no
+	 * lower bound
+	 * @param to the transaction date to stop at (exclusive), or {@code null} for no upper
+	 * bound
+	 * @return the number of records per transaction date, ordered by transaction date
+	 */
+	@Select("""
+			<script>
+			SELECT
+			    TORIHIKIBI AS "torihikibi",
+			    COUNT(*) AS "count"
+			FROM
+			    NYUSYUKKINTBL
+			<where>
+			    <if test="from != null">TORIHIKIBI &gt;= #{from}</if>
+			    <if test="to != null">AND TORIHIKIBI &lt; #{to}</if>
+			</where>
+			GROUP BY
+			    TORIHIKIBI
+			ORDER BY
+			    TORIHIKIBI
+			</script>
+			""")
+	List<NyusyukkinDailyCount> countNyusyukkinDataByTorihikibi(@Param("from") LocalDate from,
+			@Param("to") LocalDate to);
+
+	/**
+	 * Totals the deposits and withdrawals per transaction date and branch, ordered by
+	 * transaction date and branch name. As in {@link ReportingNyusyukkinTasklet},
+	 * transaction type 1 counts as a deposit and 0 as a withdrawal. The branch names are
+	 * compared by code point, the order of {@link String#compareTo}, with no branch name
+	 * first.
+	 * <p>
+	 * The rows are mapped one at a time as the cursor is iterated. No fetch size is set:
+	 * there is one row per group, and PostgreSQL does not run a query fetched in portions
+	 * with parallel workers.
+	 * </p>
+	 * @return the cursor over the totals, which must be closed
+	 */
+	@Select("""
+			SELECT
+			    TORIHIKIBI AS "torihikibi",
+			    SHITENNAME AS "shitenName",
+			    COUNT(*) FILTER (WHERE NYUSYUKKINKUBUN = '1') AS "nyukinNum",
+			    COUNT(*) FILTER (WHERE NYUSYUKKINKUBUN = '0') AS "syukkinNum",
+			    COALESCE(SUM(KINGAKU) FILTER (WHERE NYUSYUKKINKUBUN = '1'), 0) AS "nyukinSum",
+			    COALESCE(SUM(KINGAKU) FILTER (WHERE NYUSYUKKINKUBUN = '0'), 0) AS "syukkinSum"
+			FROM
+			    NYUSYUKKINTBL
+			GROUP BY
+			    TORIHIKIBI, SHITENNAME
+			ORDER BY
+			    TORIHIKIBI, SHITENNAME COLLATE "C" NULLS FIRST
+			""")
+	Cursor<NyusyukkinFileOutput> selectNyusyukkinTotals();
+
+	/**
+	 * Sets the maximum number of parallel workers per query with {@code SET LOCAL}, which
+	 * lasts until the end of the current transaction. It has no effect outside a
+	 * transaction, so it must be called in the transaction of the query.
+	 * @param workers the number of workers, {@code 0} to disable parallel query
+	 */
+	@Update("""
+			SET LOCAL max_parallel_workers_per_gather = ${workers}
+			""")
+	void setLocalMaxParallelWorkersPerGather(@Param("workers") int workers);
+
+	/**
+	 * Retrieves the totals of {@code NYUSYUKKIN_DAILY_SUMMARY} in the same order as
+	 * {@link #selectNyusyukkinTotals()}.
+	 * @return the cursor over the totals, which must be closed
+	 */
+	@Select("""
+			SELECT
+			    TORIHIKIBI AS "torihikibi",
+			    SHITENNAME AS "shitenName",
+			    NYUKINNUM AS "nyukinNum",
+			    SYUKKINNUM AS "syukkinNum",
+			    NYUKINSUM AS "nyukinSum",
+			    SYUKKINSUM AS "syukkinSum"
+			FROM
+			    NYUSYUKKIN_DAILY_SUMMARY
+			ORDER BY
+			    TORIHIKIBI, SHITENNAME COLLATE "C" NULLS FIRST
+			""")
+	@Options(fetchSize = 1000)
+	Cursor<NyusyukkinFileOutput> selectNyusyukkinDailySummary();
+
+	/**
+	 * Adds totals to {@code NYUSYUKKIN_DAILY_SUMMARY}, inserting the groups that are not
+	 * there yet.
+	 * @param list the totals, at least one, e.g. from
+	 * {@link NyusyukkinDailySummary#summarize(List)}
+	 * @return the number of groups inserted or updated
+	 */
+	@Insert("""
+			<script>
+			INSERT INTO NYUSYUKKIN_DAILY_SUMMARY AS S (TORIHIKIBI, SHITENNAME, NYUKINNUM, NYUKINSUM, SYUKKINNUM, SYUKKINSUM) VALUES
+			<foreach collection='list' item='item' separator=','>
+			(#{item.torihikibi}, #{item.shitenName}, #{item.nyukinNum}, #{item.nyukinSum}, #{item.syukkinNum}, #{item.syukkinSum})
+			</foreach>
+			ON CONFLICT (TORIHIKIBI, SHITENNAME) DO UPDATE SET
+			    NYUKINNUM = S.NYUKINNUM + EXCLUDED.NYUKINNUM,
+			    NYUKINSUM = S.NYUKINSUM + EXCLUDED.NYUKINSUM,
+			    SYUKKINNUM = S.SYUKKINNUM + EXCLUDED.SYUKKINNUM,
+			    SYUKKINSUM = S.SYUKKINSUM + EXCLUDED.SYUKKINSUM
+			</script>
+			""")
+	int upsertNyusyukkinDailySummary(List<NyusyukkinDailySummary> list);
+
+	/**
+	 * Removes all totals from {@code NYUSYUKKIN_DAILY_SUMMARY}.
+	 */
+	@Update("""
+			TRUNCATE TABLE NYUSYUKKIN_DAILY_SUMMARY
+			""")
+	void truncateNyusyukkinDailySummary();
+
+	/**
+	 * Deletes deposit and withdrawal information by dropping every monthly partition,
+	 * which is much cheaper than deleting the rows one by one.
+	 * @return the number of partitions dropped
+	 */
+	@Select("""
+			SELECT DROP_NYUSYUKKIN_PARTITIONS()
+			""")
+	@Options(flushCache = Options.FlushCachePolicy.TRUE)
+	int dropNyusyukkinPartitions();
+
+	/**
+	 * Creates the missing monthly partitions for the given date range.
+	 * @param from the first date to cover (inclusive)
+	 * @param to the last date to cover (inclusive)
+	 * @return the number of partitions created
+	 */
+	@Select("""
+			SELECT CREATE_NYUSYUKKIN_PARTITIONS(#{from}, #{to})
+			""")
+	@Options(flushCache = Options.FlushCachePolicy.TRUE)
+	int createNyusyukkinPartitions(@Param("from") LocalDate from, @Param("to") LocalDate to);
 
 	/**
 	 * Inserts a single deposit/withdrawal record.
@@ -74,4 +312,157 @@ public interface NyusyukkinMapper {
 			""")
 	int insertNyusyukkinDataBatch(List<NyusyukkinData> list);
 
+	/**
+	 * Inserts deposit/withdrawal records into the staging table in batch.
+	 * @param sourceJob the ID of the job instance importing the records
+	 * @param sourceFile the input file the records were read from
+	 * @param list the list of deposit/withdrawal data, with their position in the input
+	 * file as {@link NyusyukkinData#getItemCount()}
+	 * @return the number of records inserted
+	 */
+	@Insert("""
+			<script>
+			INSERT INTO NYUSYUKKINTBL_STAGING (SHITENNAME, KOKYAKUID, NYUSYUKKINKUBUN, KINGAKU, TORIHIKIBI, SOURCEJOB, SOURCEFILE, SOURCEROW) VALUES
+			<foreach collection='list' item='item' separator=','>
+			(#{item.shitenName}, #{item.kokyakuId}, #{item.nyusyukkinKubun}, #{item.kingaku}, #{item.torihikibi}, #{sourceJob}, #{sourceFile}, #{item.itemCount})
+			</foreach>
+			</script>
+			""")
+	int insertNyusyukkinStagingDataBatch(@Param("sourceJob") long sourceJob, @Param("sourceFile") String sourceFile,
+			@Param("list") List<NyusyukkinData> list);
+
+	/**
+	 * Counts the records in the staging table.
+	 * @return the number of staged records
+	 */
+	@Select("""
+			SELECT
+			    COUNT(*)
+			FROM
+			    NYUSYUKKINTBL_STAGING
+			""")
+	long countNyusyukkinStagingData();
+
+	/**
+	 * Counts the staged records that were already merged by the same job instance, which
+	 * {@link #mergeNyusyukkinStagingData()} skips.
+	 * @return the number of staged records already merged
+	 */
+	@Select("""
+			SELECT
+			    COUNT(*)
+			FROM
+			    NYUSYUKKINTBL_STAGING T
+			WHERE
+			    EXISTS (
+			        SELECT
+			            1
+			        FROM
+			            NYUSYUKKINTBL N
+			        WHERE
+			            N.SOURCEJOB = T.SOURCEJOB
+			            AND N.SOURCEFILE = T.SOURCEFILE
+			            AND N.SOURCEROW = T.SOURCEROW
+			    )
+			""")
+	long countMergedNyusyukkinStagingData();
+
+	/**
+	 * Creates the missing monthly partitions for the transaction dates found in the
+	 * staging table.
+	 * @return the number of partitions created
+	 */
+	@Select("""
+			SELECT
+			    CREATE_NYUSYUKKIN_PARTITIONS(MIN(TORIHIKIBI), MAX(TORIHIKIBI))
+			FROM
+			    NYUSYUKKINTBL_STAGING
+			""")
+	@Options(flushCache = Options.FlushCachePolicy.TRUE)
+	int createNyusyukkinPartitionsForStagingData();
+
+	/**
+	 * Moves the staged records into the deposit/withdrawal table. Records without a
+	 * customer ID (the same rule as {@code @NotEmpty} on
+	 * {@link NyusyukkinData#getKokyakuId()}) or without a transaction date are rejected.
+	 * A record is identified by the job instance that imported it, its input file and its
+	 * position in it: records already merged by the same job instance are skipped, so a
+	 * restarted import adds nothing twice, while identical transactions at different
+	 * positions are all kept.
+	 * <p>
+	 * The totals of the inserted records, as returned by the insert, are added to
+	 * {@code NYUSYUKKIN_DAILY_SUMMARY} in the same statement, so the summary cannot count
+	 * other records than the merge.
+	 * </p>
+	 * @return the number of records inserted
+	 */
+	@Select("""
+			WITH MERGED AS (
+			    INSERT INTO NYUSYUKKINTBL (SHITENNAME, KOKYAKUID, NYUSYUKKINKUBUN, KINGAKU, TORIHIKIBI, SOURCEJOB, SOURCEFILE, SOURCEROW)
+			    SELECT DISTINCT ON (SOURCEJOB, SOURCEFILE, SOURCEROW)
+			        SHITENNAME,
+			        KOKYAKUID,
+			        NYUSYUKKINKUBUN,
+			        KINGAKU,
+			        TORIHIKIBI,
+			        SOURCEJOB,
+			        SOURCEFILE,
+			        SOURCEROW
+			    FROM
+			        NYUSYUKKINTBL_STAGING T
+			    WHERE
+			        KOKYAKUID IS NOT NULL
+			        AND KOKYAKUID <> ''
+			        AND TORIHIKIBI IS NOT NULL
+			        AND NOT EXISTS (
+			            SELECT
+			                1
+			            FROM
+			                NYUSYUKKINTBL N
+			            WHERE
+			                N.SOURCEJOB = T.SOURCEJOB
+			                AND N.SOURCEFILE = T.SOURCEFILE
+			                AND N.SOURCEROW = T.SOURCEROW
+			        )
+			    ORDER BY
+			        SOURCEJOB, SOURCEFILE, SOURCEROW
+			    RETURNING
+			        SHITENNAME, NYUSYUKKINKUBUN, KINGAKU, TORIHIKIBI
+			), SUMMARIZED AS (
+			    INSERT INTO NYUSYUKKIN_DAILY_SUMMARY AS S (TORIHIKIBI, SHITENNAME, NYUKINNUM, NYUKINSUM, SYUKKINNUM, SYUKKINSUM)
+			    SELECT
+			        TORIHIKIBI,
+			        SHITENNAME,
+			        COUNT(*) FILTER (WHERE NYUSYUKKINKUBUN = '1'),
+			        COALESCE(SUM(KINGAKU) FILTER (WHERE NYUSYUKKINKUBUN = '1'), 0),
+			        COUNT(*) FILTER (WHERE NYUSYUKKINKUBUN = '0'),
+			        COALESCE(SUM(KINGAKU) FILTER (WHERE NYUSYUKKINKUBUN = '0'), 0)
+			    FROM
+			        MERGED
+			    GROUP BY
+			        TORIHIKIBI, SHITENNAME
+			    ORDER BY
+			        TORIHIKIBI, SHITENNAME
+			    ON CONFLICT (TORIHIKIBI, SHITENNAME) DO UPDATE SET
+			        NYUKINNUM = S.NYUKINNUM + EXCLUDED.NYUKINNUM,
+			        NYUKINSUM = S.NYUKINSUM + EXCLUDED.NYUKINSUM,
+			        SYUKKINNUM = S.SYUKKINNUM + EXCLUDED.SYUKKINNUM,
+			        SYUKKINSUM = S.SYUKKINSUM + EXCLUDED.SYUKKINSUM
+			)
+			SELECT
+			    COUNT(*)
+			FROM
+			    MERGED
+			""")
+	@Options(flushCache = Options.FlushCachePolicy.TRUE)
+	int mergeNyusyukkinStagingData();
+
+	/**
+	 * Removes all records from the staging table.
+	 */
+	@Update("""
+			TRUNCATE TABLE NYUSYUKKINTBL_STAGING
+			""")
+	void truncateNyusyukkinStagingData();
+
 }
@@ -0,0 +1,397 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.aggregate.AggregateMemoryBudget;
+import com.example.batch.aggregate.SpillingAggregateMap;
+import com.example.batch.aggregate.StringDictionary;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.util.Assert;
+
+/**
+ * Deposit and withdrawal totals at several levels of detail (grouping sets), e.g. per
+ * month and branch and per year, computed in one pass over the input.
+ * <p>
+ * Each record is added once to the base totals per transaction date and, if any level
+ * groups by them, branch and transaction type. The base totals are held in a
+ * {@link SpillingAggregateMap}, i.e. a primitive key column and four {@code long}
+ * accumulator columns per group, within an {@link AggregateMemoryBudget}. The levels are
+ * rolled up from the base groups when the totals are written, so a record costs one map
+ * update whatever the number of levels, and the coarser levels only see as many entries
+ * as there are base groups.
+ * </p>
+ * <p>
+ * The key of a group is the period shifted left by 32 bits, or'ed with the
+ * {@link StringDictionary} id of the branch name plus one shifted left by
+ * {@value #KUBUN_BITS} bits and the transaction type plus one; zero marks a column the
+ * group is not split by. Not thread-safe.
+ * </p>
+ */
+public class NyusyukkinRollup implements AutoCloseable {
+
+	/**
+	 * Daily, monthly and yearly totals per branch and overall.
+	 */
+	public static final String DEFAULT_LEVELS = "day+branch;month+branch;year+branch;day;month;year";
+
+	// Accumulators of a group
+	private static final int NYUKIN_NUM = 0;
+
+	private static final int NYUKIN_SUM = 1;
+
+	private static final int SYUKKIN_NUM = 2;
+
+	private static final int SYUKKIN_SUM = 3;
+
+	private static final int WIDTH = 4;
+
+	// Number of low bits of the group key holding the transaction type
+	private static final int KUBUN_BITS = 8;
+
+	private static final int PERIOD_SHIFT = 32;
+
+	private static final long KUBUN_MASK = (1L << KUBUN_BITS) - 1;
+
+	private static final long SHITEN_MASK = (1L << (PERIOD_SHIFT - KUBUN_BITS)) - 1;
+
+	private final ZoneId zone = ZoneId.systemDefault();
+
+	private final StringDictionary shitenNames = new StringDictionary();
+
+	private final List<Level> levels;
+
+	private final AggregateMemoryBudget budget;
+
+	private final Path tempDirectory;
+
+	private final SpillingAggregateMap base;
+
+	private final boolean byShiten;
+
+	private final boolean byKubun;
+
+	// Consecutive records mostly share their transaction date
+	private long lastTime = Long.MIN_VALUE;
+
+	private long lastEpochDay;
+
+	/**
+	 * Creates empty totals.
+	 * @param levels the levels to compute
+	 * @param budget the memory budget of the aggregation
+	 * @param tempDirectory the directory of the spilled totals
+	 */
+	public NyusyukkinRollup(List<Level> levels, AggregateMemoryBudget budget, Path tempDirectory) {
+		Assert.notEmpty(levels, "levels must not be empty");
+		this.levels = List.copyOf(levels);
+		this.budget = budget;
+		this.tempDirectory = tempDirectory;
+		this.base = new SpillingAggregateMap(WIDTH, budget, tempDirectory);
+		this.byShiten = levels.stream().anyMatch(Level::shiten);
+		this.byKubun = levels.stream().anyMatch(Level::kubun);
+	}
+
+	/**
+	 * Adds a deposit or withdrawal to the base totals.
+	 * @param data the deposit or withdrawal
+	 */
+	public void add(NyusyukkinData data) {
+		Date torihikibi = data.getTorihikibi();
+		Assert.state(torihikibi != null, "Transaction date is required for rollup aggregation");
+		if (torihikibi.getTime() != this.lastTime) {
+			this.lastTime = torihikibi.getTime();
+			this.lastEpochDay = torihikibi.toInstant().atZone(this.zone).toLocalDate().toEpochDay();
+		}
+		int kubun = data.getNyusyukkinKubun();
+		long shitenCode = 0;
+		if (this.byShiten) {
+			shitenCode = this.shitenNames.id(data.getShitenName()) + 1L;
+			Assert.state(shitenCode <= SHITEN_MASK, "Too many branches for rollup aggregation");
+		}
+		long kubunCode = 0;
+		if (this.byKubun) {
+			Assert.state(kubun >= 0 && kubun < KUBUN_MASK, () -> "Transaction type out of range: " + kubun);
+			kubunCode = kubun + 1L;
+		}
+		int slot = this.base.slot(this.lastEpochDay << PERIOD_SHIFT | shitenCode << KUBUN_BITS | kubunCode);
+		// Same mapping of the transaction type as NyusyukkinTotals
+		if (kubun == 0) {
+			this.base.add(slot, SYUKKIN_NUM, 1);
+			this.base.add(slot, SYUKKIN_SUM, data.getKingaku());
+		}
+		else if (kubun == 1) {
+			this.base.add(slot, NYUKIN_NUM, 1);
+			this.base.add(slot, NYUKIN_SUM, data.getKingaku());
+		}
+	}
+
+	/**
+	 * Rolls the base totals up to every level and writes the totals of each level, with
+	 * the index of the level, sorted by period, branch name and transaction type, in
+	 * chunks. Only the groups of one period are held in memory besides the maps.
+	 * @param itemWriter the writer
+	 * @param chunkSize the maximum number of items per chunk
+	 * @throws Exception if the writer fails
+	 */
+	public void writeTo(ItemWriter<? super NyusyukkinRollupFileOutput> itemWriter, int chunkSize) throws Exception {
+		Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+		SpillingAggregateMap[] rollups = new SpillingAggregateMap[this.levels.size()];
+		try {
+			for (int i = 0; i < rollups.length; i++) {
+				rollups[i] = new SpillingAggregateMap(WIDTH, this.budget, this.tempDirectory);
+			}
+			this.base.forEach((key, values) -> {
+				long epochDay = key >> PERIOD_SHIFT;
+				for (int i = 0; i < rollups.length; i++) {
+					Level level = this.levels.get(i);
+					long rollupKey = level.granularity().period(epochDay) << PERIOD_SHIFT;
+					if (level.shiten()) {
+						rollupKey |= key & (SHITEN_MASK << KUBUN_BITS);
+					}
+					if (level.kubun()) {
+						rollupKey |= key & KUBUN_MASK;
+					}
+					int slot = rollups[i].slot(rollupKey);
+					for (int accumulator = 0; accumulator < WIDTH; accumulator++) {
+						rollups[i].add(slot, accumulator, values[accumulator]);
+					}
+				}
+			});
+			for (int i = 0; i < rollups.length; i++) {
+				writeLevel(itemWriter, chunkSize, i, rollups[i]);
+			}
+		}
+		finally {
+			for (SpillingAggregateMap rollup : rollups) {
+				if (rollup != null) {
+					rollup.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes the spilled totals and releases their memory.
+	 */
+	@Override
+	public void close() {
+		this.base.close();
+	}
+
+	private void writeLevel(ItemWriter<? super NyusyukkinRollupFileOutput> itemWriter, int chunkSize, int index,
+			SpillingAggregateMap rollup) throws Exception {
+		Level level = this.levels.get(index);
+		List<NyusyukkinRollupFileOutput> period = new ArrayList<>();
+		long[] currentPeriod = { Long.MIN_VALUE };
+		Exception[] failure = new Exception[1];
+		// The keys are sorted by period; the branch ids are in order of appearance
+		rollup.forEach((key, values) -> {
+			if (failure[0] != null) {
+				return;
+			}
+			if (key >> PERIOD_SHIFT != currentPeriod[0]) {
+				failure[0] = writePeriod(itemWriter, chunkSize, period);
+				currentPeriod[0] = key >> PERIOD_SHIFT;
+			}
+			NyusyukkinRollupFileOutput outputData = new NyusyukkinRollupFileOutput();
+			outputData.setLevel(index);
+			outputData.setPeriod(level.granularity().format(key >> PERIOD_SHIFT));
+			long shitenCode = (key >> KUBUN_BITS) & SHITEN_MASK;
+			if (shitenCode != 0) {
+				outputData.setShitenName(this.shitenNames.value((int) shitenCode - 1));
+			}
+			long kubunCode = key & KUBUN_MASK;
+			if (kubunCode != 0) {
+				outputData.setNyusyukkinKubun((int) kubunCode - 1);
+			}
+			outputData.setNyukinNum(values[NYUKIN_NUM]);
+			outputData.setNyukinSum(values[NYUKIN_SUM]);
+			outputData.setSyukkinNum(values[SYUKKIN_NUM]);
+			outputData.setSyukkinSum(values[SYUKKIN_SUM]);
+			period.add(outputData);
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		Exception last = writePeriod(itemWriter, chunkSize, period);
+		if (last != null) {
+			throw last;
+		}
+	}
+
+	private static Exception writePeriod(ItemWriter<? super NyusyukkinRollupFileOutput> itemWriter, int chunkSize,
+			List<NyusyukkinRollupFileOutput> period) {
+		period.sort(Comparator
+			.comparing(NyusyukkinRollupFileOutput::getShitenName, Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparing(NyusyukkinRollupFileOutput::getNyusyukkinKubun,
+					Comparator.nullsFirst(Comparator.naturalOrder())));
+		try {
+			for (int from = 0; from < period.size(); from += chunkSize) {
+				itemWriter.write(new Chunk<>(period.subList(from, Math.min(period.size(), from + chunkSize))));
+			}
+		}
+		catch (Exception ex) {
+			return ex;
+		}
+		finally {
+			period.clear();
+		}
+		return null;
+	}
+
+	/**
+	 * Date granularity of a level.
+	 */
+	public enum Granularity {
+
+		/**
+		 * Per transaction date, formatted as {@code yyyyMMdd}.
+		 */
+		DAY {
+			@Override
+			long period(long epochDay) {
+				return epochDay;
+			}
+
+			@Override
+			String format(long period) {
+				return LocalDate.ofEpochDay(period).format(DateTimeFormatter.BASIC_ISO_DATE);
+			}
+		},
+
+		/**
+		 * Per month, formatted as {@code yyyyMM}.
+		 */
+		MONTH {
+			@Override
+			long period(long epochDay) {
+				LocalDate date = LocalDate.ofEpochDay(epochDay);
+				return date.getYear() * 12L + date.getMonthValue() - 1;
+			}
+
+			@Override
+			String format(long period) {
+				return String.format("%04d%02d", Math.floorDiv(period, 12), Math.floorMod(period, 12) + 1);
+			}
+		},
+
+		/**
+		 * Per year, formatted as {@code yyyy}.
+		 */
+		YEAR {
+			@Override
+			long period(long epochDay) {
+				return LocalDate.ofEpochDay(epochDay).getYear();
+			}
+
+			@Override
+			String format(long period) {
+				return String.format("%04d", period);
+			}
+		},
+
+		/**
+		 * All dates together, with an empty period.
+		 */
+		ALL {
+			@Override
+			long period(long epochDay) {
+				return 0;
+			}
+
+			@Override
+			String format(long period) {
+				return null;
+			}
+		};
+
+		abstract long period(long epochDay);
+
+		abstract String format(long period);
+
+	}
+
+	/**
+	 * A level of the rollup: the columns its totals are grouped by.
+	 *
+	 * @param granularity the date granularity
+	 * @param shiten whether the totals are per branch
+	 * @param kubun whether the totals are per transaction type
+	 */
+	public record Level(Granularity granularity, boolean shiten, boolean kubun) {
+
+		/**
+		 * Parses a list of levels separated by {@code ;}, e.g.
+		 * {@code month+branch;month;year}. Not by commas, which separate the value and
+		 * type of a job parameter.
+		 * @param specs the levels
+		 * @return the levels, in the given order
+		 * @throws IllegalArgumentException if a level is invalid or given twice
+		 */
+		public static List<Level> parseList(String specs) {
+			List<Level> levels = Arrays.stream(specs.split(";")).map(String::trim).map(Level::parse).toList();
+			Assert.isTrue(levels.stream().distinct().count() == levels.size(), () -> "Duplicate level in " + specs);
+			return levels;
+		}
+
+		/**
+		 * Parses a level: the {@code +}-separated columns it is grouped by, out of
+		 * {@code day}, {@code month} or {@code year}, {@code branch} and {@code kubun},
+		 * or {@code all} for the grand total.
+		 * @param spec the level
+		 * @return the level
+		 * @throws IllegalArgumentException if the level is invalid
+		 */
+		public static Level parse(String spec) {
+			if ("all".equals(spec)) {
+				return new Level(Granularity.ALL, false, false);
+			}
+			Granularity granularity = Granularity.ALL;
+			boolean shiten = false;
+			boolean kubun = false;
+			for (String column : spec.split("\\+")) {
+				switch (column) {
+					case "day", "month", "year" -> {
+						Assert.isTrue(granularity == Granularity.ALL, () -> "More than one date granularity: " + spec);
+						granularity = Granularity.valueOf(column.toUpperCase(Locale.ROOT));
+					}
+					case "branch" -> shiten = true;
+					case "kubun" -> kubun = true;
+					default -> throw new IllegalArgumentException("Unknown rollup column '" + column + "' in " + spec);
+				}
+			}
+			return new Level(granularity, shiten, kubun);
+		}
+
+		/**
+		 * Returns the name of the level, with the columns in canonical order and
+		 * separated by {@code _}, e.g. {@code month_branch}.
+		 * @return the name
+		 */
+		public String name() {
+			StringJoiner name = new StringJoiner("_");
+			if (this.granularity != Granularity.ALL) {
+				name.add(this.granularity.name().toLowerCase(Locale.ROOT));
+			}
+			if (this.shiten) {
+				name.add("branch");
+			}
+			if (this.kubun) {
+				name.add("kubun");
+			}
+			return name.length() > 0 ? name.toString() : "all";
+		}
+
+	}
+
+}
@@ -0,0 +1,193 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.file.OutputFileColumn;
+
+/**
+ * Parameter class for outputting deposit and withdrawal totals of one level of a
+ * {@link NyusyukkinRollup}. The columns a level does not group by are empty.
+ */
+public class NyusyukkinRollupFileOutput {
+
+	/**
+	 * Index of the level, which selects the output file.
+	 */
+	private int level;
+
+	/**
+	 * Transaction period: {@code yyyyMMdd}, {@code yyyyMM} or {@code yyyy}.
+	 */
+	@OutputFileColumn(columnIndex = 0)
+	private String period;
+
+	/**
+	 * Branch name.
+	 */
+	@OutputFileColumn(columnIndex = 1)
+	private String shitenName;
+
+	/**
+	 * Transaction type (0: withdrawal, 1: deposit).
+	 */
+	@OutputFileColumn(columnIndex = 2)
+	private Integer nyusyukkinKubun;
+
+	/**
+	 * Number of deposits.
+	 */
+	@OutputFileColumn(columnIndex = 3)
+	private long nyukinNum;
+
+	/**
+	 * Number of withdrawals.
+	 */
+	@OutputFileColumn(columnIndex = 4)
+	private long syukkinNum;
+
+	/**
+	 * Total deposits.
+	 */
+	@OutputFileColumn(columnIndex = 5)
+	private long nyukinSum;
+
+	/**
+	 * Total withdrawals.
+	 */
+	@OutputFileColumn(columnIndex = 6)
+	private long syukkinSum;
+
+	/**
+	 * Gets the index of the level.
+	 * @return level
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Sets the index of the level.
+	 * @param level the index of the level
+	 */
+	public void setLevel(int level) {
+		this.level = level;
+	}
+
+	/**
+	 * Gets the transaction period.
+	 * @return period
+	 */
+	public String getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Sets the transaction period.
+	 * @param period the transaction period
+	 */
+	public void setPeriod(String period) {
+		this.period = period;
+	}
+
+	/**
+	 * Gets the branch name.
+	 * @return shitenName
+	 */
+	public String getShitenName() {
+		return shitenName;
+	}
+
+	/**
+	 * Sets the branch name.
+	 * @param shitenName the branch name
+	 */
+	public void setShitenName(String shitenName) {
+		this.shitenName = shitenName;
+	}
+
+	/**
+	 * Gets the transaction type.
+	 * @return nyusyukkinKubun
+	 */
+	public Integer getNyusyukkinKubun() {
+		return nyusyukkinKubun;
+	}
+
+	/**
+	 * Sets the transaction type.
+	 * @param nyusyukkinKubun the transaction type
+	 */
+	public void setNyusyukkinKubun(Integer nyusyukkinKubun) {
+		this.nyusyukkinKubun = nyusyukkinKubun;
+	}
+
+	/**
+	 * Gets the number of deposits.
+	 * @return nyukinNum
+	 */
+	public long getNyukinNum() {
+		return nyukinNum;
+	}
+
+	/**
+	 * Sets the number of deposits.
+	 * @param nyukinNum the number of deposits
+	 */
+	public void setNyukinNum(long nyukinNum) {
+		this.nyukinNum = nyukinNum;
+	}
+
+	/**
+	 * Gets the number of withdrawals.
+	 * @return syukkinNum
+	 */
+	public long getSyukkinNum() {
+		return syukkinNum;
+	}
+
+	/**
+	 * Sets the number of withdrawals.
+	 * @param syukkinNum the number of withdrawals
+	 */
+	public void setSyukkinNum(long syukkinNum) {
+		this.syukkinNum = syukkinNum;
+	}
+
+	/**
+	 * Gets the total deposits.
+	 * @return nyukinSum
+	 */
+	public long getNyukinSum() {
+		return nyukinSum;
+	}
+
+	/**
+	 * Sets the total deposits.
+	 * @param nyukinSum the total deposits
+	 */
+	public void setNyukinSum(long nyukinSum) {
+		this.nyukinSum = nyukinSum;
+	}
+
+	/**
+	 * Gets the total withdrawals.
+	 * @return syukkinSum
+	 */
+	public long getSyukkinSum() {
+		return syukkinSum;
+	}
+
+	/**
+	 * Sets the total withdrawals.
+	 * @param syukkinSum the total withdrawals
+	 */
+	public void setSyukkinSum(long syukkinSum) {
+		this.syukkinSum = syukkinSum;
+	}
+
+	@Override
+	public String toString() {
+		return "NyusyukkinRollupFileOutput{" + "level=" + level + ", period='" + period + '\'' + ", shitenName='"
+				+ shitenName + '\'' + ", nyusyukkinKubun=" + nyusyukkinKubun + ", nyukinNum=" + nyukinNum
+				+ ", syukkinNum=" + syukkinNum + ", nyukinSum=" + nyukinSum + ", syukkinSum=" + syukkinSum + '}';
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.file.OutputFileColumn;
+
+/**
+ * Parameter class for outputting deposit and withdrawal totals with customer analytics
+ * columns estimated by sketches.
+ */
+public class NyusyukkinSketchFileOutput extends NyusyukkinFileOutput {
+
+	/**
+	 * Estimated number of distinct customers.
+	 */
+	@OutputFileColumn(columnIndex = 6)
+	private long kokyakuNum;
+
+	/**
+	 * Customers with the largest amounts, as {@code id:amount} separated by {@code ;}.
+	 */
+	@OutputFileColumn(columnIndex = 7)
+	private String topKokyaku;
+
+	/**
+	 * Gets the estimated number of distinct customers.
+	 * @return kokyakuNum
+	 */
+	public long getKokyakuNum() {
+		return kokyakuNum;
+	}
+
+	/**
+	 * Sets the estimated number of distinct customers.
+	 * @param kokyakuNum the estimated number of distinct customers
+	 */
+	public void setKokyakuNum(long kokyakuNum) {
+		this.kokyakuNum = kokyakuNum;
+	}
+
+	/**
+	 * Gets the customers with the largest amounts.
+	 * @return topKokyaku
+	 */
+	public String getTopKokyaku() {
+		return topKokyaku;
+	}
+
+	/**
+	 * Sets the customers with the largest amounts.
+	 * @param topKokyaku the customers with the largest amounts
+	 */
+	public void setTopKokyaku(String topKokyaku) {
+		this.topKokyaku = topKokyaku;
+	}
+
+	@Override
+	public String toString() {
+		return "NyusyukkinSketchFileOutput{" + super.toString() + ", kokyakuNum=" + kokyakuNum + ", topKokyaku='"
+				+ topKokyaku + '\'' + '}';
+	}
+
+}
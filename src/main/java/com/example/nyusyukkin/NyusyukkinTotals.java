@@ -0,0 +1,219 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.aggregate.AggregateMemoryBudget;
+import com.example.batch.aggregate.LongKeyAggregateMap;
+import com.example.batch.aggregate.SpillingAggregateMap;
+import com.example.batch.aggregate.StringDictionary;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.util.Assert;
+
+/**
+ * Deposit and withdrawal totals per transaction date and branch, accumulated in a
+ * {@link LongKeyAggregateMap} that spills to disk when it would exceed an
+ * {@link AggregateMemoryBudget} ({@link SpillingAggregateMap}).
+ * <p>
+ * The key of a group is the epoch day of the transaction date shifted left by
+ * {@value #SHITEN_BITS} bits, or'ed with a {@link StringDictionary} id of the branch
+ * name. Totals built from different parts of the input are combined with
+ * {@link #merge(NyusyukkinTotals)}, which translates the branch ids of the other totals.
+ * Not thread-safe; the totals of parallel parts share the budget.
+ * </p>
+ */
+public class NyusyukkinTotals implements AutoCloseable {
+
+	// Accumulators of a group
+	private static final int NYUKIN_NUM = 0;
+
+	private static final int NYUKIN_SUM = 1;
+
+	private static final int SYUKKIN_NUM = 2;
+
+	private static final int SYUKKIN_SUM = 3;
+
+	private static final int WIDTH = 4;
+
+	// Number of low bits of the group key holding the branch id
+	private static final int SHITEN_BITS = 24;
+
+	private static final long SHITEN_MASK = (1L << SHITEN_BITS) - 1;
+
+	private final ZoneId zone = ZoneId.systemDefault();
+
+	private final StringDictionary shitenNames = new StringDictionary();
+
+	private final SpillingAggregateMap totals;
+
+	private final NyusyukkinCustomerSketches sketches;
+
+	// Consecutive records mostly share their transaction date
+	private long lastTime = Long.MIN_VALUE;
+
+	private long lastEpochDay;
+
+	/**
+	 * Creates empty totals.
+	 * @param budget the memory budget of the aggregation
+	 * @param tempDirectory the directory of the spilled totals
+	 */
+	public NyusyukkinTotals(AggregateMemoryBudget budget, Path tempDirectory) {
+		this(budget, tempDirectory, null);
+	}
+
+	/**
+	 * Creates empty totals with customer sketches, written as
+	 * {@link NyusyukkinSketchFileOutput}.
+	 * @param budget the memory budget of the aggregation
+	 * @param tempDirectory the directory of the spilled totals
+	 * @param sketches the empty customer sketches, or {@code null} for none
+	 */
+	public NyusyukkinTotals(AggregateMemoryBudget budget, Path tempDirectory, NyusyukkinCustomerSketches sketches) {
+		this.totals = new SpillingAggregateMap(WIDTH, budget, tempDirectory);
+		this.sketches = sketches;
+	}
+
+	/**
+	 * Adds a deposit or withdrawal to the totals of its group.
+	 * @param data the deposit or withdrawal
+	 */
+	public void add(NyusyukkinData data) {
+		Date torihikibi = data.getTorihikibi();
+		Assert.state(torihikibi != null, "Transaction date is required for hash aggregation");
+		if (torihikibi.getTime() != this.lastTime) {
+			this.lastTime = torihikibi.getTime();
+			this.lastEpochDay = torihikibi.toInstant().atZone(this.zone).toLocalDate().toEpochDay();
+		}
+		long key = key(this.lastEpochDay, data.getShitenName());
+		if (this.sketches != null) {
+			this.sketches.add(key, data);
+		}
+		int slot = this.totals.slot(key);
+		// Same mapping of the transaction type as the control break of
+		// ReportingNyusyukkinTasklet
+		if (data.getNyusyukkinKubun() == 0) {
+			this.totals.add(slot, SYUKKIN_NUM, 1);
+			this.totals.add(slot, SYUKKIN_SUM, data.getKingaku());
+		}
+		else if (data.getNyusyukkinKubun() == 1) {
+			this.totals.add(slot, NYUKIN_NUM, 1);
+			this.totals.add(slot, NYUKIN_SUM, data.getKingaku());
+		}
+	}
+
+	/**
+	 * Adds the totals of another part of the input to these totals and closes the other
+	 * totals.
+	 * @param other the other totals
+	 * @return these totals
+	 */
+	public NyusyukkinTotals merge(NyusyukkinTotals other) {
+		try (other) {
+			other.totals.forEach((otherKey, values) -> {
+				int slot = this.totals.slot(key(otherKey >> SHITEN_BITS, other.shitenName(otherKey)));
+				for (int accumulator = 0; accumulator < WIDTH; accumulator++) {
+					this.totals.add(slot, accumulator, values[accumulator]);
+				}
+			});
+			if (this.sketches != null) {
+				this.sketches.merge(other.sketches,
+						(otherKey) -> key(otherKey >> SHITEN_BITS, other.shitenName(otherKey)));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the totals of every group, sorted by transaction date and branch name, in
+	 * chunks. Only the groups of one transaction date are held in memory besides the map.
+	 * @param itemWriter the writer
+	 * @param chunkSize the maximum number of items per chunk
+	 * @throws Exception if the writer fails
+	 */
+	public void writeTo(ItemWriter<? super NyusyukkinFileOutput> itemWriter, int chunkSize) throws Exception {
+		Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+		List<NyusyukkinFileOutput> day = new ArrayList<>();
+		long[] currentDay = { Long.MIN_VALUE };
+		Exception[] failure = new Exception[1];
+		// The keys are sorted by date; the branch ids are in order of appearance
+		this.totals.forEach((key, values) -> {
+			if (failure[0] != null) {
+				return;
+			}
+			long epochDay = key >> SHITEN_BITS;
+			if (epochDay != currentDay[0]) {
+				failure[0] = writeDay(itemWriter, chunkSize, day);
+				currentDay[0] = epochDay;
+			}
+			NyusyukkinFileOutput outputData;
+			if (this.sketches != null) {
+				NyusyukkinSketchFileOutput sketchOutputData = new NyusyukkinSketchFileOutput();
+				this.sketches.fill(key, sketchOutputData);
+				outputData = sketchOutputData;
+			}
+			else {
+				outputData = new NyusyukkinFileOutput();
+			}
+			outputData.setTorihikibi(Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(this.zone).toInstant()));
+			outputData.setShitenName(shitenName(key));
+			outputData.setNyukinNum(values[NYUKIN_NUM]);
+			outputData.setNyukinSum(values[NYUKIN_SUM]);
+			outputData.setSyukkinNum(values[SYUKKIN_NUM]);
+			outputData.setSyukkinSum(values[SYUKKIN_SUM]);
+			day.add(outputData);
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		Exception last = writeDay(itemWriter, chunkSize, day);
+		if (last != null) {
+			throw last;
+		}
+	}
+
+	/**
+	 * Deletes the spilled totals and releases their memory and that of the sketches.
+	 */
+	@Override
+	public void close() {
+		this.totals.close();
+		if (this.sketches != null) {
+			this.sketches.close();
+		}
+	}
+
+	private static Exception writeDay(ItemWriter<? super NyusyukkinFileOutput> itemWriter, int chunkSize,
+			List<NyusyukkinFileOutput> day) {
+		day.sort(Comparator.comparing(NyusyukkinFileOutput::getShitenName,
+				Comparator.nullsFirst(Comparator.naturalOrder())));
+		try {
+			for (int from = 0; from < day.size(); from += chunkSize) {
+				itemWriter.write(new Chunk<>(day.subList(from, Math.min(day.size(), from + chunkSize))));
+			}
+		}
+		catch (Exception ex) {
+			return ex;
+		}
+		finally {
+			day.clear();
+		}
+		return null;
+	}
+
+	private long key(long epochDay, String shitenName) {
+		int shitenId = this.shitenNames.id(shitenName);
+		Assert.state(shitenId <= SHITEN_MASK, "Too many branches for hash aggregation");
+		return epochDay << SHITEN_BITS | shitenId;
+	}
+
+	private String shitenName(long key) {
+		return this.shitenNames.value((int) (key & SHITEN_MASK));
+	}
+
+}
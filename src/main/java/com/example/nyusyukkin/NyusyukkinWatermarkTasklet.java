@@ -0,0 +1,96 @@
+package com.example.nyusyukkin;
+
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.stereotype.Component;
+
+/**
+ * Determines the range of IDs of {@code NYUSYUKKINTBL} exported by an incremental export
+ * and stores it in the job {@link ExecutionContext} as {@value #FROM_ID} (exclusive) and
+ * {@value #TO_ID} (inclusive).
+ * <p>
+ * The range starts after the {@value #TO_ID} of the last completed execution of the job,
+ * found with the {@link JobExplorer}, and ends at the highest ID at the time of this
+ * step. As the step is not re-executed once completed, a restarted execution exports the
+ * same range even if records were added in the meantime; these are exported by the next
+ * execution.
+ * </p>
+ * <p>
+ * IDs are generated on insert but committed in any order, so a record with a lower ID
+ * than the highest visible one may still be uncommitted. The highest ID is therefore read
+ * under a lock that waits for the running imports to commit and holds new ones back until
+ * the end of the step transaction, so that no record can later appear below it.
+ * </p>
+ */
+@Component
+@StepScope
+public class NyusyukkinWatermarkTasklet implements Tasklet {
+
+	/**
+	 * Key of the ID after which the records are exported.
+	 */
+	public static final String FROM_ID = "watermark.fromId";
+
+	/**
+	 * Key of the last ID exported.
+	 */
+	public static final String TO_ID = "watermark.toId";
+
+	private final Logger logger = LoggerFactory.getLogger(NyusyukkinWatermarkTasklet.class);
+
+	private final NyusyukkinMapper nyusyukkinMapper;
+
+	private final JobExplorer jobExplorer;
+
+	public NyusyukkinWatermarkTasklet(NyusyukkinMapper nyusyukkinMapper, JobExplorer jobExplorer) {
+		this.nyusyukkinMapper = nyusyukkinMapper;
+		this.jobExplorer = jobExplorer;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		JobExecution jobExecution = chunkContext.getStepContext().getStepExecution().getJobExecution();
+		long from = lastWatermark(jobExecution.getJobInstance().getJobName());
+		// The tasklet runs in the step transaction, which releases the lock
+		this.nyusyukkinMapper.lockNyusyukkinDataAgainstInserts();
+		long to = Math.max(from, this.nyusyukkinMapper.selectMaxNyusyukkinId());
+		jobExecution.getExecutionContext().putLong(FROM_ID, from);
+		jobExecution.getExecutionContext().putLong(TO_ID, to);
+		logger.info("Exporting records with ID after {} up to {}", from, to);
+		return RepeatStatus.FINISHED;
+	}
+
+	/**
+	 * Returns the last ID exported by the most recent completed execution of the job, or
+	 * 0 if there is none.
+	 */
+	private long lastWatermark(String jobName) {
+		int start = 0;
+		List<JobInstance> jobInstances;
+		// Job instances are returned from the most recent
+		while (!(jobInstances = this.jobExplorer.getJobInstances(jobName, start, 100)).isEmpty()) {
+			for (JobInstance jobInstance : jobInstances) {
+				for (JobExecution execution : this.jobExplorer.getJobExecutions(jobInstance)) {
+					if (execution.getStatus() == BatchStatus.COMPLETED
+							&& execution.getExecutionContext().containsKey(TO_ID)) {
+						return execution.getExecutionContext().getLong(TO_ID);
+					}
+				}
+			}
+			start += jobInstances.size();
+		}
+		return 0;
+	}
+
+}
@@ -1,95 +1,347 @@
 package com.example.nyusyukkin;
 
+import com.example.batch.aggregate.AggregateMemoryBudget;
+import com.example.batch.aggregate.ParallelFileAggregator;
+import com.example.batch.file.InputFileColumnLineMapper;
+import com.example.batch.file.RoutingFlatFileItemWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.batch.core.StepContribution;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.item.Chunk;
 import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
 import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.support.SingleItemPeekableItemReader;
 import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
 
+/**
+ * Totals the deposits and withdrawals per transaction date and branch into
+ * SMP004_output.csv.
+ * <p>
+ * The 'aggregation' job parameter selects the mode:
+ * <ul>
+ * <li>{@code sorted} (default): a control break over the input, which must be sorted by
+ * transaction date and branch; a restart resumes after the last commit, made every
+ * 'commitInterval' (default: 1000) records</li>
+ * <li>{@code hash}: the totals are kept in a {@link NyusyukkinTotals}, so the input may
+ * be in any order</li>
+ * <li>{@code parallel}: as {@code hash}, with ranges of the 'inputFile', which must be a
+ * local file, totalled on 'threads' threads (default: the number of processors)</li>
+ * <li>{@code database}: the totals of NYUSYUKKINTBL are computed by the database, with up
+ * to 'threads' parallel workers if given</li>
+ * <li>{@code summary}: the totals are read from NYUSYUKKIN_DAILY_SUMMARY</li>
+ * <li>{@code rollup}: the totals of each level of the 'rollups' job parameter (default:
+ * {@value NyusyukkinRollup#DEFAULT_LEVELS}) are written to
+ * {@code SMP004_output_<level>.csv} instead</li>
+ * </ul>
+ * The modes other than {@code sorted} start over on restart. {@code hash},
+ * {@code parallel} and {@code rollup} spill to disk beyond 'maxMemory' (default: 64MB).
+ * With 'sketches' set to {@code true}, {@code hash} and {@code parallel} add the distinct
+ * customers and the 'topK' (default: 3) customers of each group, sized by 'hllPrecision'
+ * (default: 12) and 'topCapacity' (default: 32).
+ * <p>
+ * The tasklet must be registered as a stream of the step.
+ * </p>
+ */
 @Component
 @StepScope
-public class ReportingNyusyukkinTasklet implements Tasklet {
+public class ReportingNyusyukkinTasklet implements Tasklet, ItemStream {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	private static final String NYUKIN_NUM_KEY = "reporting.nyukinNum";
+
+	private static final String SYUKKIN_NUM_KEY = "reporting.syukkinNum";
+
+	private static final String NYUKIN_SUM_KEY = "reporting.nyukinSum";
+
+	private static final String SYUKKIN_SUM_KEY = "reporting.syukkinSum";
 
 	private final SingleItemPeekableItemReader<NyusyukkinData> itemReader;
 
 	private final FlatFileItemWriter<NyusyukkinFileOutput> itemWriter;
 
+	private final RoutingFlatFileItemWriter<NyusyukkinRollupFileOutput> rollupItemWriter;
+
+	private final NyusyukkinMapper mapper;
+
+	private final String aggregation;
+
+	private final Resource inputFile;
+
+	private final int threads;
+
+	private final DataSize maxMemory;
+
+	private final int commitInterval;
+
+	private final boolean sketches;
+
+	private final int hllPrecision;
+
+	private final int topK;
+
+	private final int topCapacity;
+
+	private final List<NyusyukkinRollup.Level> rollups;
+
+	// Counter for deposits of the current group of the control break
+	private long nyukinNum;
+
+	// Counter for withdrawals
+	private long syukkinNum;
+
+	// Total amount of deposits
+	private long nyukinSum;
+
+	// Total amount of withdrawals
+	private long syukkinSum;
+
 	public ReportingNyusyukkinTasklet(SingleItemPeekableItemReader<NyusyukkinData> itemReader,
-			FlatFileItemWriter<NyusyukkinFileOutput> itemWriter) {
+			FlatFileItemWriter<NyusyukkinFileOutput> itemWriter,
+			RoutingFlatFileItemWriter<NyusyukkinRollupFileOutput> rollupItemWriter, NyusyukkinMapper mapper,
+			@Value("#{jobParameters['aggregation'] ?: 'sorted'}") String aggregation,
+			@Value("#{jobParameters['inputFile']}") Resource inputFile,
+			@Value("#{jobParameters['threads'] ?: 0}") int threads,
+			@Value("#{jobParameters['maxMemory'] ?: '64MB'}") String maxMemory,
+			@Value("#{jobParameters['commitInterval'] ?: 1000}") int commitInterval,
+			@Value("#{jobParameters['sketches'] ?: false}") boolean sketches,
+			@Value("#{jobParameters['hllPrecision'] ?: 12}") int hllPrecision,
+			@Value("#{jobParameters['topK'] ?: 3}") int topK,
+			@Value("#{jobParameters['topCapacity'] ?: 32}") int topCapacity,
+			@Value("#{jobParameters['rollups']}") String rollups) {
 		this.itemReader = itemReader;
 		this.itemWriter = itemWriter;
+		this.rollupItemWriter = rollupItemWriter;
+		this.mapper = mapper;
+		this.aggregation = aggregation;
+		this.inputFile = inputFile;
+		this.threads = threads;
+		this.maxMemory = DataSize.parse(maxMemory);
+		Assert.isTrue(commitInterval > 0, "commitInterval must be positive");
+		this.commitInterval = commitInterval;
+		this.sketches = sketches;
+		this.hllPrecision = hllPrecision;
+		this.topK = topK;
+		this.topCapacity = topCapacity;
+		this.rollups = NyusyukkinRollup.Level.parseList(rollups != null ? rollups : NyusyukkinRollup.DEFAULT_LEVELS);
 	}
 
 	@Override
-	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
-		// Open
-		ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
-		try {
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		outputWriter().open(executionContext);
+		if (readsInputFile()) {
 			this.itemReader.open(executionContext);
-			this.itemWriter.open(executionContext);
-
-			// Counter for deposits
-			int nyukinNum = 0;
-			// Counter for withdrawals
-			int syukkinNum = 0;
-			// Total amount of deposits
-			int nyukinSum = 0;
-			// Total amount of withdrawals
-			int syukkinSum = 0;
-			List<NyusyukkinFileOutput> items = new ArrayList<>();
-			while (this.itemReader.peek() != null) {
-				NyusyukkinData data = this.itemReader.read();
-				if (data != null && data.getNyusyukkinKubun() == 0) {
-					syukkinNum++;
-					syukkinSum += data.getKingaku();
-				}
-				else if (data != null && data.getNyusyukkinKubun() == 1) {
-					nyukinNum++;
-					nyukinSum += data.getKingaku();
-				}
+		}
+		// Totals of the group the last commit ended in
+		this.nyukinNum = executionContext.getLong(NYUKIN_NUM_KEY, 0);
+		this.syukkinNum = executionContext.getLong(SYUKKIN_NUM_KEY, 0);
+		this.nyukinSum = executionContext.getLong(NYUKIN_SUM_KEY, 0);
+		this.syukkinSum = executionContext.getLong(SYUKKIN_SUM_KEY, 0);
+	}
 
-				NyusyukkinData nextData = this.itemReader.peek();
-				if (data != null && (isTorihikibiDifferent(data, nextData) || isShitenNameDifferent(data, nextData))) {
-					NyusyukkinFileOutput outputData = new NyusyukkinFileOutput();
-					outputData.setTorihikibi(data.getTorihikibi());
-					outputData.setShitenName(data.getShitenName());
-					outputData.setNyukinNum(nyukinNum);
-					outputData.setNyukinSum(nyukinSum);
-					outputData.setSyukkinNum(syukkinNum);
-					outputData.setSyukkinSum(syukkinSum);
-					items.add(outputData);
-					this.itemWriter.write(new Chunk<>(outputData));
-					nyukinNum = 0;
-					syukkinNum = 0;
-					nyukinSum = 0;
-					syukkinSum = 0;
-				}
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if (readsInputFile()) {
+			this.itemReader.update(executionContext);
+		}
+		outputWriter().update(executionContext);
+		executionContext.putLong(NYUKIN_NUM_KEY, this.nyukinNum);
+		executionContext.putLong(SYUKKIN_NUM_KEY, this.syukkinNum);
+		executionContext.putLong(NYUKIN_SUM_KEY, this.nyukinSum);
+		executionContext.putLong(SYUKKIN_SUM_KEY, this.syukkinSum);
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		try {
+			this.itemReader.close();
+		}
+		catch (ItemStreamException ignored) {
+		}
+		try {
+			outputWriter().close();
+		}
+		catch (ItemStreamException ignored) {
+
+		}
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		Assert.state(!this.sketches || "hash".equals(this.aggregation) || "parallel".equals(this.aggregation),
+				"Sketch columns require the hash or parallel aggregation");
+		switch (this.aggregation) {
+			case "sorted" -> {
+				return aggregateSorted(contribution);
 			}
+			case "hash" -> aggregateByHash();
+			case "parallel" -> aggregateInParallel();
+			case "database" -> aggregateInDatabase();
+			case "summary" -> writeTotals(this.mapper.selectNyusyukkinDailySummary());
+			case "rollup" -> aggregateRollups();
+			default -> throw new IllegalArgumentException("Unknown aggregation: " + this.aggregation);
 		}
-		finally {
-			try {
-				this.itemReader.close();
+		return RepeatStatus.FINISHED;
+	}
+
+	private boolean readsInputFile() {
+		return "sorted".equals(this.aggregation) || "hash".equals(this.aggregation)
+				|| "rollup".equals(this.aggregation);
+	}
+
+	private ItemStream outputWriter() {
+		return "rollup".equals(this.aggregation) ? this.rollupItemWriter : this.itemWriter;
+	}
+
+	/**
+	 * Reads up to 'commitInterval' records and writes the totals of the groups they
+	 * complete as one chunk.
+	 */
+	private RepeatStatus aggregateSorted(StepContribution contribution) throws Exception {
+		List<NyusyukkinFileOutput> items = new ArrayList<>();
+		for (int count = 0; count < this.commitInterval; count++) {
+			if (this.itemReader.peek() == null) {
+				writeChunk(contribution, items);
+				return RepeatStatus.FINISHED;
 			}
-			catch (ItemStreamException ignored) {
+			NyusyukkinData data = this.itemReader.read();
+			contribution.incrementReadCount();
+			if (data != null && data.getNyusyukkinKubun() == 0) {
+				this.syukkinNum++;
+				this.syukkinSum += data.getKingaku();
 			}
-			try {
-				this.itemWriter.close();
+			else if (data != null && data.getNyusyukkinKubun() == 1) {
+				this.nyukinNum++;
+				this.nyukinSum += data.getKingaku();
 			}
-			catch (ItemStreamException ignored) {
 
+			NyusyukkinData nextData = this.itemReader.peek();
+			if (data != null && (isTorihikibiDifferent(data, nextData) || isShitenNameDifferent(data, nextData))) {
+				NyusyukkinFileOutput outputData = new NyusyukkinFileOutput();
+				outputData.setTorihikibi(data.getTorihikibi());
+				outputData.setShitenName(data.getShitenName());
+				outputData.setNyukinNum(this.nyukinNum);
+				outputData.setNyukinSum(this.nyukinSum);
+				outputData.setSyukkinNum(this.syukkinNum);
+				outputData.setSyukkinSum(this.syukkinSum);
+				items.add(outputData);
+				this.nyukinNum = 0;
+				this.syukkinNum = 0;
+				this.nyukinSum = 0;
+				this.syukkinSum = 0;
 			}
 		}
-		return RepeatStatus.FINISHED;
+		writeChunk(contribution, items);
+		return RepeatStatus.CONTINUABLE;
+	}
+
+	private void writeChunk(StepContribution contribution, List<NyusyukkinFileOutput> items) throws Exception {
+		if (!items.isEmpty()) {
+			this.itemWriter.write(new Chunk<>(items));
+			contribution.incrementWriteCount(items.size());
+		}
+	}
+
+	private void aggregateByHash() throws Exception {
+		Path tempDirectory = Files.createTempDirectory("reporting-nyusyukkin-");
+		try (AggregateMemoryBudget budget = newBudget();
+				NyusyukkinTotals totals = new NyusyukkinTotals(budget, tempDirectory,
+						newSketches(budget, tempDirectory))) {
+			NyusyukkinData data;
+			while ((data = this.itemReader.read()) != null) {
+				totals.add(data);
+			}
+			totals.writeTo(this.itemWriter, CHUNK_SIZE);
+		}
+		finally {
+			FileSystemUtils.deleteRecursively(tempDirectory);
+		}
+	}
+
+	private void aggregateInParallel() throws Exception {
+		Assert.state(this.inputFile != null && this.inputFile.isFile(),
+				"The 'inputFile' job parameter must be a local file for parallel aggregation");
+		Path tempDirectory = Files.createTempDirectory("reporting-nyusyukkin-");
+		// Partial totals left open by a failure are removed with the directory
+		try (AggregateMemoryBudget budget = newBudget()) {
+			ParallelFileAggregator<NyusyukkinData, NyusyukkinTotals> aggregator = new ParallelFileAggregator<>(
+					new InputFileColumnLineMapper<>(NyusyukkinData.class, ","),
+					() -> new NyusyukkinTotals(budget, tempDirectory, newSketches(budget, tempDirectory)),
+					NyusyukkinTotals::add, NyusyukkinTotals::merge);
+			aggregator.setEncoding("Windows-31J");
+			aggregator.setParallelism(this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors());
+			try (NyusyukkinTotals totals = aggregator.aggregate(this.inputFile.getFile().toPath())) {
+				totals.writeTo(this.itemWriter, CHUNK_SIZE);
+			}
+		}
+		finally {
+			FileSystemUtils.deleteRecursively(tempDirectory);
+		}
+	}
+
+	private void aggregateRollups() throws Exception {
+		Path tempDirectory = Files.createTempDirectory("reporting-nyusyukkin-");
+		try (AggregateMemoryBudget budget = newBudget();
+				NyusyukkinRollup rollup = new NyusyukkinRollup(this.rollups, budget, tempDirectory)) {
+			NyusyukkinData data;
+			while ((data = this.itemReader.read()) != null) {
+				rollup.add(data);
+			}
+			rollup.writeTo(this.rollupItemWriter, CHUNK_SIZE);
+		}
+		finally {
+			FileSystemUtils.deleteRecursively(tempDirectory);
+		}
+	}
+
+	private void aggregateInDatabase() throws Exception {
+		if (this.threads > 0) {
+			// The tasklet runs in the step transaction, which resets the setting
+			this.mapper.setLocalMaxParallelWorkersPerGather(this.threads);
+		}
+		writeTotals(this.mapper.selectNyusyukkinTotals());
+	}
+
+	private void writeTotals(Cursor<NyusyukkinFileOutput> cursor) throws Exception {
+		try (Cursor<NyusyukkinFileOutput> totals = cursor) {
+			List<NyusyukkinFileOutput> items = new ArrayList<>(CHUNK_SIZE);
+			for (NyusyukkinFileOutput outputData : totals) {
+				items.add(outputData);
+				if (items.size() == CHUNK_SIZE) {
+					this.itemWriter.write(new Chunk<>(items));
+					items.clear();
+				}
+			}
+			if (!items.isEmpty()) {
+				this.itemWriter.write(new Chunk<>(items));
+			}
+		}
+	}
+
+	private NyusyukkinCustomerSketches newSketches(AggregateMemoryBudget budget, Path tempDirectory) {
+		return this.sketches
+				? new NyusyukkinCustomerSketches(budget, tempDirectory, this.hllPrecision, this.topCapacity, this.topK)
+				: null;
+	}
+
+	private AggregateMemoryBudget newBudget() {
+		return new AggregateMemoryBudget("ReportingNyusyukkin", this.maxMemory.toBytes());
 	}
 
 	boolean isTorihikibiDifferent(NyusyukkinData data1, NyusyukkinData data2) {
@@ -1,6 +1,8 @@
 package com.example.nyusyukkin;
 
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -40,8 +42,10 @@ public class ResetNyusyukkinTasklet implements Tasklet {
 		// Random generator for data creation
 		Random random = new Random();
 
-		// Clear existing records from the deposit/withdrawal table
-		this.nyusyukkinMapper.deleteNyusyukkinData();
+		// Clear existing records from the deposit/withdrawal table by dropping its
+		// partitions
+		this.nyusyukkinMapper.dropNyusyukkinPartitions();
+		this.nyusyukkinMapper.truncateNyusyukkinDailySummary();
 
 		for (int count = 1; count <= maxNumber; count++) {
 			NyusyukkinData nyusyukkin = new NyusyukkinData();
@@ -92,7 +96,16 @@ public class ResetNyusyukkinTasklet implements Tasklet {
 
 			dataList.add(nyusyukkin);
 		}
-		this.nyusyukkinMapper.insertNyusyukkinDataBatch(dataList);
+		if (!dataList.isEmpty()) {
+			// Create the monthly partitions for the range of the generated dates
+			List<LocalDate> dates = dataList.stream()
+				.map(data -> LocalDate.ofInstant(data.getTorihikibi().toInstant(), ZoneId.systemDefault()))
+				.sorted()
+				.toList();
+			this.nyusyukkinMapper.createNyusyukkinPartitions(dates.get(0), dates.get(dates.size() - 1));
+			this.nyusyukkinMapper.insertNyusyukkinDataBatch(dataList);
+			this.nyusyukkinMapper.upsertNyusyukkinDailySummary(NyusyukkinDailySummary.summarize(dataList));
+		}
 		logger.info("Nyusyukkin tasklet completed");
 		return RepeatStatus.FINISHED;
 	}
@@ -0,0 +1,82 @@
+package com.example.nyusyukkin;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * Splits {@code NYUSYUKKINTBL} into contiguous transaction date ranges holding roughly
+ * the same number of records.
+ * <p>
+ * Each partition gets the keys {@code from} (inclusive) and {@code to} (exclusive) in
+ * {@code yyyy-MM-dd} format, and {@code partition}, its name. The names sort in the order
+ * of the ranges, so the outputs of the partitions can be concatenated by name to get the
+ * same result as a single export ordered by transaction date. The first and last ranges
+ * are left open (or bounded by the requested range), so no record is missed even if the
+ * table changes after the split.
+ * </p>
+ */
+public class TorihikibiRangePartitioner implements Partitioner {
+
+	/**
+	 * Prefix of the partition names.
+	 */
+	public static final String PARTITION_PREFIX = "partition";
+
+	private final NyusyukkinMapper nyusyukkinMapper;
+
+	private final LocalDate from;
+
+	private final LocalDate to;
+
+	/**
+	 * Creates a partitioner for the given transaction date range.
+	 * @param nyusyukkinMapper the mapper used to count the records per transaction date
+	 * @param from the first transaction date to export (inclusive), or {@code null} for
+	 * no lower bound
+	 * @param to the transaction date to stop at (exclusive), or {@code null} for no upper
+	 * bound
+	 */
+	public TorihikibiRangePartitioner(NyusyukkinMapper nyusyukkinMapper, LocalDate from, LocalDate to) {
+		this.nyusyukkinMapper = nyusyukkinMapper;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		List<NyusyukkinDailyCount> counts = this.nyusyukkinMapper.countNyusyukkinDataByTorihikibi(this.from, this.to);
+		long total = counts.stream().mapToLong(NyusyukkinDailyCount::getCount).sum();
+		Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+		LocalDate start = this.from;
+		long cumulative = 0;
+		for (int i = 0; i < counts.size() - 1; i++) {
+			cumulative += counts.get(i).getCount();
+			// Cut after this date once the partition reaches its share of the records
+			if (partitions.size() < gridSize - 1 && cumulative * gridSize >= total * (partitions.size() + 1)) {
+				LocalDate end = counts.get(i + 1).getTorihikibi();
+				addPartition(partitions, start, end);
+				start = end;
+			}
+		}
+		addPartition(partitions, start, this.to);
+		return partitions;
+	}
+
+	private static void addPartition(Map<String, ExecutionContext> partitions, LocalDate from, LocalDate to) {
+		String name = String.format("%s%04d", PARTITION_PREFIX, partitions.size());
+		ExecutionContext context = new ExecutionContext();
+		context.putString("partition", name);
+		if (from != null) {
+			context.putString("from", from.toString());
+		}
+		if (to != null) {
+			context.putString("to", to.toString());
+		}
+		partitions.put(name, context);
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.example.nyusyukkin.config;
+
+import com.example.batch.file.DynamicFlatFileItemWriter;
+import com.example.batch.file.ItemKeyTemplate;
+import com.example.batch.file.OutputFileColumnLineAggregator;
+import com.example.nyusyukkin.NyusyukkinData;
+import java.nio.file.Path;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Configuration of the ExportNyusyukkinDataByBranch job, which exports NYUSYUKKINTBL to
+ * one file per branch and month under outputFile. It reads with the
+ * nyusyukkinDataItemReader of the ExportNyusyukkinData job and takes the same 'from',
+ * 'to' and 'readerType' job parameters, as well as:
+ * <ul>
+ * <li>'fileNameTemplate': the {@link ItemKeyTemplate} of the file names (default
+ * {@value #DEFAULT_FILE_NAME_TEMPLATE})</li>
+ * <li>'maxOpenFiles': the maximum number of files kept open (default 64)</li>
+ * </ul>
+ */
+@Configuration(proxyBeanMethods = false)
+public class ExportNyusyukkinDataByBranchJobConfig {
+
+	static final String DEFAULT_FILE_NAME_TEMPLATE = "SMP001_output_{shitenName}_{torihikibi:yyyyMM}.csv";
+
+	@Bean
+	@StepScope
+	public DynamicFlatFileItemWriter<NyusyukkinData> nyusyukkinBranchFileItemWriter(
+			@Value("#{jobParameters['fileNameTemplate']}") String fileNameTemplate,
+			@Value("#{jobParameters['maxOpenFiles'] ?: 64}") int maxOpenFiles) {
+		DynamicFlatFileItemWriter<NyusyukkinData> itemWriter = new DynamicFlatFileItemWriter<>(Path.of("outputFile"),
+				new ItemKeyTemplate<>(NyusyukkinData.class,
+						fileNameTemplate != null ? fileNameTemplate : DEFAULT_FILE_NAME_TEMPLATE),
+				new OutputFileColumnLineAggregator<>(NyusyukkinData.class, ","));
+		itemWriter.setName("nyusyukkinBranchFileWriter");
+		itemWriter.setEncoding("Windows-31J");
+		itemWriter.setMaxOpenFiles(maxOpenFiles);
+		return itemWriter;
+	}
+
+	@Bean
+	public Step exportNyusyukkinDataByBranchStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager,
+			AbstractItemCountingItemStreamItemReader<NyusyukkinData> nyusyukkinDataItemReader,
+			DynamicFlatFileItemWriter<NyusyukkinData> nyusyukkinBranchFileItemWriter) {
+		return new StepBuilder("ExportNyusyukkinDataByBranch", jobRepository)
+			.<NyusyukkinData, NyusyukkinData>chunk(1000, transactionManager)
+			.reader(nyusyukkinDataItemReader)
+			.writer(nyusyukkinBranchFileItemWriter)
+			.build();
+	}
+
+	@Bean
+	public Job exportNyusyukkinDataByBranchJob(JobRepository jobRepository, Step exportNyusyukkinDataByBranchStep) {
+		return new JobBuilder("ExportNyusyukkinDataByBranch", jobRepository).start(exportNyusyukkinDataByBranchStep)
+			.build();
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.example.nyusyukkin.config;
+
+import com.example.nyusyukkin.ExportNyusyukkinDataDirectTasklet;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Configuration of the ExportNyusyukkinDataDirect job, which writes the files of the
+ * ExportNyusyukkinData job directly from the JDBC result set instead of mapping every
+ * record to an object first. It takes the same optional 'from' and 'to' job parameters,
+ * and 'fetchSize' (default 1000) for the number of rows fetched per round trip.
+ */
+@Configuration(proxyBeanMethods = false)
+public class ExportNyusyukkinDataDirectJobConfig {
+
+	@Bean
+	public Step exportNyusyukkinDataDirectStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager,
+			ExportNyusyukkinDataDirectTasklet exportNyusyukkinDataDirectTasklet) {
+		return new StepBuilder("ExportNyusyukkinDataDirect", jobRepository)
+			.tasklet(exportNyusyukkinDataDirectTasklet, transactionManager)
+			.build();
+	}
+
+	@Bean
+	public Job exportNyusyukkinDataDirectJob(JobRepository jobRepository, Step exportNyusyukkinDataDirectStep) {
+		return new JobBuilder("ExportNyusyukkinDataDirect", jobRepository).start(exportNyusyukkinDataDirectStep)
+			.build();
+	}
+
+}
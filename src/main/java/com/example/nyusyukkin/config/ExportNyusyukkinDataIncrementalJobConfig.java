@@ -0,0 +1,112 @@
+package com.example.nyusyukkin.config;
+
+import com.example.batch.file.OutputFileColumnLineAggregator;
+import com.example.batch.file.RoutingFlatFileItemWriter;
+import com.example.nyusyukkin.NyusyukkinData;
+import com.example.nyusyukkin.NyusyukkinMapper;
+import com.example.nyusyukkin.NyusyukkinWatermarkTasklet;
+import java.nio.file.Path;
+import java.util.Map;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.batch.MyBatisCursorItemReader;
+import org.mybatis.spring.batch.builder.MyBatisCursorItemReaderBuilder;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Export job that only exports the records of {@code NYUSYUKKINTBL} ingested since its
+ * last completed execution, so that its duration depends on the volume of the day and not
+ * on the size of the table. The range of IDs to export is determined by
+ * {@link NyusyukkinWatermarkTasklet} and kept in the job execution context.
+ */
+@Configuration(proxyBeanMethods = false)
+public class ExportNyusyukkinDataIncrementalJobConfig {
+
+	@Bean
+	@StepScope
+	public MyBatisCursorItemReader<NyusyukkinData> nyusyukkinIncrementalDataItemReader(
+			SqlSessionFactory sqlSessionFactory,
+			@Value("#{jobExecutionContext['" + NyusyukkinWatermarkTasklet.FROM_ID + "']}") long fromId,
+			@Value("#{jobExecutionContext['" + NyusyukkinWatermarkTasklet.TO_ID + "']}") long toId) {
+		MyBatisCursorItemReader<NyusyukkinData> itemReader = new MyBatisCursorItemReaderBuilder<NyusyukkinData>()
+			.sqlSessionFactory(sqlSessionFactory)
+			.queryId(NyusyukkinMapper.class.getName() + ".selectNyusyukkinDataByIdRange")
+			.parameterValues(Map.of("afterId", fromId, "toId", toId))
+			.build();
+		itemReader.setName("nyusyukkinIncrementalDataReader");
+		return itemReader;
+	}
+
+	// The 'mode' job parameter selects how the records are delivered:
+	// - delta (default): to new files named after the range of IDs exported, with a
+	// manifest whose digest is selected by the 'digest' job parameter (CRC32C by default)
+	// - append: appended to the files of ExportNyusyukkinData, without a manifest; the
+	// files are then only ordered by transaction date within each export
+	@Bean
+	@StepScope
+	public RoutingFlatFileItemWriter<NyusyukkinData> nyusyukkinIncrementalFileItemWriter(
+			@Value("#{jobParameters['mode'] ?: 'delta'}") String mode,
+			@Value("#{jobParameters['digest'] ?: 'CRC32C'}") String digest,
+			@Value("#{jobExecutionContext['" + NyusyukkinWatermarkTasklet.FROM_ID + "']}") long fromId,
+			@Value("#{jobExecutionContext['" + NyusyukkinWatermarkTasklet.TO_ID + "']}") long toId) {
+		String suffix = switch (mode) {
+			case "delta" -> "_delta_" + fromId + "_" + toId;
+			case "append" -> "";
+			default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+		};
+		RoutingFlatFileItemWriter<NyusyukkinData> itemWriter = new RoutingFlatFileItemWriter<>(
+				NyusyukkinData::getNyusyukkinKubun, nyusyukkinKubun -> switch (nyusyukkinKubun) {
+					case 0 -> Path.of("outputFile/SMP001_output_nyukin" + suffix + ".csv");
+					case 1 -> Path.of("outputFile/SMP001_output_syukkin" + suffix + ".csv");
+					default -> null;
+				}, new OutputFileColumnLineAggregator<>(NyusyukkinData.class, ","));
+		itemWriter.setName("nyusyukkinIncrementalFileWriter");
+		itemWriter.setEncoding("Windows-31J");
+		itemWriter.setInitialKeys(0, 1);
+		if ("append".equals(mode)) {
+			itemWriter.setAppendAllowed(true);
+		}
+		else {
+			itemWriter.setDigestAlgorithm("none".equals(digest) ? null : digest);
+			itemWriter.setManifest(Path.of("outputFile/SMP001_output" + suffix + ".manifest"));
+		}
+		return itemWriter;
+	}
+
+	@Bean
+	public Step nyusyukkinWatermarkStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			NyusyukkinWatermarkTasklet tasklet) {
+		return new StepBuilder("NyusyukkinWatermark", jobRepository).tasklet(tasklet, transactionManager).build();
+	}
+
+	@Bean
+	public Step exportNyusyukkinDataIncrementalStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager,
+			MyBatisCursorItemReader<NyusyukkinData> nyusyukkinIncrementalDataItemReader,
+			RoutingFlatFileItemWriter<NyusyukkinData> nyusyukkinIncrementalFileItemWriter) {
+		return new StepBuilder("ExportNyusyukkinDataIncremental", jobRepository)
+			.<NyusyukkinData, NyusyukkinData>chunk(1000, transactionManager)
+			.reader(nyusyukkinIncrementalDataItemReader)
+			.writer(nyusyukkinIncrementalFileItemWriter)
+			.build();
+	}
+
+	@Bean
+	public Job exportNyusyukkinDataIncrementalJob(JobRepository jobRepository, Step nyusyukkinWatermarkStep,
+			Step exportNyusyukkinDataIncrementalStep) {
+		return new JobBuilder("ExportNyusyukkinDataIncremental", jobRepository).incrementer(new RunIdIncrementer())
+			.start(nyusyukkinWatermarkStep)
+			.next(exportNyusyukkinDataIncrementalStep)
+			.build();
+	}
+
+}
@@ -1,90 +1,144 @@
 package com.example.nyusyukkin.config;
 
 import com.example.batch.file.OutputFileColumnLineAggregator;
-import com.example.nyusyukkin.NyusyukkinClassifier;
+import com.example.batch.file.RoutingFlatFileItemWriter;
+import com.example.batch.item.MyBatisKeysetPagingItemReader;
+import com.example.batch.item.PrefetchingItemReader;
 import com.example.nyusyukkin.NyusyukkinData;
 import com.example.nyusyukkin.NyusyukkinMapper;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.ibatis.session.SqlSessionFactory;
-import org.mybatis.spring.batch.MyBatisCursorItemReader;
 import org.mybatis.spring.batch.builder.MyBatisCursorItemReaderBuilder;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.support.ClassifierCompositeItemWriter;
-import org.springframework.batch.item.support.builder.ClassifierCompositeItemWriterBuilder;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.Assert;
 
 @Configuration(proxyBeanMethods = false)
 public class ExportNyusyukkinDataJobConfig {
 
-	// Reader using MyBatisCursorItemReader with the builder pattern
+	private static final int MAX_THREADS = 4;
+
+	// Reader of NYUSYUKKINTBL ordered by transaction date.
+	// The optional 'from' (inclusive) and 'to' (exclusive) job parameters (yyyy-MM-dd)
+	// restrict the export to the partitions of that date range.
+	// The 'readerType' job parameter selects how the table is read:
+	// - cursor (default): MyBatisCursorItemReader, one query and one transaction for the
+	// whole export
+	// - keyset: MyBatisKeysetPagingItemReader, one short query per chunk that continues
+	// after the (TORIHIKIBI, ID) key of the previous chunk, also on restart
 	@Bean
 	@StepScope
-	public MyBatisCursorItemReader<NyusyukkinData> nyusyukkinDataItemReader(SqlSessionFactory sqlSessionFactory) {
-		MyBatisCursorItemReader<NyusyukkinData> itemReader = new MyBatisCursorItemReaderBuilder<NyusyukkinData>()
-			.sqlSessionFactory(sqlSessionFactory)
-			.queryId(NyusyukkinMapper.class.getName() + ".selectNyusyukkinData")
-			.build();
+	public AbstractItemCountingItemStreamItemReader<NyusyukkinData> nyusyukkinDataItemReader(
+			SqlSessionFactory sqlSessionFactory, @Value("#{jobParameters['from']}") String from,
+			@Value("#{jobParameters['to']}") String to,
+			@Value("#{jobParameters['readerType'] ?: 'cursor'}") String readerType) {
+		Map<String, Object> parameterValues = new HashMap<>();
+		parameterValues.put("from", from != null ? LocalDate.parse(from) : null);
+		parameterValues.put("to", to != null ? LocalDate.parse(to) : null);
+		AbstractItemCountingItemStreamItemReader<NyusyukkinData> itemReader = switch (readerType) {
+			case "cursor" -> new MyBatisCursorItemReaderBuilder<NyusyukkinData>().sqlSessionFactory(sqlSessionFactory)
+				.queryId(NyusyukkinMapper.class.getName() + ".selectNyusyukkinData")
+				.parameterValues(parameterValues)
+				.build();
+			case "keyset" -> {
+				MyBatisKeysetPagingItemReader<NyusyukkinData> keysetReader = new MyBatisKeysetPagingItemReader<>(
+						sqlSessionFactory, NyusyukkinMapper.class.getName() + ".selectNyusyukkinDataPage",
+						data -> Map.of("torihikibi", data.getTorihikibi(), "id", data.getId()));
+				keysetReader.setParameterValues(parameterValues);
+				keysetReader.setPageSize(1000);
+				yield keysetReader;
+			}
+			default -> throw new IllegalArgumentException("Unknown readerType: " + readerType);
+		};
 		itemReader.setName("nyusyukkinDataReader");
 		return itemReader;
 	}
 
-	// Writer for deposit transactions (nyusyukkinKubun == 0)
+	// Writes deposit transactions (nyusyukkinKubun == 0) and withdrawal transactions
+	// (nyusyukkinKubun == 1) to their files in one pass over each chunk, formatting and
+	// writing the two files in parallel. Any other transaction type fails the write.
+	// When the step completes, SMP001_output.manifest lists the records, bytes and digest
+	// of both files.
+	// The 'digest' job parameter selects the digest: CRC32C (default), FNV-1a-64,
+	// SHA-256 or none.
 	@Bean
 	@StepScope
-	public FlatFileItemWriter<NyusyukkinData> writerNyukin() {
-		return new FlatFileItemWriterBuilder<NyusyukkinData>().name("writerNyukin")
-			.resource(new FileSystemResource("outputFile/SMP001_output_nyukin.csv"))
-			.encoding("Windows-31J")
-			.append(false)
-			.lineAggregator(new OutputFileColumnLineAggregator<>(NyusyukkinData.class, ","))
-			.build();
+	public RoutingFlatFileItemWriter<NyusyukkinData> nyusyukkinFileItemWriter(
+			@Value("#{jobParameters['digest'] ?: 'CRC32C'}") String digest) {
+		RoutingFlatFileItemWriter<NyusyukkinData> itemWriter = new RoutingFlatFileItemWriter<>(
+				NyusyukkinData::getNyusyukkinKubun, nyusyukkinKubun -> switch (nyusyukkinKubun) {
+					case 0 -> Path.of("outputFile/SMP001_output_nyukin.csv");
+					case 1 -> Path.of("outputFile/SMP001_output_syukkin.csv");
+					default -> null;
+				}, new OutputFileColumnLineAggregator<>(NyusyukkinData.class, ","));
+		itemWriter.setName("nyusyukkinFileWriter");
+		itemWriter.setEncoding("Windows-31J");
+		itemWriter.setInitialKeys(0, 1);
+		itemWriter.setDigestAlgorithm("none".equals(digest) ? null : digest);
+		itemWriter.setManifest(Path.of("outputFile/SMP001_output.manifest"));
+		SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("export-writer-");
+		taskExecutor.setVirtualThreads(true);
+		itemWriter.setTaskExecutor(taskExecutor);
+		return itemWriter;
 	}
 
-	// Writer for withdrawal transactions (nyusyukkinKubun == 1)
+	// Reads ahead from nyusyukkinDataItemReader on a background thread, so that the
+	// multi-threaded step can share it
 	@Bean
 	@StepScope
-	public FlatFileItemWriter<NyusyukkinData> writerSyukkin() {
-		return new FlatFileItemWriterBuilder<NyusyukkinData>().name("writerSyukkin")
-			.resource(new FileSystemResource("outputFile/SMP001_output_syukkin.csv"))
-			.encoding("Windows-31J")
-			.append(false)
-			.lineAggregator(new OutputFileColumnLineAggregator<>(NyusyukkinData.class, ","))
-			.build();
-	}
-
-	// Composite writer that delegates to the appropriate writer based on nyusyukkinKubun
-	// using builder pattern
-	@Bean
-	@StepScope
-	public ClassifierCompositeItemWriter<NyusyukkinData> nyusyukkinFileItemWriter(
-			FlatFileItemWriter<NyusyukkinData> writerNyukin, FlatFileItemWriter<NyusyukkinData> writerSyukkin) {
-		return new ClassifierCompositeItemWriterBuilder<NyusyukkinData>()
-			.classifier(new NyusyukkinClassifier(writerNyukin, writerSyukkin))
-			.build();
+	public PrefetchingItemReader<NyusyukkinData> nyusyukkinDataPrefetchingItemReader(
+			AbstractItemCountingItemStreamItemReader<NyusyukkinData> nyusyukkinDataItemReader) {
+		PrefetchingItemReader<NyusyukkinData> itemReader = new PrefetchingItemReader<>(nyusyukkinDataItemReader);
+		itemReader.setName("nyusyukkinDataPrefetchingReader");
+		itemReader.setCapacity(2000);
+		return itemReader;
 	}
 
+	// The 'threads' job parameter (default 1, at most 4, the default throttle limit of a
+	// multi-threaded step) sets the number of chunk threads. With more than one thread,
+	// the chunks are written in the order they are committed, so the records of the
+	// output files are no longer ordered by transaction date. A restart still continues
+	// from the last commit: the files are truncated to their committed sizes and the
+	// prefetching reader skips the records it has committed.
 	@Bean
+	@JobScope
 	public Step exportNyusyukkinDataStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
-			MyBatisCursorItemReader<NyusyukkinData> nyusyukkinDataItemReader,
-			ClassifierCompositeItemWriter<NyusyukkinData> nyusyukkinFileItemWriter,
-			FlatFileItemWriter<NyusyukkinData> writerNyukin, FlatFileItemWriter<NyusyukkinData> writerSyukkin) {
+			AbstractItemCountingItemStreamItemReader<NyusyukkinData> nyusyukkinDataItemReader,
+			PrefetchingItemReader<NyusyukkinData> nyusyukkinDataPrefetchingItemReader,
+			RoutingFlatFileItemWriter<NyusyukkinData> nyusyukkinFileItemWriter,
+			@Value("#{jobParameters['threads'] ?: 1}") int threads) {
+		Assert.isTrue(threads <= MAX_THREADS, "The 'threads' job parameter must not exceed " + MAX_THREADS);
+		if (threads <= 1) {
+			return new StepBuilder("ExportNyusyukkinData", jobRepository)
+				.<NyusyukkinData, NyusyukkinData>chunk(1000, transactionManager)
+				.reader(nyusyukkinDataItemReader)
+				.writer(nyusyukkinFileItemWriter)
+				.build();
+		}
+		SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("export-");
+		taskExecutor.setConcurrencyLimit(threads);
 		return new StepBuilder("ExportNyusyukkinData", jobRepository)
 			.<NyusyukkinData, NyusyukkinData>chunk(1000, transactionManager)
-			.reader(nyusyukkinDataItemReader)
+			.reader(nyusyukkinDataPrefetchingItemReader)
 			.writer(nyusyukkinFileItemWriter)
-			.stream(writerNyukin)
-			.stream(writerSyukkin)
+			.listener((ChunkListener) nyusyukkinDataPrefetchingItemReader)
+			.taskExecutor(taskExecutor)
 			.build();
-
 	}
 
 	@Bean
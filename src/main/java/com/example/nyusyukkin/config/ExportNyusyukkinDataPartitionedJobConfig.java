@@ -0,0 +1,136 @@
+package com.example.nyusyukkin.config;
+
+import com.example.batch.file.OutputFileColumnLineAggregator;
+import com.example.batch.file.PartFileMergingTasklet;
+import com.example.batch.file.RoutingFlatFileItemWriter;
+import com.example.nyusyukkin.NyusyukkinData;
+import com.example.nyusyukkin.NyusyukkinMapper;
+import com.example.nyusyukkin.TorihikibiRangePartitioner;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.batch.MyBatisCursorItemReader;
+import org.mybatis.spring.batch.builder.MyBatisCursorItemReaderBuilder;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Configuration of the partitioned variant of the ExportNyusyukkinData job.
+ * <p>
+ * The table is split into transaction date ranges of similar size, which are exported in
+ * parallel to part files. The parts are then concatenated in date order, so the output
+ * files are identical to those of the ExportNyusyukkinData job. The number of partitions
+ * is set with the 'gridSize' job parameter (default 4). Each partition uses two database
+ * connections, one for its cursor and one for its chunk transactions.
+ * </p>
+ */
+@Configuration(proxyBeanMethods = false)
+public class ExportNyusyukkinDataPartitionedJobConfig {
+
+	private static final String NYUKIN_FILE = "outputFile/SMP001_output_nyukin.csv";
+
+	private static final String SYUKKIN_FILE = "outputFile/SMP001_output_syukkin.csv";
+
+	private static final String WORKER_STEP_NAME = "ExportNyusyukkinDataPart";
+
+	@Bean
+	@StepScope
+	public Partitioner nyusyukkinDataPartitioner(NyusyukkinMapper nyusyukkinMapper,
+			@Value("#{jobParameters['from']}") String from, @Value("#{jobParameters['to']}") String to) {
+		return new TorihikibiRangePartitioner(nyusyukkinMapper, from != null ? LocalDate.parse(from) : null,
+				to != null ? LocalDate.parse(to) : null);
+	}
+
+	// Reader of one partition, bounded by the date range assigned by the partitioner
+	@Bean
+	@StepScope
+	public MyBatisCursorItemReader<NyusyukkinData> nyusyukkinDataPartItemReader(SqlSessionFactory sqlSessionFactory,
+			@Value("#{stepExecutionContext['from']}") String from, @Value("#{stepExecutionContext['to']}") String to) {
+		Map<String, Object> parameterValues = new HashMap<>();
+		parameterValues.put("from", from != null ? LocalDate.parse(from) : null);
+		parameterValues.put("to", to != null ? LocalDate.parse(to) : null);
+		MyBatisCursorItemReader<NyusyukkinData> itemReader = new MyBatisCursorItemReaderBuilder<NyusyukkinData>()
+			.sqlSessionFactory(sqlSessionFactory)
+			.queryId(NyusyukkinMapper.class.getName() + ".selectNyusyukkinData")
+			.parameterValues(parameterValues)
+			.build();
+		itemReader.setName("nyusyukkinDataPartReader");
+		return itemReader;
+	}
+
+	// Writer of the deposit (nyusyukkinKubun == 0) and withdrawal (nyusyukkinKubun == 1)
+	// part files of one partition
+	@Bean
+	@StepScope
+	public RoutingFlatFileItemWriter<NyusyukkinData> nyusyukkinPartFileItemWriter(
+			@Value("#{stepExecutionContext['partition']}") String partition) {
+		RoutingFlatFileItemWriter<NyusyukkinData> itemWriter = new RoutingFlatFileItemWriter<>(
+				NyusyukkinData::getNyusyukkinKubun, nyusyukkinKubun -> switch (nyusyukkinKubun) {
+					case 0 -> PartFileMergingTasklet.partFile(Path.of(NYUKIN_FILE), partition);
+					case 1 -> PartFileMergingTasklet.partFile(Path.of(SYUKKIN_FILE), partition);
+					default -> null;
+				}, new OutputFileColumnLineAggregator<>(NyusyukkinData.class, ","));
+		itemWriter.setName("nyusyukkinPartFileWriter");
+		itemWriter.setEncoding("Windows-31J");
+		itemWriter.setInitialKeys(0, 1);
+		return itemWriter;
+	}
+
+	@Bean
+	public Step exportNyusyukkinDataPartStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			MyBatisCursorItemReader<NyusyukkinData> nyusyukkinDataPartItemReader,
+			RoutingFlatFileItemWriter<NyusyukkinData> nyusyukkinPartFileItemWriter) {
+		return new StepBuilder(WORKER_STEP_NAME, jobRepository)
+			.<NyusyukkinData, NyusyukkinData>chunk(1000, transactionManager)
+			.reader(nyusyukkinDataPartItemReader)
+			.writer(nyusyukkinPartFileItemWriter)
+			.build();
+	}
+
+	@Bean
+	@JobScope
+	public Step partitionNyusyukkinDataStep(JobRepository jobRepository, Partitioner nyusyukkinDataPartitioner,
+			Step exportNyusyukkinDataPartStep, @Value("#{jobParameters['gridSize'] ?: 4}") int gridSize) {
+		SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("export-part-");
+		taskExecutor.setConcurrencyLimit(gridSize);
+		return new StepBuilder("PartitionNyusyukkinData", jobRepository)
+			.partitioner(WORKER_STEP_NAME, nyusyukkinDataPartitioner)
+			.step(exportNyusyukkinDataPartStep)
+			.gridSize(gridSize)
+			.taskExecutor(taskExecutor)
+			.build();
+	}
+
+	@Bean
+	public Step mergeNyusyukkinDataPartsStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			JobExplorer jobExplorer) {
+		return new StepBuilder("MergeNyusyukkinDataParts", jobRepository)
+			.tasklet(new PartFileMergingTasklet(jobExplorer, WORKER_STEP_NAME,
+					List.of(Path.of(NYUKIN_FILE), Path.of(SYUKKIN_FILE))), transactionManager)
+			.build();
+	}
+
+	@Bean
+	public Job exportNyusyukkinDataPartitionedJob(JobRepository jobRepository, Step partitionNyusyukkinDataStep,
+			Step mergeNyusyukkinDataPartsStep) {
+		return new JobBuilder("ExportNyusyukkinDataPartitioned", jobRepository).start(partitionNyusyukkinDataStep)
+			.next(mergeNyusyukkinDataPartsStep)
+			.build();
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.example.nyusyukkin.config;
+
+import com.example.batch.file.OutputFileColumnLineAggregator;
+import com.example.batch.file.RollingFlatFileItemWriter;
+import com.example.nyusyukkin.NyusyukkinData;
+import java.nio.file.Path;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.batch.item.support.ClassifierCompositeItemWriter;
+import org.springframework.batch.item.support.builder.ClassifierCompositeItemWriterBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Configuration of the ExportNyusyukkinDataRolling job, which writes the files of the
+ * ExportNyusyukkinData job as numbered parts of a limited size, e.g.
+ * SMP001_output_nyukin.0001.csv. It reads with the nyusyukkinDataItemReader of the
+ * ExportNyusyukkinData job and takes the same 'from', 'to' and 'readerType' job
+ * parameters, as well as:
+ * <ul>
+ * <li>'maxRecords': the maximum number of records of a part (default 0, no limit)</li>
+ * <li>'maxBytes': the maximum size of a part in bytes (default 0, no limit)</li>
+ * <li>'compress': whether to gzip the parts (default false)</li>
+ * </ul>
+ */
+@Configuration(proxyBeanMethods = false)
+public class ExportNyusyukkinDataRollingJobConfig {
+
+	@Bean
+	@StepScope
+	public RollingFlatFileItemWriter<NyusyukkinData> rollingWriterNyukin(
+			@Value("#{jobParameters['maxRecords'] ?: 0}") long maxRecords,
+			@Value("#{jobParameters['maxBytes'] ?: 0}") long maxBytes,
+			@Value("#{jobParameters['compress'] ?: false}") boolean compress) {
+		return rollingWriter("rollingWriterNyukin", "outputFile/SMP001_output_nyukin.csv", maxRecords, maxBytes,
+				compress);
+	}
+
+	@Bean
+	@StepScope
+	public RollingFlatFileItemWriter<NyusyukkinData> rollingWriterSyukkin(
+			@Value("#{jobParameters['maxRecords'] ?: 0}") long maxRecords,
+			@Value("#{jobParameters['maxBytes'] ?: 0}") long maxBytes,
+			@Value("#{jobParameters['compress'] ?: false}") boolean compress) {
+		return rollingWriter("rollingWriterSyukkin", "outputFile/SMP001_output_syukkin.csv", maxRecords, maxBytes,
+				compress);
+	}
+
+	private static RollingFlatFileItemWriter<NyusyukkinData> rollingWriter(String name, String target, long maxRecords,
+			long maxBytes, boolean compress) {
+		RollingFlatFileItemWriter<NyusyukkinData> itemWriter = new RollingFlatFileItemWriter<>(Path.of(target),
+				new OutputFileColumnLineAggregator<>(NyusyukkinData.class, ","));
+		itemWriter.setName(name);
+		itemWriter.setEncoding("Windows-31J");
+		if (maxRecords > 0) {
+			itemWriter.setMaxRecords(maxRecords);
+		}
+		if (maxBytes > 0) {
+			itemWriter.setMaxBytes(maxBytes);
+		}
+		itemWriter.setCompress(compress);
+		return itemWriter;
+	}
+
+	// Deposit transactions (nyusyukkinKubun == 0) go to the deposit parts and withdrawal
+	// transactions (nyusyukkinKubun == 1) to the withdrawal parts
+	@Bean
+	@StepScope
+	public ClassifierCompositeItemWriter<NyusyukkinData> nyusyukkinRollingFileItemWriter(
+			RollingFlatFileItemWriter<NyusyukkinData> rollingWriterNyukin,
+			RollingFlatFileItemWriter<NyusyukkinData> rollingWriterSyukkin) {
+		return new ClassifierCompositeItemWriterBuilder<NyusyukkinData>()
+			.classifier(item -> switch (item.getNyusyukkinKubun()) {
+				case 0 -> rollingWriterNyukin;
+				case 1 -> rollingWriterSyukkin;
+				default -> throw new IllegalArgumentException("Unknown transaction type: " + item.getNyusyukkinKubun());
+			})
+			.build();
+	}
+
+	@Bean
+	public Step exportNyusyukkinDataRollingStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager,
+			AbstractItemCountingItemStreamItemReader<NyusyukkinData> nyusyukkinDataItemReader,
+			ClassifierCompositeItemWriter<NyusyukkinData> nyusyukkinRollingFileItemWriter,
+			RollingFlatFileItemWriter<NyusyukkinData> rollingWriterNyukin,
+			RollingFlatFileItemWriter<NyusyukkinData> rollingWriterSyukkin) {
+		return new StepBuilder("ExportNyusyukkinDataRolling", jobRepository)
+			.<NyusyukkinData, NyusyukkinData>chunk(1000, transactionManager)
+			.reader(nyusyukkinDataItemReader)
+			.writer(nyusyukkinRollingFileItemWriter)
+			.stream(rollingWriterNyukin)
+			.stream(rollingWriterSyukkin)
+			.listener((StepExecutionListener) rollingWriterNyukin)
+			.listener((StepExecutionListener) rollingWriterSyukkin)
+			.build();
+	}
+
+	@Bean
+	public Job exportNyusyukkinDataRollingJob(JobRepository jobRepository, Step exportNyusyukkinDataRollingStep) {
+		return new JobBuilder("ExportNyusyukkinDataRolling", jobRepository).start(exportNyusyukkinDataRollingStep)
+			.build();
+	}
+
+}
@@ -1,69 +1,110 @@
 package com.example.nyusyukkin.config;
 
+import com.example.batch.SkipLoggingListener;
+import com.example.batch.file.ByteOffsetFlatFileItemReader;
 import com.example.batch.file.InputFileColumnLineMapper;
+import com.example.batch.item.BisectingStepBuilder;
+import com.example.batch.validator.ChunkValidatingItemProcessor;
+import com.example.batch.validator.CompiledValidatingItemProcessor;
+import com.example.nyusyukkin.NyusyukkinDailySummary;
 import com.example.nyusyukkin.NyusyukkinData;
 import com.example.nyusyukkin.NyusyukkinMapper;
+import java.time.YearMonth;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.core.step.skip.LimitCheckingItemSkipPolicy;
+import org.springframework.batch.core.step.skip.SkipPolicy;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
-import org.springframework.batch.item.validator.BeanValidatingItemProcessor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
 @Configuration(proxyBeanMethods = false)
 public class ImportNyusyukkinDataJobConfig {
 
-	// ItemReader definition (read from CSV file)
+	/**
+	 * Input file read when the 'inputFile' job parameter is not given.
+	 */
+	public static final String DEFAULT_INPUT_FILE = "https://github.com/terasoluna-batch/terasoluna-sample/raw/refs/heads/master/terasoluna-batch-tutorial/inputFile/SMP002_input.csv";
+
+	// ItemReader definition (read from CSV file). On restart it seeks to the byte offset
+	// of the last committed line instead of re-reading the file.
 	@Bean
 	@StepScope
-	public FlatFileItemReader<NyusyukkinData> nyusyukkinDataFileItemReader(
-			@Value("#{jobParameters['inputFile'] ?: 'https://github.com/terasoluna-batch/terasoluna-sample/raw/refs/heads/master/terasoluna-batch-tutorial/inputFile/SMP002_input.csv'}") Resource resource) {
-		return new FlatFileItemReaderBuilder<NyusyukkinData>().name("nyusyukkinItemReader")
-			.resource(resource)
-			.linesToSkip(0)
-			.lineMapper(new InputFileColumnLineMapper<>(NyusyukkinData.class, ","))
-			.encoding("Windows-31J")
-			.build();
+	public ByteOffsetFlatFileItemReader<NyusyukkinData> nyusyukkinDataFileItemReader(
+			@Value("#{jobParameters['inputFile'] ?: '" + DEFAULT_INPUT_FILE + "'}") Resource resource) {
+		ByteOffsetFlatFileItemReader<NyusyukkinData> itemReader = new ByteOffsetFlatFileItemReader<>(resource,
+				new InputFileColumnLineMapper<>(NyusyukkinData.class, ","));
+		itemReader.setName("nyusyukkinItemReader");
+		itemReader.setLinesToSkip(0);
+		itemReader.setEncoding("Windows-31J");
+		return itemReader;
 	}
 
+	// Inserts the chunk and adds its totals to the daily summary in the same transaction.
+	// The missing monthly partitions of the chunk's transaction dates are created first,
+	// so that the records are not stored in the default partition.
 	@Bean
 	public ItemWriter<NyusyukkinData> nyusyukkinDataItemWriter(NyusyukkinMapper nyusyukkinMapper) {
-		return chunk -> nyusyukkinMapper.insertNyusyukkinDataBatch((List<NyusyukkinData>) chunk.getItems());
+		return chunk -> {
+			@SuppressWarnings("unchecked")
+			List<NyusyukkinData> items = (List<NyusyukkinData>) chunk.getItems();
+			List<NyusyukkinDailySummary> summaries = NyusyukkinDailySummary.summarize(items);
+			summaries.stream()
+				.map(NyusyukkinDailySummary::getTorihikibi)
+				.filter(Objects::nonNull)
+				.map(YearMonth::from)
+				.distinct()
+				.forEach((month) -> nyusyukkinMapper.createNyusyukkinPartitions(month.atDay(1), month.atEndOfMonth()));
+			nyusyukkinMapper.insertNyusyukkinDataBatch(items);
+			nyusyukkinMapper.upsertNyusyukkinDailySummary(summaries);
+		};
 	}
 
+	// Skips rows rejected by the database (e.g. a missing transaction date) up to the
+	// 'skipLimit' job parameter
 	@Bean
 	@StepScope
-	public BeanValidatingItemProcessor<NyusyukkinData> nyusyukkinDataItemProcessor(
-			LocalValidatorFactoryBean localValidatorFactoryBean) {
-		BeanValidatingItemProcessor<NyusyukkinData> validatingItemProcessor = new BeanValidatingItemProcessor<>(
-				localValidatorFactoryBean);
+	public SkipPolicy nyusyukkinDataSkipPolicy(@Value("#{jobParameters['skipLimit'] ?: 10}") int skipLimit) {
+		return new LimitCheckingItemSkipPolicy(skipLimit, Map.of(DataIntegrityViolationException.class, true));
+	}
+
+	// Filters the invalid records, logging one summary of the violations per chunk
+	@Bean
+	@StepScope
+	public ChunkValidatingItemProcessor<NyusyukkinData> nyusyukkinDataItemProcessor() {
+		ChunkValidatingItemProcessor<NyusyukkinData> validatingItemProcessor = new ChunkValidatingItemProcessor<>(
+				new CompiledValidatingItemProcessor<>(NyusyukkinData.class));
 		validatingItemProcessor.setFilter(true);
 		return validatingItemProcessor;
 	}
 
+	// Isolates the rejected rows by bisecting the failing chunk
 	@Bean
 	public Step importNyusyukkinDataStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
-			FlatFileItemReader<NyusyukkinData> nyusyukkinDataFileItemReader,
-			BeanValidatingItemProcessor<NyusyukkinData> nyusyukkinDataItemProcessor,
-			ItemWriter<NyusyukkinData> nyusyukkinDataItemWriter) {
-		return new StepBuilder("ImportNyusyukkinData", jobRepository)
+			ByteOffsetFlatFileItemReader<NyusyukkinData> nyusyukkinDataFileItemReader,
+			ChunkValidatingItemProcessor<NyusyukkinData> nyusyukkinDataItemProcessor,
+			ItemWriter<NyusyukkinData> nyusyukkinDataItemWriter, SkipPolicy nyusyukkinDataSkipPolicy,
+			SkipLoggingListener skipLoggingListener) {
+		return new BisectingStepBuilder<>(new StepBuilder("ImportNyusyukkinData", jobRepository)
 			.<NyusyukkinData, NyusyukkinData>chunk(1000, transactionManager)
 			.reader(nyusyukkinDataFileItemReader)
 			.processor(nyusyukkinDataItemProcessor)
-			.writer(nyusyukkinDataItemWriter)
+			.writer(nyusyukkinDataItemWriter)).skipPolicy(nyusyukkinDataSkipPolicy)
+			.listener(skipLoggingListener)
+			.listener((ChunkListener) nyusyukkinDataItemProcessor)
 			.build();
-
 	}
 
 	@Bean
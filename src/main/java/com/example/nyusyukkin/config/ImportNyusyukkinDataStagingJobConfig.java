@@ -0,0 +1,103 @@
+package com.example.nyusyukkin.config;
+
+import com.example.batch.SkipLoggingListener;
+import com.example.batch.file.ByteOffsetFlatFileItemReader;
+import com.example.batch.item.BisectingStepBuilder;
+import com.example.nyusyukkin.MergeNyusyukkinStagingTasklet;
+import com.example.nyusyukkin.NyusyukkinData;
+import com.example.nyusyukkin.NyusyukkinMapper;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.core.step.skip.LimitCheckingItemSkipPolicy;
+import org.springframework.batch.core.step.skip.SkipPolicy;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Import job that bulk-loads the input file into the unlogged staging table and then
+ * merges the staged records into {@code NYUSYUKKINTBL} with a single statement.
+ * Validation happens in the merge statement, so the load step has no processor. A record
+ * is identified by the job instance, the input file and its position in it, so a
+ * restarted import adds no record twice, while a new import of the same file adds them
+ * again.
+ */
+@Configuration(proxyBeanMethods = false)
+public class ImportNyusyukkinDataStagingJobConfig {
+
+	// Stages the records with the ID of the job instance and the URI of the input file,
+	// which identify them together with their position so that a restarted merge skips
+	// the records already imported
+	@Bean
+	@StepScope
+	public ItemWriter<NyusyukkinData> nyusyukkinStagingDataItemWriter(NyusyukkinMapper nyusyukkinMapper,
+			@Value("#{stepExecution.jobExecution.jobInstance.instanceId}") long sourceJob,
+			@Value("#{jobParameters['inputFile'] ?: '" + ImportNyusyukkinDataJobConfig.DEFAULT_INPUT_FILE
+					+ "'}") Resource resource)
+			throws IOException {
+		String sourceFile = resource.getURI().toString();
+		return chunk -> {
+			@SuppressWarnings("unchecked")
+			List<NyusyukkinData> items = (List<NyusyukkinData>) chunk.getItems();
+			nyusyukkinMapper.insertNyusyukkinStagingDataBatch(sourceJob, sourceFile, items);
+		};
+	}
+
+	@Bean
+	@StepScope
+	public SkipPolicy nyusyukkinStagingDataSkipPolicy(@Value("#{jobParameters['skipLimit'] ?: 10}") int skipLimit) {
+		return new LimitCheckingItemSkipPolicy(skipLimit, Map.of(DataIntegrityViolationException.class, true));
+	}
+
+	// Clears leftovers of a previous run. Once completed, this step is not re-executed on
+	// restart, so the records committed by the load step are kept.
+	@Bean
+	public Step truncateNyusyukkinStagingStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager, NyusyukkinMapper nyusyukkinMapper) {
+		return new StepBuilder("TruncateNyusyukkinStaging", jobRepository).tasklet((contribution, chunkContext) -> {
+			nyusyukkinMapper.truncateNyusyukkinStagingData();
+			return RepeatStatus.FINISHED;
+		}, transactionManager).build();
+	}
+
+	@Bean
+	public Step loadNyusyukkinStagingStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			ByteOffsetFlatFileItemReader<NyusyukkinData> nyusyukkinDataFileItemReader,
+			ItemWriter<NyusyukkinData> nyusyukkinStagingDataItemWriter, SkipPolicy nyusyukkinStagingDataSkipPolicy,
+			SkipLoggingListener skipLoggingListener) {
+		return new BisectingStepBuilder<>(new StepBuilder("LoadNyusyukkinStaging", jobRepository)
+			.<NyusyukkinData, NyusyukkinData>chunk(1000, transactionManager)
+			.reader(nyusyukkinDataFileItemReader)
+			.writer(nyusyukkinStagingDataItemWriter)).skipPolicy(nyusyukkinStagingDataSkipPolicy)
+			.listener(skipLoggingListener)
+			.build();
+	}
+
+	@Bean
+	public Step mergeNyusyukkinStagingStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			MergeNyusyukkinStagingTasklet tasklet) {
+		return new StepBuilder("MergeNyusyukkinStaging", jobRepository).tasklet(tasklet, transactionManager).build();
+	}
+
+	@Bean
+	public Job importNyusyukkinDataStagingJob(JobRepository jobRepository, Step truncateNyusyukkinStagingStep,
+			Step loadNyusyukkinStagingStep, Step mergeNyusyukkinStagingStep) {
+		return new JobBuilder("ImportNyusyukkinDataStaging", jobRepository).start(truncateNyusyukkinStagingStep)
+			.next(loadNyusyukkinStagingStep)
+			.next(mergeNyusyukkinStagingStep)
+			.build();
+	}
+
+}
@@ -1,13 +1,25 @@
 package com.example.nyusyukkin.config;
 
+import com.example.batch.file.FileResultCache;
+import com.example.batch.file.FileResultCacheDecider;
 import com.example.batch.file.InputFileColumnLineMapper;
 import com.example.batch.file.OutputFileColumnLineAggregator;
+import com.example.batch.file.RoutingFlatFileItemWriter;
 import com.example.nyusyukkin.NyusyukkinData;
 import com.example.nyusyukkin.NyusyukkinFileOutput;
+import com.example.nyusyukkin.NyusyukkinRollup;
+import com.example.nyusyukkin.NyusyukkinRollupFileOutput;
+import com.example.nyusyukkin.NyusyukkinSketchFileOutput;
 import com.example.nyusyukkin.ReportingNyusyukkinTasklet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecutionListener;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
@@ -29,6 +41,8 @@ import org.springframework.transaction.PlatformTransactionManager;
 @Configuration(proxyBeanMethods = false)
 public class ReportingNyusyukkinJobConfig {
 
+	private static final String OUTPUT_FILE = "outputFile/SMP004_output.csv";
+
 	@Bean
 	@StepScope
 	public FlatFileItemReader<NyusyukkinData> delegateNyusyukkinDataItemReader(
@@ -51,28 +65,129 @@ public class ReportingNyusyukkinJobConfig {
 
 	@Bean
 	@StepScope
-	public FlatFileItemWriter<NyusyukkinFileOutput> nyusyukkinFileOutputItemWriter() {
+	public FlatFileItemWriter<NyusyukkinFileOutput> nyusyukkinFileOutputItemWriter(
+			@Value("#{jobParameters['sketches'] ?: false}") boolean sketches) {
 		return new FlatFileItemWriterBuilder<NyusyukkinFileOutput>().name("nyusyukkinFileOutputItemWriter")
-			.resource(new FileSystemResource("outputFile/SMP004_output.csv"))
+			.resource(new FileSystemResource(OUTPUT_FILE))
 			.encoding("Windows-31J")
 			.append(false)
-			.lineAggregator(new OutputFileColumnLineAggregator<>(NyusyukkinFileOutput.class, ","))
+			.lineAggregator(new OutputFileColumnLineAggregator<NyusyukkinFileOutput>(
+					sketches ? NyusyukkinSketchFileOutput.class : NyusyukkinFileOutput.class, ","))
+			.build();
+	}
+
+	// Writes each level of the 'rollup' aggregation to SMP004_output_<level>.csv, e.g.
+	// SMP004_output_month_branch.csv. The files of all levels are created even if the
+	// input is empty.
+	@Bean
+	@StepScope
+	public RoutingFlatFileItemWriter<NyusyukkinRollupFileOutput> nyusyukkinRollupFileItemWriter(
+			@Value("#{jobParameters['rollups']}") String rollups) {
+		List<NyusyukkinRollup.Level> levels = rollupLevels(rollups);
+		RoutingFlatFileItemWriter<NyusyukkinRollupFileOutput> itemWriter = new RoutingFlatFileItemWriter<>(
+				NyusyukkinRollupFileOutput::getLevel,
+				level -> level < levels.size() ? rollupFile(levels.get(level)) : null,
+				new OutputFileColumnLineAggregator<>(NyusyukkinRollupFileOutput.class, ","));
+		itemWriter.setName("nyusyukkinRollupFileItemWriter");
+		itemWriter.setEncoding("Windows-31J");
+		itemWriter.setInitialKeys(IntStream.range(0, levels.size()).toArray());
+		return itemWriter;
+	}
+
+	// Copies the output files from the cache in 'cacheDirectory' (default:
+	// reporting-nyusyukkin-cache in the temporary-file directory) instead of reading
+	// the input again if the 'inputFile' job parameter is a local file with the same
+	// size, last modified time and CRC-32C as in the last run with the same output
+	// parameters. The CRC-32C is only computed if the size and time match. Applies to
+	// the aggregations reading the input file, unless 'cache' is false. Hits and misses
+	// are counted by batch.cache.gets{name=ReportingNyusyukkin}.
+	@Bean
+	@JobScope
+	public FileResultCacheDecider reportingNyusyukkinCacheDecider(
+			@Value("#{jobParameters['inputFile']}") Resource inputFile,
+			@Value("#{jobParameters['cache'] ?: true}") boolean cache,
+			@Value("#{jobParameters['cacheDirectory']}") String cacheDirectory,
+			@Value("#{jobParameters['aggregation'] ?: 'sorted'}") String aggregation,
+			@Value("#{jobParameters['sketches'] ?: false}") boolean sketches,
+			@Value("#{jobParameters['hllPrecision'] ?: 12}") int hllPrecision,
+			@Value("#{jobParameters['topK'] ?: 3}") int topK,
+			@Value("#{jobParameters['topCapacity'] ?: 32}") int topCapacity,
+			@Value("#{jobParameters['rollups']}") String rollups) throws IOException {
+		if (!cache || inputFile == null || !inputFile.isFile()
+				|| !Set.of("sorted", "hash", "parallel", "rollup").contains(aggregation)) {
+			return new FileResultCacheDecider(null, null, null, null);
+		}
+		Path input = inputFile.getFile().toPath().toAbsolutePath();
+		// Everything the output depends on besides the content of the input
+		StringBuilder key = new StringBuilder("inputFile=").append(input).append(";aggregation=").append(aggregation);
+		List<Path> files;
+		if ("rollup".equals(aggregation)) {
+			List<NyusyukkinRollup.Level> levels = rollupLevels(rollups);
+			key.append(";rollups=").append(levels.stream().map(NyusyukkinRollup.Level::name).toList());
+			files = levels.stream().map(ReportingNyusyukkinJobConfig::rollupFile).toList();
+		}
+		else {
+			key.append(";sketches=").append(sketches);
+			if (sketches) {
+				key.append(";hllPrecision=").append(hllPrecision);
+				key.append(";topK=").append(topK);
+				key.append(";topCapacity=").append(topCapacity);
+			}
+			files = List.of(Path.of(OUTPUT_FILE));
+		}
+		Path directory = cacheDirectory != null ? Path.of(cacheDirectory)
+				: Path.of(System.getProperty("java.io.tmpdir"), "reporting-nyusyukkin-cache");
+		return new FileResultCacheDecider(new FileResultCache("ReportingNyusyukkin", directory), key.toString(), input,
+				files);
+	}
+
+	@Bean
+	public Step restoreReportingNyusyukkinStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager, FileResultCacheDecider reportingNyusyukkinCacheDecider) {
+		return new StepBuilder("RestoreReportingNyusyukkin", jobRepository)
+			.tasklet(reportingNyusyukkinCacheDecider::restore, transactionManager)
+			.build();
+	}
+
+	@Bean
+	public Step storeReportingNyusyukkinStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			FileResultCacheDecider reportingNyusyukkinCacheDecider) {
+		return new StepBuilder("StoreReportingNyusyukkin", jobRepository)
+			.tasklet(reportingNyusyukkinCacheDecider::store, transactionManager)
 			.build();
 	}
 
 	@Bean
 	public Step reportingNyusyukkinStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
 			ReportingNyusyukkinTasklet tasklet) {
-		return new StepBuilder("ReportingNyusyukkin", jobRepository).tasklet(tasklet, transactionManager).build();
+		return new StepBuilder("ReportingNyusyukkin", jobRepository).tasklet(tasklet, transactionManager)
+			.stream(tasklet)
+			.build();
 	}
 
 	@Bean
 	public Job reportingNyusyukkinJob(JobRepository jobRepository, Step reportingNyusyukkinStep,
-			JobExecutionListener jobExecutionListener) {
+			FileResultCacheDecider reportingNyusyukkinCacheDecider, Step restoreReportingNyusyukkinStep,
+			Step storeReportingNyusyukkinStep, JobExecutionListener jobExecutionListener) {
 		return new JobBuilder("ReportingNyusyukkin", jobRepository).incrementer(new RunIdIncrementer())
-			.start(reportingNyusyukkinStep)
+			.start(reportingNyusyukkinCacheDecider)
+			.on(FileResultCacheDecider.HIT.getName())
+			.to(restoreReportingNyusyukkinStep)
+			.from(reportingNyusyukkinCacheDecider)
+			.on("*")
+			.to(reportingNyusyukkinStep)
+			.next(storeReportingNyusyukkinStep)
+			.end()
 			.listener(jobExecutionListener)
 			.build();
 	}
 
+	private static List<NyusyukkinRollup.Level> rollupLevels(String rollups) {
+		return NyusyukkinRollup.Level.parseList(rollups != null ? rollups : NyusyukkinRollup.DEFAULT_LEVELS);
+	}
+
+	private static Path rollupFile(NyusyukkinRollup.Level level) {
+		return Path.of("outputFile/SMP004_output_" + level.name() + ".csv");
+	}
+
 }
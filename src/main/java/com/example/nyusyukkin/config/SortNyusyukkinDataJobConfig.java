@@ -0,0 +1,68 @@
+package com.example.nyusyukkin.config;
+
+import com.example.batch.file.FlatFileSortingTasklet;
+import com.example.nyusyukkin.NyusyukkinData;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.Assert;
+import org.springframework.util.unit.DataSize;
+
+@Configuration(proxyBeanMethods = false)
+public class SortNyusyukkinDataJobConfig {
+
+	// Sorts the 'inputFile' job parameter (a local file) by transaction date and
+	// branch name, the order the control break of ReportingNyusyukkin expects, into
+	// the 'outputFile' job parameter (default: outputFile/SMP004_input_sorted.csv).
+	// The runs held in memory are limited to 'maxMemory' (default: 64MB) and sorted
+	// on 'threads' threads (default: the number of processors).
+	@Bean
+	@StepScope
+	public FlatFileSortingTasklet<NyusyukkinData> nyusyukkinDataSortingTasklet(
+			@Value("#{jobParameters['inputFile']}") Resource inputFile,
+			@Value("#{jobParameters['outputFile'] ?: 'outputFile/SMP004_input_sorted.csv'}") String outputFile,
+			@Value("#{jobParameters['maxMemory'] ?: '64MB'}") String maxMemory,
+			@Value("#{jobParameters['threads'] ?: 0}") int threads) throws IOException {
+		Assert.state(inputFile != null && inputFile.isFile(), "The 'inputFile' job parameter must be a local file");
+		FlatFileSortingTasklet<NyusyukkinData> tasklet = new FlatFileSortingTasklet<>(NyusyukkinData.class,
+				List.of("torihikibi", "shitenName"), inputFile.getFile().toPath(), Path.of(outputFile));
+		tasklet.setEncoding("Windows-31J");
+		tasklet.setLineSeparator("\n");
+		tasklet.setMaxMemory(DataSize.parse(maxMemory).toBytes());
+		if (threads > 0) {
+			tasklet.setParallelism(threads);
+		}
+		return tasklet;
+	}
+
+	@Bean
+	public Step sortNyusyukkinDataStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			FlatFileSortingTasklet<NyusyukkinData> nyusyukkinDataSortingTasklet) {
+		return new StepBuilder("SortNyusyukkinData", jobRepository)
+			.tasklet(nyusyukkinDataSortingTasklet, transactionManager)
+			.build();
+	}
+
+	@Bean
+	public Job sortNyusyukkinDataJob(JobRepository jobRepository, Step sortNyusyukkinDataStep,
+			JobExecutionListener jobExecutionListener) {
+		return new JobBuilder("SortNyusyukkinData", jobRepository).incrementer(new RunIdIncrementer())
+			.start(sortNyusyukkinDataStep)
+			.listener(jobExecutionListener)
+			.build();
+	}
+
+}
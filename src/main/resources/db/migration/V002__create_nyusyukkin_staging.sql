@@ -0,0 +1,7 @@
+CREATE UNLOGGED TABLE NYUSYUKKINTBL_STAGING (
+    SHITENNAME VARCHAR(8),
+    KOKYAKUID VARCHAR(4),
+    NYUSYUKKINKUBUN VARCHAR(1),
+    KINGAKU BIGINT,
+    TORIHIKIBI DATE
+);
@@ -0,0 +1,85 @@
+-- Range-partition NYUSYUKKINTBL by TORIHIKIBI (one partition per month).
+-- Rows whose month has no partition yet are stored in NYUSYUKKINTBL_DEFAULT.
+ALTER TABLE NYUSYUKKINTBL RENAME TO NYUSYUKKINTBL_OLD;
+
+CREATE TABLE NYUSYUKKINTBL (
+    ID BIGINT GENERATED ALWAYS AS IDENTITY,
+    SHITENNAME VARCHAR(8),
+    KOKYAKUID VARCHAR(4),
+    NYUSYUKKINKUBUN VARCHAR(1),
+    KINGAKU BIGINT,
+    TORIHIKIBI DATE NOT NULL,
+    PRIMARY KEY (ID, TORIHIKIBI)
+) PARTITION BY RANGE (TORIHIKIBI);
+
+CREATE TABLE NYUSYUKKINTBL_DEFAULT PARTITION OF NYUSYUKKINTBL DEFAULT;
+
+CREATE INDEX NYUSYUKKINTBL_TORIHIKIBI_BRIN ON NYUSYUKKINTBL USING BRIN (TORIHIKIBI);
+
+CREATE INDEX NYUSYUKKINTBL_SHITENNAME_TORIHIKIBI_IDX ON NYUSYUKKINTBL (SHITENNAME, TORIHIKIBI);
+
+-- Creates the missing monthly partitions between FROM_DATE and TO_DATE (inclusive).
+-- Rows of those months already stored in the default partition are moved to the new
+-- partition. Returns the number of partitions created.
+CREATE FUNCTION CREATE_NYUSYUKKIN_PARTITIONS(FROM_DATE DATE, TO_DATE DATE) RETURNS INTEGER AS $$
+DECLARE
+    MONTH_START DATE := DATE_TRUNC('month', FROM_DATE)::DATE;
+    MONTH_END DATE;
+    PARTITION_NAME TEXT;
+    CREATED INTEGER := 0;
+BEGIN
+    WHILE MONTH_START <= TO_DATE LOOP
+        MONTH_END := (MONTH_START + INTERVAL '1 month')::DATE;
+        PARTITION_NAME := 'nyusyukkintbl_' || TO_CHAR(MONTH_START, 'YYYYMM');
+        IF TO_REGCLASS(PARTITION_NAME) IS NULL THEN
+            CREATE TEMPORARY TABLE NYUSYUKKINTBL_MOVED AS
+                SELECT * FROM NYUSYUKKINTBL_DEFAULT WHERE TORIHIKIBI >= MONTH_START AND TORIHIKIBI < MONTH_END;
+            DELETE FROM NYUSYUKKINTBL_DEFAULT WHERE TORIHIKIBI >= MONTH_START AND TORIHIKIBI < MONTH_END;
+            EXECUTE FORMAT('CREATE TABLE %I PARTITION OF NYUSYUKKINTBL FOR VALUES FROM (%L) TO (%L)',
+                PARTITION_NAME, MONTH_START, MONTH_END);
+            INSERT INTO NYUSYUKKINTBL OVERRIDING SYSTEM VALUE SELECT * FROM NYUSYUKKINTBL_MOVED;
+            DROP TABLE NYUSYUKKINTBL_MOVED;
+            CREATED := CREATED + 1;
+        END IF;
+        MONTH_START := MONTH_END;
+    END LOOP;
+    RETURN CREATED;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Drops every monthly partition and empties the default partition.
+-- Returns the number of partitions dropped.
+CREATE FUNCTION DROP_NYUSYUKKIN_PARTITIONS() RETURNS INTEGER AS $$
+DECLARE
+    PARTITION_NAME TEXT;
+    DROPPED INTEGER := 0;
+BEGIN
+    FOR PARTITION_NAME IN
+        SELECT C.RELNAME
+        FROM PG_INHERITS I
+        JOIN PG_CLASS C ON C.OID = I.INHRELID
+        WHERE I.INHPARENT = 'nyusyukkintbl'::REGCLASS
+          AND C.RELNAME <> 'nyusyukkintbl_default'
+    LOOP
+        EXECUTE FORMAT('DROP TABLE %I', PARTITION_NAME);
+        DROPPED := DROPPED + 1;
+    END LOOP;
+    TRUNCATE TABLE NYUSYUKKINTBL_DEFAULT;
+    RETURN DROPPED;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Rows without a transaction date cannot be partitioned, as TORIHIKIBI is part of the
+-- primary key. They are kept in NYUSYUKKINTBL_UNDATED for review instead of being
+-- dropped with NYUSYUKKINTBL_OLD.
+CREATE TABLE NYUSYUKKINTBL_UNDATED AS
+SELECT * FROM NYUSYUKKINTBL_OLD WHERE TORIHIKIBI IS NULL;
+
+SELECT CREATE_NYUSYUKKIN_PARTITIONS(MIN(TORIHIKIBI), MAX(TORIHIKIBI)) FROM NYUSYUKKINTBL_OLD;
+
+INSERT INTO NYUSYUKKINTBL (SHITENNAME, KOKYAKUID, NYUSYUKKINKUBUN, KINGAKU, TORIHIKIBI)
+SELECT SHITENNAME, KOKYAKUID, NYUSYUKKINKUBUN, KINGAKU, TORIHIKIBI
+FROM NYUSYUKKINTBL_OLD
+WHERE TORIHIKIBI IS NOT NULL;
+
+DROP TABLE NYUSYUKKINTBL_OLD;
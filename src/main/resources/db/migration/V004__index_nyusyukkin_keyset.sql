@@ -0,0 +1,2 @@
+-- Supports reading NYUSYUKKINTBL in (TORIHIKIBI, ID) order one page at a time
+CREATE INDEX NYUSYUKKINTBL_TORIHIKIBI_ID_IDX ON NYUSYUKKINTBL (TORIHIKIBI, ID);
@@ -0,0 +1,23 @@
+-- Deposit and withdrawal totals per transaction date and branch, updated by every job
+-- that inserts into NYUSYUKKINTBL so that reports read one row per group.
+-- Records without a branch name are one group (NULLS NOT DISTINCT).
+CREATE TABLE NYUSYUKKIN_DAILY_SUMMARY (
+    TORIHIKIBI DATE NOT NULL,
+    SHITENNAME VARCHAR(8),
+    NYUKINNUM BIGINT NOT NULL,
+    NYUKINSUM BIGINT NOT NULL,
+    SYUKKINNUM BIGINT NOT NULL,
+    SYUKKINSUM BIGINT NOT NULL,
+    CONSTRAINT NYUSYUKKIN_DAILY_SUMMARY_KEY UNIQUE NULLS NOT DISTINCT (TORIHIKIBI, SHITENNAME)
+);
+
+INSERT INTO NYUSYUKKIN_DAILY_SUMMARY (TORIHIKIBI, SHITENNAME, NYUKINNUM, NYUKINSUM, SYUKKINNUM, SYUKKINSUM)
+SELECT
+    TORIHIKIBI,
+    SHITENNAME,
+    COUNT(*) FILTER (WHERE NYUSYUKKINKUBUN = '1'),
+    COALESCE(SUM(KINGAKU) FILTER (WHERE NYUSYUKKINKUBUN = '1'), 0),
+    COUNT(*) FILTER (WHERE NYUSYUKKINKUBUN = '0'),
+    COALESCE(SUM(KINGAKU) FILTER (WHERE NYUSYUKKINKUBUN = '0'), 0)
+FROM NYUSYUKKINTBL
+GROUP BY TORIHIKIBI, SHITENNAME;
@@ -0,0 +1,13 @@
+-- Identifies the records imported through NYUSYUKKINTBL_STAGING by the input file they
+-- were read from and their position in it, so that the merge skips the records of a file
+-- already imported. Records inserted by other jobs have no source.
+ALTER TABLE NYUSYUKKINTBL_STAGING
+    ADD COLUMN SOURCEFILE VARCHAR(1024),
+    ADD COLUMN SOURCEROW BIGINT;
+
+ALTER TABLE NYUSYUKKINTBL
+    ADD COLUMN SOURCEFILE VARCHAR(1024),
+    ADD COLUMN SOURCEROW BIGINT;
+
+-- A record always has the same transaction date, so this is unique per source record
+CREATE UNIQUE INDEX NYUSYUKKINTBL_SOURCE_IDX ON NYUSYUKKINTBL (SOURCEFILE, SOURCEROW, TORIHIKIBI);
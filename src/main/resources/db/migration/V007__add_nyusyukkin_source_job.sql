@@ -0,0 +1,12 @@
+-- Scopes the source of a staged record to the job instance that imported it, so that
+-- only a restart of the same import skips the records already merged. A file delivered
+-- again under the same name is imported by a new job instance.
+ALTER TABLE NYUSYUKKINTBL_STAGING
+    ADD COLUMN SOURCEJOB BIGINT;
+
+ALTER TABLE NYUSYUKKINTBL
+    ADD COLUMN SOURCEJOB BIGINT;
+
+DROP INDEX NYUSYUKKINTBL_SOURCE_IDX;
+
+CREATE UNIQUE INDEX NYUSYUKKINTBL_SOURCE_IDX ON NYUSYUKKINTBL (SOURCEJOB, SOURCEFILE, SOURCEROW, TORIHIKIBI);
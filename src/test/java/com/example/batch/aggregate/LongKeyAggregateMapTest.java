@@ -0,0 +1,68 @@
+package com.example.batch.aggregate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link LongKeyAggregateMap}.
+ */
+class LongKeyAggregateMapTest {
+
+	@Test
+	@DisplayName("Should accumulate per key like a HashMap while growing")
+	void shouldAccumulatePerKey() {
+		// Given
+		LongKeyAggregateMap map = new LongKeyAggregateMap(2);
+		Map<Long, long[]> expected = new HashMap<>();
+		Random random = new Random(42);
+
+		// When
+		for (int i = 0; i < 100_000; i++) {
+			long key = random.nextInt(5000) - 2500L << 24 | random.nextInt(3);
+			long value = random.nextInt(1_000_000);
+			int slot = map.slot(key);
+			map.add(slot, 0, 1);
+			map.add(slot, 1, value);
+			long[] totals = expected.computeIfAbsent(key, k -> new long[2]);
+			totals[0]++;
+			totals[1] += value;
+		}
+
+		// Then
+		assertThat(map.size()).isEqualTo(expected.size());
+		expected.forEach((key, totals) -> {
+			assertThat(map.get(key, 0)).isEqualTo(totals[0]);
+			assertThat(map.get(key, 1)).isEqualTo(totals[1]);
+		});
+		assertThat(map.sortedKeys()).isSorted().hasSize(expected.size());
+		assertThat(map.containsKey(Long.MAX_VALUE)).isFalse();
+		assertThat(map.get(Long.MAX_VALUE, 0)).isZero();
+	}
+
+	@Test
+	@DisplayName("Should sum the accumulators of merged maps")
+	void shouldMergeMaps() {
+		// Given
+		LongKeyAggregateMap first = new LongKeyAggregateMap(1);
+		first.add(1L, 0, 10);
+		first.add(2L, 0, 20);
+		LongKeyAggregateMap second = new LongKeyAggregateMap(1);
+		second.add(2L, 0, 5);
+		second.add(-3L, 0, 7);
+
+		// When
+		first.merge(second);
+
+		// Then
+		assertThat(first.sortedKeys()).containsExactly(-3L, 1L, 2L);
+		assertThat(first.get(-3L, 0)).isEqualTo(7);
+		assertThat(first.get(1L, 0)).isEqualTo(10);
+		assertThat(first.get(2L, 0)).isEqualTo(25);
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.example.batch.aggregate;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Test class for {@link ParallelFileAggregator}.
+ */
+class ParallelFileAggregatorTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should map every line exactly once and combine the ranges in order")
+	void shouldAggregateEveryLineOnce() throws Exception {
+		// Given
+		StringBuilder content = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			String line = "東京" + i;
+			expected.add(line);
+			content.append(line).append(i % 3 == 0 ? "\r\n" : "\n");
+			if (i % 100 == 0) {
+				content.append("\n");
+			}
+		}
+		Path file = this.tempDir.resolve("input.csv");
+		Files.writeString(file, content.append("last"), Charset.forName("Windows-31J"));
+		expected.add("last");
+		ParallelFileAggregator<String, List<String>> aggregator = new ParallelFileAggregator<>((line, n) -> line,
+				ArrayList::new, List::add, (left, right) -> {
+					left.addAll(right);
+					return left;
+				});
+		aggregator.setParallelism(4);
+		aggregator.setSplitSize(1000);
+
+		// When
+		List<String> lines = aggregator.aggregate(file);
+
+		// Then
+		assertThat(lines).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	@DisplayName("Should skip comment lines like FlatFileItemReader")
+	void shouldSkipCommentLines() throws Exception {
+		// Given
+		Path file = this.tempDir.resolve("input.csv");
+		Files.writeString(file, "# header\n1\n2\n#3\n4\n");
+		ParallelFileAggregator<Integer, long[]> aggregator = new ParallelFileAggregator<>(
+				(line, n) -> Integer.valueOf(line), () -> new long[1], (sum, value) -> sum[0] += value,
+				(left, right) -> new long[] { left[0] + right[0] });
+		aggregator.setSplitSize(2);
+
+		// When
+		long[] sum = aggregator.aggregate(file);
+
+		// Then
+		assertThat(sum[0]).isEqualTo(7);
+	}
+
+	@Test
+	@DisplayName("Should report the byte offset of a line that cannot be mapped")
+	void shouldFailOnUnmappableLine() throws Exception {
+		// Given
+		Path file = this.tempDir.resolve("input.csv");
+		Files.writeString(file, "1\n2\nx\n4\n");
+		ParallelFileAggregator<Integer, long[]> aggregator = new ParallelFileAggregator<>(
+				(line, n) -> Integer.valueOf(line), () -> new long[1], (sum, value) -> sum[0] += value,
+				(left, right) -> new long[] { left[0] + right[0] });
+		aggregator.setSplitSize(2);
+
+		// When / Then
+		assertThatExceptionOfType(FlatFileParseException.class).isThrownBy(() -> aggregator.aggregate(file))
+			.withMessageContaining("byte offset: 4")
+			.satisfies(ex -> assertThat(ex.getInput()).isEqualTo("x"));
+	}
+
+}
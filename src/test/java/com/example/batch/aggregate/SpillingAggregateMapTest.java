@@ -0,0 +1,99 @@
+package com.example.batch.aggregate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link SpillingAggregateMap}.
+ */
+class SpillingAggregateMapTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should spill over the budget and merge the runs like a TreeMap")
+	void shouldSpillAndMerge() throws IOException {
+		// Given
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AggregateMemoryBudget budget = new AggregateMemoryBudget("test", 16 * 1024);
+		budget.setMeterRegistry(registry);
+		Map<Long, long[]> expected = new TreeMap<>();
+		Random random = new Random(42);
+		List<Long> keys = new ArrayList<>();
+		List<long[]> values = new ArrayList<>();
+
+		// When
+		try (SpillingAggregateMap map = new SpillingAggregateMap(2, budget, this.tempDir)) {
+			for (int i = 0; i < 100_000; i++) {
+				long key = random.nextInt(20_000) - 10_000L << 24 | random.nextInt(3);
+				long value = random.nextLong() >> 8;
+				int slot = map.slot(key);
+				map.add(slot, 0, 1);
+				map.add(slot, 1, value);
+				long[] totals = expected.computeIfAbsent(key, k -> new long[2]);
+				totals[0]++;
+				totals[1] += value;
+			}
+			map.forEach((key, accumulators) -> {
+				keys.add(key);
+				values.add(accumulators.clone());
+			});
+
+			// Then
+			// More spills than runs are merged at once
+			assertThat(map.getSpillCount()).isGreaterThan(64);
+			assertThat(budget.getUsedBytes()).isLessThanOrEqualTo(budget.getMaxBytes());
+			assertThat(registry.get("batch.aggregate.spills").tag("name", "test").counter().count())
+				.isEqualTo(map.getSpillCount());
+			assertThat(registry.get("batch.aggregate.memory.max").gauge().value()).isEqualTo(16 * 1024);
+			assertThat(registry.get("batch.aggregate.memory.used").gauge().value()).isPositive();
+		}
+		assertThat(keys).containsExactlyElementsOf(expected.keySet());
+		assertThat(values).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(expected.values());
+		assertThat(budget.getUsedBytes()).isZero();
+		try (Stream<Path> files = Files.list(this.tempDir)) {
+			assertThat(files).isEmpty();
+		}
+		budget.close();
+		assertThat(registry.getMeters()).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should grow in memory without spilling within the budget")
+	void shouldNotSpillWithinBudget() {
+		// Given
+		AggregateMemoryBudget budget = new AggregateMemoryBudget("test", 64 * 1024 * 1024);
+		budget.setMeterRegistry(new SimpleMeterRegistry());
+		List<Long> keys = new ArrayList<>();
+
+		// When
+		try (SpillingAggregateMap map = new SpillingAggregateMap(1, budget, this.tempDir)) {
+			for (long key = 10_000; key > 0; key--) {
+				map.add(map.slot(key), 0, key);
+			}
+			map.forEach((key, accumulators) -> {
+				assertThat(accumulators[0]).isEqualTo(key);
+				keys.add(key);
+			});
+
+			// Then
+			assertThat(map.getSpillCount()).isZero();
+		}
+		assertThat(keys).hasSize(10_000).isSorted();
+	}
+
+}
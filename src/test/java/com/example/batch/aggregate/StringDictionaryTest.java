@@ -0,0 +1,33 @@
+package com.example.batch.aggregate;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link StringDictionary}.
+ */
+class StringDictionaryTest {
+
+	@Test
+	@DisplayName("Should assign consecutive ids in order of appearance, including null")
+	void shouldAssignConsecutiveIds() {
+		// Given
+		StringDictionary dictionary = new StringDictionary();
+
+		// When
+		int tokyo = dictionary.id("Tokyo");
+		int chiba = dictionary.id("Chiba");
+		int none = dictionary.id(null);
+
+		// Then
+		assertThat(new int[] { tokyo, chiba, none }).containsExactly(0, 1, 2);
+		assertThat(dictionary.id("Tokyo")).isEqualTo(tokyo);
+		assertThat(dictionary.id(null)).isEqualTo(none);
+		assertThat(dictionary.value(chiba)).isEqualTo("Chiba");
+		assertThat(dictionary.value(none)).isNull();
+		assertThat(dictionary.size()).isEqualTo(3);
+	}
+
+}
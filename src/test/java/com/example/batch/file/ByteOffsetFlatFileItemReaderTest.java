@@ -0,0 +1,163 @@
+package com.example.batch.file;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link ByteOffsetFlatFileItemReader}.
+ */
+class ByteOffsetFlatFileItemReaderTest {
+
+	private static final Charset WINDOWS_31J = Charset.forName("Windows-31J");
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should read Windows-31J lines with mixed line terminators")
+	void shouldReadLinesWithMixedTerminators() throws Exception {
+		// Given
+		Resource resource = write("東京,0001\r\n埼玉,0002\n千葉,0003\r表,0004");
+		ByteOffsetFlatFileItemReader<TestBean> reader = newReader(resource);
+
+		// When
+		reader.open(new ExecutionContext());
+		List<TestBean> items = readAll(reader);
+		reader.close();
+
+		// Then
+		assertThat(items).extracting(TestBean::getName).containsExactly("東京", "埼玉", "千葉", "表");
+		assertThat(items).extracting(TestBean::getId).containsExactly("0001", "0002", "0003", "0004");
+	}
+
+	@Test
+	@DisplayName("Should resume from the saved byte offset on restart")
+	void shouldResumeFromSavedOffset() throws Exception {
+		// Given
+		Resource resource = write("# header\r\n東京,0001\r\n埼玉,0002\r\n千葉,0003\r\n表,0004\r\n");
+		ByteOffsetFlatFileItemReader<TestBean> reader = newReader(resource);
+		ExecutionContext executionContext = new ExecutionContext();
+		reader.open(executionContext);
+		reader.read();
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+
+		// When
+		ByteOffsetFlatFileItemReader<TestBean> restarted = newReader(resource);
+		restarted.open(executionContext);
+		List<TestBean> items = readAll(restarted);
+		restarted.update(executionContext);
+		restarted.close();
+
+		// Then
+		assertThat(executionContext.getLong("reader.byte.offset")).isEqualTo(Files.size(resource.getFile().toPath()));
+		assertThat(items).extracting(TestBean::getName).containsExactly("千葉", "表");
+	}
+
+	@Test
+	@DisplayName("Should skip forward by bytes when the resource is not a file")
+	void shouldSkipBytesForNonFileResource() throws Exception {
+		// Given
+		byte[] content = "東京,0001\n埼玉,0002\n千葉,0003\n".getBytes(WINDOWS_31J);
+		ByteOffsetFlatFileItemReader<TestBean> reader = newReader(new ByteArrayResource(content));
+		ExecutionContext executionContext = new ExecutionContext();
+		reader.open(executionContext);
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+
+		// When
+		ByteOffsetFlatFileItemReader<TestBean> restarted = newReader(new ByteArrayResource(content));
+		restarted.open(executionContext);
+		List<TestBean> items = readAll(restarted);
+		restarted.close();
+
+		// Then
+		assertThat(items).extracting(TestBean::getName).containsExactly("埼玉", "千葉");
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 7, 64 * 1024 })
+	@DisplayName("Should skip forward from the bytes already buffered for the header when the resource is not a file")
+	void shouldSkipBytesAfterHeaderForNonFileResource(int bufferSize) throws Exception {
+		// Given
+		byte[] content = "支店名,顧客ID\n東京,0001\n埼玉,0002\n千葉,0003\n".getBytes(WINDOWS_31J);
+		ByteOffsetFlatFileItemReader<TestBean> reader = newReader(new ByteArrayResource(content));
+		reader.setLinesToSkip(1);
+		reader.setBufferSize(bufferSize);
+		ExecutionContext executionContext = new ExecutionContext();
+		reader.open(executionContext);
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+
+		// When
+		ByteOffsetFlatFileItemReader<TestBean> restarted = newReader(new ByteArrayResource(content));
+		restarted.setLinesToSkip(1);
+		restarted.setBufferSize(bufferSize);
+		restarted.open(executionContext);
+		List<TestBean> items = readAll(restarted);
+		restarted.close();
+
+		// Then
+		assertThat(items).extracting(TestBean::getName).containsExactly("埼玉", "千葉");
+	}
+
+	private Resource write(String content) throws Exception {
+		Path file = this.tempDir.resolve("input.csv");
+		Files.write(file, content.getBytes(WINDOWS_31J));
+		return new FileSystemResource(file);
+	}
+
+	private static ByteOffsetFlatFileItemReader<TestBean> newReader(Resource resource) {
+		ByteOffsetFlatFileItemReader<TestBean> reader = new ByteOffsetFlatFileItemReader<>(resource,
+				new InputFileColumnLineMapper<>(TestBean.class));
+		reader.setName("reader");
+		reader.setEncoding("Windows-31J");
+		reader.setBufferSize(7);
+		return reader;
+	}
+
+	private static List<TestBean> readAll(ByteOffsetFlatFileItemReader<TestBean> reader) throws Exception {
+		List<TestBean> items = new ArrayList<>();
+		TestBean item;
+		while ((item = reader.read()) != null) {
+			items.add(item);
+		}
+		return items;
+	}
+
+	public static class TestBean {
+
+		@InputFileColumn(columnIndex = 0)
+		private String name;
+
+		@InputFileColumn(columnIndex = 1)
+		private String id;
+
+		public String getName() {
+			return name;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+	}
+
+}
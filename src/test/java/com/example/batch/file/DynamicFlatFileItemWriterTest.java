@@ -0,0 +1,177 @@
+package com.example.batch.file;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Test class for {@link DynamicFlatFileItemWriter}.
+ */
+class DynamicFlatFileItemWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should write to the file of the key template with a bounded number of open files")
+	void shouldWriteWithBoundedOpenFiles() throws Exception {
+		// Given
+		DynamicFlatFileItemWriter<TestBean> writer = newWriter();
+		writer.setMaxOpenFiles(2);
+		writer.open(new ExecutionContext());
+
+		// When
+		writer.write(Chunk.of(bean("tokyo", "2024-01-05", "a"), bean("saitama", "2024-01-06", "b"),
+				bean("tokyo", "2024-02-01", "c")));
+		int openFiles = writer.getOpenFileCount();
+		writer.write(Chunk.of(bean("tokyo", "2024-01-31", "d")));
+		writer.close();
+
+		// Then
+		assertThat(openFiles).isEqualTo(2);
+		assertThat(Files.readString(this.tempDir.resolve("tokyo/202401.txt"))).isEqualTo("a\nd\n");
+		assertThat(Files.readString(this.tempDir.resolve("saitama/202401.txt"))).isEqualTo("b\n");
+		assertThat(Files.readString(this.tempDir.resolve("tokyo/202402.txt"))).isEqualTo("c\n");
+	}
+
+	@Test
+	@DisplayName("Should truncate every file to its size at the last commit on restart")
+	void shouldTruncateFilesOnRestart() throws Exception {
+		// Given
+		DynamicFlatFileItemWriter<TestBean> writer = newWriter();
+		writer.setMaxOpenFiles(1);
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+		new TransactionTemplate(new ResourcelessTransactionManager()).executeWithoutResult(status -> {
+			try {
+				writer.write(Chunk.of(bean("tokyo", "2024-01-05", "a"), bean("saitama", "2024-01-06", "b")));
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+			writer.update(executionContext);
+		});
+		writer.write(Chunk.of(bean("tokyo", "2024-01-07", "x"), bean("saitama", "2024-01-08", "y")));
+		writer.close();
+
+		// When
+		DynamicFlatFileItemWriter<TestBean> restarted = newWriter();
+		restarted.open(executionContext);
+		restarted.write(Chunk.of(bean("saitama", "2024-01-09", "c")));
+		restarted.close();
+
+		// Then
+		assertThat(Files.readString(this.tempDir.resolve("tokyo/202401.txt"))).isEqualTo("a\n");
+		assertThat(Files.readString(this.tempDir.resolve("saitama/202401.txt"))).isEqualTo("b\nc\n");
+	}
+
+	@Test
+	@DisplayName("Should restore the files written before a failed commit")
+	void shouldRestoreFilesOfFailedCommit() throws Exception {
+		// Given
+		DynamicFlatFileItemWriter<TestBean> writer = newWriter();
+		writer.setMaxOpenFiles(1);
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+		transactionTemplate.executeWithoutResult(status -> write(writer, bean("tokyo", "2024-01-05", "a")));
+
+		// When
+		assertThatIllegalStateException().isThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+			write(writer, bean("tokyo", "2024-01-07", "x"), bean("saitama", "2024-01-08", "y"));
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					throw new IllegalStateException("commit failed");
+				}
+			});
+		}));
+		transactionTemplate.executeWithoutResult(status -> {
+			write(writer, bean("tokyo", "2024-01-09", "c"));
+			writer.update(executionContext);
+		});
+		writer.close();
+
+		// Then
+		assertThat(Files.readString(this.tempDir.resolve("tokyo/202401.txt"))).isEqualTo("a\nc\n");
+		assertThat(this.tempDir.resolve("saitama/202401.txt")).doesNotExist();
+		assertThat(executionContext.get("writer.file.sizes")).isEqualTo(Map.of("tokyo/202401.txt", 4L));
+	}
+
+	@Test
+	@DisplayName("Should reject a file name outside of the directory")
+	void shouldRejectFileOutsideDirectory() {
+		// Given
+		DynamicFlatFileItemWriter<TestBean> writer = newWriter();
+		writer.open(new ExecutionContext());
+
+		// When / Then
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> writer.write(Chunk.of(bean("../tokyo", "2024-01-05", "a"))))
+			.withMessageStartingWith("File name outside of ");
+		writer.close();
+	}
+
+	private DynamicFlatFileItemWriter<TestBean> newWriter() {
+		DynamicFlatFileItemWriter<TestBean> writer = new DynamicFlatFileItemWriter<>(this.tempDir,
+				new ItemKeyTemplate<>(TestBean.class, "{branch}/{date:yyyyMM}.txt"), TestBean::getValue);
+		writer.setName("writer");
+		writer.setEncoding("UTF-8");
+		writer.setLineSeparator("\n");
+		return writer;
+	}
+
+	private static void write(DynamicFlatFileItemWriter<TestBean> writer, TestBean... items) {
+		try {
+			writer.write(Chunk.of(items));
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static TestBean bean(String branch, String date, String value) {
+		TestBean bean = new TestBean();
+		bean.branch = branch;
+		bean.date = LocalDate.parse(date);
+		bean.value = value;
+		return bean;
+	}
+
+	public static class TestBean {
+
+		private String branch;
+
+		private LocalDate date;
+
+		private String value;
+
+		public String getBranch() {
+			return branch;
+		}
+
+		public LocalDate getDate() {
+			return date;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+	}
+
+}
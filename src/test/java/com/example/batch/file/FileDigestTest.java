@@ -0,0 +1,71 @@
+package com.example.batch.file;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Test class for {@link FileDigest}.
+ */
+class FileDigestTest {
+
+	@TempDir
+	Path tempDir;
+
+	@ParameterizedTest
+	@CsvSource({ "CRC32C, 123456789, e3069283", "FNV-1a-64, foobar, 85944171f73967e8",
+			"SHA-256, abc, ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad" })
+	@DisplayName("Should compute the digest of the bytes added")
+	void shouldComputeDigest(String algorithm, String text, String expected) {
+		// Given
+		FileDigest digest = FileDigest.newDigest(algorithm);
+
+		// When
+		byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+		digest.update(bytes, 0, 3);
+		digest.update(bytes, 3, bytes.length - 3);
+
+		// Then
+		assertThat(digest.getValue()).isEqualTo(expected);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { FileDigest.CRC32C, FileDigest.FNV1A_64, FileDigest.SHA_256 })
+	@DisplayName("Should continue the digest of a file from its saved state")
+	void shouldRestoreDigest(String algorithm) throws Exception {
+		// Given
+		byte[] bytes = "The quick brown fox jumps over the lazy dog\n".repeat(100).getBytes(StandardCharsets.US_ASCII);
+		FileDigest whole = FileDigest.newDigest(algorithm);
+		whole.update(bytes, 0, bytes.length);
+		FileDigest first = FileDigest.newDigest(algorithm);
+		first.update(bytes, 0, 1000);
+		Path file = this.tempDir.resolve("output.txt");
+		Files.write(file, bytes);
+
+		// When
+		FileDigest restored = FileDigest.restore(algorithm, first.getState(), file, 1000);
+		restored.update(bytes, 1000, bytes.length - 1000);
+
+		// Then
+		assertThat(restored.getValue()).isEqualTo(whole.getValue());
+		assertThat(restored.copy().getState()).isEqualTo(whole.getState());
+	}
+
+	@Test
+	@DisplayName("Should reject an unknown algorithm")
+	void shouldRejectUnknownAlgorithm() {
+		// When / Then
+		assertThatIllegalArgumentException().isThrownBy(() -> FileDigest.newDigest("MD5"))
+			.withMessage("Unsupported digest algorithm: MD5");
+	}
+
+}
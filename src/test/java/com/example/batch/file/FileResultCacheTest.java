@@ -0,0 +1,136 @@
+package com.example.batch.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Test class for {@link FileResultCache}.
+ */
+class FileResultCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private FileResultCache cache;
+
+	private Path input;
+
+	private Path output;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		this.cache = new FileResultCache("report", this.tempDir.resolve("cache"));
+		this.cache.setMeterRegistry(this.meterRegistry);
+		this.input = Files.writeString(this.tempDir.resolve("input.csv"), "a,1\nb,2\n");
+		this.output = this.tempDir.resolve("output.csv");
+	}
+
+	@Test
+	@DisplayName("Should restore the stored output of an unchanged input and count a hit")
+	void shouldRestoreStoredOutput() throws Exception {
+		// Given
+		Files.writeString(this.output, "a,1\n");
+		this.cache.store("key", FileResultCache.fingerprint(this.input), List.of(this.output));
+		Files.writeString(this.output, "overwritten\n");
+
+		// When
+		FileResultCache.Fingerprint fingerprint = FileResultCache.fingerprint(this.input);
+		boolean hit = this.cache.lookup("key", fingerprint, List.of(this.output));
+		this.cache.restore("key", fingerprint, List.of(this.output));
+
+		// Then
+		assertThat(hit).isTrue();
+		assertThat(this.output).hasContent("a,1");
+		assertThat(count("hit")).isEqualTo(1);
+		assertThat(count("miss")).isZero();
+	}
+
+	@Test
+	@DisplayName("Should miss when the content, the modification time or the key differs")
+	void shouldMissOnChangedInput() throws Exception {
+		// Given
+		Files.writeString(this.output, "a,1\n");
+		FileResultCache.Fingerprint stored = FileResultCache.fingerprint(this.input);
+		this.cache.store("key", stored, List.of(this.output));
+
+		// When
+		Files.setLastModifiedTime(this.input, FileTime.fromMillis(stored.lastModified() + 1000));
+		boolean touched = this.cache.lookup("key", FileResultCache.fingerprint(this.input), List.of(this.output));
+		Files.writeString(this.input, "a,1\nb,3\n");
+		Files.setLastModifiedTime(this.input, FileTime.fromMillis(stored.lastModified()));
+		boolean changed = this.cache.lookup("key", FileResultCache.fingerprint(this.input), List.of(this.output));
+		boolean otherKey = this.cache.lookup("other", stored, List.of(this.output));
+
+		// Then
+		assertThat(touched).isFalse();
+		assertThat(changed).isFalse();
+		assertThat(otherKey).isFalse();
+		assertThat(count("miss")).isEqualTo(3);
+		assertThatIllegalStateException().isThrownBy(() -> this.cache.restore("other", stored, List.of(this.output)));
+	}
+
+	@Test
+	@DisplayName("Should replace the entry of a key and parse the formatted fingerprint")
+	void shouldReplaceEntry() throws Exception {
+		// Given
+		Files.writeString(this.output, "a,1\n");
+		this.cache.store("key", FileResultCache.fingerprint(this.input), List.of(this.output));
+		Files.writeString(this.input, "c,3\n");
+		FileResultCache.Fingerprint fingerprint = FileResultCache.Fingerprint
+			.parse(FileResultCache.fingerprint(this.input).toString());
+
+		// When
+		Files.writeString(this.output, "c,3\n");
+		this.cache.store("key", fingerprint, List.of(this.output));
+		Files.delete(this.output);
+		this.cache.restore("key", fingerprint, List.of(this.output));
+
+		// Then
+		assertThat(this.output).hasContent("c,3");
+		try (var entries = Files.list(this.tempDir.resolve("cache"))) {
+			assertThat(entries).hasSize(1);
+		}
+	}
+
+	@Test
+	@DisplayName("Should compute the digest of the input only when its size and modification time match the entry")
+	void shouldComputeDigestOnlyForMatchingEntry() throws Exception {
+		// Given
+		Files.writeString(this.output, "a,1\n");
+		FileResultCache.Fingerprint stored = FileResultCache.fingerprint(this.input);
+		this.cache.store("key", stored, List.of(this.output));
+
+		// When
+		FileResultCache.Fingerprint unknownKey = this.cache.fingerprint("other", this.input);
+		Files.setLastModifiedTime(this.input, FileTime.fromMillis(stored.lastModified() + 1000));
+		FileResultCache.Fingerprint touched = this.cache.fingerprint("key", this.input);
+		Files.setLastModifiedTime(this.input, FileTime.fromMillis(stored.lastModified()));
+		FileResultCache.Fingerprint unchanged = this.cache.fingerprint("key", this.input);
+
+		// Then
+		assertThat(unknownKey.digest()).isNull();
+		assertThat(touched.digest()).isNull();
+		assertThat(FileResultCache.Fingerprint.parse(touched.toString())).isEqualTo(touched);
+		assertThat(this.cache.lookup("key", touched, List.of(this.output))).isFalse();
+		assertThat(unchanged).isEqualTo(stored);
+		assertThat(this.cache.lookup("key", unchanged, List.of(this.output))).isTrue();
+	}
+
+	private double count(String result) {
+		var counter = this.meterRegistry.find("batch.cache.gets").tags("name", "report", "result", result).counter();
+		return counter != null ? counter.count() : 0;
+	}
+
+}
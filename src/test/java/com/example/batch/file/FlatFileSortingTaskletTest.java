@@ -0,0 +1,140 @@
+package com.example.batch.file;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Test class for {@link FlatFileSortingTasklet}.
+ */
+class FlatFileSortingTaskletTest {
+
+	private static final Charset WINDOWS_31J = Charset.forName("Windows-31J");
+
+	private static final String[] BRANCHES = { "東京", "大阪", "名古屋", "札幌", "福岡", null };
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should sort many runs in several merge passes, keeping equal keys in input order")
+	void shouldSortWithSeveralMergePasses() throws Exception {
+		// Given
+		List<String> lines = randomLines(3000);
+		Path input = write(lines, "\r\n");
+		Path output = this.tempDir.resolve("sorted.csv");
+		FlatFileSortingTasklet<SortBean> tasklet = new FlatFileSortingTasklet<>(SortBean.class,
+				List.of("date", "branch"), input, output);
+		tasklet.setLineSeparator("\n");
+		tasklet.setMaxMemory(20 * 1024);
+		tasklet.setParallelism(3);
+		tasklet.setTempDirectory(this.tempDir);
+
+		// When
+		long count = tasklet.sort();
+
+		// Then
+		assertThat(count).isEqualTo(3000);
+		assertThat(Files.readAllLines(output, WINDOWS_31J)).containsExactlyElementsOf(expected(lines));
+		assertThat(this.tempDir).isDirectoryNotContaining("glob:**/flat-file-sort-*");
+	}
+
+	@Test
+	@DisplayName("Should sort in memory in place when the input fits in one run")
+	void shouldSortInMemory() throws Exception {
+		// Given
+		List<String> lines = randomLines(500);
+		Path file = write(lines, "\n");
+		FlatFileSortingTasklet<SortBean> tasklet = new FlatFileSortingTasklet<>(SortBean.class,
+				List.of("date", "branch"), file, file);
+		tasklet.setLineSeparator("\n");
+
+		// When
+		tasklet.sort();
+
+		// Then
+		assertThat(Files.readAllLines(file, WINDOWS_31J)).containsExactlyElementsOf(expected(lines));
+	}
+
+	@Test
+	@DisplayName("Should report a line that cannot be mapped and leave the output untouched")
+	void shouldFailOnUnmappableLine() throws Exception {
+		// Given
+		Path input = write(List.of("東京,20240102,1", "大阪,20240101,x"), "\n");
+		Path output = this.tempDir.resolve("sorted.csv");
+		FlatFileSortingTasklet<SortBean> tasklet = new FlatFileSortingTasklet<>(SortBean.class, List.of("amount"),
+				input, output);
+
+		// When / Then
+		assertThatExceptionOfType(FlatFileParseException.class).isThrownBy(tasklet::sort)
+			.satisfies(ex -> assertThat(ex.getInput()).isEqualTo("大阪,20240101,x"));
+		assertThat(output).doesNotExist();
+	}
+
+	@Test
+	@DisplayName("Should reject keys that are not input columns")
+	void shouldRejectUnknownKey() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new FlatFileSortingTasklet<>(SortBean.class,
+				List.of("comment"), this.tempDir.resolve("in.csv"), this.tempDir.resolve("out.csv")));
+	}
+
+	private static List<String> randomLines(int count) {
+		Random random = new Random(42);
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String branch = BRANCHES[random.nextInt(BRANCHES.length)];
+			lines.add((branch != null ? branch : "") + "," + (20240101 + random.nextInt(28)) + "," + i);
+		}
+		return lines;
+	}
+
+	private static List<String> expected(List<String> lines) {
+		// Dates as yyyyMMdd sort like the dates; an empty branch is mapped to null
+		List<String> expected = new ArrayList<>(lines);
+		expected.sort(Comparator.comparing((String line) -> line.split(",")[1])
+			.thenComparing((String line) -> line.split(",")[0]));
+		return expected;
+	}
+
+	private Path write(List<String> lines, String separator) throws Exception {
+		Path file = this.tempDir.resolve("input.csv");
+		StringBuilder content = new StringBuilder();
+		for (String line : lines) {
+			content.append(line).append(separator);
+			if (content.length() % 7 == 0) {
+				content.append(separator);
+			}
+		}
+		Files.writeString(file, content, WINDOWS_31J);
+		return file;
+	}
+
+	public static class SortBean {
+
+		@InputFileColumn(columnIndex = 0)
+		private String branch;
+
+		@InputFileColumn(columnIndex = 1, columnFormat = "yyyyMMdd")
+		private Date date;
+
+		@InputFileColumn(columnIndex = 2)
+		private int amount;
+
+		private String comment;
+
+	}
+
+}
@@ -81,6 +81,23 @@ class OutputFileColumnLineAggregatorTest {
 			.hasMessageContaining("Duplicate columnIndex");
 	}
 
+	@Test
+	@DisplayName("Should include the columns of the superclasses")
+	void shouldIncludeSuperclassColumns() {
+		// Given
+		TestEmployee employee = new TestEmployee();
+		employee.setFirstName("Jane");
+		employee.setLastName("Roe");
+		employee.setEmployeeId("7");
+		employee.setDepartment("Sales");
+
+		// When
+		String line = new OutputFileColumnLineAggregator<TestPerson>(TestEmployee.class).aggregate(employee);
+
+		// Then
+		assertThat(line).isEqualTo("Jane,\"Roe\",,'',0000000007,,,,Sales");
+	}
+
 	@Test
 	void compatibilityTestWithFileQueryDao() throws Exception {
 		NyusyukkinFileOutput dto = new NyusyukkinFileOutput();
@@ -194,6 +211,24 @@ class TestPerson {
 
 }
 
+/**
+ * Test Person subclass adding a column
+ */
+class TestEmployee extends TestPerson {
+
+	@OutputFileColumn(columnIndex = 8)
+	private String department;
+
+	public String getDepartment() {
+		return department;
+	}
+
+	public void setDepartment(String department) {
+		this.department = department;
+	}
+
+}
+
 /**
  * Invalid Person class with duplicate columnIndex for testing
  */
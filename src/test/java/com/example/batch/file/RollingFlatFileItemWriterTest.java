@@ -0,0 +1,204 @@
+package com.example.batch.file;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Test class for {@link RollingFlatFileItemWriter}.
+ */
+class RollingFlatFileItemWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final TransactionTemplate transactionTemplate = new TransactionTemplate(
+			new ResourcelessTransactionManager());
+
+	@Test
+	@DisplayName("Should name the parts after the target file")
+	void shouldNamePartFiles() {
+		assertThat(RollingFlatFileItemWriter.partFile(Path.of("out/output.csv"), 1))
+			.isEqualTo(Path.of("out/output.0001.csv"));
+		assertThat(RollingFlatFileItemWriter.partFile(Path.of("output"), 12)).isEqualTo(Path.of("output.0012"));
+	}
+
+	@Test
+	@DisplayName("Should roll over at the record limit or before a line exceeding the byte limit")
+	void shouldRollOverAtLimits() throws Exception {
+		// Given
+		RollingFlatFileItemWriter<String> writer = newWriter();
+		writer.setMaxRecords(3);
+		writer.setMaxBytes(10);
+		writer.open(new ExecutionContext());
+
+		// When
+		writer.write(Chunk.of("a", "b", "c", "d", "eeee", "ffff", "gggggggggggg", "h"));
+		writer.close();
+
+		// Then
+		assertThat(part(1)).isEqualTo("a\nb\nc\n");
+		assertThat(part(2)).isEqualTo("d\neeee\n");
+		assertThat(part(3)).isEqualTo("ffff\n");
+		assertThat(part(4)).isEqualTo("gggggggggggg\n");
+		assertThat(part(5)).isEqualTo("h\n");
+	}
+
+	@Test
+	@DisplayName("Should continue in the saved part on restart")
+	void shouldContinueInSavedPartOnRestart() throws Exception {
+		// Given
+		RollingFlatFileItemWriter<String> writer = newWriter();
+		writer.setMaxRecords(2);
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+		this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("a", "b", "c"));
+			writer.update(executionContext);
+		});
+		this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("x", "y"));
+			writer.update(new ExecutionContext());
+		});
+		writer.close();
+
+		// When
+		RollingFlatFileItemWriter<String> restarted = newWriter();
+		restarted.setMaxRecords(2);
+		restarted.open(executionContext);
+		restarted.write(Chunk.of("d", "e"));
+		restarted.close();
+
+		// Then
+		assertThat(part(1)).isEqualTo("a\nb\n");
+		assertThat(part(2)).isEqualTo("c\nd\n");
+		assertThat(part(3)).isEqualTo("e\n");
+	}
+
+	@Test
+	@DisplayName("Should remove the bytes written before a failed commit")
+	void shouldRemoveBytesOfFailedCommit() throws Exception {
+		// Given
+		RollingFlatFileItemWriter<String> writer = newWriter();
+		writer.setMaxRecords(2);
+		writer.open(new ExecutionContext());
+		this.transactionTemplate.executeWithoutResult(status -> write(writer, Chunk.of("a", "b", "c")));
+
+		// When
+		assertThatIllegalStateException().isThrownBy(() -> this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("d", "e"));
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					throw new IllegalStateException("commit failed");
+				}
+			});
+		}));
+		this.transactionTemplate.executeWithoutResult(status -> write(writer, Chunk.of("f")));
+		writer.close();
+
+		// Then
+		assertThat(part(1)).isEqualTo("a\nb\n");
+		assertThat(part(2)).isEqualTo("c\nf\n");
+		assertThat(RollingFlatFileItemWriter.partFile(this.tempDir.resolve("output.csv"), 3)).doesNotExist();
+	}
+
+	@Test
+	@DisplayName("Should delete the parts of a previous run on a fresh start")
+	void shouldDeleteStalePartsOnFreshStart() throws Exception {
+		// Given
+		RollingFlatFileItemWriter<String> writer = newWriter();
+		writer.setMaxRecords(1);
+		writer.open(new ExecutionContext());
+		writer.write(Chunk.of("a", "b", "c"));
+		writer.close();
+		Files.writeString(this.tempDir.resolve("output.0001.csv.gz"), "stale");
+		Files.writeString(this.tempDir.resolve("output.0004.csv.gz"), "stale");
+		Files.writeString(this.tempDir.resolve("other.0005.csv"), "other");
+
+		// When
+		RollingFlatFileItemWriter<String> restarted = newWriter();
+		restarted.setMaxRecords(1);
+		restarted.open(new ExecutionContext());
+		restarted.write(Chunk.of("x"));
+		restarted.close();
+
+		// Then
+		try (var files = Files.list(this.tempDir)) {
+			assertThat(files.map(file -> file.getFileName().toString())).containsExactlyInAnyOrder("output.0001.csv",
+					"other.0005.csv");
+		}
+		assertThat(part(1)).isEqualTo("x\n");
+	}
+
+	@Test
+	@DisplayName("Should compress the parts rolled over and the last part when the step completes")
+	void shouldCompressParts() throws Exception {
+		// Given
+		RollingFlatFileItemWriter<String> writer = newWriter();
+		writer.setMaxRecords(2);
+		writer.setCompress(true);
+		writer.setTaskExecutor(new SyncTaskExecutor());
+		writer.open(new ExecutionContext());
+		StepExecution stepExecution = new StepExecution("step", null);
+		stepExecution.setStatus(BatchStatus.COMPLETED);
+
+		// When
+		writer.write(Chunk.of("a", "b", "c"));
+		writer.afterStep(stepExecution);
+		writer.close();
+
+		// Then
+		assertThat(this.tempDir.resolve("output.0001.csv")).doesNotExist();
+		assertThat(this.tempDir.resolve("output.0002.csv")).doesNotExist();
+		assertThat(gunzip(1)).isEqualTo("a\nb\n");
+		assertThat(gunzip(2)).isEqualTo("c\n");
+	}
+
+	private RollingFlatFileItemWriter<String> newWriter() {
+		RollingFlatFileItemWriter<String> writer = new RollingFlatFileItemWriter<>(this.tempDir.resolve("output.csv"),
+				item -> item);
+		writer.setName("writer");
+		writer.setEncoding("UTF-8");
+		writer.setLineSeparator("\n");
+		return writer;
+	}
+
+	private static void write(RollingFlatFileItemWriter<String> writer, Chunk<String> chunk) {
+		try {
+			writer.write(chunk);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private String part(int index) throws Exception {
+		return Files.readString(RollingFlatFileItemWriter.partFile(this.tempDir.resolve("output.csv"), index));
+	}
+
+	private String gunzip(int index) throws Exception {
+		Path part = RollingFlatFileItemWriter.partFile(this.tempDir.resolve("output.csv"), index);
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(Path.of(part + ".gz")))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,255 @@
+package com.example.batch.file;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Test class for {@link RoutingFlatFileItemWriter}.
+ */
+class RoutingFlatFileItemWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final TransactionTemplate transactionTemplate = new TransactionTemplate(
+			new ResourcelessTransactionManager());
+
+	@Test
+	@DisplayName("Should route the items of a chunk to the file of their key")
+	void shouldRouteItemsByKey() throws Exception {
+		// Given
+		RoutingFlatFileItemWriter<String> writer = newWriter();
+		writer.setInitialKeys(0, 1, 2);
+		writer.setTaskExecutor(new SimpleAsyncTaskExecutor());
+		writer.open(new ExecutionContext());
+
+		// When
+		writer.write(Chunk.of("a0", "b1", "c0", "d3"));
+		writer.close();
+
+		// Then
+		assertThat(Files.readString(file(0))).isEqualTo("a0\nc0\n");
+		assertThat(Files.readString(file(1))).isEqualTo("b1\n");
+		assertThat(Files.readString(file(2))).isEmpty();
+		assertThat(Files.readString(file(3))).isEqualTo("d3\n");
+	}
+
+	@Test
+	@DisplayName("Should write the files when the transaction commits and not on rollback")
+	void shouldWriteOnCommit() throws Exception {
+		// Given
+		RoutingFlatFileItemWriter<String> writer = newWriter();
+		writer.open(new ExecutionContext());
+
+		// When
+		this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("a0", "b1"));
+			assertThat(file(0)).isEmptyFile();
+		});
+		this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("c0"));
+			status.setRollbackOnly();
+		});
+		writer.close();
+
+		// Then
+		assertThat(Files.readString(file(0))).isEqualTo("a0\n");
+		assertThat(Files.readString(file(1))).isEqualTo("b1\n");
+	}
+
+	@Test
+	@DisplayName("Should truncate every file to its size at the last commit on restart")
+	void shouldTruncateFilesOnRestart() throws Exception {
+		// Given
+		RoutingFlatFileItemWriter<String> writer = newWriter();
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+		this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("a0", "b1"));
+			writer.update(executionContext);
+		});
+		writer.write(Chunk.of("c0", "d1", "e2"));
+		writer.close();
+
+		// When
+		RoutingFlatFileItemWriter<String> restarted = newWriter();
+		restarted.open(executionContext);
+		restarted.write(Chunk.of("f0"));
+		restarted.close();
+
+		// Then
+		assertThat(Files.readString(file(0))).isEqualTo("a0\nf0\n");
+		assertThat(Files.readString(file(1))).isEqualTo("b1\n");
+		assertThat(Files.readString(file(2))).isEqualTo("e2\n");
+	}
+
+	@Test
+	@DisplayName("Should append to existing files and still truncate them on restart")
+	void shouldAppendToExistingFiles() throws Exception {
+		// Given
+		Files.writeString(file(0), "x0\n");
+		RoutingFlatFileItemWriter<String> writer = newWriter();
+		writer.setAppendAllowed(true);
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+		this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("a0"));
+			writer.update(executionContext);
+		});
+		writer.write(Chunk.of("b0"));
+		writer.close();
+
+		// When
+		RoutingFlatFileItemWriter<String> restarted = newWriter();
+		restarted.setAppendAllowed(true);
+		restarted.open(executionContext);
+		restarted.write(Chunk.of("c0"));
+		restarted.close();
+
+		// Then
+		assertThat(Files.readString(file(0))).isEqualTo("x0\na0\nc0\n");
+	}
+
+	@Test
+	@DisplayName("Should write a manifest with the digest of every file only once the step completes")
+	void shouldWriteManifest() throws Exception {
+		// Given
+		RoutingFlatFileItemWriter<String> writer = newWriter();
+		writer.setDigestAlgorithm(FileDigest.CRC32C);
+		writer.setManifest(this.tempDir.resolve("output.manifest"));
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+		this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("a0", "b1", "c0"));
+			writer.update(executionContext);
+		});
+		writer.write(Chunk.of("d0"));
+		writer.afterStep(stepExecution(BatchStatus.FAILED));
+		writer.close();
+		boolean failedManifest = Files.exists(this.tempDir.resolve("output.manifest"));
+
+		// When
+		RoutingFlatFileItemWriter<String> restarted = newWriter();
+		restarted.setDigestAlgorithm(FileDigest.CRC32C);
+		restarted.setManifest(this.tempDir.resolve("output.manifest"));
+		restarted.open(executionContext);
+		restarted.write(Chunk.of("e0", "f1"));
+		restarted.afterStep(stepExecution(BatchStatus.COMPLETED));
+		restarted.close();
+
+		// Then
+		assertThat(failedManifest).isFalse();
+		assertThat(Files.readString(file(0))).isEqualTo("a0\nc0\ne0\n");
+		assertThat(Files.readAllLines(this.tempDir.resolve("output.manifest"))).containsExactly(
+				"file,records,bytes,algorithm,digest", "output0.txt,3,9,CRC32C," + crc32c(file(0)),
+				"output1.txt,2,6,CRC32C," + crc32c(file(1)));
+	}
+
+	@Test
+	@DisplayName("Should remove the bytes written before a failed commit and restore the records and digest")
+	void shouldRemoveBytesOfFailedCommit() throws Exception {
+		// Given
+		RoutingFlatFileItemWriter<String> writer = newWriter();
+		writer.setDigestAlgorithm(FileDigest.CRC32C);
+		writer.setManifest(this.tempDir.resolve("output.manifest"));
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+		this.transactionTemplate.executeWithoutResult(status -> write(writer, Chunk.of("a0", "b1")));
+
+		// When
+		assertThatIllegalStateException().isThrownBy(() -> this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("c0", "d1"));
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					throw new IllegalStateException("commit failed");
+				}
+			});
+		}));
+		this.transactionTemplate.executeWithoutResult(status -> {
+			write(writer, Chunk.of("e0"));
+			writer.update(executionContext);
+		});
+		writer.afterStep(stepExecution(BatchStatus.COMPLETED));
+		writer.close();
+
+		// Then
+		assertThat(Files.readString(file(0))).isEqualTo("a0\ne0\n");
+		assertThat(Files.readString(file(1))).isEqualTo("b1\n");
+		assertThat(executionContext.getLong("writer.size.0")).isEqualTo(6);
+		assertThat(executionContext.getLong("writer.records.0")).isEqualTo(2);
+		assertThat(Files.readAllLines(this.tempDir.resolve("output.manifest"))).containsExactly(
+				"file,records,bytes,algorithm,digest", "output0.txt,2,6,CRC32C," + crc32c(file(0)),
+				"output1.txt,1,3,CRC32C," + crc32c(file(1)));
+	}
+
+	@Test
+	@DisplayName("Should fail on a key without a destination")
+	void shouldFailOnUnknownKey() {
+		// Given
+		RoutingFlatFileItemWriter<String> writer = new RoutingFlatFileItemWriter<>(RoutingFlatFileItemWriterTest::key,
+				key -> key == 0 ? file(0) : null, item -> item);
+		writer.setName("writer");
+		writer.open(new ExecutionContext());
+
+		// When / Then
+		assertThatIllegalArgumentException().isThrownBy(() -> writer.write(Chunk.of("a0", "b1")))
+			.withMessage("No destination for key: 1");
+		writer.close();
+	}
+
+	private RoutingFlatFileItemWriter<String> newWriter() {
+		RoutingFlatFileItemWriter<String> writer = new RoutingFlatFileItemWriter<>(RoutingFlatFileItemWriterTest::key,
+				this::file, item -> item);
+		writer.setName("writer");
+		writer.setLineSeparator("\n");
+		return writer;
+	}
+
+	private static void write(RoutingFlatFileItemWriter<String> writer, Chunk<String> chunk) {
+		try {
+			writer.write(chunk);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static StepExecution stepExecution(BatchStatus status) {
+		StepExecution stepExecution = new StepExecution("step", null);
+		stepExecution.setStatus(status);
+		return stepExecution;
+	}
+
+	private static String crc32c(Path file) throws Exception {
+		CRC32C crc = new CRC32C();
+		crc.update(Files.readAllBytes(file));
+		return String.format("%08x", crc.getValue());
+	}
+
+	private static int key(String item) {
+		return item.charAt(1) - '0';
+	}
+
+	private Path file(int key) {
+		return this.tempDir.resolve("output" + key + ".txt");
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.example.batch.item;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.step.skip.LimitCheckingItemSkipPolicy;
+import org.springframework.batch.core.step.skip.SkipLimitExceededException;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Test class for {@link BisectingChunkProcessor}.
+ */
+class BisectingChunkProcessorTest {
+
+	private final List<Integer> written = new ArrayList<>();
+
+	private final StepContribution contribution = new StepContribution(MetaDataInstanceFactory.createStepExecution());
+
+	private int writeCalls = 0;
+
+	@Test
+	@DisplayName("Should write the chunk once when no item fails")
+	void shouldWriteChunkOnce() throws Exception {
+		// Given
+		BisectingChunkProcessor<Integer, Integer> processor = processor(Set.of());
+
+		// When
+		processor.process(this.contribution, chunkOf(1000));
+
+		// Then
+		assertThat(this.writeCalls).isEqualTo(1);
+		assertThat(this.contribution.getWriteCount()).isEqualTo(1000);
+	}
+
+	@Test
+	@DisplayName("Should isolate and skip the failing items by bisection and count them in the contribution")
+	void shouldIsolateFailingItems() throws Exception {
+		// Given
+		Set<Integer> bad = Set.of(17, 500, 999);
+		List<Integer> skipped = new ArrayList<>();
+		BisectingChunkProcessor<Integer, Integer> processor = processor(bad);
+		processor.registerListener(new SkipListener<Integer, Integer>() {
+			@Override
+			public void onSkipInWrite(Integer item, Throwable t) {
+				skipped.add(item);
+			}
+		});
+
+		// When
+		processor.process(this.contribution, chunkOf(1000));
+
+		// Then
+		assertThat(skipped).containsExactly(17, 500, 999);
+		assertThat(this.written).hasSize(997).doesNotContainAnyElementsOf(bad);
+		assertThat(this.contribution.getWriteCount()).isEqualTo(997);
+		assertThat(this.contribution.getWriteSkipCount()).isEqualTo(3);
+		// At most two writes per level of the recursion for each bad item
+		assertThat(this.writeCalls).isLessThanOrEqualTo(1 + 3 * 2 * 10);
+	}
+
+	@Test
+	@DisplayName("Should check the skip policy only for single items, with the step's skip count")
+	void shouldCheckSkipPolicyForSingleItems() throws Exception {
+		// Given
+		List<Long> skipCounts = new ArrayList<>();
+		BisectingChunkProcessor<Integer, Integer> processor = processor(Set.of(3, 6));
+		processor.setSkipPolicy((t, skipCount) -> skipCounts.add(skipCount));
+
+		// When
+		processor.process(this.contribution, chunkOf(8));
+
+		// Then
+		assertThat(skipCounts).containsExactly(0L, 1L);
+	}
+
+	@Test
+	@DisplayName("Should fail the chunk when the exception is not skippable or the limit is exceeded")
+	void shouldFailWhenNotSkippable() {
+		// Given
+		BisectingChunkProcessor<Integer, Integer> processor = processor(Set.of(1, 2));
+		processor
+			.setSkipPolicy(new LimitCheckingItemSkipPolicy(1, Map.of(DataIntegrityViolationException.class, true)));
+
+		// Then
+		assertThatExceptionOfType(SkipLimitExceededException.class)
+			.isThrownBy(() -> processor.process(this.contribution, chunkOf(10)));
+
+		processor.setSkipPolicy(new LimitCheckingItemSkipPolicy(10, Map.of(IllegalStateException.class, true)));
+		assertThatExceptionOfType(DataIntegrityViolationException.class)
+			.isThrownBy(() -> processor.process(this.contribution, chunkOf(10)));
+	}
+
+	private BisectingChunkProcessor<Integer, Integer> processor(Set<Integer> bad) {
+		return new BisectingChunkProcessor<>(null, failingOn(bad), TransactionOperations.withoutTransaction());
+	}
+
+	private ItemWriter<Integer> failingOn(Set<Integer> bad) {
+		return chunk -> {
+			this.writeCalls++;
+			List<Integer> failing = chunk.getItems().stream().filter(bad::contains).collect(Collectors.toList());
+			if (!failing.isEmpty()) {
+				throw new DataIntegrityViolationException("bad items: " + failing);
+			}
+			this.written.addAll(chunk.getItems());
+		};
+	}
+
+	private static Chunk<Integer> chunkOf(int size) {
+		return new Chunk<>(IntStream.range(0, size).boxed().toList());
+	}
+
+}
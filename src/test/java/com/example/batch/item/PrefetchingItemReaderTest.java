@@ -0,0 +1,186 @@
+package com.example.batch.item;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Test class for {@link PrefetchingItemReader}.
+ */
+class PrefetchingItemReaderTest {
+
+	@Test
+	@DisplayName("Should return the items of the delegate in order")
+	void shouldReadItemsInOrder() throws Exception {
+		// Given
+		PrefetchingItemReader<Integer> reader = newReader(new CountingReader(1000, -1), 8);
+
+		// When
+		reader.open(new ExecutionContext());
+		List<Integer> items = new ArrayList<>();
+		Integer item;
+		while ((item = reader.read()) != null) {
+			items.add(item);
+		}
+		reader.close();
+
+		// Then
+		assertThat(items).containsExactlyElementsOf(IntStream.range(0, 1000).boxed().toList());
+	}
+
+	@Test
+	@DisplayName("Should hand out every item exactly once to concurrent consumers")
+	void shouldServeConcurrentConsumers() throws Exception {
+		// Given
+		PrefetchingItemReader<Integer> reader = newReader(new CountingReader(100_000, -1), 16);
+		List<Integer> items = Collections.synchronizedList(new ArrayList<>());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		// When
+		reader.open(new ExecutionContext());
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(executor.submit(() -> {
+				Integer item;
+				while ((item = reader.read()) != null) {
+					items.add(item);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		reader.close();
+
+		// Then
+		assertThat(items).hasSize(100_000).doesNotHaveDuplicates();
+	}
+
+	@Test
+	@DisplayName("Should save the count of items committed without gap and restart after it")
+	void shouldSaveCommittedWatermark() throws Exception {
+		// Given
+		PrefetchingItemReader<Integer> reader = newReader(new CountingReader(100, -1), 8);
+		ExecutionContext executionContext = new ExecutionContext();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		reader.open(executionContext);
+		// Items 0-9 are read by another thread that has not committed yet
+		executor.submit(() -> readItems(reader, 10)).get();
+		readItems(reader, 10);
+
+		// When
+		reader.update(executionContext);
+		long beforeOtherCommit = executionContext.getLong("reader.committed.count");
+		executor.submit(() -> reader.update(executionContext)).get();
+		long afterOtherCommit = executionContext.getLong("reader.committed.count");
+		executor.shutdown();
+		reader.close();
+		PrefetchingItemReader<Integer> restarted = newReader(new CountingReader(100, -1), 8);
+		restarted.open(executionContext);
+		Integer first = restarted.read();
+		restarted.close();
+
+		// Then
+		assertThat(beforeOtherCommit).isZero();
+		assertThat(afterOtherCommit).isEqualTo(20);
+		assertThat(first).isEqualTo(20);
+	}
+
+	@Test
+	@DisplayName("Should not read again on restart the items committed after the watermark")
+	void shouldSkipItemsCommittedAfterWatermark() throws Exception {
+		// Given
+		PrefetchingItemReader<Integer> reader = newReader(new CountingReader(30, -1), 8);
+		ExecutionContext executionContext = new ExecutionContext();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		reader.open(executionContext);
+		// Items 0-9 are read by another thread that never commits
+		executor.submit(() -> readItems(reader, 10)).get();
+		executor.shutdown();
+		readItems(reader, 10);
+		reader.update(executionContext);
+		reader.close();
+
+		// When
+		PrefetchingItemReader<Integer> restarted = newReader(new CountingReader(30, -1), 8);
+		restarted.open(executionContext);
+		List<Integer> items = readItems(restarted, 20);
+		Integer last = restarted.read();
+		restarted.update(executionContext);
+		restarted.close();
+
+		// Then
+		assertThat(items).containsExactlyElementsOf(
+				IntStream.concat(IntStream.range(0, 10), IntStream.range(20, 30)).boxed().toList());
+		assertThat(last).isNull();
+		assertThat(executionContext.getLong("reader.committed.count")).isEqualTo(30);
+	}
+
+	@Test
+	@DisplayName("Should rethrow the exception of the delegate after the items read before it")
+	void shouldRethrowDelegateException() throws Exception {
+		// Given
+		PrefetchingItemReader<Integer> reader = newReader(new CountingReader(100, 3), 8);
+		reader.open(new ExecutionContext());
+
+		// Then
+		assertThat(readItems(reader, 3)).containsExactly(0, 1, 2);
+		assertThatIllegalStateException().isThrownBy(reader::read).withMessage("failed at 3");
+		reader.close();
+	}
+
+	private static List<Integer> readItems(PrefetchingItemReader<Integer> reader, int count) throws Exception {
+		List<Integer> items = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			items.add(reader.read());
+		}
+		return items;
+	}
+
+	private static PrefetchingItemReader<Integer> newReader(CountingReader delegate, int capacity) {
+		PrefetchingItemReader<Integer> reader = new PrefetchingItemReader<>(delegate);
+		reader.setName("reader");
+		reader.setCapacity(capacity);
+		return reader;
+	}
+
+	/**
+	 * Returns 0, 1, 2, ... up to a limit, optionally failing at a given item.
+	 */
+	private static final class CountingReader implements ItemStreamReader<Integer> {
+
+		private final int limit;
+
+		private final int failAt;
+
+		private int next;
+
+		private CountingReader(int limit, int failAt) {
+			this.limit = limit;
+			this.failAt = failAt;
+		}
+
+		@Override
+		public Integer read() {
+			if (this.next == this.failAt) {
+				throw new IllegalStateException("failed at " + this.next);
+			}
+			return this.next < this.limit ? this.next++ : null;
+		}
+
+	}
+
+}
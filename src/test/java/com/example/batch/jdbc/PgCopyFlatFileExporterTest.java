@@ -0,0 +1,190 @@
+package com.example.batch.jdbc;
+
+import com.example.batch.file.OutputFileColumn;
+import com.example.batch.file.PaddingType;
+import com.example.batch.file.TrimType;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.Locale;
+import java.util.function.Function;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Test class for {@link PgCopyFlatFileExporter}.
+ */
+class PgCopyFlatFileExporterTest {
+
+	private static final Charset WINDOWS_31J = Charset.forName("Windows-31J");
+
+	@Nested
+	@DisplayName("COPY statement")
+	class CopyStatement {
+
+		@Test
+		@DisplayName("Should format every column in SQL when no converter is used")
+		void shouldFormatColumnsInSql() {
+			// Given
+			PgCopyFlatFileExporter<SqlRecord> exporter = new PgCopyFlatFileExporter<>(new DriverManagerDataSource(),
+					SqlRecord.class, ",");
+
+			// When
+			String statement = exporter.getCopyStatement("SELECT * FROM T");
+
+			// Then
+			assertThat(statement).isEqualTo("COPY (SELECT "
+					+ "'\"' || COALESCE(CASE WHEN length(rtrim(t.\"name\"::text, ' ')) < 5 THEN lpad(rtrim(t.\"name\"::text, ' '), 5, '0') ELSE rtrim(t.\"name\"::text, ' ') END, '') || '\"'"
+					+ " || ',' || COALESCE(COALESCE(t.\"amount\"::bigint, 0)::text, '')"
+					+ " || ',' || COALESCE(to_char(t.\"date\", 'YYYY\"/\"MM\"/\"DD'), '')"
+					+ " FROM (SELECT * FROM T) t) TO STDOUT");
+		}
+
+		@Test
+		@DisplayName("Should return the raw value of columns with a string converter")
+		void shouldReturnRawValueForConverter() {
+			// Given
+			PgCopyFlatFileExporter<ConverterRecord> exporter = new PgCopyFlatFileExporter<>(
+					new DriverManagerDataSource(), ConverterRecord.class, ",");
+
+			// When
+			String statement = exporter.getCopyStatement("SELECT * FROM T");
+
+			// Then
+			assertThat(statement).isEqualTo("COPY (SELECT COALESCE(t.\"id\"::bigint::text, ''), t.\"code\"::text"
+					+ " FROM (SELECT * FROM T) t) TO STDOUT");
+		}
+
+		@Test
+		@DisplayName("Should reject a date column without format")
+		void shouldRejectDateWithoutFormat() {
+			assertThatIllegalArgumentException().isThrownBy(
+					() -> new PgCopyFlatFileExporter<>(new DriverManagerDataSource(), UnformattedDate.class, ","));
+		}
+
+	}
+
+	@Nested
+	@DisplayName("Date pattern")
+	class DatePattern {
+
+		@Test
+		@DisplayName("Should translate SimpleDateFormat patterns into to_char templates")
+		void shouldTranslatePatterns() {
+			assertThat(PgCopyFlatFileExporter.toPgDatePattern("yyyyMMdd")).isEqualTo("YYYYMMDD");
+			assertThat(PgCopyFlatFileExporter.toPgDatePattern("yy/M/d H:mm:ss.SSS"))
+				.isEqualTo("YY\"/\"FMMM\"/\"FMDD\" \"FMHH24\":\"MI\":\"SS\".\"MS");
+			assertThat(PgCopyFlatFileExporter.toPgDatePattern("yyyy'年'MM'''\"'")).isEqualTo("YYYY\"年\"MM\"'\\\"\"");
+		}
+
+		@Test
+		@DisplayName("Should reject patterns without to_char equivalent")
+		void shouldRejectUnsupportedPatterns() {
+			assertThatIllegalArgumentException().isThrownBy(() -> PgCopyFlatFileExporter.toPgDatePattern("EEE"));
+			assertThatIllegalArgumentException().isThrownBy(() -> PgCopyFlatFileExporter.toPgDatePattern("yyy"));
+		}
+
+	}
+
+	@Nested
+	@DisplayName("COPY text")
+	class CopyText {
+
+		@Test
+		@DisplayName("Should unescape the rows formatted in SQL as they stream through, wherever the text is split")
+		void shouldUnescapeStreamedRows() throws Exception {
+			// Given
+			PgCopyFlatFileExporter<SqlRecord> exporter = new PgCopyFlatFileExporter<>(new DriverManagerDataSource(),
+					SqlRecord.class, ",");
+			exporter.setLineSeparator("\r\n");
+			String text = "\"東京\\t表示\",100,2024/01/01\n\"ソ\\\\\\r\",200,\n";
+
+			// Then
+			for (int split = 0; split <= text.length(); split++) {
+				assertThat(copy(exporter, text, split)).as("split at %d", split)
+					.isEqualTo("\"東京\t表示\",100,2024/01/01\r\n\"ソ\\\r\",200,\r\n".getBytes(WINDOWS_31J));
+			}
+		}
+
+		@Test
+		@DisplayName("Should split the rows with Java formatted columns into unescaped values and nulls")
+		void shouldFormatSplitRows() throws Exception {
+			// Given
+			PgCopyFlatFileExporter<ConverterRecord> exporter = new PgCopyFlatFileExporter<>(
+					new DriverManagerDataSource(), ConverterRecord.class, ",");
+			exporter.setLineSeparator("\r\n");
+			String text = "1\tab表\\\\c\\td\n2\t\\N\n3\tソ\n";
+
+			// Then
+			for (int split = 0; split <= text.length(); split++) {
+				assertThat(copy(exporter, text, split)).as("split at %d", split)
+					.isEqualTo("1,AB表\\C\tD\r\n2,\r\n3,ソ\r\n".getBytes(WINDOWS_31J));
+			}
+		}
+
+		/**
+		 * Writes the text in two parts through a file writer with a 3 character buffer,
+		 * so that the escapes, the rows and the encoded characters cross the boundaries.
+		 */
+		private static byte[] copy(PgCopyFlatFileExporter<?> exporter, String text, int split) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (Writer writer = exporter
+				.copyTextWriter(new BufferedWriter(new OutputStreamWriter(bytes, WINDOWS_31J), 3))) {
+				writer.write(text, 0, split);
+				writer.write(text, split, text.length() - split);
+			}
+			return bytes.toByteArray();
+		}
+
+	}
+
+	static class SqlRecord {
+
+		@OutputFileColumn(columnIndex = 0, bytes = 5, paddingType = PaddingType.LEFT, paddingChar = '0',
+				trimType = TrimType.RIGHT, columnEncloseChar = '"')
+		private String name;
+
+		@OutputFileColumn(columnIndex = 1)
+		private int amount;
+
+		@OutputFileColumn(columnIndex = 2, columnFormat = "yyyy/MM/dd")
+		private Date date;
+
+	}
+
+	static class ConverterRecord {
+
+		@OutputFileColumn(columnIndex = 0)
+		private Long id;
+
+		@OutputFileColumn(columnIndex = 1, stringConverter = UpperCase.class)
+		private String code;
+
+	}
+
+	static class UnformattedDate {
+
+		@OutputFileColumn(columnIndex = 0)
+		private Date date;
+
+	}
+
+	public static class UpperCase implements Function<String, String> {
+
+		@Override
+		public String apply(String value) {
+			return value.toUpperCase(Locale.ROOT);
+		}
+
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.example.batch.jdbc;
+
+import com.example.batch.file.OutputFileColumn;
+import com.example.batch.file.PaddingType;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Date;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link ResultSetFlatFileExporter}.
+ */
+class ResultSetFlatFileExporterTest {
+
+	private static final Charset WINDOWS_31J = Charset.forName("Windows-31J");
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should write plain columns straight from the getters")
+	void shouldWritePlainColumns() throws Exception {
+		// Given
+		ResultSet resultSet = mock(ResultSet.class);
+		ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+		when(resultSet.getMetaData()).thenReturn(metaData);
+		when(metaData.getColumnType(3)).thenReturn(Types.DATE);
+		when(resultSet.findColumn("name")).thenReturn(1);
+		when(resultSet.findColumn("amount")).thenReturn(2);
+		when(resultSet.findColumn("date")).thenReturn(3);
+		when(resultSet.next()).thenReturn(true, true, false);
+		when(resultSet.getString(1)).thenReturn("東京", (String) null);
+		when(resultSet.getLong(2)).thenReturn(1000L, 0L);
+		when(resultSet.getObject(3, LocalDate.class)).thenReturn(LocalDate.of(2024, 1, 2), (LocalDate) null);
+		ResultSetFlatFileExporter<PlainRecord> exporter = new ResultSetFlatFileExporter<>(PlainRecord.class, ",");
+		exporter.setLineSeparator("\r\n");
+		exporter.setBufferSize(16);
+		Path file = this.tempDir.resolve("output.csv");
+
+		// When
+		long lines = exporter.export(resultSet, file);
+
+		// Then
+		assertThat(lines).isEqualTo(2);
+		assertThat(Files.readString(file, WINDOWS_31J)).isEqualTo("東京,1000,2024/01/02\r\n,0,\r\n");
+	}
+
+	@Test
+	@DisplayName("Should format other columns like the line aggregator")
+	void shouldFormatOtherColumns() throws Exception {
+		// Given
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.findColumn("code")).thenReturn(1);
+		when(resultSet.findColumn("count")).thenReturn(2);
+		when(resultSet.findColumn("time")).thenReturn(3);
+		when(resultSet.next()).thenReturn(true, true, false);
+		when(resultSet.getString(1)).thenReturn("12", "表");
+		when(resultSet.getLong(2)).thenReturn(7L, 0L);
+		when(resultSet.wasNull()).thenReturn(false, true);
+		when(resultSet.getTimestamp(anyInt())).thenReturn(Timestamp.valueOf("2024-01-02 03:04:05"));
+		ResultSetFlatFileExporter<FormattedRecord> exporter = new ResultSetFlatFileExporter<>(FormattedRecord.class,
+				"\t");
+		exporter.setLineSeparator("\n");
+		Path file = this.tempDir.resolve("output.csv");
+
+		// When
+		exporter.export(resultSet, file);
+
+		// Then
+		assertThat(Files.readString(file, WINDOWS_31J))
+			.isEqualTo("\"00012\"\t7\t20240102030405\n\"0000表\"\t\t20240102030405\n");
+	}
+
+	public static class PlainRecord {
+
+		@OutputFileColumn(columnIndex = 0)
+		private String name;
+
+		@OutputFileColumn(columnIndex = 1)
+		private long amount;
+
+		@OutputFileColumn(columnIndex = 2, columnFormat = "yyyy/MM/dd")
+		private Date date;
+
+	}
+
+	public static class FormattedRecord {
+
+		@OutputFileColumn(columnIndex = 0, bytes = 5, paddingType = PaddingType.LEFT, paddingChar = '0',
+				columnEncloseChar = '"')
+		private String code;
+
+		@OutputFileColumn(columnIndex = 1)
+		private Integer count;
+
+		@OutputFileColumn(columnIndex = 2, columnFormat = "yyyyMMddHHmmss")
+		private Date time;
+
+	}
+
+}
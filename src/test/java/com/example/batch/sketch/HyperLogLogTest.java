@@ -0,0 +1,111 @@
+package com.example.batch.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Test class for {@link HyperLogLog}.
+ */
+class HyperLogLogTest {
+
+	@Test
+	@DisplayName("Should count small sets exactly enough and ignore duplicates")
+	void shouldEstimateSmallCardinality() {
+		// Given
+		HyperLogLog sketch = new HyperLogLog(12);
+
+		// When
+		for (int repeat = 0; repeat < 3; repeat++) {
+			for (int i = 0; i < 100; i++) {
+				sketch.add(String.format("%04d", i));
+			}
+		}
+		sketch.add(null);
+
+		// Then
+		assertThat(sketch.estimate()).isCloseTo(100, within(2L));
+	}
+
+	@Test
+	@DisplayName("Should estimate large cardinalities within a few standard errors")
+	void shouldEstimateLargeCardinality() {
+		// Given
+		HyperLogLog sketch = new HyperLogLog(12);
+
+		// When
+		for (int i = 0; i < 1_000_000; i++) {
+			sketch.add("customer-" + i);
+		}
+
+		// Then: standard error 1.6%
+		assertThat(sketch.estimate()).isCloseTo(1_000_000, within(50_000L));
+	}
+
+	@Test
+	@DisplayName("Should merge partial sketches into the sketch of the union")
+	void shouldMergeSketches() {
+		// Given
+		HyperLogLog all = new HyperLogLog(10);
+		HyperLogLog first = new HyperLogLog(10);
+		HyperLogLog second = new HyperLogLog(10);
+		for (int i = 0; i < 30_000; i++) {
+			String value = Integer.toString(i);
+			all.add(value);
+			(i < 20_000 ? first : second).add(value);
+			if (i >= 10_000 && i < 20_000) {
+				second.add(value);
+			}
+		}
+
+		// When
+		first.merge(second);
+
+		// Then
+		assertThat(first.estimate()).isEqualTo(all.estimate());
+		assertThatThrownBy(() -> first.merge(new HyperLogLog(11))).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	@DisplayName("Should keep few values sparse with the same estimate as all registers")
+	void shouldStaySparseForFewValues() throws IOException {
+		// Given
+		HyperLogLog all = new HyperLogLog(12);
+		HyperLogLog sparse = new HyperLogLog(12);
+		HyperLogLog dense = new HyperLogLog(12);
+		for (int i = 0; i < 3000; i++) {
+			String value = Integer.toString(i);
+			all.add(value);
+			(i < 200 ? sparse : dense).add(value);
+		}
+
+		// When
+		HyperLogLog copy = copy(sparse);
+		long sparseUsage = sparse.memoryUsage();
+		long sparseEstimate = sparse.estimate();
+		sparse.merge(dense);
+
+		// Then
+		assertThat(sparseUsage).isLessThanOrEqualTo(1024);
+		assertThat(sparseEstimate).isCloseTo(200, within(4L));
+		assertThat(copy.estimate()).isEqualTo(sparseEstimate);
+		assertThat(dense.memoryUsage()).isEqualTo(4096);
+		assertThat(sparse.estimate()).isEqualTo(all.estimate());
+		assertThat(copy(sparse).estimate()).isEqualTo(all.estimate());
+	}
+
+	private static HyperLogLog copy(HyperLogLog sketch) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		sketch.writeTo(new DataOutputStream(bytes));
+		return HyperLogLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+}
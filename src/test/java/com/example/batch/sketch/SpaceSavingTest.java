@@ -0,0 +1,78 @@
+package com.example.batch.sketch;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link SpaceSaving}.
+ */
+class SpaceSavingTest {
+
+	@Test
+	@DisplayName("Should count exactly while the items fit in the counters")
+	void shouldCountExactly() {
+		// Given
+		SpaceSaving<String> sketch = new SpaceSaving<>(4);
+
+		// When
+		sketch.add("a", 10);
+		sketch.add("b", 30);
+		sketch.add("a", 25);
+		sketch.add("c", 5);
+		sketch.add(null, 100);
+
+		// Then
+		assertThat(sketch.top(2)).containsExactly(new SpaceSaving.Entry<>("a", 35, 0),
+				new SpaceSaving.Entry<>("b", 30, 0));
+	}
+
+	@Test
+	@DisplayName("Should find the heavy items among many light ones with bounded error")
+	void shouldFindHeavyHitters() {
+		// Given
+		SpaceSaving<String> sketch = new SpaceSaving<>(16);
+		Random random = new Random(42);
+
+		// When
+		for (int i = 0; i < 10_000; i++) {
+			sketch.add("light-" + random.nextInt(1000), 1);
+			if (i % 10 == 0) {
+				sketch.add("heavy-1", 5);
+			}
+			if (i % 20 == 0) {
+				sketch.add("heavy-2", 5);
+			}
+		}
+
+		// Then
+		List<SpaceSaving.Entry<String>> top = sketch.top(2);
+		assertThat(top).extracting(SpaceSaving.Entry::item).containsExactly("heavy-1", "heavy-2");
+		assertThat(top.get(0).count() - top.get(0).error()).isLessThanOrEqualTo(5000);
+		assertThat(top.get(0).count()).isGreaterThanOrEqualTo(5000);
+	}
+
+	@Test
+	@DisplayName("Should merge partial sketches keeping the heaviest items")
+	void shouldMergeSketches() {
+		// Given
+		SpaceSaving<String> first = new SpaceSaving<>(3);
+		first.add("a", 100);
+		first.add("b", 10);
+		first.add("c", 1);
+		SpaceSaving<String> second = new SpaceSaving<>(3);
+		second.add("b", 95);
+		second.add("d", 50);
+
+		// When
+		first.merge(second);
+
+		// Then: first is full, so it may have evicted d with a count of up to 1
+		assertThat(first.top(3)).containsExactly(new SpaceSaving.Entry<>("b", 105, 0),
+				new SpaceSaving.Entry<>("a", 100, 0), new SpaceSaving.Entry<>("d", 51, 1));
+	}
+
+}
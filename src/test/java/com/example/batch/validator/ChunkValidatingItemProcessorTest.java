@@ -0,0 +1,90 @@
+package com.example.batch.validator;
+
+import com.example.batch.validator.CompiledValidatingItemProcessorTest.TestBean;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.validator.ValidationException;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Test class for {@link ChunkValidatingItemProcessor}.
+ */
+@ExtendWith(OutputCaptureExtension.class)
+class ChunkValidatingItemProcessorTest {
+
+	private final StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+
+	private final ChunkContext chunkContext = new ChunkContext(new StepContext(this.stepExecution));
+
+	@Test
+	@DisplayName("Should filter the invalid items and log one summary of the chunk's violations")
+	void shouldFilterInvalidItems(CapturedOutput output) throws Exception {
+		// Given
+		ChunkValidatingItemProcessor<TestBean> processor = processor();
+		processor.setFilter(true);
+		TestBean valid1 = new TestBean("John", "AB", 1);
+		TestBean valid2 = new TestBean("Jane", null, 5);
+		List<TestBean> items = List.of(valid1, new TestBean("", "AB", 1), valid2, new TestBean(" ", "AB", 0));
+
+		// When
+		List<TestBean> processed = new ArrayList<>();
+		processor.beforeChunk(this.chunkContext);
+		for (TestBean item : items) {
+			processed.add(processor.process(item));
+		}
+		processor.afterChunk(this.chunkContext);
+
+		// Then
+		assertThat(processed).containsExactly(valid1, null, valid2, null);
+		assertThat(output).containsOnlyOnce("Filtered 2 of 4 items")
+			.contains("name must not be blank=2")
+			.contains("count must be greater than or equal to 1=1");
+	}
+
+	@Test
+	@DisplayName("Should not report the violations of a rolled back chunk")
+	void shouldForgetViolationsOnRollback(CapturedOutput output) throws Exception {
+		// Given
+		ChunkValidatingItemProcessor<TestBean> processor = processor();
+		processor.setFilter(true);
+
+		// When
+		processor.beforeChunk(this.chunkContext);
+		processor.process(new TestBean("", "AB", 1));
+		processor.afterChunkError(this.chunkContext);
+		processor.beforeChunk(this.chunkContext);
+		processor.process(new TestBean("John", "AB", 1));
+		processor.afterChunk(this.chunkContext);
+
+		// Then
+		assertThat(output).doesNotContain("Filtered");
+	}
+
+	@Test
+	@DisplayName("Should fail on the first invalid item when not filtering")
+	void shouldThrowWhenNotFiltering() {
+		// Given
+		ChunkValidatingItemProcessor<TestBean> processor = processor();
+
+		// Then
+		assertThatExceptionOfType(ValidationException.class)
+			.isThrownBy(() -> processor.process(new TestBean("", "AB", 1)))
+			.withMessageContaining("name must not be blank");
+	}
+
+	private static ChunkValidatingItemProcessor<TestBean> processor() {
+		return new ChunkValidatingItemProcessor<>(new CompiledValidatingItemProcessor<>(TestBean.class));
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.example.batch.validator;
+
+import com.example.nyusyukkin.NyusyukkinData;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.validator.ValidationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Test class for {@link CompiledValidatingItemProcessor}.
+ */
+class CompiledValidatingItemProcessorTest {
+
+	private static ValidatorFactory validatorFactory;
+
+	private static Validator validator;
+
+	@BeforeAll
+	static void setUpValidator() {
+		validatorFactory = Validation.buildDefaultValidatorFactory();
+		validator = validatorFactory.getValidator();
+	}
+
+	@AfterAll
+	static void closeValidator() {
+		validatorFactory.close();
+	}
+
+	@Nested
+	@DisplayName("Item Validation Tests")
+	class ItemValidationTests {
+
+		@Test
+		@DisplayName("Should agree with Bean Validation on NyusyukkinData")
+		void shouldAgreeWithBeanValidation() throws Exception {
+			// Given
+			CompiledValidatingItemProcessor<NyusyukkinData> processor = new CompiledValidatingItemProcessor<>(
+					NyusyukkinData.class);
+			processor.setFilter(true);
+
+			for (String kokyakuId : new String[] { null, "", " ", "0001" }) {
+				NyusyukkinData data = new NyusyukkinData();
+				data.setKokyakuId(kokyakuId);
+
+				// When
+				NyusyukkinData result = processor.process(data);
+
+				// Then
+				assertThat(result == null).as("kokyakuId=%s", kokyakuId).isEqualTo(!validator.validate(data).isEmpty());
+			}
+		}
+
+		@Test
+		@DisplayName("Should throw ValidationException when not filtering")
+		void shouldThrowWhenNotFiltering() {
+			// Given
+			CompiledValidatingItemProcessor<NyusyukkinData> processor = new CompiledValidatingItemProcessor<>(
+					NyusyukkinData.class);
+			NyusyukkinData data = new NyusyukkinData();
+
+			// Then
+			assertThatExceptionOfType(ValidationException.class).isThrownBy(() -> processor.process(data))
+				.withMessageContaining("kokyakuId must not be empty");
+		}
+
+		@Test
+		@DisplayName("Should support the built-in constraints")
+		void shouldSupportBuiltInConstraints() throws Exception {
+			// Given
+			CompiledValidatingItemProcessor<TestBean> processor = new CompiledValidatingItemProcessor<>(TestBean.class);
+			processor.setFilter(true);
+
+			// Then
+			assertThat(processor.process(new TestBean("John", "AB", 1))).isNotNull();
+			assertThat(processor.process(new TestBean(" ", "AB", 1))).isNull();
+			assertThat(processor.process(new TestBean("John", "ABCD", 1))).isNull();
+			assertThat(processor.process(new TestBean("John", "ab", 1))).isNull();
+			assertThat(processor.process(new TestBean("John", "AB", 0))).isNull();
+			assertThat(processor.process(new TestBean("John", null, 1))).isNotNull();
+		}
+
+		@Test
+		@DisplayName("Should ignore constraints on static fields")
+		void shouldIgnoreStaticFields() throws Exception {
+			// Given
+			CompiledValidatingItemProcessor<StaticConstraintBean> processor = new CompiledValidatingItemProcessor<>(
+					StaticConstraintBean.class);
+
+			// Then
+			assertThat(processor.process(new StaticConstraintBean())).isNotNull();
+		}
+
+		@Test
+		@DisplayName("Should reject unsupported constraints")
+		void shouldRejectUnsupportedConstraints() {
+			assertThatIllegalArgumentException()
+				.isThrownBy(() -> new CompiledValidatingItemProcessor<>(GetterConstraintBean.class))
+				.withMessageContaining("getName");
+		}
+
+	}
+
+	@Nested
+	@DisplayName("Chunk Validation Tests")
+	class ChunkValidationTests {
+
+		@Test
+		@DisplayName("Should return the valid items and a violation report")
+		void shouldReturnValidItemsAndReport() {
+			// Given
+			CompiledValidatingItemProcessor<TestBean> processor = new CompiledValidatingItemProcessor<>(TestBean.class);
+			TestBean valid1 = new TestBean("John", "AB", 1);
+			TestBean valid2 = new TestBean("Jane", null, 5);
+			Chunk<TestBean> chunk = new Chunk<>(List.of(valid1, new TestBean("", "AB", 1), valid2,
+					new TestBean("", "ABCD", 0), new TestBean("Joe", "AB", 0)));
+
+			// When
+			CompiledValidatingItemProcessor.Result<TestBean> result = processor.validate(chunk);
+
+			// Then
+			assertThat(result.valid().getItems()).containsExactly(valid1, valid2);
+			assertThat(result.report().invalidItems()).isEqualTo(3);
+			assertThat(result.report().violations()).containsEntry("name must not be blank", 2)
+				.containsEntry("code size must be between 0 and 3", 1)
+				.containsEntry("count must be greater than or equal to 1", 2);
+		}
+
+	}
+
+	public static class TestBean {
+
+		@NotBlank
+		private final String name;
+
+		@Size(max = 3)
+		@Pattern(regexp = "[A-Z]*")
+		private final String code;
+
+		@Min(1)
+		private final int count;
+
+		TestBean(String name, String code, int count) {
+			this.name = name;
+			this.code = code;
+			this.count = count;
+		}
+
+	}
+
+	public static class GetterConstraintBean {
+
+		private String name;
+
+		@NotBlank
+		public String getName() {
+			return name;
+		}
+
+	}
+
+	public static class StaticConstraintBean {
+
+		@NotBlank
+		static String name;
+
+	}
+
+}
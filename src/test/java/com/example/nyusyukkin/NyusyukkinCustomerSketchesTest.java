@@ -0,0 +1,123 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.aggregate.AggregateMemoryBudget;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static com.example.nyusyukkin.NyusyukkinDailySummaryTest.data;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link NyusyukkinCustomerSketches}.
+ */
+class NyusyukkinCustomerSketchesTest {
+
+	private static final int GROUPS = 2000;
+
+	private static final int ROUNDS = 6;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should stay within the budget by spilling and fill the same columns as unspilled sketches")
+	void shouldSpillWithinBudget() {
+		// Given
+		AggregateMemoryBudget budget = budget(256 * 1024);
+		NyusyukkinCustomerSketches sketches = new NyusyukkinCustomerSketches(budget, this.tempDir, 12, 32, 3);
+		long maxUsed = 0;
+
+		// When
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int group = 0; group < GROUPS; group++) {
+				add(sketches, group, round);
+				maxUsed = Math.max(maxUsed, budget.getUsedBytes());
+			}
+		}
+		List<NyusyukkinSketchFileOutput> filled = fill(sketches);
+
+		// Then
+		assertThat(maxUsed).isLessThanOrEqualTo(budget.getMaxBytes());
+		assertThat(sketches.getSpillCount()).isGreaterThan(1);
+		assertThat(columns(filled)).containsExactlyElementsOf(expected());
+		assertThat(filled.get(0).getKokyakuNum()).isEqualTo(ROUNDS);
+		assertThat(filled.get(0).getTopKokyaku()).isEqualTo("C5:1050;C4:1040;C3:1030");
+		sketches.close();
+		assertThat(budget.getUsedBytes()).isZero();
+		assertThat(this.tempDir).isEmptyDirectory();
+	}
+
+	@Test
+	@DisplayName("Should merge the spilled sketches of another part of the input")
+	void shouldMergeSpilledSketches() {
+		// Given
+		AggregateMemoryBudget budget = budget(256 * 1024);
+		NyusyukkinCustomerSketches first = new NyusyukkinCustomerSketches(budget, this.tempDir, 12, 32, 3);
+		NyusyukkinCustomerSketches second = new NyusyukkinCustomerSketches(budget, this.tempDir, 12, 32, 3);
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int group = 0; group < GROUPS; group++) {
+				add(round % 2 == 0 ? first : second, group, round);
+			}
+		}
+
+		// When
+		first.merge(second, (key) -> key);
+
+		// Then
+		assertThat(second.getSpillCount()).isPositive();
+		assertThat(columns(fill(first))).containsExactlyElementsOf(expected());
+		first.close();
+		assertThat(budget.getUsedBytes()).isZero();
+	}
+
+	private List<String> expected() {
+		NyusyukkinCustomerSketches sketches = new NyusyukkinCustomerSketches(budget(Long.MAX_VALUE), this.tempDir, 12,
+				32, 3);
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int group = 0; group < GROUPS; group++) {
+				add(sketches, group, round);
+			}
+		}
+		try (sketches) {
+			assertThat(sketches.getSpillCount()).isZero();
+			return columns(fill(sketches));
+		}
+	}
+
+	/**
+	 * Adds a customer per round to a group, with an amount per round.
+	 */
+	private static void add(NyusyukkinCustomerSketches sketches, int group, int round) {
+		NyusyukkinData data = data("東京", 1, 1000 + round * 10, "2024-01-01");
+		data.setKokyakuId("C" + (group + round));
+		sketches.add(group, data);
+	}
+
+	private static List<NyusyukkinSketchFileOutput> fill(NyusyukkinCustomerSketches sketches) {
+		List<NyusyukkinSketchFileOutput> filled = new ArrayList<>();
+		for (int group = 0; group < GROUPS; group++) {
+			NyusyukkinSketchFileOutput outputData = new NyusyukkinSketchFileOutput();
+			sketches.fill(group, outputData);
+			filled.add(outputData);
+		}
+		return filled;
+	}
+
+	private static List<String> columns(List<NyusyukkinSketchFileOutput> filled) {
+		return filled.stream()
+			.map((outputData) -> outputData.getKokyakuNum() + "," + outputData.getTopKokyaku())
+			.toList();
+	}
+
+	private static AggregateMemoryBudget budget(long maxBytes) {
+		AggregateMemoryBudget budget = new AggregateMemoryBudget("test", maxBytes);
+		budget.setMeterRegistry(new SimpleMeterRegistry());
+		return budget;
+	}
+
+}
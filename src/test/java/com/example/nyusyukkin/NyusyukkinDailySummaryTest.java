@@ -0,0 +1,83 @@
+package com.example.nyusyukkin;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Test class for {@link NyusyukkinDailySummary}.
+ */
+class NyusyukkinDailySummaryTest {
+
+	@Test
+	@DisplayName("Should total deposits and withdrawals per date and branch in key order")
+	void shouldSummarizePerDateAndBranch() {
+		// Given
+		List<NyusyukkinData> items = List.of(data("千葉", 1, 100, "2024-01-02"), data("東京", 0, 30, "2024-01-01"),
+				data("千葉", 0, 20, "2024-01-02"), data(null, 1, 5, "2024-01-02"), data("千葉", 1, 50, "2024-01-02"),
+				data("東京", 2, 999, "2024-01-01"));
+
+		// When
+		List<NyusyukkinDailySummary> summaries = NyusyukkinDailySummary.summarize(items);
+
+		// Then
+		assertThat(summaries)
+			.extracting(NyusyukkinDailySummary::getTorihikibi, NyusyukkinDailySummary::getShitenName,
+					NyusyukkinDailySummary::getNyukinNum, NyusyukkinDailySummary::getNyukinSum,
+					NyusyukkinDailySummary::getSyukkinNum, NyusyukkinDailySummary::getSyukkinSum)
+			.containsExactly(tuple(LocalDate.of(2024, 1, 1), "東京", 0L, 0L, 1L, 30L),
+					tuple(LocalDate.of(2024, 1, 2), null, 1L, 5L, 0L, 0L),
+					tuple(LocalDate.of(2024, 1, 2), "千葉", 2L, 150L, 1L, 20L));
+	}
+
+	@Test
+	@DisplayName("Should sum amounts beyond the int range")
+	void shouldSumBeyondIntRange() {
+		// Given
+		List<NyusyukkinData> items = List.of(data("東京", 1, Integer.MAX_VALUE, "2024-01-01"),
+				data("東京", 1, Integer.MAX_VALUE, "2024-01-01"));
+
+		// When
+		List<NyusyukkinDailySummary> summaries = NyusyukkinDailySummary.summarize(items);
+
+		// Then
+		assertThat(summaries).singleElement()
+			.extracting(NyusyukkinDailySummary::getNyukinSum)
+			.isEqualTo(2L * Integer.MAX_VALUE);
+	}
+
+	@Test
+	@DisplayName("Should group records without a transaction date first")
+	void shouldGroupMissingDateFirst() {
+		// Given
+		List<NyusyukkinData> items = List.of(data("東京", 1, 10, "2024-01-01"), data("東京", 1, 20, null),
+				data("東京", 0, 5, null));
+
+		// When
+		List<NyusyukkinDailySummary> summaries = NyusyukkinDailySummary.summarize(items);
+
+		// Then
+		assertThat(summaries)
+			.extracting(NyusyukkinDailySummary::getTorihikibi, NyusyukkinDailySummary::getNyukinSum,
+					NyusyukkinDailySummary::getSyukkinSum)
+			.containsExactly(tuple(null, 20L, 5L), tuple(LocalDate.of(2024, 1, 1), 10L, 0L));
+	}
+
+	static NyusyukkinData data(String shitenName, int nyusyukkinKubun, int kingaku, String torihikibi) {
+		NyusyukkinData data = new NyusyukkinData();
+		data.setShitenName(shitenName);
+		data.setKokyakuId("0001");
+		data.setNyusyukkinKubun(nyusyukkinKubun);
+		data.setKingaku(kingaku);
+		data.setTorihikibi(torihikibi != null
+				? Date.from(LocalDate.parse(torihikibi).atStartOfDay(ZoneId.systemDefault()).toInstant()) : null);
+		return data;
+	}
+
+}
@@ -0,0 +1,250 @@
+package com.example.nyusyukkin;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import static com.example.nyusyukkin.NyusyukkinDailySummaryTest.data;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Test class for {@link NyusyukkinMapper}, run against PostgreSQL with the Flyway
+ * migrations applied. Each test is rolled back.
+ */
+@MybatisTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class NyusyukkinMapperTest {
+
+	@Container
+	@ServiceConnection
+	static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:latest"));
+
+	@Autowired
+	NyusyukkinMapper nyusyukkinMapper;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@BeforeEach
+	void setUp() {
+		this.nyusyukkinMapper.dropNyusyukkinPartitions();
+		this.nyusyukkinMapper.truncateNyusyukkinDailySummary();
+		this.nyusyukkinMapper.truncateNyusyukkinStagingData();
+	}
+
+	@Test
+	@DisplayName("Should add the totals of exactly the merged records to the daily summary")
+	void shouldSummarizeMergedRecords() throws Exception {
+		// Given
+		this.nyusyukkinMapper
+			.upsertNyusyukkinDailySummary(NyusyukkinDailySummary.summarize(List.of(data("東京", 1, 1000, "2024-01-01"))));
+		NyusyukkinData rejected = data("東京", 1, 7, "2024-01-01");
+		rejected.setKokyakuId("");
+		stage(1, "file:/input.csv", data("東京", 1, 100, "2024-01-01"), data("東京", 0, 30, "2024-01-01"),
+				data(null, 1, 5, "2024-02-01"), rejected);
+		this.nyusyukkinMapper.createNyusyukkinPartitionsForStagingData();
+
+		// When
+		int merged = this.nyusyukkinMapper.mergeNyusyukkinStagingData();
+
+		// Then
+		assertThat(merged).isEqualTo(3);
+		assertThat(dailySummary())
+			.extracting(NyusyukkinFileOutput::getShitenName, NyusyukkinFileOutput::getNyukinNum,
+					NyusyukkinFileOutput::getNyukinSum, NyusyukkinFileOutput::getSyukkinNum,
+					NyusyukkinFileOutput::getSyukkinSum)
+			.containsExactly(tuple("東京", 2L, 1100L, 1L, 30L), tuple(null, 1L, 5L, 0L, 0L));
+	}
+
+	@Test
+	@DisplayName("Should keep identical transactions of a file and skip the records already merged by the job instance")
+	void shouldMergeEachRecordOfAJobInstanceOnce() {
+		// Given
+		NyusyukkinData[] records = { data("東京", 1, 100, "2024-01-01"), data("東京", 1, 100, "2024-01-01"),
+				data("千葉", 0, 30, "2024-01-02") };
+		stage(1, "file:/input.csv", records);
+		this.nyusyukkinMapper.createNyusyukkinPartitionsForStagingData();
+		int firstImport = this.nyusyukkinMapper.mergeNyusyukkinStagingData();
+		this.nyusyukkinMapper.truncateNyusyukkinStagingData();
+
+		// When
+		stage(1, "file:/input.csv", records);
+		long skipped = this.nyusyukkinMapper.countMergedNyusyukkinStagingData();
+		int restartedImport = this.nyusyukkinMapper.mergeNyusyukkinStagingData();
+		this.nyusyukkinMapper.truncateNyusyukkinStagingData();
+		stage(2, "file:/input.csv", records[0]);
+		int nextImport = this.nyusyukkinMapper.mergeNyusyukkinStagingData();
+
+		// Then
+		assertThat(firstImport).isEqualTo(3);
+		assertThat(skipped).isEqualTo(3);
+		assertThat(restartedImport).isZero();
+		assertThat(nextImport).isEqualTo(1);
+		assertThat(this.nyusyukkinMapper.selectNyusyukkinData(null, null, null))
+			.extracting(NyusyukkinData::getShitenName, NyusyukkinData::getKingaku)
+			.containsExactly(tuple("東京", 100), tuple("東京", 100), tuple("東京", 100), tuple("千葉", 30));
+	}
+
+	@Test
+	@DisplayName("Should total per date and branch in code point order with no branch first")
+	void shouldSelectTotals() throws Exception {
+		// Given
+		this.nyusyukkinMapper.createNyusyukkinPartitions(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+		this.nyusyukkinMapper.insertNyusyukkinDataBatch(List.of(data("千葉", 1, 100, "2024-01-02"),
+				data("東京", 0, 30, "2024-01-01"), data("千葉", 0, 20, "2024-01-02"), data(null, 1, 5, "2024-01-02"),
+				data("千葉", 1, 50, "2024-01-02"), data("東京", 2, 999, "2024-01-01")));
+
+		// When
+		List<NyusyukkinFileOutput> totals = new ArrayList<>();
+		try (Cursor<NyusyukkinFileOutput> cursor = this.nyusyukkinMapper.selectNyusyukkinTotals()) {
+			cursor.forEach(totals::add);
+		}
+
+		// Then
+		assertThat(totals)
+			.extracting(NyusyukkinFileOutput::getShitenName, NyusyukkinFileOutput::getNyukinNum,
+					NyusyukkinFileOutput::getNyukinSum, NyusyukkinFileOutput::getSyukkinNum,
+					NyusyukkinFileOutput::getSyukkinSum)
+			.containsExactly(tuple("東京", 0L, 0L, 1L, 30L), tuple(null, 1L, 5L, 0L, 0L), tuple("千葉", 2L, 150L, 1L, 20L));
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@DisplayName("Should limit the parallel workers until the end of the transaction only")
+	void shouldSetParallelWorkersForTransaction() {
+		// Given
+		String initial = maxParallelWorkersPerGather();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(this.transactionManager);
+
+		// When
+		String inTransaction = transactionTemplate.execute(status -> {
+			this.nyusyukkinMapper.setLocalMaxParallelWorkersPerGather(7);
+			return maxParallelWorkersPerGather();
+		});
+		String afterTransaction = maxParallelWorkersPerGather();
+
+		// Then (the pool hands the same connection back to the same thread)
+		assertThat(inTransaction).isEqualTo(backend(initial) + ":7");
+		assertThat(afterTransaction).isEqualTo(initial);
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@DisplayName("Should read the highest ID only after the inserts in progress are committed")
+	void shouldLockAgainstInsertsInProgress() throws Exception {
+		// Given
+		TransactionTemplate transactionTemplate = new TransactionTemplate(this.transactionManager);
+		CountDownLatch inserted = new CountDownLatch(1);
+		CountDownLatch commit = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> insert = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+				this.nyusyukkinMapper.insertNyusyukkinDataBatch(List.of(data("東京", 1, 100, "2024-01-01")));
+				inserted.countDown();
+				await(commit);
+			}));
+			inserted.await();
+
+			// When
+			Future<Long> watermark = executor.submit(() -> transactionTemplate.execute(status -> {
+				this.nyusyukkinMapper.lockNyusyukkinDataAgainstInserts();
+				return this.nyusyukkinMapper.selectMaxNyusyukkinId();
+			}));
+			Thread.sleep(500);
+			boolean waited = !watermark.isDone();
+			commit.countDown();
+			insert.get(10, TimeUnit.SECONDS);
+
+			// Then
+			assertThat(waited).isTrue();
+			assertThat(watermark.get(10, TimeUnit.SECONDS))
+				.isEqualTo(this.jdbcTemplate.queryForObject("SELECT MAX(ID) FROM NYUSYUKKINTBL", Long.class));
+		}
+		finally {
+			commit.countDown();
+			executor.shutdown();
+			this.nyusyukkinMapper.dropNyusyukkinPartitions();
+		}
+	}
+
+	@Test
+	@DisplayName("Should read daily totals beyond the int range")
+	void shouldReadTotalsBeyondIntRange() throws Exception {
+		// Given
+		NyusyukkinDailySummary summary = new NyusyukkinDailySummary();
+		summary.setTorihikibi(LocalDate.of(2024, 1, 1));
+		summary.setShitenName("東京");
+		summary.setNyukinNum(1);
+		summary.setNyukinSum(3L * Integer.MAX_VALUE);
+		this.nyusyukkinMapper.upsertNyusyukkinDailySummary(List.of(summary));
+
+		// When
+		List<NyusyukkinFileOutput> totals = dailySummary();
+
+		// Then
+		assertThat(totals).singleElement()
+			.extracting(NyusyukkinFileOutput::getNyukinSum)
+			.isEqualTo(3L * Integer.MAX_VALUE);
+	}
+
+	private void stage(long sourceJob, String sourceFile, NyusyukkinData... records) {
+		for (int i = 0; i < records.length; i++) {
+			records[i].setItemCount(i + 1);
+		}
+		this.nyusyukkinMapper.insertNyusyukkinStagingDataBatch(sourceJob, sourceFile, List.of(records));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private String maxParallelWorkersPerGather() {
+		return this.jdbcTemplate.queryForObject(
+				"SELECT pg_backend_pid() || ':' || current_setting('max_parallel_workers_per_gather')", String.class);
+	}
+
+	private static String backend(String setting) {
+		return setting.substring(0, setting.indexOf(':'));
+	}
+
+	private List<NyusyukkinFileOutput> dailySummary() throws Exception {
+		List<NyusyukkinFileOutput> totals = new ArrayList<>();
+		try (Cursor<NyusyukkinFileOutput> cursor = this.nyusyukkinMapper.selectNyusyukkinDailySummary()) {
+			cursor.forEach(totals::add);
+		}
+		return totals;
+	}
+
+}
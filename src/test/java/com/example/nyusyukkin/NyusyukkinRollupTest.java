@@ -0,0 +1,85 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.aggregate.AggregateMemoryBudget;
+import com.example.nyusyukkin.NyusyukkinRollup.Granularity;
+import com.example.nyusyukkin.NyusyukkinRollup.Level;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static com.example.nyusyukkin.NyusyukkinDailySummaryTest.data;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Test class for {@link NyusyukkinRollup}.
+ */
+class NyusyukkinRollupTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should parse the levels in the given order and name them in canonical column order")
+	void shouldParseLevels() {
+		// When
+		List<Level> levels = Level.parseList("branch+month; year ;all;kubun+day");
+
+		// Then
+		assertThat(levels).containsExactly(new Level(Granularity.MONTH, true, false),
+				new Level(Granularity.YEAR, false, false), new Level(Granularity.ALL, false, false),
+				new Level(Granularity.DAY, false, true));
+		assertThat(levels).extracting(Level::name).containsExactly("month_branch", "year", "all", "day_kubun");
+		assertThat(Level.parseList(NyusyukkinRollup.DEFAULT_LEVELS)).extracting(Level::name)
+			.containsExactly("day_branch", "month_branch", "year_branch", "day", "month", "year");
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "month+branch;branch+month", "week", "day+month", "day;;year", "day,month" })
+	@DisplayName("Should reject unknown columns, several date granularities and duplicate levels")
+	void shouldRejectInvalidLevels(String specs) {
+		assertThatIllegalArgumentException().isThrownBy(() -> Level.parseList(specs));
+	}
+
+	@Test
+	@DisplayName("Should write the totals of every level in one pass, sorted by period, branch and type")
+	void shouldWriteTotalsOfEveryLevel() throws Exception {
+		// Given
+		List<NyusyukkinRollupFileOutput> written = new ArrayList<>();
+		AggregateMemoryBudget budget = new AggregateMemoryBudget("test", 1024 * 1024);
+		budget.setMeterRegistry(new SimpleMeterRegistry());
+
+		// When
+		try (NyusyukkinRollup rollup = new NyusyukkinRollup(Level.parseList("month+branch;year;all;day+kubun"), budget,
+				this.tempDir)) {
+			rollup.add(data("東京", 1, 100, "2024-01-01"));
+			rollup.add(data("東京", 0, 30, "2024-01-15"));
+			rollup.add(data("千葉", 1, 50, "2024-01-01"));
+			rollup.add(data("東京", 1, 7, "2024-02-03"));
+			rollup.add(data("千葉", 0, 20, "2025-03-01"));
+			rollup.writeTo((chunk) -> written.addAll(chunk.getItems()), 2);
+		}
+
+		// Then
+		assertThat(written)
+			.extracting(NyusyukkinRollupFileOutput::getLevel, NyusyukkinRollupFileOutput::getPeriod,
+					NyusyukkinRollupFileOutput::getShitenName, NyusyukkinRollupFileOutput::getNyusyukkinKubun,
+					NyusyukkinRollupFileOutput::getNyukinNum, NyusyukkinRollupFileOutput::getSyukkinNum,
+					NyusyukkinRollupFileOutput::getNyukinSum, NyusyukkinRollupFileOutput::getSyukkinSum)
+			.containsExactly(tuple(0, "202401", "千葉", null, 1L, 0L, 50L, 0L),
+					tuple(0, "202401", "東京", null, 1L, 1L, 100L, 30L), tuple(0, "202402", "東京", null, 1L, 0L, 7L, 0L),
+					tuple(0, "202503", "千葉", null, 0L, 1L, 0L, 20L), tuple(1, "2024", null, null, 3L, 1L, 157L, 30L),
+					tuple(1, "2025", null, null, 0L, 1L, 0L, 20L), tuple(2, null, null, null, 3L, 2L, 157L, 50L),
+					tuple(3, "20240101", null, 1, 2L, 0L, 150L, 0L), tuple(3, "20240115", null, 0, 0L, 1L, 0L, 30L),
+					tuple(3, "20240203", null, 1, 1L, 0L, 7L, 0L), tuple(3, "20250301", null, 0, 0L, 1L, 0L, 20L));
+		assertThat(budget.getUsedBytes()).isZero();
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.example.nyusyukkin;
+
+import com.example.batch.file.InputFileColumnLineMapper;
+import com.example.batch.file.OutputFileColumnLineAggregator;
+import com.example.batch.file.RoutingFlatFileItemWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.support.SingleItemPeekableItemReader;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Test class for {@link ReportingNyusyukkinTasklet}.
+ */
+class ReportingNyusyukkinTaskletTest {
+
+	private static final Charset WINDOWS_31J = Charset.forName("Windows-31J");
+
+	private static final String[] BRANCHES = { "千葉", "大阪", "東京" };
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@DisplayName("Should write every group exactly once when the sorted aggregation is restarted after a failed chunk")
+	void shouldResumeSortedAggregationAfterFailure() throws Exception {
+		// Given
+		Path input = writeSortedInput();
+		Path expected = this.tempDir.resolve("expected.csv");
+		run(input, expected, new ExecutionContext(), 0);
+		Path output = this.tempDir.resolve("output.csv");
+		ExecutionContext executionContext = new ExecutionContext();
+
+		// When
+		assertThatIllegalStateException().isThrownBy(() -> run(input, output, executionContext, 4))
+			.withMessage("Simulated failure");
+		run(input, output, executionContext, 0);
+
+		// Then
+		List<String> lines = Files.readAllLines(output, WINDOWS_31J);
+		assertThat(lines).hasSize(5 * BRANCHES.length).doesNotHaveDuplicates();
+		assertThat(lines).containsExactlyElementsOf(Files.readAllLines(expected, WINDOWS_31J));
+		assertThat(lines).contains("20240105,東京,3,4,4500000000,418");
+	}
+
+	@Test
+	@DisplayName("Should write an empty file for every rollup level when the input is empty")
+	void shouldWriteEmptyRollupFilesForEmptyInput() throws Exception {
+		// Given
+		Path input = Files.createFile(this.tempDir.resolve("input.csv"));
+		List<NyusyukkinRollup.Level> levels = NyusyukkinRollup.Level.parseList(NyusyukkinRollup.DEFAULT_LEVELS);
+		List<Path> files = levels.stream()
+			.map((level) -> this.tempDir.resolve("SMP004_output_" + level.name() + ".csv"))
+			.toList();
+		Files.writeString(files.get(0), "stale\n");
+		RoutingFlatFileItemWriter<NyusyukkinRollupFileOutput> writer = new RoutingFlatFileItemWriter<>(
+				NyusyukkinRollupFileOutput::getLevel, files::get,
+				new OutputFileColumnLineAggregator<>(NyusyukkinRollupFileOutput.class, ","));
+		writer.setName("nyusyukkinRollupFileItemWriter");
+		writer.setInitialKeys(IntStream.range(0, levels.size()).toArray());
+		ReportingNyusyukkinTasklet tasklet = new ReportingNyusyukkinTasklet(reader(input), null, writer, null, "rollup",
+				null, 0, "64MB", 1000, false, 12, 3, 32, null);
+
+		// When
+		execute(tasklet, new ExecutionContext());
+
+		// Then
+		assertThat(files).hasSize(6).allSatisfy((file) -> assertThat(file).isEmptyFile());
+	}
+
+	/**
+	 * Writes a group per date and branch of 1 to 8 records, so that groups span the
+	 * commits of every 10 records. The last group has deposits beyond the int range.
+	 */
+	private Path writeSortedInput() throws Exception {
+		List<String> lines = new ArrayList<>();
+		int size = 0;
+		for (int day = 1; day <= 5; day++) {
+			for (String branch : BRANCHES) {
+				size = size % 8 + 1;
+				boolean last = day == 5 && "東京".equals(branch);
+				for (int i = 0; i < size; i++) {
+					int kubun = last ? (i < 3 ? 1 : 0) : i % 2;
+					int kingaku = last && kubun == 1 ? 1_500_000_000 : 100 + i;
+					lines.add(branch + ",C" + i + "," + kubun + "," + kingaku + ",2024010" + day);
+				}
+			}
+		}
+		Path input = this.tempDir.resolve("input.csv");
+		Files.write(input, lines, WINDOWS_31J);
+		return input;
+	}
+
+	/**
+	 * Runs the sorted aggregation.
+	 * @param failAtChunk the number of the written chunk to fail after writing it, or 0
+	 */
+	private void run(Path input, Path output, ExecutionContext executionContext, int failAtChunk) {
+		FlatFileItemWriter<NyusyukkinFileOutput> writer = new FlatFileItemWriter<>() {
+
+			private int chunks = 0;
+
+			@Override
+			public void write(Chunk<? extends NyusyukkinFileOutput> chunk) throws Exception {
+				super.write(chunk);
+				if (++this.chunks == failAtChunk) {
+					throw new IllegalStateException("Simulated failure");
+				}
+			}
+
+		};
+		writer.setName("nyusyukkinFileOutputItemWriter");
+		writer.setResource(new FileSystemResource(output));
+		writer.setEncoding("Windows-31J");
+		writer.setLineAggregator(new OutputFileColumnLineAggregator<>(NyusyukkinFileOutput.class, ","));
+		ReportingNyusyukkinTasklet tasklet = new ReportingNyusyukkinTasklet(reader(input), writer, null, null, "sorted",
+				null, 0, "64MB", 10, false, 12, 3, 32, null);
+		execute(tasklet, executionContext);
+	}
+
+	/**
+	 * Opens the tasklet and executes it until finished, in a transaction per execution
+	 * that saves the streams' state on commit, as the step would.
+	 */
+	private static void execute(ReportingNyusyukkinTasklet tasklet, ExecutionContext executionContext) {
+		StepContribution contribution = new StepContribution(MetaDataInstanceFactory.createStepExecution());
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+		tasklet.open(executionContext);
+		try {
+			RepeatStatus status;
+			do {
+				status = transactionTemplate.execute(transaction -> {
+					try {
+						RepeatStatus result = tasklet.execute(contribution, null);
+						tasklet.update(executionContext);
+						return result;
+					}
+					catch (RuntimeException ex) {
+						throw ex;
+					}
+					catch (Exception ex) {
+						throw new IllegalStateException(ex);
+					}
+				});
+			}
+			while (status.isContinuable());
+		}
+		finally {
+			tasklet.close();
+		}
+	}
+
+	private static SingleItemPeekableItemReader<NyusyukkinData> reader(Path input) {
+		FlatFileItemReader<NyusyukkinData> reader = new FlatFileItemReader<>();
+		reader.setName("nyusyukkinItemReader");
+		reader.setResource(new FileSystemResource(input));
+		reader.setEncoding("Windows-31J");
+		reader.setLineMapper(new InputFileColumnLineMapper<>(NyusyukkinData.class, ","));
+		SingleItemPeekableItemReader<NyusyukkinData> peekableReader = new SingleItemPeekableItemReader<>();
+		peekableReader.setDelegate(reader);
+		return peekableReader;
+	}
+
+}
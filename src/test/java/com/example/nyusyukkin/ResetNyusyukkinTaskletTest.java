@@ -0,0 +1,64 @@
+package com.example.nyusyukkin;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link ResetNyusyukkinTasklet}, run against PostgreSQL with the Flyway
+ * migrations applied. Each test is rolled back.
+ */
+@MybatisTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class ResetNyusyukkinTaskletTest {
+
+	@Container
+	@ServiceConnection
+	static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:latest"));
+
+	@Autowired
+	NyusyukkinMapper nyusyukkinMapper;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Test
+	@DisplayName("Should replace the records and store them in the monthly partitions of their dates")
+	void shouldStoreRecordsInMonthlyPartitions() throws Exception {
+		// Given
+		this.jdbcTemplate.update("""
+				INSERT INTO NYUSYUKKINTBL (SHITENNAME, KOKYAKUID, NYUSYUKKINKUBUN, KINGAKU, TORIHIKIBI)
+				VALUES ('東京', '0001', '1', 100, DATE '2030-06-15')
+				""");
+		ResetNyusyukkinTasklet tasklet = new ResetNyusyukkinTasklet(this.nyusyukkinMapper, 500);
+
+		// When
+		tasklet.execute(new StepContribution(MetaDataInstanceFactory.createStepExecution()), null);
+
+		// Then
+		assertThat(count("SELECT COUNT(*) FROM NYUSYUKKINTBL")).isEqualTo(500);
+		assertThat(count("SELECT COUNT(*) FROM NYUSYUKKINTBL_DEFAULT")).isZero();
+		assertThat(
+				this.jdbcTemplate.queryForObject("SELECT TO_REGCLASS('nyusyukkintbl_203006') IS NULL", Boolean.class))
+			.isTrue();
+		assertThat(count("SELECT SUM(NYUKINNUM + SYUKKINNUM) FROM NYUSYUKKIN_DAILY_SUMMARY")).isEqualTo(500);
+	}
+
+	private long count(String sql) {
+		return this.jdbcTemplate.queryForObject(sql, Long.class);
+	}
+
+}
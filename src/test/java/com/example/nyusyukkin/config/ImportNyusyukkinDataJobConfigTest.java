@@ -0,0 +1,79 @@
+package com.example.nyusyukkin.config;
+
+import com.example.nyusyukkin.NyusyukkinData;
+import com.example.nyusyukkin.NyusyukkinMapper;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.batch.item.Chunk;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link ImportNyusyukkinDataJobConfig}, run against PostgreSQL with the
+ * Flyway migrations applied. Each test is rolled back.
+ */
+@MybatisTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class ImportNyusyukkinDataJobConfigTest {
+
+	@Container
+	@ServiceConnection
+	static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:latest"));
+
+	@Autowired
+	NyusyukkinMapper nyusyukkinMapper;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Test
+	@DisplayName("Should store the imported records in the monthly partitions of their dates")
+	void shouldStoreImportedRecordsInMonthlyPartitions() throws Exception {
+		// Given
+		this.nyusyukkinMapper.dropNyusyukkinPartitions();
+		this.nyusyukkinMapper.truncateNyusyukkinDailySummary();
+		Chunk<NyusyukkinData> chunk = new Chunk<>(data("東京", 1, 100, "2031-01-31"), data("千葉", 0, 30, "2031-03-01"),
+				data("東京", 1, 7, "2031-01-02"));
+
+		// When
+		new ImportNyusyukkinDataJobConfig().nyusyukkinDataItemWriter(this.nyusyukkinMapper).write(chunk);
+
+		// Then
+		assertThat(count("SELECT COUNT(*) FROM NYUSYUKKINTBL")).isEqualTo(3);
+		assertThat(count("SELECT COUNT(*) FROM NYUSYUKKINTBL_DEFAULT")).isZero();
+		assertThat(count("SELECT COUNT(*) FROM nyusyukkintbl_203101")).isEqualTo(2);
+		assertThat(count("SELECT COUNT(*) FROM nyusyukkintbl_203103")).isEqualTo(1);
+		assertThat(
+				this.jdbcTemplate.queryForObject("SELECT TO_REGCLASS('nyusyukkintbl_203102') IS NULL", Boolean.class))
+			.isTrue();
+		assertThat(count("SELECT SUM(NYUKINNUM + SYUKKINNUM) FROM NYUSYUKKIN_DAILY_SUMMARY")).isEqualTo(3);
+	}
+
+	private long count(String sql) {
+		return this.jdbcTemplate.queryForObject(sql, Long.class);
+	}
+
+	private static NyusyukkinData data(String shitenName, int nyusyukkinKubun, int kingaku, String torihikibi) {
+		NyusyukkinData data = new NyusyukkinData();
+		data.setShitenName(shitenName);
+		data.setKokyakuId("0001");
+		data.setNyusyukkinKubun(nyusyukkinKubun);
+		data.setKingaku(kingaku);
+		data.setTorihikibi(Date.from(LocalDate.parse(torihikibi).atStartOfDay(ZoneId.systemDefault()).toInstant()));
+		return data;
+	}
+
+}